@@ -21,6 +21,8 @@ import android.app.Application.ActivityLifecycleCallbacks;
 import android.os.Build;
 import android.os.Bundle;
 
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+
 @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
 public class PXLifecycleCallbacks implements ActivityLifecycleCallbacks {
 
@@ -49,8 +51,7 @@ public class PXLifecycleCallbacks implements ActivityLifecycleCallbacks {
     }
 
     public void onActivityDestroyed(Activity activity) {
-        // TODO Auto-generated method stub
-
+        PXCacheManager.onActivityDestroyed(activity);
     }
 
 }
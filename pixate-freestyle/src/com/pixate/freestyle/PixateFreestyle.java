@@ -17,7 +17,10 @@ package com.pixate.freestyle;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import android.annotation.TargetApi;
@@ -36,7 +39,10 @@ import android.widget.AdapterView;
 
 import com.pixate.freestyle.styling.PXStyleUtils;
 import com.pixate.freestyle.styling.PXStylesheet;
+import com.pixate.freestyle.styling.PXStylesheetDiff;
 import com.pixate.freestyle.styling.PXStylesheet.PXStyleSheetOrigin;
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXResourcePrefetcher;
 import com.pixate.freestyle.util.PXLog;
 import com.pixate.freestyle.util.ViewUtil;
 
@@ -112,6 +118,9 @@ public class PixateFreestyle {
     private static boolean mAppInited = false;
     private static Context mAppContext = null;
 
+    // The activities that were initialized, for restyling on reloads.
+    private static final Map<Activity, Boolean> mActivities = new WeakHashMap<Activity, Boolean>();
+
     /**
      * Initialize Pixate with the given {@link Context}, using the styles in default.css.
      *
@@ -130,6 +139,7 @@ public class PixateFreestyle {
     public static void init(Context context, String cssFileName) {
         if (mAppContext == null) {
             mAppContext = context.getApplicationContext();
+            PXCacheManager.init(mAppContext);
             // log a version
             Log.i(TAG, String.format("Pixate Freestyle version %s (API version %d)", getVersion(),
                     getApiVersion()));
@@ -141,6 +151,7 @@ public class PixateFreestyle {
                     context.getApplicationContext(), cssFileName, PXStyleSheetOrigin.APPLICATION);
             if (stylesheet != null) {
                 logErrors(stylesheet.getErrors());
+                PXResourcePrefetcher.prefetch(stylesheet, context);
             }
         }
 
@@ -153,11 +164,15 @@ public class PixateFreestyle {
 
         if (context instanceof Activity) {
             Activity activity = (Activity) context;
+            mActivities.put(activity, Boolean.TRUE);
             WrappedInflaterFactory.applyTo(activity);
             // Grab the 'decorView' which contains the ActionBar and the
             // content.
             View decorView = activity.getWindow().getDecorView();
             ViewUtil.prepareViewGroupListeners((ViewGroup) decorView);
+            // the content is usually set after this call, so the visible
+            // views are known only once they are laid out
+            PXResourcePrefetcher.prioritizeOnLayout(decorView);
 
             // We have to get to the tabs in case the ActionBar mode has them
             // enabled.
@@ -182,6 +197,67 @@ public class PixateFreestyle {
         ViewUtil.initView(view, cssId, cssClass, cssStyle);
     }
 
+    /**
+     * Replaces the application stylesheet with the given source, and restyles
+     * the views that could match the rule sets that were added, removed,
+     * changed or moved. When declarations were removed, the activities with
+     * affected views are re-created instead, since restyling can't reset
+     * views to their defaults. Must be called on the main thread.
+     * 
+     * @param source The new stylesheet source
+     * @return The difference between the previous and the new stylesheet
+     * @see com.pixate.freestyle.styling.PXStylesheetWatcher
+     */
+    public static PXStylesheetDiff reloadStylesheet(String source) {
+        PXStylesheetDiff diff = PXStylesheet.reloadStyleSheetFromSource(source,
+                PXStyleSheetOrigin.APPLICATION, currentCSS.get());
+        PXStylesheet stylesheet = PXStylesheet.getCurrentApplicationStylesheet();
+        logErrors(stylesheet.getErrors());
+        if (mAppContext != null) {
+            PXResourcePrefetcher.prefetch(stylesheet, mAppContext);
+        }
+
+        if (!diff.isEmpty()) {
+            for (Activity activity : new ArrayList<Activity>(mActivities.keySet())) {
+                if (activity.isFinishing()) {
+                    continue;
+                }
+                View decorView = activity.getWindow().getDecorView();
+                ActionBar actionBar = activity.getActionBar();
+                if (diff.isResetRequired()) {
+                    if (isAffected(decorView, diff)
+                            || (actionBar != null && diff.affects(actionBar))) {
+                        activity.recreate();
+                    }
+                    continue;
+                }
+                restyle(decorView, diff);
+                if (actionBar != null && diff.affects(actionBar)) {
+                    style(actionBar);
+                }
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Restyles the views of all the activities that were initialized with
+     * Pixate Freestyle (for example, once a font they use is loaded). Must be
+     * called on the main thread.
+     */
+    public static void restyleAll() {
+        for (Activity activity : new ArrayList<Activity>(mActivities.keySet())) {
+            if (activity.isFinishing()) {
+                continue;
+            }
+            style(activity.getWindow().getDecorView());
+            ActionBar actionBar = activity.getActionBar();
+            if (actionBar != null) {
+                style(actionBar);
+            }
+        }
+    }
+
     /**
      * Returns the Pixate Freestyle product version.
      * 
@@ -276,6 +352,43 @@ public class PixateFreestyle {
         PXStyleUtils.updateStyles(styleable, styleChildren);
     }
 
+    /**
+     * Restyles the views in the given tree that are affected by a stylesheet
+     * change.
+     */
+    private static void restyle(View view, PXStylesheetDiff diff) {
+        if (diff.affects(view)) {
+            style(view, false);
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            int count = group.getChildCount();
+            for (int i = 0; i < count; i++) {
+                restyle(group.getChildAt(i), diff);
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> when a view in the given tree is affected by a
+     * stylesheet change.
+     */
+    private static boolean isAffected(View view, PXStylesheetDiff diff) {
+        if (diff.affects(view)) {
+            return true;
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            int count = group.getChildCount();
+            for (int i = 0; i < count; i++) {
+                if (isAffected(group.getChildAt(i), diff)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
     private static void initApp(Context context) {
 
@@ -44,4 +44,12 @@ public abstract class BasePXPaint implements PXPaint {
         return blendingMode;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.paints.PXPaint#supportsPaintAlpha()
+     */
+    public boolean supportsPaintAlpha() {
+        return false;
+    }
+
 }
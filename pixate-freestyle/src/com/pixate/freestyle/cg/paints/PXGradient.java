@@ -89,6 +89,28 @@ public abstract class PXGradient extends BasePXPaint {
         this.transform = (transform == null) ? PXTransformParser.IDENTITY_MATRIX : transform;
     }
 
+    /**
+     * Returns the {@link Matrix} transform.
+     */
+    public Matrix getTransform() {
+        return transform;
+    }
+
+    /**
+     * Returns the gradient colors.
+     */
+    public List<Integer> getColors() {
+        return colors;
+    }
+
+    /**
+     * Returns the gradient offsets. Note that a gradient may hold fewer
+     * offsets than colors.
+     */
+    public List<Float> getOffsets() {
+        return offsets;
+    }
+
     /**
      * Adds a color to the gradient.
      * 
@@ -137,6 +159,16 @@ public abstract class PXGradient extends BasePXPaint {
         return true;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.paints.BasePXPaint#supportsPaintAlpha()
+     */
+    @Override
+    public boolean supportsPaintAlpha() {
+        // the shader is modulated by the paint's alpha
+        return blendingMode == null;
+    }
+
     /*
      * (non-Javadoc)
      * @see com.pixate.freestyle.cg.paints.PXPaint#isAsynchronous()
@@ -15,15 +15,12 @@
  ******************************************************************************/
 package com.pixate.freestyle.cg.paints;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Set;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.NinePatch;
@@ -40,10 +37,13 @@ import android.os.AsyncTask;
 import android.os.Looper;
 
 import com.pixate.freestyle.PixateFreestyle;
-import com.pixate.freestyle.cg.parsing.PXSVGLoader;
+import com.pixate.freestyle.cg.parsing.PXSVGCache;
 import com.pixate.freestyle.cg.shapes.PXShapeDocument;
 import com.pixate.freestyle.pxcomponentkit.view.overlay.PXBorderOverlay;
 import com.pixate.freestyle.util.LoadingCallback;
+import com.pixate.freestyle.util.ObjectUtil;
+import com.pixate.freestyle.util.PXBitmapCache;
+import com.pixate.freestyle.util.PXBitmapDecoder;
 import com.pixate.freestyle.util.PXLog;
 import com.pixate.freestyle.util.PXURLBitmapLoader;
 import com.pixate.freestyle.util.StringUtil;
@@ -63,6 +63,7 @@ public class PXImagePaint extends BasePXPaint {
 
     private Uri imageURL;
     private RemoteLoader<Bitmap> remoteBitmapLoader;
+    private Rect remoteBitmapBounds;
     private RemoteLoader<PXShapeDocument> remoteSVGLoader;
     private boolean isOpaque;
 
@@ -108,8 +109,14 @@ public class PXImagePaint extends BasePXPaint {
         String file = imageURL.getPath();
         String scheme = imageURL.getScheme();
         String resourceSpecifier = imageURL.getEncodedSchemeSpecificPart();
-        return !StringUtil.isEmpty(file) && file.toLowerCase(Locale.US).endsWith(".svg")
-                || !StringUtil.isEmpty(scheme) && !StringUtil.isEmpty(resourceSpecifier)
+        if (!StringUtil.isEmpty(file)) {
+            String lowerCaseFile = file.toLowerCase(Locale.US);
+            if (lowerCaseFile.endsWith(".svg")
+                    || lowerCaseFile.endsWith(UrlStreamOpener.COMPILED_SVG_EXTENSION)) {
+                return true;
+            }
+        }
+        return !StringUtil.isEmpty(scheme) && !StringUtil.isEmpty(resourceSpecifier)
                 && UrlStreamOpener.DATA_SCHEME.startsWith(scheme.toLowerCase(Locale.US))
                 && resourceSpecifier.toLowerCase(Locale.US).startsWith("image/svg+xml");
     }
@@ -142,39 +149,19 @@ public class PXImagePaint extends BasePXPaint {
     public Bitmap bitmapForBounds(Rect bounds) {
         Bitmap bitmap = null;
         if (canLoadAsBitmap()) {
+            bitmap = PXBitmapCache.getFromMemory(imageURL, bounds.width(), bounds.height(), null);
+            if (bitmap != null) {
+                return bitmap;
+            }
             initRemoteLoader(bounds);
-            InputStream inputStream = null;
-            try {
-                if (remoteBitmapLoader != null) {
-                    // note that the remoteBitmapLoader was already initialized
-                    // with the right bounds, so there is no need to resize.
-                    bitmap = remoteBitmapLoader.get();
-                } else {
-                    inputStream = UrlStreamOpener.open(imageURL);
-                    BitmapFactory.Options options = new BitmapFactory.Options();
-                    options.inJustDecodeBounds = true;
-                    BitmapFactory.decodeStream(inputStream, new Rect(), options);
-                    try {
-                        inputStream.close();
-                    } catch (IOException e) {
-                    }
-
-                    // calculates the sample size
-                    options.inSampleSize = PXURLBitmapLoader.calculateSampleSize(options,
-                            bounds.width(), bounds.height());
-                    options.inJustDecodeBounds = false;
-
-                    // grab the bitmap at the requested size
-                    inputStream = UrlStreamOpener.open(imageURL);
-                    bitmap = BitmapFactory.decodeStream(inputStream, new Rect(), options);
-                }
-            } finally {
-                if (inputStream != null) {
-                    try {
-                        inputStream.close();
-                    } catch (IOException e) {
-                    }
-                }
+            if (remoteBitmapLoader != null) {
+                // note that the remoteBitmapLoader was already initialized
+                // with the right bounds, so there is no need to resize.
+                bitmap = remoteBitmapLoader.get();
+            } else {
+                // grab the bitmap at the requested size
+                bitmap = PXBitmapDecoder.decode(imageURL, bounds.width(), bounds.height());
+                PXBitmapCache.put(imageURL, bounds.width(), bounds.height(), null, bitmap);
             }
         }
         return bitmap;
@@ -198,43 +185,43 @@ public class PXImagePaint extends BasePXPaint {
                 if (hasSVGImageURL()) {
                     // for android, instead of using the PXShapeView (which
                     // requires a Context), we directly load the scene with
-                    // PXSVGLoader.loadFromURL(URL)
+                    // PXSVGCache.loadFromURL(URL), which only parses the SVG
+                    // on its first use.
                     PXShapeDocument document;
                     if (remoteSVGLoader != null) {
                         document = (PXShapeDocument) remoteSVGLoader.get();
                     } else {
-                        document = PXSVGLoader.loadFromStream(UrlStreamOpener.open(imageURL));
+                        document = PXSVGCache.loadFromURL(imageURL);
                     }
                     document.setBounds(new RectF(bounds));
                     document.render(canvas);
                 } else {
                     // read the data as a bitmap image
-                    InputStream inputStream = null;
-                    try {
-                        Drawable d = null;
-                        if (remoteBitmapLoader != null) {
-                            d = getDrawable(remoteBitmapLoader.get());
-                        } else {
-                            inputStream = UrlStreamOpener.open(imageURL);
-                            // Try to load this data as a NinePatchDrawable. The
-                            // fallback here, in case the bitmap is not
-                            // nine-patch, is BitmapDrawable. Also, when the png
-                            // is loaded from the assets directory, we need to
-                            // compile/encode it via the "aapt" tool first!
-                            // Otherwise, it will not load the nine-patch chunk
-                            // data.
-                            d = NinePatchDrawable.createFromStream(inputStream, null);
-                        }
-                        if (d == null) {
-                            d = new PXBorderOverlay(Color.RED, 2);
-                        }
-                        d.setBounds(bounds);
-                        d.draw(canvas);
-                    } finally {
-                        if (inputStream != null) {
-                            inputStream.close();
+                    Bitmap bitmap;
+                    if (remoteBitmapLoader != null) {
+                        bitmap = remoteBitmapLoader.get();
+                    } else {
+                        // Decode at full size, as the bitmap may be a
+                        // nine-patch, which can't be downsampled. Also,
+                        // when the png is loaded from the assets
+                        // directory, we need to compile/encode it via the
+                        // "aapt" tool first! Otherwise, it will not load
+                        // the nine-patch chunk data.
+                        bitmap = PXBitmapCache.get(imageURL, 0, 0, null);
+                        if (bitmap == null) {
+                            bitmap = PXBitmapDecoder.decode(imageURL, 0, 0);
+                            PXBitmapCache.put(imageURL, 0, 0, null, bitmap);
                         }
                     }
+                    // The drawable will be a NinePatchDrawable when the
+                    // bitmap holds a nine-patch chunk. Otherwise, it's a
+                    // BitmapDrawable.
+                    Drawable d = getDrawable(bitmap);
+                    if (d == null) {
+                        d = new PXBorderOverlay(Color.RED, 2);
+                    }
+                    d.setBounds(bounds);
+                    d.draw(canvas);
                 }
             } catch (Exception e) {
                 PXLog.e(TAG, e, "Error loading a PXImagePaint from " + imageURL);
@@ -268,10 +255,9 @@ public class PXImagePaint extends BasePXPaint {
      * @param bounds
      */
     private void initRemoteLoader(final Rect bounds) {
-        // TODO - We assume here that this PXImagePaint will only download the
-        // bitmap for the first Rect bounds it gets. In case a different request
-        // will arrive later, the same bitmap will be used eventually. We may
-        // want to change this...
+        // Note that a remote bitmap loader is bound to the size it was created
+        // for. A request for different bounds will create a new loader (the
+        // bitmaps themselves are cached by PXBitmapCache).
 
         if (isRemote()) {
 
@@ -280,7 +266,10 @@ public class PXImagePaint extends BasePXPaint {
             // manifest.
             // <uses-permission android:name="android.permission.INTERNET"/>
 
-            if (remoteSVGLoader == null && hasSVGImageURL()) {
+            if (hasSVGImageURL()) {
+                if (remoteSVGLoader != null) {
+                    return;
+                }
                 // Prepare and start a remote SVG
                 remoteSVGLoader = new RemoteLoader<PXShapeDocument>() {
 
@@ -288,7 +277,7 @@ public class PXImagePaint extends BasePXPaint {
                         // load SVG (TODO Eventually we'll need a callback
                         // here too)
                         try {
-                            return PXSVGLoader.loadFromStream(UrlStreamOpener.open(uri.toString()));
+                            return PXSVGCache.loadFromURL(uri);
                         } catch (Exception e) {
                             PXLog.e(TAG, e, "Error while loading remote SVG " + uri);
                         }
@@ -298,7 +287,9 @@ public class PXImagePaint extends BasePXPaint {
 
                 };
                 remoteSVGLoader.execute(imageURL);
-            } else {
+            } else if (remoteBitmapLoader == null || !ObjectUtil.areEqual(bounds,
+                    remoteBitmapBounds)) {
+                remoteBitmapBounds = bounds != null ? new Rect(bounds) : null;
                 // Prepare and start a remote Bitmap loader
                 remoteBitmapLoader = new RemoteLoader<Bitmap>() {
                     @Override
@@ -311,6 +302,14 @@ public class PXImagePaint extends BasePXPaint {
                                 width = bounds.width();
                                 height = bounds.height();
                             }
+                            Bitmap cached = PXBitmapCache.get(uri, width, height, null);
+                            if (cached == null && (width != 0 || height != 0)) {
+                                // a full size bitmap, when it was prefetched
+                                cached = PXBitmapCache.getFromMemory(uri, 0, 0, null);
+                            }
+                            if (cached != null) {
+                                return cached;
+                            }
                             // Note - although we are using a callback
                             // mechanism here, we are still forcing a
                             // synchronous mode.
@@ -328,6 +327,7 @@ public class PXImagePaint extends BasePXPaint {
                                             result[0] = bm;
                                         }
                                     }, true);
+                            PXBitmapCache.put(uri, width, height, null, result[0]);
                             return result[0];
                         } catch (Exception e) {
                             PXLog.e(TAG, e, "Error while loading remote image " + uri);
@@ -427,6 +427,10 @@ public class PXImagePaint extends BasePXPaint {
             if (task != null) {
                 try {
                     return task.get();
+                } catch (InterruptedException e) {
+                    // keep the interrupted state for the caller
+                    Thread.currentThread().interrupt();
+                    return null;
                 } catch (Exception e) {
                     PXLog.e(TAG, e, "Error loading an image/svg ('%s')", uri);
                     return null;
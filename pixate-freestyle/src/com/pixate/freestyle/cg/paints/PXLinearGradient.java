@@ -161,6 +161,22 @@ public class PXLinearGradient extends PXGradient {
         angleType = PXAngleType.POINTS;
     }
 
+    /**
+     * Returns the way the direction of this gradient was last defined (by
+     * angle, points or direction).
+     */
+    public PXAngleType getAngleType() {
+        return angleType;
+    }
+
+    /**
+     * Returns the gradient direction, or <code>null</code> when it was never
+     * set.
+     */
+    public PXLinearGradientDirection getGradientDirection() {
+        return gradientDirection;
+    }
+
     public void setGradientDirection(PXLinearGradientDirection gradientDirection) {
         this.gradientDirection = gradientDirection;
         angleType = PXAngleType.DIRECTION;
@@ -72,6 +72,18 @@ public interface PXPaint {
      */
     boolean isOpaque();
 
+    /**
+     * Returns <code>true</code> if this paint honors the alpha of the
+     * {@link Paint} that is passed to
+     * {@link #applyFillToPath(Path, Paint, Canvas)}, and draws the path in a
+     * single pass. When this is the case, a translucent shape may be rendered
+     * without an offscreen layer.
+     * 
+     * @return <code>true</code> if the paint's alpha can be used to render
+     *         this paint with an opacity.
+     */
+    boolean supportsPaintAlpha();
+
     /**
      * Returns <code>true</code> if this paint should be loaded asynchronously.
      * This will be true, for example, when the paint is loading a remote image.
@@ -143,6 +143,16 @@ public class PXPaintGroup extends BasePXPaint {
         return group;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.paints.BasePXPaint#supportsPaintAlpha()
+     */
+    @Override
+    public boolean supportsPaintAlpha() {
+        // multiple paints are layered over each other
+        return paints != null && paints.size() == 1 && paints.get(0).supportsPaintAlpha();
+    }
+
     /*
      * (non-Javadoc)
      * @see com.pixate.freestyle.cg.paints.PXPaint#isOpaque()
@@ -72,6 +72,15 @@ public class PXSolidPaint extends BasePXPaint {
         return Color.alpha(color) == 255;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.paints.BasePXPaint#supportsPaintAlpha()
+     */
+    @Override
+    public boolean supportsPaintAlpha() {
+        return blendingMode == null;
+    }
+
     /*
      * (non-Javadoc)
      * @see com.pixate.freestyle.cg.paints.PXPaint#isAsynchronous()
@@ -91,6 +100,10 @@ public class PXSolidPaint extends BasePXPaint {
         Paint p = ObjectPool.paintPool.checkOut(paint);
         p.setAntiAlias(true);
         p.setColor(color);
+        if (paint != null && paint.getAlpha() < 255) {
+            // modulate the color's alpha with the given paint's alpha
+            p.setAlpha(Color.alpha(color) * paint.getAlpha() / 255);
+        }
         p.setXfermode(blendingMode);
         context.drawPath(path, p);
         // Check the paint back into the pool
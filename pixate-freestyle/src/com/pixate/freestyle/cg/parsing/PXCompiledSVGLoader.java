@@ -0,0 +1,397 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.cg.parsing;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.graphics.Matrix;
+import android.graphics.Paint.Align;
+import android.graphics.Paint.Cap;
+import android.graphics.Paint.Join;
+import android.graphics.PointF;
+import android.graphics.RectF;
+
+import com.pixate.freestyle.cg.paints.PXGradient;
+import com.pixate.freestyle.cg.paints.PXGradient.PXGradientUnits;
+import com.pixate.freestyle.cg.paints.PXLinearGradient;
+import com.pixate.freestyle.cg.paints.PXLinearGradient.PXAngleType;
+import com.pixate.freestyle.cg.paints.PXLinearGradient.PXLinearGradientDirection;
+import com.pixate.freestyle.cg.paints.PXPaint;
+import com.pixate.freestyle.cg.paints.PXRadialGradient;
+import com.pixate.freestyle.cg.paints.PXSolidPaint;
+import com.pixate.freestyle.cg.shapes.PXArc;
+import com.pixate.freestyle.cg.shapes.PXCircle;
+import com.pixate.freestyle.cg.shapes.PXEllipse;
+import com.pixate.freestyle.cg.shapes.PXLine;
+import com.pixate.freestyle.cg.shapes.PXPath;
+import com.pixate.freestyle.cg.shapes.PXPie;
+import com.pixate.freestyle.cg.shapes.PXPolygon;
+import com.pixate.freestyle.cg.shapes.PXRectangle;
+import com.pixate.freestyle.cg.shapes.PXShape;
+import com.pixate.freestyle.cg.shapes.PXShapeDocument;
+import com.pixate.freestyle.cg.shapes.PXShapeGroup;
+import com.pixate.freestyle.cg.shapes.PXShapeGroup.AlignViewPortType;
+import com.pixate.freestyle.cg.shapes.PXShapeGroup.CropType;
+import com.pixate.freestyle.cg.shapes.PXText;
+import com.pixate.freestyle.cg.strokes.PXStroke;
+import com.pixate.freestyle.cg.strokes.PXStroke.PXStrokeType;
+import com.pixate.freestyle.util.Size;
+
+/**
+ * Loads a {@link PXShapeDocument} from a compiled SVG (see
+ * {@link PXSVGCompiler}). A compiled SVG holds the shape tree as it was built
+ * by the {@link PXSVGLoader}, with flattened path segments, resolved gradients
+ * and transforms, so loading it involves no XML or path-data parsing.
+ * 
+ * <pre>
+ * file    := MAGIC VERSION(short) shape
+ * shape   := tag(byte) id(string?) opacity visible transform fill stroke data
+ * group   := ... viewport(4 floats?) width height alignment crop count(int) shape*
+ * path    := ... verbs(byte[]) coords(float[])
+ * paint   := NONE | SOLID color | LINEAR gradient ... | RADIAL gradient ...
+ * </pre>
+ * 
+ * All values are written with a {@link java.io.DataOutputStream}.
+ */
+public class PXCompiledSVGLoader {
+
+    /** The compiled SVG header ("PXSC") */
+    static final int MAGIC = 0x50585343;
+    static final short VERSION = 1;
+
+    // shape tags
+    static final byte SHAPE_NONE = 0;
+    static final byte SHAPE_GROUP = 1;
+    static final byte SHAPE_PATH = 2;
+    static final byte SHAPE_RECTANGLE = 3;
+    static final byte SHAPE_LINE = 4;
+    static final byte SHAPE_CIRCLE = 5;
+    static final byte SHAPE_ELLIPSE = 6;
+    static final byte SHAPE_POLYGON = 7;
+    static final byte SHAPE_TEXT = 8;
+    static final byte SHAPE_ARC = 9;
+    static final byte SHAPE_PIE = 10;
+
+    // paint tags
+    static final byte PAINT_NONE = 0;
+    static final byte PAINT_SOLID = 1;
+    static final byte PAINT_LINEAR_GRADIENT = 2;
+    static final byte PAINT_RADIAL_GRADIENT = 3;
+
+    // stroke tags
+    static final byte STROKE_NONE = 0;
+    static final byte STROKE_SIMPLE = 1;
+
+    private final DataInputStream in;
+    private final PXShapeDocument document;
+
+    private PXCompiledSVGLoader(InputStream inputStream) {
+        in = new DataInputStream(inputStream);
+        document = new PXShapeDocument();
+    }
+
+    /**
+     * Returns <code>true</code> if the given stream starts with a compiled SVG
+     * header. The stream has to support marking, and is reset to its original
+     * position by this call.
+     * 
+     * @param inputStream
+     * @return <code>true</code> for a compiled SVG stream.
+     * @throws IOException
+     */
+    public static boolean isCompiled(InputStream inputStream) throws IOException {
+        inputStream.mark(4);
+        try {
+            int header = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = inputStream.read();
+                if (b < 0) {
+                    return false;
+                }
+                header = (header << 8) | b;
+            }
+            return header == MAGIC;
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    /**
+     * Returns a {@link PXShapeDocument} after reading a compiled SVG stream.
+     * 
+     * @param inputStream An {@link InputStream}. Will be closed by this method
+     *            after the document is loaded.
+     * @return {@link PXShapeDocument}
+     * @throws IOException In case the stream is not a compiled SVG, or was
+     *             compiled with a different version.
+     */
+    public static PXShapeDocument loadFromStream(InputStream inputStream) throws IOException {
+        try {
+            return new PXCompiledSVGLoader(inputStream).readDocument();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private PXShapeDocument readDocument() throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a compiled SVG stream");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported compiled SVG version " + version);
+        }
+        PXShape shape = readShape();
+        if (shape != null) {
+            document.setShape(shape);
+        }
+        return document;
+    }
+
+    private PXShape readShape() throws IOException {
+        byte tag = in.readByte();
+        if (tag == SHAPE_NONE) {
+            return null;
+        }
+        String id = readString();
+        float opacity = in.readFloat();
+        boolean visible = in.readBoolean();
+        Matrix transform = readMatrix();
+        PXPaint fill = readPaint();
+        PXStroke stroke = readStroke();
+
+        PXShape shape;
+        switch (tag) {
+            case SHAPE_GROUP:
+                shape = readGroup();
+                break;
+            case SHAPE_PATH:
+                shape = PXPath.createPathFromSegments(readBytes(), readFloats());
+                break;
+            case SHAPE_RECTANGLE:
+                PXRectangle rectangle = new PXRectangle(readRect());
+                rectangle.setRadiusTopLeft(readSize());
+                rectangle.setRadiusTopRight(readSize());
+                rectangle.setRadiusBottomRight(readSize());
+                rectangle.setRadiusBottomLeft(readSize());
+                shape = rectangle;
+                break;
+            case SHAPE_LINE:
+                shape = new PXLine(readPoint(), readPoint());
+                break;
+            case SHAPE_CIRCLE:
+                shape = new PXCircle(readPoint(), in.readFloat());
+                break;
+            case SHAPE_ELLIPSE:
+                shape = new PXEllipse(readPoint(), in.readFloat(), in.readFloat());
+                break;
+            case SHAPE_POLYGON:
+                float[] coords = readFloats();
+                PointF[] points = new PointF[coords.length / 2];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = new PointF(coords[i * 2], coords[i * 2 + 1]);
+                }
+                PXPolygon polygon = new PXPolygon(points);
+                polygon.setClosed(in.readBoolean());
+                shape = polygon;
+                break;
+            case SHAPE_TEXT:
+                PXText text = new PXText(readString());
+                text.setOrigin(readPoint());
+                text.setTextSize(in.readFloat());
+                text.setTextAlign(readEnum(Align.values()));
+                shape = text;
+                break;
+            case SHAPE_ARC:
+            case SHAPE_PIE:
+                PXArc arc = (tag == SHAPE_PIE) ? new PXPie() : new PXArc();
+                arc.setCenter(readPoint());
+                arc.setRadius(in.readFloat());
+                arc.setStartingAngle(in.readFloat());
+                arc.setEndingAngle(in.readFloat());
+                shape = arc;
+                break;
+            default:
+                throw new IOException("Unknown compiled shape type " + tag);
+        }
+
+        shape.setOpacity(opacity);
+        shape.setVisible(visible);
+        shape.setTransform(transform);
+        shape.setFillColor(fill);
+        shape.setStroke(stroke);
+        if (id != null) {
+            document.addShape(id, shape);
+        }
+        return shape;
+    }
+
+    private PXShapeGroup readGroup() throws IOException {
+        PXShapeGroup group = new PXShapeGroup();
+        if (in.readBoolean()) {
+            group.setViewport(readRect());
+        }
+        group.setWidth(in.readFloat());
+        group.setHeight(in.readFloat());
+        AlignViewPortType alignment = readEnum(AlignViewPortType.values());
+        if (alignment != null) {
+            group.setViewportAlignment(alignment);
+        }
+        CropType crop = readEnum(CropType.values());
+        if (crop != null) {
+            group.setViewportCrop(crop);
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            PXShape child = readShape();
+            if (child != null) {
+                group.addShape(child);
+            }
+        }
+        return group;
+    }
+
+    private PXPaint readPaint() throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case PAINT_NONE:
+                return null;
+            case PAINT_SOLID:
+                return new PXSolidPaint(in.readInt());
+            case PAINT_LINEAR_GRADIENT:
+                PXLinearGradient linear = new PXLinearGradient();
+                readGradient(linear);
+                PXAngleType angleType = readEnum(PXAngleType.values());
+                float angle = in.readFloat();
+                PointF p1 = readPoint();
+                PointF p2 = readPoint();
+                PXLinearGradientDirection direction = readEnum(PXLinearGradientDirection
+                        .values());
+                if (angleType == PXAngleType.POINTS) {
+                    linear.setP1(p1);
+                    linear.setP2(p2);
+                } else if (angleType == PXAngleType.DIRECTION) {
+                    linear.setGradientDirection(direction);
+                } else {
+                    linear.setAngle(angle);
+                }
+                return linear;
+            case PAINT_RADIAL_GRADIENT:
+                PXRadialGradient radial = new PXRadialGradient();
+                readGradient(radial);
+                radial.setCenter(readPoint());
+                radial.setRadius(in.readFloat());
+                return radial;
+            default:
+                throw new IOException("Unknown compiled paint type " + tag);
+        }
+    }
+
+    private void readGradient(PXGradient gradient) throws IOException {
+        PXGradientUnits units = readEnum(PXGradientUnits.values());
+        if (units != null) {
+            gradient.setGradientUnits(units);
+        }
+        gradient.setTransform(readMatrix());
+        int colorCount = in.readInt();
+        for (int i = 0; i < colorCount; i++) {
+            gradient.addColor(in.readInt());
+        }
+        int offsetCount = in.readInt();
+        for (int i = 0; i < offsetCount; i++) {
+            gradient.addOffset(in.readFloat());
+        }
+    }
+
+    private PXStroke readStroke() throws IOException {
+        byte tag = in.readByte();
+        if (tag == STROKE_NONE) {
+            return null;
+        }
+        if (tag != STROKE_SIMPLE) {
+            throw new IOException("Unknown compiled stroke type " + tag);
+        }
+        PXStroke stroke = new PXStroke();
+        PXStrokeType type = readEnum(PXStrokeType.values());
+        if (type != null) {
+            stroke.setType(type);
+        }
+        stroke.setColor(readPaint());
+        stroke.setWidth(in.readFloat());
+        if (in.readBoolean()) {
+            stroke.setDashArray(readFloats());
+        }
+        stroke.setDashOffset(in.readInt());
+        stroke.setLineCap(readEnum(Cap.values()));
+        stroke.setLineJoin(readEnum(Join.values()));
+        stroke.setMiterLimit(in.readFloat());
+        return stroke;
+    }
+
+    private Matrix readMatrix() throws IOException {
+        if (!in.readBoolean()) {
+            // identity
+            return null;
+        }
+        float[] values = new float[9];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readFloat();
+        }
+        Matrix matrix = new Matrix();
+        matrix.setValues(values);
+        return matrix;
+    }
+
+    private PointF readPoint() throws IOException {
+        return new PointF(in.readFloat(), in.readFloat());
+    }
+
+    private RectF readRect() throws IOException {
+        return new RectF(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+    }
+
+    private Size readSize() throws IOException {
+        return new Size(in.readFloat(), in.readFloat());
+    }
+
+    private String readString() throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private byte[] readBytes() throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private float[] readFloats() throws IOException {
+        float[] floats = new float[in.readInt()];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = in.readFloat();
+        }
+        return floats;
+    }
+
+    private <T extends Enum<T>> T readEnum(T[] values) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= values.length) {
+            return null;
+        }
+        return values[ordinal];
+    }
+}
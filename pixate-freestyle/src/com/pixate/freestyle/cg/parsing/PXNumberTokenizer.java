@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.cg.parsing;
+
+/**
+ * A hand-written tokenizer for SVG numbers and number lists (points,
+ * dash-arrays, etc.). The tokenizer reads the characters of a
+ * {@link CharSequence} in place, and does not allocate while scanning. Numbers
+ * are built the same way {@link PathParserHelper} builds them. A tokenizer
+ * instance can be reset and reused for multiple sources.
+ */
+public final class PXNumberTokenizer {
+
+    private CharSequence source;
+    private int pos;
+    private int end;
+
+    /**
+     * Constructs a new tokenizer. Call {@link #reset(CharSequence)} before
+     * reading numbers.
+     */
+    public PXNumberTokenizer() {
+    }
+
+    /**
+     * Constructs a new tokenizer for the given source.
+     * 
+     * @param source
+     */
+    public PXNumberTokenizer(CharSequence source) {
+        reset(source);
+    }
+
+    /**
+     * Resets this tokenizer to read from the beginning of the given source.
+     * 
+     * @param source
+     * @return This tokenizer
+     */
+    public PXNumberTokenizer reset(CharSequence source) {
+        this.source = source;
+        this.pos = 0;
+        this.end = source != null ? source.length() : 0;
+        return this;
+    }
+
+    /**
+     * Returns the current position in the source.
+     */
+    public int position() {
+        return pos;
+    }
+
+    /**
+     * Returns <code>true</code> if the entire source was read.
+     */
+    public boolean isAtEnd() {
+        return pos >= end;
+    }
+
+    /**
+     * Skips any whitespace and comma separators, and returns
+     * <code>true</code> if a number starts at the new position.
+     */
+    public boolean hasNextNumber() {
+        skipSeparators();
+        if (pos >= end) {
+            return false;
+        }
+        char c = source.charAt(pos);
+        if (c == '+' || c == '-' || c == '.') {
+            return pos + 1 < end && (isDigit(source.charAt(pos + 1)) || c != '.'
+                    && source.charAt(pos + 1) == '.' && pos + 2 < end
+                    && isDigit(source.charAt(pos + 2)));
+        }
+        return isDigit(c);
+    }
+
+    /**
+     * Skips any whitespace and comma separators, and reads the next number.
+     * 
+     * @return The number, or {@link Float#NaN} in case the source does not
+     *         hold a number at this position (in which case, the position is
+     *         not changed).
+     */
+    public float nextNumber() {
+        skipSeparators();
+        int start = pos;
+        int mant = 0;
+        int mantDig = 0;
+        int expAdj = 0;
+        boolean digits = false;
+        boolean negative = false;
+
+        char c = peek();
+        if (c == '+' || c == '-') {
+            negative = c == '-';
+            pos++;
+        }
+        // integer part
+        while (isDigit(c = peek())) {
+            digits = true;
+            if (mantDig < 9) {
+                if (mantDig > 0 || c != '0') {
+                    mantDig++;
+                    mant = mant * 10 + (c - '0');
+                }
+            } else {
+                expAdj++;
+            }
+            pos++;
+        }
+        // fraction part
+        if (c == '.') {
+            pos++;
+            while (isDigit(c = peek())) {
+                digits = true;
+                if (mantDig < 9) {
+                    if (mantDig > 0 || c != '0') {
+                        mantDig++;
+                        mant = mant * 10 + (c - '0');
+                    }
+                    expAdj--;
+                }
+                pos++;
+            }
+        }
+        if (!digits) {
+            pos = start;
+            return Float.NaN;
+        }
+        // exponent (only when followed by digits, so "1em" is left alone)
+        if (c == 'e' || c == 'E') {
+            int expStart = pos;
+            pos++;
+            boolean expNegative = false;
+            c = peek();
+            if (c == '+' || c == '-') {
+                expNegative = c == '-';
+                pos++;
+            }
+            if (isDigit(peek())) {
+                int exp = 0;
+                while (isDigit(c = peek())) {
+                    if (exp < 1000) {
+                        exp = exp * 10 + (c - '0');
+                    }
+                    pos++;
+                }
+                expAdj += expNegative ? -exp : exp;
+            } else {
+                pos = expStart;
+            }
+        }
+        return PathParserHelper.buildFloat(negative ? -mant : mant, expAdj);
+    }
+
+    /**
+     * Reads all the numbers in the source, until the end or until a non-number
+     * is reached.
+     * 
+     * @return A float array (never <code>null</code>)
+     */
+    public float[] toArray() {
+        int start = pos;
+        int count = 0;
+        while (hasNextNumber()) {
+            nextNumber();
+            count++;
+        }
+        float[] result = new float[count];
+        pos = start;
+        for (int i = 0; i < count; i++) {
+            result[i] = nextNumber();
+        }
+        return result;
+    }
+
+    /**
+     * Resets this tokenizer to the given value, and reads it as a single
+     * number attribute value, which may have a 'px' or a '%' suffix. A
+     * percentage is returned as a fraction (i.e. 50% is 0.5). Values that the
+     * tokenizer does not fully consume are handed to
+     * {@link Float#parseFloat(String)}, so this method accepts (and rejects)
+     * the same values.
+     * 
+     * @param value
+     * @return The number value
+     * @throws NumberFormatException
+     */
+    public float readNumber(String value) {
+        reset(value);
+        float divider = 1F;
+        if (value.endsWith("px")) {
+            end -= 2;
+        } else if (value.endsWith("%")) {
+            end -= 1;
+            divider = 100F;
+        }
+        float result = nextNumber();
+        if (Float.isNaN(result) || !isAtEnd()) {
+            result = Float.parseFloat(value.substring(0, end));
+        }
+        return result / divider;
+    }
+
+    /**
+     * Resets this tokenizer to the given value, and reads a list of numbers
+     * that are separated by whitespace and/or commas.
+     * 
+     * @param value
+     * @return A float array (never <code>null</code>)
+     */
+    public float[] readNumberArray(CharSequence value) {
+        return reset(value).toArray();
+    }
+
+    /**
+     * Parses a single number attribute value.
+     * 
+     * @param value
+     * @return The number value
+     * @throws NumberFormatException
+     * @see #readNumber(String)
+     */
+    public static float parseNumber(String value) {
+        return new PXNumberTokenizer().readNumber(value);
+    }
+
+    /**
+     * Parses a plain decimal number (an optional sign, digits, and an optional
+     * fraction) from a range of a char array, in place.
+     * 
+     * @param chars
+     * @param start The start index (inclusive)
+     * @param end The end index (exclusive)
+     * @return The number, or {@link Float#NaN} in case the range does not
+     *         hold exactly one plain decimal number.
+     */
+    public static float parseFloat(char[] chars, int start, int end) {
+        int pos = start;
+        int mant = 0;
+        int mantDig = 0;
+        int expAdj = 0;
+        boolean digits = false;
+        boolean negative = false;
+
+        if (pos < end && (chars[pos] == '+' || chars[pos] == '-')) {
+            negative = chars[pos] == '-';
+            pos++;
+        }
+        boolean fraction = false;
+        for (; pos < end; pos++) {
+            char c = chars[pos];
+            if (c == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            if (!isDigit(c)) {
+                return Float.NaN;
+            }
+            digits = true;
+            if (mantDig < 9) {
+                if (mantDig > 0 || c != '0') {
+                    mantDig++;
+                    mant = mant * 10 + (c - '0');
+                }
+                if (fraction) {
+                    expAdj--;
+                }
+            } else if (!fraction) {
+                expAdj++;
+            }
+        }
+        if (!digits) {
+            return Float.NaN;
+        }
+        return PathParserHelper.buildFloat(negative ? -mant : mant, expAdj);
+    }
+
+    /**
+     * Parses a list of numbers that are separated by whitespace and/or commas.
+     * 
+     * @param value
+     * @return A float array (never <code>null</code>)
+     */
+    public static float[] parseNumberArray(CharSequence value) {
+        return new PXNumberTokenizer().readNumberArray(value);
+    }
+
+    private char peek() {
+        return pos < end ? source.charAt(pos) : '\0';
+    }
+
+    private void skipSeparators() {
+        while (pos < end) {
+            char c = source.charAt(pos);
+            if (c == ',' || Character.isWhitespace(c)) {
+                pos++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.cg.parsing;
+
+import android.util.LruCache;
+
+import com.pixate.freestyle.cg.shapes.PXPath;
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXCacheUnit;
+
+/**
+ * A cache of parsed SVG path data. The cache holds the flattened segments of
+ * a path data string, so a path that is used by many shapes is tokenized only
+ * once, and then replayed with
+ * {@link PXPath#createPathFromSegments(byte[], float[])}.<br>
+ * The segments are evicted when the system reports a memory pressure (see
+ * {@link PXCacheManager}).
+ */
+public class PXPathDataCache {
+
+    private static final int DEFAULT_MAX_BYTES = 256 * 1024;
+
+    /**
+     * The flattened segments of a path. Never modified once cached.
+     */
+    private static class PXPathSegments {
+        private final byte[] verbs;
+        private final float[] coords;
+
+        private PXPathSegments(byte[] verbs, float[] coords) {
+            this.verbs = verbs;
+            this.coords = coords;
+        }
+    }
+
+    private static final LruCache<String, PXPathSegments> SEGMENTS =
+            new LruCache<String, PXPathSegments>(DEFAULT_MAX_BYTES) {
+                @Override
+                protected int sizeOf(String data, PXPathSegments segments) {
+                    return segments.verbs.length + segments.coords.length * 4;
+                }
+            };
+
+    static {
+        PXCacheManager.registerLruCache("path-data", PXCacheUnit.BYTES, SEGMENTS);
+    }
+
+    /**
+     * Returns a new {@link PXPath} for the given path data. The data is parsed
+     * only when it's not in the cache.
+     * 
+     * @param data A string of path data, as defined for the SVG path element's
+     *            d attribute
+     * @return A newly allocated PXPath instance
+     * @see PXPath#createPathFromPathData(String)
+     */
+    public static PXPath createPath(String data) {
+        PXPathSegments segments = SEGMENTS.get(data);
+        if (segments == null) {
+            PXPathSegmentRecorder recorder = new PXPathSegmentRecorder();
+            PXPath path = PXPath.createPathFromPathData(data, recorder);
+            SEGMENTS.put(data, new PXPathSegments(recorder.getVerbs(), recorder.getCoords()));
+            return path;
+        }
+        return PXPath.createPathFromSegments(segments.verbs, segments.coords);
+    }
+
+    /**
+     * Evicts all the cached path segments.
+     */
+    public static void evictAll() {
+        SEGMENTS.evictAll();
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.cg.parsing;
+
+import java.util.Arrays;
+
+import android.graphics.Path;
+
+import com.pixate.freestyle.cg.shapes.PXPath;
+
+/**
+ * A {@link Path} that records the segments added to it. Elliptical arcs are
+ * added to paths as cubic curves, so the recorded segments never hold arcs.
+ * The segments can be replayed with
+ * {@link PXPath#createPathFromSegments(byte[], float[])}.
+ */
+class PXPathSegmentRecorder extends Path {
+
+    byte[] verbs = new byte[16];
+    float[] coords = new float[64];
+    int verbCount;
+    int coordCount;
+
+    @Override
+    public void moveTo(float x, float y) {
+        super.moveTo(x, y);
+        add(PXPath.VERB_MOVE, x, y);
+    }
+
+    @Override
+    public void lineTo(float x, float y) {
+        super.lineTo(x, y);
+        add(PXPath.VERB_LINE, x, y);
+    }
+
+    @Override
+    public void quadTo(float x1, float y1, float x2, float y2) {
+        super.quadTo(x1, y1, x2, y2);
+        add(PXPath.VERB_QUAD, x1, y1, x2, y2);
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x3, float y3) {
+        super.cubicTo(x1, y1, x2, y2, x3, y3);
+        add(PXPath.VERB_CUBIC, x1, y1, x2, y2, x3, y3);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        add(PXPath.VERB_CLOSE);
+    }
+
+    /**
+     * Returns a trimmed copy of the recorded verbs.
+     */
+    byte[] getVerbs() {
+        return Arrays.copyOf(verbs, verbCount);
+    }
+
+    /**
+     * Returns a trimmed copy of the recorded coordinates.
+     */
+    float[] getCoords() {
+        return Arrays.copyOf(coords, coordCount);
+    }
+
+    private void add(byte verb, float... values) {
+        if (verbCount == verbs.length) {
+            verbs = Arrays.copyOf(verbs, verbCount * 2);
+        }
+        verbs[verbCount++] = verb;
+        if (coordCount + values.length > coords.length) {
+            coords = Arrays.copyOf(coords, Math.max(coords.length * 2, coordCount
+                    + values.length));
+        }
+        System.arraycopy(values, 0, coords, coordCount, values.length);
+        coordCount += values.length;
+    }
+}
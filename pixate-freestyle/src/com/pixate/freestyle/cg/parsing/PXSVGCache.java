@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.cg.parsing;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import android.content.res.AssetManager;
+import android.net.Uri;
+import android.util.LruCache;
+
+import com.pixate.freestyle.cg.shapes.PXShapeDocument;
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXCacheUnit;
+import com.pixate.freestyle.util.UrlStreamOpener;
+
+/**
+ * A cache of parsed SVG documents. The cache holds a parsed
+ * {@link PXShapeDocument} template per source, and hands out cheap instances
+ * of it (see {@link PXShapeDocument#newInstance()}) that can be sized and
+ * rendered independently. This way, an SVG that is used by many views and
+ * states is parsed only once.<br>
+ * The templates are evicted when the system reports a memory pressure (see
+ * {@link PXCacheManager}).
+ */
+public class PXSVGCache {
+
+    private static final int DEFAULT_MAX_DOCUMENTS = 64;
+    private static final String ASSET_KEY_PREFIX = "asset:///";
+    private static final String SVG_EXTENSION = ".svg";
+
+    private static final LruCache<String, PXShapeDocument> TEMPLATES =
+            new LruCache<String, PXShapeDocument>(DEFAULT_MAX_DOCUMENTS);
+
+    static {
+        PXCacheManager.registerLruCache("svg-documents", PXCacheUnit.ENTRIES, TEMPLATES);
+    }
+
+    /**
+     * Opens the stream of a document that is not cached yet.
+     */
+    private interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Returns a {@link PXShapeDocument} instance for the SVG at the given
+     * {@link Uri}. The SVG is parsed only when it's not in the cache.
+     * 
+     * @param uri
+     * @return A new {@link PXShapeDocument} instance, or <code>null</code> in
+     *         case the SVG could not be parsed.
+     * @throws IOException
+     */
+    public static PXShapeDocument loadFromURL(final Uri uri) throws IOException {
+        return load(uri.toString(), new StreamOpener() {
+            public InputStream open() throws IOException {
+                return UrlStreamOpener.open(uri);
+            }
+        });
+    }
+
+    /**
+     * Returns a {@link PXShapeDocument} instance for the SVG at the given asset
+     * path. The SVG is parsed only when it's not in the cache.
+     * 
+     * @param assets The {@link AssetManager}
+     * @param path The asset path
+     * @return A new {@link PXShapeDocument} instance, or <code>null</code> in
+     *         case the SVG could not be parsed.
+     * @throws IOException
+     */
+    public static PXShapeDocument loadFromAsset(final AssetManager assets, final String path)
+            throws IOException {
+        return load(ASSET_KEY_PREFIX + path, new StreamOpener() {
+            public InputStream open() throws IOException {
+                // prefer a compiled variant of the SVG, when one was bundled
+                if (path.toLowerCase(Locale.US).endsWith(SVG_EXTENSION)) {
+                    try {
+                        return assets.open(path.substring(0, path.length()
+                                - SVG_EXTENSION.length())
+                                + UrlStreamOpener.COMPILED_SVG_EXTENSION);
+                    } catch (FileNotFoundException e) {
+                        // no compiled variant
+                    }
+                }
+                return assets.open(path);
+            }
+        });
+    }
+
+    /**
+     * Evicts all the cached documents.
+     */
+    public static void evictAll() {
+        TEMPLATES.evictAll();
+    }
+
+    /**
+     * Returns the number of cached documents.
+     */
+    public static int size() {
+        return TEMPLATES.size();
+    }
+
+    /**
+     * Returns the maximum number of cached documents.
+     */
+    public static int maxSize() {
+        return TEMPLATES.maxSize();
+    }
+
+    private static PXShapeDocument load(String key, StreamOpener opener) throws IOException {
+        PXShapeDocument template = TEMPLATES.get(key);
+        if (template == null) {
+            InputStream stream = opener.open();
+            if (stream == null) {
+                return null;
+            }
+            // Note that two threads may parse the same document at the same
+            // time. In that case, the last one wins the cache entry.
+            template = PXSVGLoader.loadFromStream(stream);
+            if (template == null || template.getShape() == null) {
+                return template;
+            }
+            template.prepareGeometry();
+            TEMPLATES.put(key, template);
+        }
+        return template.newInstance();
+    }
+}
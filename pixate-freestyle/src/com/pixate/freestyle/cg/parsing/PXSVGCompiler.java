@@ -0,0 +1,430 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.cg.parsing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.graphics.Matrix;
+import android.graphics.PointF;
+import android.graphics.RectF;
+
+import com.pixate.freestyle.cg.paints.PXGradient;
+import com.pixate.freestyle.cg.paints.PXLinearGradient;
+import com.pixate.freestyle.cg.paints.PXPaint;
+import com.pixate.freestyle.cg.paints.PXRadialGradient;
+import com.pixate.freestyle.cg.paints.PXSolidPaint;
+import com.pixate.freestyle.cg.shapes.PXArc;
+import com.pixate.freestyle.cg.shapes.PXCircle;
+import com.pixate.freestyle.cg.shapes.PXEllipse;
+import com.pixate.freestyle.cg.shapes.PXLine;
+import com.pixate.freestyle.cg.shapes.PXPath;
+import com.pixate.freestyle.cg.shapes.PXPie;
+import com.pixate.freestyle.cg.shapes.PXPolygon;
+import com.pixate.freestyle.cg.shapes.PXRectangle;
+import com.pixate.freestyle.cg.shapes.PXRenderable;
+import com.pixate.freestyle.cg.shapes.PXShape;
+import com.pixate.freestyle.cg.shapes.PXShapeDocument;
+import com.pixate.freestyle.cg.shapes.PXShapeGroup;
+import com.pixate.freestyle.cg.shapes.PXText;
+import com.pixate.freestyle.cg.strokes.PXStroke;
+import com.pixate.freestyle.cg.strokes.PXStrokeRenderer;
+import com.pixate.freestyle.util.PXLog;
+import com.pixate.freestyle.util.Size;
+import com.pixate.freestyle.util.UrlStreamOpener;
+
+/**
+ * Compiles SVG files into the binary format read by
+ * {@link PXCompiledSVGLoader}. The SVG is parsed once by the
+ * {@link PXSVGLoader}, and the resulting shape tree is written with its path
+ * segments flattened, and its gradients and transforms resolved.<br>
+ * A compiled file that is placed next to its SVG source with a
+ * {@link UrlStreamOpener#COMPILED_SVG_EXTENSION} extension (e.g.
+ * <code>icon.svgc</code> next to <code>icon.svg</code>) is picked up
+ * transparently whenever the SVG is loaded. Use
+ * {@link #compileDirectory(File, File)} as a build step to generate the
+ * compiled variants of an assets directory.
+ */
+public class PXSVGCompiler {
+
+    private static final String TAG = PXSVGCompiler.class.getSimpleName();
+    private static final String SVG_EXTENSION = ".svg";
+
+    private final DataOutputStream out;
+    private final Map<PXPath, PXPathSegmentRecorder> segments;
+    private final Map<PXRenderable, String> names;
+
+    private PXSVGCompiler(OutputStream outputStream, Map<PXPath, PXPathSegmentRecorder> segments) {
+        this.out = new DataOutputStream(outputStream);
+        this.segments = segments;
+        this.names = new IdentityHashMap<PXRenderable, String>();
+    }
+
+    /**
+     * Compiles an SVG stream.
+     * 
+     * @param svg The SVG {@link InputStream}. Will be closed by this method.
+     * @param outputStream The {@link OutputStream} that will receive the
+     *            compiled SVG. The stream is flushed, but not closed.
+     * @throws IOException In case the SVG could not be parsed, or when it holds
+     *             shapes that cannot be compiled.
+     */
+    public static void compile(InputStream svg, OutputStream outputStream) throws IOException {
+        RecordingParser parser = new RecordingParser();
+        PXShapeGroup result = parser.parse(svg);
+        PXShapeDocument document = parser.getDocument();
+        if (result != null) {
+            document.setShape(result);
+        }
+        PXSVGCompiler compiler = new PXSVGCompiler(outputStream, parser.segments);
+        compiler.writeDocument(document);
+        compiler.out.flush();
+    }
+
+    /**
+     * Compiles every SVG file in the source directory (recursively) into the
+     * target directory, keeping the relative paths, and replacing the
+     * <code>.svg</code> extension with
+     * {@link UrlStreamOpener#COMPILED_SVG_EXTENSION}. SVG files that cannot
+     * be compiled are logged and skipped, so their XML source will be used at
+     * runtime.
+     * 
+     * @param sourceDir
+     * @param targetDir
+     * @return The number of compiled files.
+     * @throws IOException
+     */
+    public static int compileDirectory(File sourceDir, File targetDir) throws IOException {
+        File[] files = sourceDir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                count += compileDirectory(file, new File(targetDir, name));
+            } else if (name.toLowerCase(Locale.US).endsWith(SVG_EXTENSION)) {
+                if (!targetDir.isDirectory() && !targetDir.mkdirs()) {
+                    throw new IOException("Unable to create " + targetDir);
+                }
+                String baseName = name.substring(0, name.length() - SVG_EXTENSION.length());
+                File target = new File(targetDir, baseName
+                        + UrlStreamOpener.COMPILED_SVG_EXTENSION);
+                OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(target));
+                boolean compiled = false;
+                try {
+                    compile(new FileInputStream(file), outputStream);
+                    compiled = true;
+                    count++;
+                } catch (IOException e) {
+                    PXLog.e(TAG, e, "Unable to compile " + file);
+                } finally {
+                    outputStream.close();
+                    if (!compiled) {
+                        target.delete();
+                    }
+                }
+            }
+        }
+        if (count > 0) {
+            // let the opener pick up the new files
+            UrlStreamOpener.clearMissingCompiledSVGs();
+        }
+        return count;
+    }
+
+    private void writeDocument(PXShapeDocument document) throws IOException {
+        for (String name : document.getShapeNames()) {
+            names.put(document.getShape(name), name);
+        }
+        out.writeInt(PXCompiledSVGLoader.MAGIC);
+        out.writeShort(PXCompiledSVGLoader.VERSION);
+        PXRenderable shape = document.getShape();
+        if (shape == null) {
+            out.writeByte(PXCompiledSVGLoader.SHAPE_NONE);
+        } else {
+            writeShape(shape);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void writeShape(PXRenderable renderable) throws IOException {
+        if (!(renderable instanceof PXShape)) {
+            throw new IOException("Unsupported renderable " + renderable.getClass().getName());
+        }
+        PXShape shape = (PXShape) renderable;
+        if (shape.getClippingPath() != null || shape.getShadow() != null) {
+            throw new IOException("Clipping paths and shadows are not supported");
+        }
+        Class<?> type = shape.getClass();
+        byte tag;
+        if (type == PXShapeGroup.class) {
+            tag = PXCompiledSVGLoader.SHAPE_GROUP;
+        } else if (type == PXPath.class) {
+            tag = PXCompiledSVGLoader.SHAPE_PATH;
+        } else if (type == PXRectangle.class) {
+            tag = PXCompiledSVGLoader.SHAPE_RECTANGLE;
+        } else if (type == PXLine.class) {
+            tag = PXCompiledSVGLoader.SHAPE_LINE;
+        } else if (type == PXCircle.class) {
+            tag = PXCompiledSVGLoader.SHAPE_CIRCLE;
+        } else if (type == PXEllipse.class) {
+            tag = PXCompiledSVGLoader.SHAPE_ELLIPSE;
+        } else if (type == PXPolygon.class) {
+            tag = PXCompiledSVGLoader.SHAPE_POLYGON;
+        } else if (type == PXText.class) {
+            tag = PXCompiledSVGLoader.SHAPE_TEXT;
+        } else if (type == PXArc.class) {
+            tag = PXCompiledSVGLoader.SHAPE_ARC;
+        } else if (type == PXPie.class) {
+            tag = PXCompiledSVGLoader.SHAPE_PIE;
+        } else {
+            throw new IOException("Unsupported shape " + type.getName());
+        }
+
+        out.writeByte(tag);
+        writeString(names.get(shape));
+        out.writeFloat(shape.getOpacity());
+        out.writeBoolean(shape.getVisible());
+        writeMatrix(shape.getTransform());
+        writePaint(shape.getFillColor());
+        writeStroke(shape.getStroke());
+
+        switch (tag) {
+            case PXCompiledSVGLoader.SHAPE_GROUP:
+                PXShapeGroup group = (PXShapeGroup) shape;
+                RectF viewport = group.getViewport();
+                out.writeBoolean(viewport != null);
+                if (viewport != null) {
+                    writeRect(viewport);
+                }
+                out.writeFloat(group.getWidth());
+                out.writeFloat(group.getHeight());
+                writeEnum(group.getViewportAlignment());
+                writeEnum(group.getViewportCrop());
+                int count = group.getShapeCount();
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    writeShape(group.getShapeAtIndex(i));
+                }
+                break;
+            case PXCompiledSVGLoader.SHAPE_PATH:
+                PXPathSegmentRecorder recorder = segments.get(shape);
+                if (recorder == null) {
+                    throw new IOException("Path segments were not recorded");
+                }
+                out.writeInt(recorder.verbCount);
+                out.write(recorder.verbs, 0, recorder.verbCount);
+                writeFloats(recorder.coords, recorder.coordCount);
+                break;
+            case PXCompiledSVGLoader.SHAPE_RECTANGLE:
+                PXRectangle rectangle = (PXRectangle) shape;
+                writeRect(rectangle.getBounds());
+                writeSize(rectangle.getRadiusTopLeft());
+                writeSize(rectangle.getRadiusTopRight());
+                writeSize(rectangle.getRadiusBottomRight());
+                writeSize(rectangle.getRadiusBottomLeft());
+                break;
+            case PXCompiledSVGLoader.SHAPE_LINE:
+                PXLine line = (PXLine) shape;
+                writePoint(line.getP1());
+                writePoint(line.getP2());
+                break;
+            case PXCompiledSVGLoader.SHAPE_CIRCLE:
+                PXCircle circle = (PXCircle) shape;
+                writePoint(circle.getCenter());
+                out.writeFloat(circle.getRadius());
+                break;
+            case PXCompiledSVGLoader.SHAPE_ELLIPSE:
+                PXEllipse ellipse = (PXEllipse) shape;
+                writePoint(ellipse.getCenter());
+                out.writeFloat(ellipse.getRadiusX());
+                out.writeFloat(ellipse.getRadiusY());
+                break;
+            case PXCompiledSVGLoader.SHAPE_POLYGON:
+                PXPolygon polygon = (PXPolygon) shape;
+                PointF[] points = polygon.getPoints();
+                int pointCount = (points != null) ? points.length : 0;
+                out.writeInt(pointCount * 2);
+                for (int i = 0; i < pointCount; i++) {
+                    writePoint(points[i]);
+                }
+                out.writeBoolean(polygon.isClosed());
+                break;
+            case PXCompiledSVGLoader.SHAPE_TEXT:
+                PXText text = (PXText) shape;
+                if (text.getTypeface() != null) {
+                    throw new IOException("Text typefaces are not supported");
+                }
+                writeString(text.getText());
+                writePoint(text.getOrigin());
+                out.writeFloat(text.getTextSize());
+                writeEnum(text.getTextAlign());
+                break;
+            case PXCompiledSVGLoader.SHAPE_ARC:
+            case PXCompiledSVGLoader.SHAPE_PIE:
+                PXArc arc = (PXArc) shape;
+                writePoint(arc.getCenter());
+                out.writeFloat(arc.getRadius());
+                out.writeFloat(arc.getStartingAngle());
+                out.writeFloat(arc.getEndingAngle());
+                break;
+        }
+    }
+
+    private void writePaint(PXPaint paint) throws IOException {
+        if (paint == null) {
+            out.writeByte(PXCompiledSVGLoader.PAINT_NONE);
+        } else if (paint.getClass() == PXSolidPaint.class) {
+            out.writeByte(PXCompiledSVGLoader.PAINT_SOLID);
+            out.writeInt(((PXSolidPaint) paint).getColor());
+        } else if (paint.getClass() == PXLinearGradient.class) {
+            PXLinearGradient linear = (PXLinearGradient) paint;
+            out.writeByte(PXCompiledSVGLoader.PAINT_LINEAR_GRADIENT);
+            writeGradient(linear);
+            writeEnum(linear.getAngleType());
+            out.writeFloat(linear.getAngle());
+            writePoint(linear.getP1());
+            writePoint(linear.getP2());
+            writeEnum(linear.getGradientDirection());
+        } else if (paint.getClass() == PXRadialGradient.class) {
+            PXRadialGradient radial = (PXRadialGradient) paint;
+            out.writeByte(PXCompiledSVGLoader.PAINT_RADIAL_GRADIENT);
+            writeGradient(radial);
+            writePoint(radial.getCenter());
+            out.writeFloat(radial.getRadius());
+        } else {
+            throw new IOException("Unsupported paint " + paint.getClass().getName());
+        }
+    }
+
+    private void writeGradient(PXGradient gradient) throws IOException {
+        writeEnum(gradient.getGradientUnits());
+        writeMatrix(gradient.getTransform());
+        List<Integer> colors = gradient.getColors();
+        out.writeInt(colors.size());
+        for (Integer color : colors) {
+            out.writeInt(color);
+        }
+        List<Float> offsets = gradient.getOffsets();
+        out.writeInt(offsets.size());
+        for (Float offset : offsets) {
+            out.writeFloat(offset);
+        }
+    }
+
+    private void writeStroke(PXStrokeRenderer renderer) throws IOException {
+        if (renderer == null) {
+            out.writeByte(PXCompiledSVGLoader.STROKE_NONE);
+            return;
+        }
+        if (renderer.getClass() != PXStroke.class) {
+            throw new IOException("Unsupported stroke " + renderer.getClass().getName());
+        }
+        PXStroke stroke = (PXStroke) renderer;
+        out.writeByte(PXCompiledSVGLoader.STROKE_SIMPLE);
+        writeEnum(stroke.getType());
+        writePaint(stroke.getColor());
+        out.writeFloat(stroke.getWidth());
+        float[] dashArray = stroke.getDashArray();
+        out.writeBoolean(dashArray != null);
+        if (dashArray != null) {
+            writeFloats(dashArray, dashArray.length);
+        }
+        out.writeInt(stroke.getDashOffset());
+        writeEnum(stroke.getLineCap());
+        writeEnum(stroke.getLineJoin());
+        out.writeFloat(stroke.getMiterLimit());
+    }
+
+    private void writeMatrix(Matrix matrix) throws IOException {
+        boolean hasValues = matrix != null && !matrix.isIdentity();
+        out.writeBoolean(hasValues);
+        if (hasValues) {
+            float[] values = new float[9];
+            matrix.getValues(values);
+            writeFloatValues(values, values.length);
+        }
+    }
+
+    private void writePoint(PointF point) throws IOException {
+        out.writeFloat(point.x);
+        out.writeFloat(point.y);
+    }
+
+    private void writeRect(RectF rect) throws IOException {
+        out.writeFloat(rect.left);
+        out.writeFloat(rect.top);
+        out.writeFloat(rect.right);
+        out.writeFloat(rect.bottom);
+    }
+
+    private void writeSize(Size size) throws IOException {
+        out.writeFloat(size.width);
+        out.writeFloat(size.height);
+    }
+
+    private void writeString(String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private void writeFloats(float[] values, int count) throws IOException {
+        out.writeInt(count);
+        writeFloatValues(values, count);
+    }
+
+    private void writeFloatValues(float[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.writeFloat(values[i]);
+        }
+    }
+
+    private void writeEnum(Enum<?> value) throws IOException {
+        out.writeByte(value != null ? value.ordinal() : -1);
+    }
+
+    /**
+     * A SVG parser that records the flattened segments of every path it
+     * creates.
+     */
+    private static class RecordingParser extends PXSVGLoader.PXSVGParser {
+
+        private final Map<PXPath, PXPathSegmentRecorder> segments =
+                new IdentityHashMap<PXPath, PXPathSegmentRecorder>();
+
+        @Override
+        protected PXPath createPath(String data) {
+            PXPathSegmentRecorder recorder = new PXPathSegmentRecorder();
+            PXPath path = PXPath.createPathFromPathData(data, recorder);
+            segments.put(path, recorder);
+            return path;
+        }
+    }
+}
@@ -18,27 +18,20 @@
  */
 package com.pixate.freestyle.cg.parsing;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Pattern;
-
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParser;
 
 import android.content.res.Resources;
 import android.content.res.Resources.NotFoundException;
@@ -50,6 +43,7 @@ import android.graphics.PointF;
 import android.graphics.RectF;
 import android.graphics.drawable.shapes.Shape;
 import android.net.Uri;
+import android.util.Xml;
 
 import com.pixate.freestyle.cg.paints.PXGradient;
 import com.pixate.freestyle.cg.paints.PXGradient.PXGradientUnits;
@@ -76,7 +70,6 @@ import com.pixate.freestyle.cg.strokes.PXStroke.PXStrokeType;
 import com.pixate.freestyle.styling.parsing.PXValueParser;
 import com.pixate.freestyle.util.PXColorUtil;
 import com.pixate.freestyle.util.PXLog;
-import com.pixate.freestyle.util.Scanner;
 import com.pixate.freestyle.util.Size;
 import com.pixate.freestyle.util.StringUtil;
 import com.pixate.freestyle.util.UrlStreamOpener;
@@ -93,10 +86,7 @@ public class PXSVGLoader {
     // TODO - Attach this to some verification mechanism
     private static final boolean PXTEXT_SUPPORT = true;
     private static final String TAG = PXSVGLoader.class.getSimpleName();
-    private static final Pattern DEFAULT_DELIMITER_PATTERN = Pattern.compile("[ ,\r\n]");
-
-    private static final Pattern COLON_SEPARATOR = Pattern.compile(":");
-    private static final Pattern SEMICOLON_SEPARATOR = Pattern.compile(";");
+    private static final String CDATA = "CDATA";
 
     /**
      * Returns a {@link PXShapeDocument} after parsing a SVG file (subset of
@@ -127,7 +117,8 @@ public class PXSVGLoader {
 
     /**
      * Returns a {@link PXShapeDocument} after parsing a SVG stream (subset of
-     * SVG).
+     * SVG). Streams holding a compiled SVG (see {@link PXSVGCompiler}) are
+     * detected and loaded directly, without any XML parsing.
      * 
      * @param inputStream An {@link InputStream}. Will be closed by this method
      *            after the {@link PXShape} is loaded.
@@ -136,6 +127,19 @@ public class PXSVGLoader {
      */
     public static PXShapeDocument loadFromStream(InputStream inputStream) throws IOException {
         long start = System.currentTimeMillis();
+        if (inputStream != null) {
+            if (!inputStream.markSupported()) {
+                inputStream = new BufferedInputStream(inputStream);
+            }
+            if (PXCompiledSVGLoader.isCompiled(inputStream)) {
+                PXShapeDocument scene = PXCompiledSVGLoader.loadFromStream(inputStream);
+                if (TIME_LOGGING) {
+                    PXLog.i(TAG, "Loading compiled SVG took "
+                            + (System.currentTimeMillis() - start) + "ms");
+                }
+                return scene;
+            }
+        }
         PXSVGParser parser = new PXSVGParser();
         PXShapeGroup result = parser.parse(inputStream);
         PXShapeDocument scene = parser.getDocument();
@@ -174,9 +178,11 @@ public class PXSVGLoader {
         private static final String PIE_ELEMENT = "pie";
 
         // static parsers
-        private static PXTransformParser transformParser = new PXTransformParser();
         private static PXValueParser valueParser = new PXValueParser();
 
+        // reused for all the numeric attributes of the document
+        private final PXNumberTokenizer tokenizer = new PXNumberTokenizer();
+
         // Use an ArrayDeque an a non-synchronized replacement for Stack.
         private PXShapeDocument document;
         private PXShapeGroup result;
@@ -226,17 +232,59 @@ public class PXSVGLoader {
          */
         protected PXShapeGroup parse(InputStream inputStream) throws PXSVGParseException {
             try {
-                SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
-                XMLReader reader = parser.getXMLReader();
-                reader.setContentHandler(this);
-                reader.parse(new InputSource(new InputStreamReader(inputStream, "UTF-8")));
-                inputStream.close();
+                XmlPullParser parser = Xml.newPullParser();
+                parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+                parser.setInput(inputStream, null);
+                // A single attributes instance is refilled for every start tag
+                AttributesImpl attributes = new AttributesImpl();
+                int event = parser.getEventType();
+                for (; event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                    if (event == XmlPullParser.START_TAG) {
+                        fillAttributes(parser, attributes);
+                        startElement(parser.getNamespace(), parser.getName(),
+                                qualifiedName(parser.getPrefix(), parser.getName()), attributes);
+                    } else if (event == XmlPullParser.END_TAG) {
+                        endElement(parser.getNamespace(), parser.getName(),
+                                qualifiedName(parser.getPrefix(), parser.getName()));
+                    }
+                }
             } catch (Throwable t) {
                 throw new PXSVGParseException("Error processing the shape", t);
+            } finally {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    PXLog.e(TAG, e, "Error closing the SVG stream");
+                }
             }
             return result;
         }
 
+        /**
+         * Copies the current tag's attributes into the given
+         * {@link AttributesImpl}, clearing any previous content.
+         * 
+         * @param parser
+         * @param attributes
+         */
+        private static void fillAttributes(XmlPullParser parser, AttributesImpl attributes) {
+            attributes.clear();
+            int count = parser.getAttributeCount();
+            for (int i = 0; i < count; i++) {
+                String name = parser.getAttributeName(i);
+                attributes.addAttribute(parser.getAttributeNamespace(i), name,
+                        qualifiedName(parser.getAttributePrefix(i), name), CDATA,
+                        parser.getAttributeValue(i));
+            }
+        }
+
+        private static String qualifiedName(String prefix, String name) {
+            if (StringUtil.isEmpty(prefix)) {
+                return name;
+            }
+            return prefix + ':' + name;
+        }
+
         /*
          * (non-Javadoc)
          * @see
@@ -258,10 +306,11 @@ public class PXSVGLoader {
                 PXShapeGroup newGroup = new PXShapeGroup();
 
                 // set viewport, if we have one
-                Float width = numberFromString(attributes.getValue("width"), null);
-                Float height = numberFromString(attributes.getValue("height"), null);
+                String width = attributes.getValue("width");
+                String height = attributes.getValue("height");
                 if (width != null && height != null) {
-                    newGroup.setViewport(new RectF(0, 0, width, height));
+                    newGroup.setViewport(new RectF(0, 0, numberFromString(width),
+                            numberFromString(height)));
                     // set viewport settings, if we have those
                     applyViewport(attributes, newGroup);
                 }
@@ -294,22 +343,22 @@ public class PXSVGLoader {
                 // add path to current group
                 String data = attributes.getValue("d");
                 if (data != null) {
-                    PXPath path = PXPath.createPathFromPathData(data);
+                    PXPath path = createPath(data);
                     applyStyles(attributes, path, gradients, document);
                     addShape(stack, path);
                 }
             } else if (RECT_ELEMENT.equals(localName)) {
                 // add path to current group
-                Float x = numberFromString(attributes.getValue("x"));
-                Float y = numberFromString(attributes.getValue("y"));
+                float x = numberFromString(attributes.getValue("x"));
+                float y = numberFromString(attributes.getValue("y"));
                 RectF rect = new RectF(x, y, x + numberFromString(attributes.getValue("width")), y
                         + numberFromString(attributes.getValue("height")));
-                Float rx = numberFromString(attributes.getValue("rx"), null);
-                Float ry = numberFromString(attributes.getValue("ry"), null);
+                String rx = attributes.getValue("rx");
+                String ry = attributes.getValue("ry");
 
                 PXRectangle rectangle = new PXRectangle(rect);
                 if (rx != null && ry != null) {
-                    rectangle.setCornerRadii(new Size(rx, ry));
+                    rectangle.setCornerRadii(new Size(numberFromString(rx), numberFromString(ry)));
                 }
                 applyStyles(attributes, rectangle, gradients, document);
                 addShape(stack, rectangle);
@@ -394,7 +443,7 @@ public class PXSVGLoader {
                 }
             } else if (STOP_ELEMENT.equals(localName)) {
                 if (currentGradient != null) {
-                    Float offset = numberFromString(attributes.getValue("offset"), null);
+                    String offset = attributes.getValue("offset");
                     String stopColorString = attributes.getValue("stop-color");
 
                     if (stopColorString != null) {
@@ -408,7 +457,7 @@ public class PXSVGLoader {
                         }
 
                         if (offset != null) {
-                            currentGradient.addOffset(offset);
+                            currentGradient.addOffset(numberFromString(offset));
                         }
                         currentGradient.addColor(stopColor);
                     } else {
@@ -498,6 +547,17 @@ public class PXSVGLoader {
             }
         }
 
+        /**
+         * Creates a {@link PXPath} out of the path data of a path element.
+         * Subclasses may overwrite.
+         * 
+         * @param data The path's "d" attribute
+         * @return A {@link PXPath}
+         */
+        protected PXPath createPath(String data) {
+            return PXPathDataCache.createPath(data);
+        }
+
         /**
          * Add a {@link Shape} to the stack.
          * 
@@ -519,7 +579,7 @@ public class PXSVGLoader {
          * @param scene
          * @param transformParser
          */
-        private static void applyStyles(Attributes attributes, PXShape shape,
+        private void applyStyles(Attributes attributes, PXShape shape,
                 Map<String, PXGradient> gradients, PXShapeDocument scene) {
             String strokeDashArray = attributes.getValue("stroke-dasharray");
             String fillColor = attributes.getValue("fill");
@@ -557,8 +617,8 @@ public class PXSVGLoader {
                 stroke.setDashArray(numberArrayFromString(strokeDashArray));
             }
 
-            stroke.setDashOffset(numberFromString(attributes.getValue("stroke-dashoffset"))
-                    .intValue());
+            stroke.setDashOffset((int) numberFromString(attributes
+                    .getValue("stroke-dashoffset")));
             stroke.setLineCap(lineCapFromString(attributes.getValue("stroke-linecap")));
             stroke.setLineJoin(lineJoinFromString(attributes.getValue("stroke-linejoin")));
 
@@ -649,7 +709,7 @@ public class PXSVGLoader {
             return (value != null) ? Float.parseFloat(value) : 1.0F;
         }
 
-        private static PXPolygon makePolygon(String pointsString) {
+        private PXPolygon makePolygon(String pointsString) {
             float[] coords = numberArrayFromString(pointsString);
             int length = coords.length;
             if ((length % 2) == 1) {
@@ -684,46 +744,24 @@ public class PXSVGLoader {
             return paint;
         }
 
-        private static Float numberFromString(String value) {
+        private float numberFromString(String value) {
             return numberFromString(value, 0F);
         }
 
-        private static Float numberFromString(String value, Float defaultValue) {
+        private float numberFromString(String value, float defaultValue) {
             if (value == null) {
                 return defaultValue;
-            } else {
-                if (value.endsWith("px")) {
-                    return Float.parseFloat(value.substring(0, value.length() - 2));
-                } else if (value.endsWith("%")) {
-                    return Float.parseFloat(value.substring(0, value.length() - 1)) / 100.0f;
-                }
-                return Float.parseFloat(value);
-            }
-        }
-
-        private static float[] numberArrayFromString(String value) {
-            List<Float> numbers = new ArrayList<Float>(5);
-            Scanner scanner = new Scanner(value);
-            scanner.useDelimiter(DEFAULT_DELIMITER_PATTERN);
-            while (scanner.hasNextFloat()) {
-                numbers.add(scanner.nextFloat());
             }
-            scanner.close();
-            // have to convert the arraylist into float-array
-            return toPrimitiveArray(numbers);
+            return tokenizer.readNumber(value);
         }
 
-        private static float[] toPrimitiveArray(List<Float> values) {
-            float[] primitiveValues = new float[values.size()];
-            for (int i = 0; i < primitiveValues.length; i++) {
-                primitiveValues[i] = values.get(i);
-            }
-            return primitiveValues;
+        private float[] numberArrayFromString(String value) {
+            return tokenizer.readNumberArray(value);
         }
 
         private static Matrix transformFromString(String value) {
             if (value != null) {
-                return transformParser.parse(value);
+                return PXTransformCache.getTransform(value);
             }
             return null;
         }
@@ -740,16 +778,23 @@ public class PXSVGLoader {
             if (!StringUtil.isEmpty(styles)) {
                 // break up the styles into additional attributes.
                 AttributesImpl newAttributes = new AttributesImpl(attributes);
-                String[] declarations = SEMICOLON_SEPARATOR.split(styles);
-                for (String declaration : declarations) {
-                    String[] parts = COLON_SEPARATOR.split(declaration);
-                    if (parts.length == 2) {
-                        newAttributes.addAttribute(StringUtil.EMPTY, StringUtil.EMPTY,
-                                parts[0].trim(), StringUtil.EMPTY, parts[1].trim());
-                    } else {
-                        PXLog.w(TAG, "Expected 2 parts in the style declaration, but got %d. '%s'",
-                                parts.length, declaration);
+                int length = styles.length();
+                int start = 0;
+                while (start < length) {
+                    int end = styles.indexOf(';', start);
+                    if (end < 0) {
+                        end = length;
+                    }
+                    int colon = styles.indexOf(':', start);
+                    if (colon >= 0 && colon < end - 1 && styles.lastIndexOf(':', end - 1) == colon) {
+                        newAttributes.addAttribute(StringUtil.EMPTY, StringUtil.EMPTY, styles
+                                .substring(start, colon).trim(), StringUtil.EMPTY, styles
+                                .substring(colon + 1, end).trim());
+                    } else if (end > start) {
+                        PXLog.w(TAG, "Expected 2 parts in the style declaration '%s'",
+                                styles.substring(start, end));
                     }
+                    start = end + 1;
                 }
                 attributes = newAttributes;
             }
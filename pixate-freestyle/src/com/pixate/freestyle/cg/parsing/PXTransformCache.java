@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.cg.parsing;
+
+import android.graphics.Matrix;
+import android.util.LruCache;
+
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXCacheUnit;
+
+/**
+ * A cache of parsed transforms. The cache holds the matrix values of a
+ * transform string, so a transform that is used by many views and shapes is
+ * lexed and parsed only once. Every call returns a new {@link Matrix}, so
+ * callers are free to modify it.<br>
+ * The values are evicted when the system reports a memory pressure (see
+ * {@link PXCacheManager}).
+ */
+public class PXTransformCache {
+
+    private static final int DEFAULT_MAX_TRANSFORMS = 128;
+
+    private static final LruCache<String, float[]> TRANSFORMS = new LruCache<String, float[]>(
+            DEFAULT_MAX_TRANSFORMS);
+
+    static {
+        PXCacheManager.registerLruCache("transforms", PXCacheUnit.ENTRIES, TRANSFORMS);
+    }
+
+    /**
+     * Returns the {@link Matrix} of the given transform. The transform is
+     * parsed only when it's not in the cache.
+     * 
+     * @param source The transform, as defined for the SVG transform attribute
+     * @return A new {@link Matrix}
+     * @see PXTransformParser#parse(String)
+     */
+    public static Matrix getTransform(String source) {
+        float[] values = TRANSFORMS.get(source);
+        if (values == null) {
+            Matrix transform = new PXTransformParser().parse(source);
+            values = new float[9];
+            transform.getValues(values);
+            TRANSFORMS.put(source, values);
+            return transform;
+        }
+        Matrix result = new Matrix();
+        result.setValues(values);
+        return result;
+    }
+
+    /**
+     * Evicts all the cached transforms.
+     */
+    public static void evictAll() {
+        TRANSFORMS.evictAll();
+    }
+}
@@ -17,15 +17,28 @@ package com.pixate.freestyle.cg.shadow;
 
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuff.Mode;
+import android.graphics.RectF;
 
-import com.pixate.freestyle.util.Size;
+import com.pixate.freestyle.cg.shadow.PXShadowCache.PXShadowMask;
+import com.pixate.freestyle.cg.shapes.PXGeometrySignature;
+import com.pixate.freestyle.util.ObjectPool;
 
-// TODO very incomplete implementation.
+/**
+ * A single inner or outer shadow. The blurred shadow coverage is taken from
+ * the {@link PXShadowCache} and composited with the shadow color. Shadows are
+ * only drawn once enabled with {@link #setEnabled(boolean)}.
+ */
 public class PXShadow implements PXShadowPaint {
 
+    // The default color when none was specified (black with a 1/3 alpha)
+    private static final int DEFAULT_COLOR = Color.argb(85, 0, 0, 0);
+
+    private static volatile boolean enabled;
+
     @SuppressWarnings("unused")
     private PorterDuff.Mode blendMode;
     private boolean inset;
@@ -39,6 +52,24 @@ public class PXShadow implements PXShadowPaint {
         blendMode = Mode.SRC_OVER;
     }
 
+    /**
+     * Enable or disable the drawing of shadows. Shadows used to be parsed,
+     * but not drawn, so they are disabled by default. Existing stylesheets
+     * may look different once they are enabled.
+     * 
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        PXShadow.enabled = enabled;
+    }
+
+    /**
+     * Returns <code>true</code> in case shadows are drawn.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
     // Overrides
 
     @Override
@@ -64,35 +95,52 @@ public class PXShadow implements PXShadowPaint {
     }
 
     public void applyOutsetToPath(Path path, Canvas context) {
-        if (!inset) {
-            @SuppressWarnings("unused")
-            Size offset = new Size(horizontalOffset, verticalOffset);
-
-            if (color != Integer.MIN_VALUE) {
-                // TODO - Obj-C:
-                // CGContextSetShadowWithColor(context, offset, _blurDistance,
-                // _color.CGColor);
-            } else {
-                // TODO - Obj-C:
-                // CGContextSetShadow(context, offset, _blurDistance);
-            }
-
-            // TODO - Obj-C:
-            // CGContextAddPath(context, path);
+        applyOutsetToPath(path, null, context);
+    }
 
-            // // set blending mode
-            // CGContextSetBlendMode(context, self.blendMode);
+    public void applyInsetToPath(Path path, Canvas context) {
+        applyInsetToPath(path, null, context);
+    }
 
-            // CGContextFillPath(context);
+    public void applyOutsetToPath(Path path, PXGeometrySignature signature, Canvas context) {
+        if (enabled && !inset && path != null) {
+            RectF bounds = new RectF();
+            path.computeBounds(bounds, true);
+            int shadowColor = getEffectiveColor();
+            PXShadowMask mask = PXShadowCache.getOutsetMask(path, bounds, signature,
+                    blurDistance, spreadDistance, shadowColor);
+            if (mask != null) {
+                Paint paint = ObjectPool.paintPool.checkOut();
+                paint.setColor(shadowColor);
+                context.drawBitmap(mask.bitmap, bounds.left + mask.left + horizontalOffset,
+                        bounds.top + mask.top + verticalOffset, paint);
+                ObjectPool.paintPool.checkIn(paint);
+            }
         }
     }
 
-    public void applyInsetToPath(Path path, Canvas context) {
-        if (inset) {
-
-            // TODO see Obj-C
+    public void applyInsetToPath(Path path, PXGeometrySignature signature, Canvas context) {
+        if (enabled && inset && path != null) {
+            RectF bounds = new RectF();
+            path.computeBounds(bounds, true);
+            int shadowColor = getEffectiveColor();
+            PXShadowMask mask = PXShadowCache.getInsetMask(path, bounds, signature,
+                    blurDistance, spreadDistance, horizontalOffset, verticalOffset, shadowColor);
+            if (mask != null) {
+                Paint paint = ObjectPool.paintPool.checkOut();
+                paint.setColor(shadowColor);
+                int saveCount = context.save();
+                context.clipPath(path);
+                context.drawBitmap(mask.bitmap, bounds.left + mask.left, bounds.top + mask.top,
+                        paint);
+                context.restoreToCount(saveCount);
+                ObjectPool.paintPool.checkIn(paint);
+            }
         }
+    }
 
+    private int getEffectiveColor() {
+        return color != Integer.MIN_VALUE ? color : DEFAULT_COLOR;
     }
 
     // Getters
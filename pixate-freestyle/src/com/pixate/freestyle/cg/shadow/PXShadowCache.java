@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.cg.shadow;
+
+import android.graphics.BlurMaskFilter;
+import android.graphics.BlurMaskFilter.Blur;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.Style;
+import android.graphics.Path;
+import android.graphics.PorterDuff.Mode;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
+import android.util.LruCache;
+
+import com.pixate.freestyle.cg.shapes.PXGeometrySignature;
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXCacheUnit;
+import com.pixate.freestyle.util.ObjectPool;
+
+/**
+ * A cache of pre-blurred shadow masks. A mask is an {@link Bitmap.Config#ALPHA_8}
+ * bitmap that holds the blurred coverage of a shadow, and is tinted with the
+ * shadow color when it's composited. Masks are keyed by the geometry signature
+ * of the shadowed shape and by the shadow's blur, spread, offset (for inset
+ * shadows), color and inset/outset type. This way, shapes that share a shadow
+ * spec are blurred once per size.
+ */
+public class PXShadowCache {
+
+    private static final int DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * A blurred shadow mask and its position relative to the top-left corner of
+     * the shadowed path bounds.
+     */
+    public static class PXShadowMask {
+        public final Bitmap bitmap;
+        public final float left;
+        public final float top;
+
+        private PXShadowMask(Bitmap bitmap, float left, float top) {
+            this.bitmap = bitmap;
+            this.left = left;
+            this.top = top;
+        }
+    }
+
+    private static class Key {
+        private final PXGeometrySignature signature;
+        private final float blur;
+        private final float spread;
+        private final float horizontalOffset;
+        private final float verticalOffset;
+        private final int color;
+        private final boolean inset;
+        private final int hash;
+
+        private Key(PXGeometrySignature signature, float blur, float spread,
+                float horizontalOffset, float verticalOffset, int color, boolean inset) {
+            this.signature = signature;
+            this.blur = blur;
+            this.spread = spread;
+            this.horizontalOffset = horizontalOffset;
+            this.verticalOffset = verticalOffset;
+            this.color = color;
+            this.inset = inset;
+            int h = signature.hashCode();
+            h = 31 * h + Float.floatToIntBits(blur);
+            h = 31 * h + Float.floatToIntBits(spread);
+            h = 31 * h + Float.floatToIntBits(horizontalOffset);
+            h = 31 * h + Float.floatToIntBits(verticalOffset);
+            h = 31 * h + color;
+            this.hash = 31 * h + (inset ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && inset == other.inset && color == other.color
+                    && blur == other.blur
+                    && spread == other.spread && horizontalOffset == other.horizontalOffset
+                    && verticalOffset == other.verticalOffset
+                    && signature.equals(other.signature);
+        }
+    }
+
+    private static final LruCache<Key, PXShadowMask> MASKS = new LruCache<Key, PXShadowMask>(
+            DEFAULT_MAX_BYTES) {
+        @Override
+        protected int sizeOf(Key key, PXShadowMask value) {
+            return value.bitmap.getByteCount();
+        }
+    };
+
+    static {
+        PXCacheManager.registerLruCache("shadow-masks", PXCacheUnit.BYTES, MASKS);
+    }
+
+    /**
+     * Returns a blurred mask for an outer shadow of the given path. The mask
+     * does not include the shadow offset, which should be applied when
+     * compositing.
+     * 
+     * @param path The shadowed path
+     * @param pathBounds The bounds of the path
+     * @param signature The path's geometry signature. In case
+     *            <code>null</code>, the mask will be created but not cached.
+     * @param blur The blur radius
+     * @param spread The spread distance
+     * @param color The shadow color
+     * @return A {@link PXShadowMask}, or <code>null</code> if the path is empty.
+     */
+    public static PXShadowMask getOutsetMask(Path path, RectF pathBounds,
+            PXGeometrySignature signature, float blur, float spread, int color) {
+        Key key = null;
+        if (signature != null) {
+            key = new Key(signature, blur, spread, 0, 0, color, false);
+            PXShadowMask mask = MASKS.get(key);
+            if (mask != null) {
+                return mask;
+            }
+        }
+        if (pathBounds.isEmpty()) {
+            return null;
+        }
+        int pad = (int) Math.ceil(Math.max(blur, 0) + Math.max(spread, 0)) + 1;
+        int width = (int) Math.ceil(pathBounds.width()) + 2 * pad;
+        int height = (int) Math.ceil(pathBounds.height()) + 2 * pad;
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.translate(pad - pathBounds.left, pad - pathBounds.top);
+
+        Paint paint = ObjectPool.paintPool.checkOut();
+        if (blur > 0) {
+            paint.setMaskFilter(new BlurMaskFilter(blur, Blur.NORMAL));
+        }
+        if (spread > 0) {
+            paint.setStyle(Style.FILL_AND_STROKE);
+            paint.setStrokeJoin(Paint.Join.ROUND);
+            paint.setStrokeWidth(2 * spread);
+        }
+        canvas.drawPath(path, paint);
+        ObjectPool.paintPool.checkIn(paint);
+
+        return cache(key, new PXShadowMask(bitmap, -pad, -pad));
+    }
+
+    /**
+     * Returns a blurred mask for an inner shadow of the given path. The mask
+     * covers the path bounds, and already includes the shadow offset. It
+     * should be composited while clipping to the path.
+     * 
+     * @param path The shadowed path
+     * @param pathBounds The bounds of the path
+     * @param signature The path's geometry signature. In case
+     *            <code>null</code>, the mask will be created but not cached.
+     * @param blur The blur radius
+     * @param spread The spread distance
+     * @param horizontalOffset The shadow's horizontal offset
+     * @param verticalOffset The shadow's vertical offset
+     * @param color The shadow color
+     * @return A {@link PXShadowMask}, or <code>null</code> if the path is empty.
+     */
+    public static PXShadowMask getInsetMask(Path path, RectF pathBounds,
+            PXGeometrySignature signature, float blur, float spread, float horizontalOffset,
+            float verticalOffset, int color) {
+        Key key = null;
+        if (signature != null) {
+            key = new Key(signature, blur, spread, horizontalOffset, verticalOffset, color,
+                    true);
+            PXShadowMask mask = MASKS.get(key);
+            if (mask != null) {
+                return mask;
+            }
+        }
+        if (pathBounds.isEmpty()) {
+            return null;
+        }
+        int width = (int) Math.ceil(pathBounds.width());
+        int height = (int) Math.ceil(pathBounds.height());
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(bitmap);
+        // Start with a full coverage, and punch a blurred hole in the shape of
+        // the (offset) path.
+        canvas.drawColor(Color.BLACK);
+        canvas.translate(horizontalOffset - pathBounds.left, verticalOffset - pathBounds.top);
+
+        Paint paint = ObjectPool.paintPool.checkOut();
+        if (blur > 0) {
+            paint.setMaskFilter(new BlurMaskFilter(blur, Blur.NORMAL));
+        }
+        paint.setXfermode(new PorterDuffXfermode(Mode.DST_OUT));
+        canvas.drawPath(path, paint);
+        if (spread > 0) {
+            paint.setXfermode(null);
+            paint.setStyle(Style.STROKE);
+            paint.setStrokeJoin(Paint.Join.ROUND);
+            paint.setStrokeWidth(2 * spread);
+            canvas.drawPath(path, paint);
+        }
+        ObjectPool.paintPool.checkIn(paint);
+
+        return cache(key, new PXShadowMask(bitmap, 0, 0));
+    }
+
+    /**
+     * Evicts all the cached masks.
+     */
+    public static void evictAll() {
+        MASKS.evictAll();
+    }
+
+    /**
+     * Returns the size, in bytes, of the cached masks.
+     */
+    public static int size() {
+        return MASKS.size();
+    }
+
+    /**
+     * Returns the maximum size, in bytes, of the cached masks.
+     */
+    public static int maxSize() {
+        return MASKS.maxSize();
+    }
+
+    private static PXShadowMask cache(Key key, PXShadowMask mask) {
+        // Don't let a single large mask flush the entire cache.
+        if (key != null && mask.bitmap.getByteCount() <= MASKS.maxSize() / 4) {
+            MASKS.put(key, mask);
+        }
+        return mask;
+    }
+}
@@ -20,21 +20,29 @@ import java.util.ArrayList;
 import android.graphics.Canvas;
 import android.graphics.Path;
 
+import com.pixate.freestyle.cg.shapes.PXGeometrySignature;
+
 public class PXShadowGroup extends ArrayList<PXShadowPaint> implements PXShadowPaint {
 
     private static final long serialVersionUID = -8931242820673829504L;
 
     public void applyInsetToPath(Path path, Canvas context) {
+        applyInsetToPath(path, null, context);
+    }
+
+    public void applyOutsetToPath(Path path, Canvas context) {
+        applyOutsetToPath(path, null, context);
+    }
+
+    public void applyInsetToPath(Path path, PXGeometrySignature signature, Canvas context) {
         for (PXShadowPaint shadow : this) {
-            shadow.applyInsetToPath(path, context);
+            shadow.applyInsetToPath(path, signature, context);
         }
     }
 
-    public void applyOutsetToPath(Path path, Canvas context) {
+    public void applyOutsetToPath(Path path, PXGeometrySignature signature, Canvas context) {
         for (PXShadowPaint shadow : this) {
-            shadow.applyOutsetToPath(path, context);
+            shadow.applyOutsetToPath(path, signature, context);
         }
-        
     }
-    
 }
@@ -21,6 +21,8 @@ package com.pixate.freestyle.cg.shadow;
 import android.graphics.Canvas;
 import android.graphics.Path;
 
+import com.pixate.freestyle.cg.shapes.PXGeometrySignature;
+
 /**
  * The PXShadowPaint interface specifies the properties and methods required for
  * a class to be used for shadowing of a contour
@@ -42,4 +44,26 @@ public interface PXShadowPaint {
      */
     void applyInsetToPath(Path path, Canvas context);
 
+    /**
+     * Apply an outer shadow to the specified path. The geometry signature, when
+     * not <code>null</code>, identifies the path's geometry regardless of its
+     * position and allows the rendered shadow to be cached.
+     * 
+     * @param path A path used to generate a shadow
+     * @param signature The path's geometry signature (may be <code>null</code>)
+     * @param context The context into which to render the shadow
+     */
+    void applyOutsetToPath(Path path, PXGeometrySignature signature, Canvas context);
+
+    /**
+     * Apply an inner shadow to the specified path. The geometry signature, when
+     * not <code>null</code>, identifies the path's geometry regardless of its
+     * position and allows the rendered shadow to be cached.
+     * 
+     * @param path A path used to generate a shadow
+     * @param signature The path's geometry signature (may be <code>null</code>)
+     * @param context The context into which to render the shadow
+     */
+    void applyInsetToPath(Path path, PXGeometrySignature signature, Canvas context);
+
 }
@@ -18,6 +18,8 @@
  */
 package com.pixate.freestyle.cg.shapes;
 
+import java.util.Map;
+
 import android.graphics.Path;
 import android.graphics.PointF;
 import android.graphics.RectF;
@@ -55,6 +57,13 @@ public class PXArc extends PXShape {
         }
     }
 
+    /**
+     * Returns the location of the center of this arc.
+     */
+    public PointF getCenter() {
+        return center;
+    }
+
     /**
      * Sets the value indicating the size of the radius of this arc. This value
      * may be negative, but it will be normalized to a positive value.
@@ -134,4 +143,17 @@ public class PXArc extends PXShape {
         path.addArc(oval, startingAngle, endingAngle);
         return path;
     }
+
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#copy(java.util.Map)
+     */
+    @Override
+    PXArc copy(Map<PXRenderable, PXRenderable> copies) {
+        PXArc copy = (PXArc) super.copy(copies);
+        if (center != null) {
+            copy.center = new PointF(center.x, center.y);
+        }
+        return copy;
+    }
 }
@@ -45,6 +45,15 @@ public class PXArrowRectangle extends PXRectangle {
         this.direction = direction;
     }
 
+    @Override
+    protected PXGeometrySignature newGeometrySignature() {
+        RectF bounds = getBounds();
+        return new PXGeometrySignature(getClass(), direction.ordinal(), bounds.width(),
+                bounds.height(), radiusTopLeft.width, radiusTopLeft.height,
+                radiusTopRight.width, radiusTopRight.height, radiusBottomRight.width,
+                radiusBottomRight.height, radiusBottomLeft.width, radiusBottomLeft.height);
+    }
+
     @Override
     protected Path newPath() {
 
@@ -15,6 +15,8 @@
  ******************************************************************************/
 package com.pixate.freestyle.cg.shapes;
 
+import java.util.Map;
+
 import android.graphics.Canvas;
 import android.graphics.Path;
 import android.graphics.RectF;
@@ -319,6 +321,7 @@ public class PXBoxModel extends PXShape implements PXBoundable {
         radiusTopRight = radii;
         radiusBottomRight = radii;
         radiusBottomLeft = radii;
+        clearPath();
     }
 
     // IMPLEMENTATIONS
@@ -335,10 +338,39 @@ public class PXBoxModel extends PXShape implements PXBoundable {
      */
     public void setBounds(RectF bounds) {
         this.bounds = bounds;
+        clearPath();
     }
 
     // OVERRIDES
 
+    /**
+     * @link {@link PXShape#copy(java.util.Map)}
+     */
+    @Override
+    PXBoxModel copy(Map<PXRenderable, PXRenderable> copies) {
+        PXBoxModel copy = (PXBoxModel) super.copy(copies);
+        copy.borderTop = copyBorder(borderTop);
+        copy.borderRight = copyBorder(borderRight);
+        copy.borderBottom = copyBorder(borderBottom);
+        copy.borderLeft = copyBorder(borderLeft);
+        copy.borderPathTop = null;
+        copy.borderPathRight = null;
+        copy.borderPathBottom = null;
+        copy.borderPathLeft = null;
+        if (bounds != null) {
+            copy.bounds = new RectF(bounds);
+        }
+        return copy;
+    }
+
+    private static PXBorderInfo copyBorder(PXBorderInfo border) {
+        PXBorderInfo result = new PXBorderInfo();
+        result.setWidth(border.getWidth());
+        result.setStyle(border.getStyle());
+        result.setPaint(border.getPaint());
+        return result;
+    }
+
     /**
      * @link {@link PXShape#newPath()}
      */
@@ -355,6 +387,22 @@ public class PXBoxModel extends PXShape implements PXBoundable {
         return resultPath;
     }
 
+    /**
+     * @link {@link PXShape#newGeometrySignature()}
+     */
+    @Override
+    protected PXGeometrySignature newGeometrySignature() {
+        // the signature is taken from the path, since computing the border
+        // bounds moves the content bounds
+        Path path = getPath();
+        if (path == null) {
+            return null;
+        }
+        RectF pathBounds = new RectF();
+        path.computeBounds(pathBounds, true);
+        return new PXGeometrySignature(getClass(), pathBounds.width(), pathBounds.height());
+    }
+
     /**
      * @link {@link PXShape#renderChildren(Canvas)}
      */
@@ -377,6 +425,16 @@ public class PXBoxModel extends PXShape implements PXBoundable {
         }
     }
 
+    /**
+     * @link {@link PXShape#requiresOpacityLayer()}
+     */
+    @Override
+    protected boolean requiresOpacityLayer() {
+        // the borders are drawn on top of the box
+        return borderPathTop != null || borderPathRight != null || borderPathBottom != null
+                || borderPathLeft != null || super.requiresOpacityLayer();
+    }
+
     // PRIVATE METHODS
 
     private float[] buildDashArray(float length, float width) {
@@ -18,6 +18,8 @@
  */
 package com.pixate.freestyle.cg.shapes;
 
+import java.util.Map;
+
 import android.graphics.Path;
 import android.graphics.Path.Direction;
 import android.graphics.PointF;
@@ -53,6 +55,20 @@ public class PXCircle extends PXShape {
         }
     }
 
+    /**
+     * Returns the center of the circle.
+     */
+    public PointF getCenter() {
+        return center;
+    }
+
+    /**
+     * Returns the radius of the circle.
+     */
+    public float getRadius() {
+        return radius;
+    }
+
     /**
      * Sets the radius of the circle.
      * 
@@ -69,6 +85,15 @@ public class PXCircle extends PXShape {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#newGeometrySignature()
+     */
+    @Override
+    protected PXGeometrySignature newGeometrySignature() {
+        return new PXGeometrySignature(getClass(), radius);
+    }
+
     /*
      * (non-Javadoc)
      * @see com.pixate.freestyle.pxengine.cg.PXShape#newPath()
@@ -79,4 +104,17 @@ public class PXCircle extends PXShape {
         path.addCircle(center.x, center.y, radius, Direction.CW);
         return path;
     }
+
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#copy(java.util.Map)
+     */
+    @Override
+    PXCircle copy(Map<PXRenderable, PXRenderable> copies) {
+        PXCircle copy = (PXCircle) super.copy(copies);
+        if (center != null) {
+            copy.center = new PointF(center.x, center.y);
+        }
+        return copy;
+    }
 }
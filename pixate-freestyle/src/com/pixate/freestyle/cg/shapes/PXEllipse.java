@@ -18,6 +18,8 @@
  */
 package com.pixate.freestyle.cg.shapes;
 
+import java.util.Map;
+
 import android.graphics.Path;
 import android.graphics.Path.Direction;
 import android.graphics.PointF;
@@ -71,6 +73,18 @@ public class PXEllipse extends PXShape implements PXBoundable {
         }
     }
 
+    public PointF getCenter() {
+        return center;
+    }
+
+    public float getRadiusX() {
+        return radiusX;
+    }
+
+    public float getRadiusY() {
+        return radiusY;
+    }
+
     public void setRadiusX(float radius) {
         // Use positive absolute values only
         if (radius < 0) {
@@ -95,6 +109,15 @@ public class PXEllipse extends PXShape implements PXBoundable {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#newGeometrySignature()
+     */
+    @Override
+    protected PXGeometrySignature newGeometrySignature() {
+        return new PXGeometrySignature(getClass(), radiusX, radiusY);
+    }
+
     /*
      * (non-Javadoc)
      * @see com.pixate.freestyle.pxengine.cg.PXShape#newPath()
@@ -107,4 +130,17 @@ public class PXEllipse extends PXShape implements PXBoundable {
         path.addOval(rect, Direction.CW);
         return path;
     }
+
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#copy(java.util.Map)
+     */
+    @Override
+    PXEllipse copy(Map<PXRenderable, PXRenderable> copies) {
+        PXEllipse copy = (PXEllipse) super.copy(copies);
+        if (center != null) {
+            copy.center = new PointF(center.x, center.y);
+        }
+        return copy;
+    }
 }
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.cg.shapes;
+
+import java.util.Arrays;
+
+/**
+ * An immutable description of a shape's geometry that does not depend on the
+ * shape's position. Two shapes with equal signatures produce paths that only
+ * differ by a translation, which allows caching of artifacts that are derived
+ * from the geometry alone (like blurred shadow masks).
+ */
+public final class PXGeometrySignature {
+
+    private final Class<?> type;
+    private final float[] values;
+    private final int hash;
+
+    /**
+     * Constructs a new signature.
+     * 
+     * @param type The shape type
+     * @param values The values that describe the geometry of that shape type.
+     */
+    public PXGeometrySignature(Class<?> type, float... values) {
+        this.type = type;
+        this.values = values;
+        this.hash = 31 * type.hashCode() + Arrays.hashCode(values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PXGeometrySignature)) {
+            return false;
+        }
+        PXGeometrySignature other = (PXGeometrySignature) o;
+        return hash == other.hash && type == other.type && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public String toString() {
+        return type.getSimpleName() + Arrays.toString(values);
+    }
+}
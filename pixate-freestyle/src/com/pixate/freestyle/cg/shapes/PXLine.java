@@ -18,6 +18,8 @@
  */
 package com.pixate.freestyle.cg.shapes;
 
+import java.util.Map;
+
 import android.graphics.Path;
 import android.graphics.PointF;
 
@@ -110,4 +112,16 @@ public class PXLine extends PXShape {
         path.lineTo(p2.x, p2.y);
         return path;
     }
+
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#copy(java.util.Map)
+     */
+    @Override
+    PXLine copy(Map<PXRenderable, PXRenderable> copies) {
+        PXLine copy = (PXLine) super.copy(copies);
+        copy.p1 = new PointF(p1.x, p1.y);
+        copy.p2 = new PointF(p2.x, p2.y);
+        return copy;
+    }
 }
@@ -18,6 +18,8 @@
  */
 package com.pixate.freestyle.cg.shapes;
 
+import java.util.Map;
+
 import android.graphics.Path;
 import android.graphics.PointF;
 
@@ -34,11 +36,32 @@ public class PXPath extends PXShape {
 
     private static String TAG = PXPath.class.getSimpleName();
 
+    /**
+     * Segment verbs used by {@link #createPathFromSegments(byte[], float[])}.
+     * Each verb consumes 2 (move, line), 4 (quad), 6 (cubic) or 0 (close)
+     * coordinates.
+     */
+    public static final byte VERB_MOVE = 0;
+    public static final byte VERB_LINE = 1;
+    public static final byte VERB_QUAD = 2;
+    public static final byte VERB_CUBIC = 3;
+    public static final byte VERB_CLOSE = 4;
+
     private Path pathPath;
     private PointF lastPoint;
 
     public PXPath() {
-        pathPath = new Path();
+        this(new Path());
+    }
+
+    /**
+     * Constructs a PXPath that builds its segments into the given
+     * {@link Path}.
+     * 
+     * @param path
+     */
+    protected PXPath(Path path) {
+        pathPath = path;
         lastPoint = new PointF();
     }
 
@@ -52,7 +75,24 @@ public class PXPath extends PXShape {
      * @returns A newly allocated PXPath instance
      */
     public static PXPath createPathFromPathData(String data) {
-        PXPath pxPath = new PXPath();
+        return createPathFromPathData(data, new Path());
+    }
+
+    /**
+     * Generate a new PXPath instance using the specified data, building the
+     * segments into the given {@link Path}. Elliptical arcs are added as cubic
+     * bezier curves, so a {@link Path} subclass that intercepts the
+     * <code>moveTo</code>, <code>lineTo</code>, <code>quadTo</code>,
+     * <code>cubicTo</code> and <code>close</code> calls sees the entire
+     * flattened path.
+     * 
+     * @param data A string of path data
+     * @param target The {@link Path} to build into
+     * @returns A newly allocated PXPath instance
+     * @see #createPathFromPathData(String)
+     */
+    public static PXPath createPathFromPathData(String data, Path target) {
+        PXPath pxPath = new PXPath(target);
         char[] charData = data.toCharArray();
         PathParserHelper helper = new PathParserHelper(charData, 0);
         helper.skipWhitespace();
@@ -397,6 +437,50 @@ public class PXPath extends PXShape {
         return pxPath;
     }
 
+    /**
+     * Generate a new PXPath instance from flattened segments, as produced by
+     * a recording {@link Path} passed to
+     * {@link #createPathFromPathData(String, Path)}.
+     * 
+     * @param verbs The segment verbs ({@link #VERB_MOVE}, {@link #VERB_LINE},
+     *            {@link #VERB_QUAD}, {@link #VERB_CUBIC} or
+     *            {@link #VERB_CLOSE})
+     * @param coords The segment coordinates, in verb order
+     * @returns A newly allocated PXPath instance
+     */
+    public static PXPath createPathFromSegments(byte[] verbs, float[] coords) {
+        PXPath pxPath = new PXPath();
+        int c = 0;
+        for (byte verb : verbs) {
+            switch (verb) {
+                case VERB_MOVE:
+                    pxPath.moveTo(coords[c], coords[c + 1]);
+                    c += 2;
+                    break;
+                case VERB_LINE:
+                    pxPath.lineTo(coords[c], coords[c + 1]);
+                    c += 2;
+                    break;
+                case VERB_QUAD:
+                    pxPath.quadraticBezierToX1(coords[c], coords[c + 1], coords[c + 2],
+                            coords[c + 3]);
+                    c += 4;
+                    break;
+                case VERB_CUBIC:
+                    pxPath.cubicBezierTo(coords[c], coords[c + 1], coords[c + 2],
+                            coords[c + 3], coords[c + 4], coords[c + 5]);
+                    c += 6;
+                    break;
+                case VERB_CLOSE:
+                    pxPath.close();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown path verb " + verb);
+            }
+        }
+        return pxPath;
+    }
+
     /**
      * Add a close command to the current path
      * 
@@ -576,4 +660,16 @@ public class PXPath extends PXShape {
     protected Path newPath() {
         return ObjectPool.pathPool.checkOut(pathPath);
     }
+
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#copy(java.util.Map)
+     */
+    @Override
+    PXPath copy(Map<PXRenderable, PXRenderable> copies) {
+        PXPath copy = (PXPath) super.copy(copies);
+        copy.pathPath = new Path(pathPath);
+        copy.lastPoint = new PointF(lastPoint.x, lastPoint.y);
+        return copy;
+    }
 }
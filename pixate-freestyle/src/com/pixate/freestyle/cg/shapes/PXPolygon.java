@@ -19,6 +19,7 @@
 package com.pixate.freestyle.cg.shapes;
 
 import java.util.Arrays;
+import java.util.Map;
 
 import android.graphics.Path;
 import android.graphics.PointF;
@@ -63,7 +64,7 @@ public class PXPolygon extends PXShape {
     /**
      * Returns the array of points describing the shape of this polygon.
      */
-    protected PointF[] getPoints() {
+    public PointF[] getPoints() {
         return points;
     }
 
@@ -114,4 +115,20 @@ public class PXPolygon extends PXShape {
         }
         return resultPath;
     }
+
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#copy(java.util.Map)
+     */
+    @Override
+    PXPolygon copy(Map<PXRenderable, PXRenderable> copies) {
+        PXPolygon copy = (PXPolygon) super.copy(copies);
+        if (points != null) {
+            copy.points = new PointF[points.length];
+            for (int i = 0; i < points.length; i++) {
+                copy.points[i] = new PointF(points[i].x, points[i].y);
+            }
+        }
+        return copy;
+    }
 }
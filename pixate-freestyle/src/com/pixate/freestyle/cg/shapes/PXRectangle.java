@@ -18,6 +18,8 @@
  */
 package com.pixate.freestyle.cg.shapes;
 
+import java.util.Map;
+
 import android.graphics.Path;
 import android.graphics.Path.Direction;
 import android.graphics.RectF;
@@ -211,6 +213,22 @@ public class PXRectangle extends PXShape implements PXBoundable {
         }
     }
 
+    public Size getRadiusTopLeft() {
+        return radiusTopLeft;
+    }
+
+    public Size getRadiusTopRight() {
+        return radiusTopRight;
+    }
+
+    public Size getRadiusBottomRight() {
+        return radiusBottomRight;
+    }
+
+    public Size getRadiusBottomLeft() {
+        return radiusBottomLeft;
+    }
+
     public void setRadiusTopLeft(Size radiusTopLeft) {
         if (!ObjectUtil.areEqual(this.radiusTopLeft, radiusTopLeft)) {
             this.radiusTopLeft = radiusTopLeft;
@@ -248,6 +266,7 @@ public class PXRectangle extends PXShape implements PXBoundable {
         radiusTopRight = radii;
         radiusBottomRight = radii;
         radiusBottomLeft = radii;
+        clearPath();
     }
 
     protected boolean hasRoundedCorners() {
@@ -257,6 +276,18 @@ public class PXRectangle extends PXShape implements PXBoundable {
                 || !ObjectUtil.areEqual(this.radiusBottomLeft, Size.ZERO);
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#newGeometrySignature()
+     */
+    @Override
+    protected PXGeometrySignature newGeometrySignature() {
+        return new PXGeometrySignature(getClass(), bounds.width(), bounds.height(),
+                radiusTopLeft.width, radiusTopLeft.height, radiusTopRight.width,
+                radiusTopRight.height, radiusBottomRight.width, radiusBottomRight.height,
+                radiusBottomLeft.width, radiusBottomLeft.height);
+    }
+
     /*
      * (non-Javadoc)
      * @see com.pixate.freestyle.pxengine.cg.PXShape#newPath()
@@ -274,4 +305,17 @@ public class PXRectangle extends PXShape implements PXBoundable {
         }
         return resultPath;
     }
+
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#copy(java.util.Map)
+     */
+    @Override
+    PXRectangle copy(Map<PXRenderable, PXRenderable> copies) {
+        PXRectangle copy = (PXRectangle) super.copy(copies);
+        if (bounds != null) {
+            copy.bounds = new RectF(bounds);
+        }
+        return copy;
+    }
 }
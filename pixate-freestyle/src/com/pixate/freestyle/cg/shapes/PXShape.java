@@ -18,6 +18,8 @@
  */
 package com.pixate.freestyle.cg.shapes;
 
+import java.util.Map;
+
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
@@ -43,12 +45,13 @@ import com.pixate.freestyle.util.ObjectUtil;
  * A common base class for all shapes in ShapeKit. This class can be used to
  * cache the geometry of the shape it describes.
  */
-public abstract class PXShape implements PXRenderable, PXPaintable {
+public abstract class PXShape implements PXRenderable, PXPaintable, Cloneable {
 
     protected PXRenderable parent;
     protected PXShapeDocument owningDocument;
 
     protected Path path;
+    private PXGeometrySignature geometrySignature;
     protected PXStrokeRenderer stroke;
     protected PXPaint fillColor;
     protected float opacity;
@@ -59,6 +62,8 @@ public abstract class PXShape implements PXRenderable, PXPaintable {
     protected PXOffsets padding;
 
     private Picture picture;
+    // the inherited opacity the picture was recorded with
+    private float pictureOpacity = 1.0F;
 
     /**
      * Constructs a PXShape
@@ -244,6 +249,19 @@ public abstract class PXShape implements PXRenderable, PXPaintable {
         return path;
     }
 
+    /**
+     * Returns a {@link PXGeometrySignature} that describes this shape's
+     * geometry regardless of its position. The signature is cached along with
+     * the path. This call may return <code>null</code>, which indicates that
+     * the shape cannot describe its geometry in a compact form.
+     */
+    public PXGeometrySignature getGeometrySignature() {
+        if (geometrySignature == null) {
+            geometrySignature = newGeometrySignature();
+        }
+        return geometrySignature;
+    }
+
     /*
      * (non-Javadoc)
      * @see com.pixate.freestyle.pxengine.cg.PXRenderable#getTransform()
@@ -273,6 +291,7 @@ public abstract class PXShape implements PXRenderable, PXPaintable {
      * accessed.
      */
     public void clearPath() {
+        geometrySignature = null;
         if (path != null) {
             ObjectPool.pathPool.checkIn(path);
             path = null;
@@ -323,7 +342,22 @@ public abstract class PXShape implements PXRenderable, PXPaintable {
      * , boolean)
      */
     public void render(Canvas context, boolean cache) {
-        // TODO Auto-generated method stub
+        render(context, cache, 1.0F);
+    }
+
+    /**
+     * Render this shape, multiplying its opacity with an opacity inherited
+     * from a parent. Parents that push their opacity down to their children,
+     * instead of allocating a layer for it, render them through this method.
+     * A {@link Picture} is only drawn when it was recorded with the same
+     * inherited opacity.
+     * 
+     * @param context
+     * @param cache
+     * @param inheritedOpacity
+     * @see #requiresOpacityLayer()
+     */
+    void render(Canvas context, boolean cache, float inheritedOpacity) {
         // Don't draw if we're not visible
         if (!visible) {
             return;
@@ -331,20 +365,25 @@ public abstract class PXShape implements PXRenderable, PXPaintable {
         // Using a Picture drawing with Hardware Acceleration on will not work,
         // so in case it's on, we use a direct rendering on the given context.
         // TODO - isHardwareAccelerated is API 11 and above
-        if (cache && picture == null && !context.isHardwareAccelerated()) {
+        if (cache && (picture == null || pictureOpacity != inheritedOpacity)
+                && !context.isHardwareAccelerated()) {
             // Create a Picture and record all drawings into it.
             // We will use this picture later to render the shape.
-            picture = new Picture();
+            Picture recording = new Picture();
             Rect clipBounds = context.getClipBounds();
-            innerRender(picture.beginRecording(clipBounds.width(), clipBounds.height()));
-            picture.endRecording();
+            innerRender(recording.beginRecording(clipBounds.width(), clipBounds.height()),
+                    inheritedOpacity);
+            recording.endRecording();
+            pictureOpacity = inheritedOpacity;
+            picture = recording;
         }
         int saveCount = context.save();
-        if (picture != null) {
-            context.drawPicture(picture);
+        Picture cached = picture;
+        if (cached != null && pictureOpacity == inheritedOpacity) {
+            context.drawPicture(cached);
         } else {
             // direct draw (Cache is false, or Hardware Acceleration is on)
-            innerRender(context);
+            innerRender(context, inheritedOpacity);
         }
         context.restoreToCount(saveCount);
     }
@@ -360,66 +399,88 @@ public abstract class PXShape implements PXRenderable, PXPaintable {
     }
 
     /**
-     * Inner render the canvas.
+     * Inner render the canvas, while applying an opacity that was inherited
+     * from a parent shape on top of this shape's opacity.
      * 
      * @param canvas
+     * @param inheritedOpacity
      */
-    private void innerRender(Canvas canvas) {
+    private void innerRender(Canvas canvas, float inheritedOpacity) {
         if (!transform.isIdentity()) {
-            // apply transform
+            // apply transform. The canvas maps the cached path, so no
+            // transformed copy of the path is built or kept.
             canvas.concat(transform);
         }
 
         // apply clipping path, if we have one
         if (clippingPath != null) {
-            canvas.clipPath(clippingPath.getPath());
+            Path clip = clippingPath.getPath();
+            if (clip != null) {
+                canvas.clipPath(clip);
+            }
         }
 
-        // setup transparency layer
+        // setup transparency. When nothing in this shape overlaps, the opacity
+        // is carried by the paints alpha and we avoid an offscreen layer.
+        float effectiveOpacity = opacity * inheritedOpacity;
         int alphaSaveCount = -1;
-        if (opacity < 1.0F) {
-            int alpha = (int) (opacity * 255);
-            alphaSaveCount = canvas.saveLayerAlpha(new RectF(canvas.getClipBounds()), alpha,
-                    Canvas.HAS_ALPHA_LAYER_SAVE_FLAG);
+        int paintAlpha = 255;
+        float childrenOpacity = 1.0F;
+        if (effectiveOpacity < 1.0F) {
+            int alpha = (int) (effectiveOpacity * 255);
+            if (requiresOpacityLayer()) {
+                alphaSaveCount = canvas.saveLayerAlpha(new RectF(canvas.getClipBounds()), alpha,
+                        Canvas.HAS_ALPHA_LAYER_SAVE_FLAG);
+            } else {
+                paintAlpha = alpha;
+                childrenOpacity = effectiveOpacity;
+            }
         }
 
         // render content
         if (getPath() != null) {
             // Apply shadow outset
             if (shadow != null) {
-                shadow.applyOutsetToPath(path, canvas);
+                shadow.applyOutsetToPath(path, getGeometrySignature(), canvas);
             }
             // Set fill
             if (fillColor != null) {
                 Paint fillPaint = ObjectPool.paintPool.checkOut();
                 fillPaint.setStyle(Style.FILL);
+                fillPaint.setAlpha(paintAlpha);
                 fillColor.applyFillToPath(path, fillPaint, canvas);
                 // Check the paint back into the pool
                 ObjectPool.paintPool.checkIn(fillPaint);
             }
             // Apply shadow insets
             if (shadow != null) {
-                shadow.applyInsetToPath(path, canvas);
+                shadow.applyInsetToPath(path, getGeometrySignature(), canvas);
             }
             // Set stroke
             if (stroke != null) {
-                // Passing a null paint. This will eventually be rendered as new
-                // Paint with Paint.ANTI_ALIAS_FLAG.
-                stroke.applyStrokeToPath(path, null, canvas);
+                if (paintAlpha < 255) {
+                    Paint strokePaint = ObjectPool.paintPool.checkOut();
+                    strokePaint.setAlpha(paintAlpha);
+                    stroke.applyStrokeToPath(path, strokePaint, canvas);
+                    ObjectPool.paintPool.checkIn(strokePaint);
+                } else {
+                    // Passing a null paint. This will eventually be rendered as
+                    // new Paint with Paint.ANTI_ALIAS_FLAG.
+                    stroke.applyStrokeToPath(path, null, canvas);
+                }
             }
         }
 
         // Draw the children
-        renderChildren(canvas);
+        renderChildren(canvas, childrenOpacity);
 
-        if (opacity < 1.0F) {
+        if (alphaSaveCount != -1) {
             canvas.restoreToCount(alphaSaveCount);
         }
-        // Release the path after the rendering. Usually, this method will
-        // render into a Picture, so no new Path will be created, unless a
-        // complete redraw is performed after a Picture disposal.
-        ObjectPool.pathPool.checkIn(path);
-        path = null;
+        // Note that the path is kept after the rendering. Redraws that are not
+        // served from a Picture (e.g. when Hardware Acceleration is on) will
+        // re-use the same geometry until one of the shape's setters calls
+        // clearPath().
     }
 
     /**
@@ -432,6 +493,84 @@ public abstract class PXShape implements PXRenderable, PXPaintable {
         return null;
     }
 
+    /**
+     * Build's the {@link PXGeometrySignature} of this instance's shape.
+     * Subclasses may override. By default, <code>null</code> is returned.
+     * 
+     * @return A {@link PXGeometrySignature} (can be <code>null</code>)
+     */
+    protected PXGeometrySignature newGeometrySignature() {
+        return null;
+    }
+
+    /**
+     * Computes and caches the geometry of this shape (its path and geometry
+     * signature). After this call, rendering the shape only reads the cached
+     * geometry, which allows a shared shape to be rendered from multiple
+     * threads as long as it's not modified.
+     */
+    void prepareGeometry() {
+        getPath();
+        getGeometrySignature();
+        if (clippingPath != null) {
+            clippingPath.prepareGeometry();
+        }
+    }
+
+    /**
+     * Returns a deep copy of this shape, which can be modified without
+     * affecting this shape. The copy has no parent, and no cached geometry or
+     * {@link Picture}. Paints, strokes and shadows are shared, since they are
+     * replaced through the setters rather than modified. Subclasses that hold
+     * mutable state should override, and copy that state.
+     * 
+     * @param copies Collects each copied shape, keyed by its original
+     * @return A new {@link PXShape}
+     */
+    PXShape copy(Map<PXRenderable, PXRenderable> copies) {
+        PXShape copy;
+        try {
+            copy = (PXShape) clone();
+        } catch (CloneNotSupportedException e) {
+            // can't happen, we are Cloneable
+            throw new IllegalStateException(e);
+        }
+        copy.parent = null;
+        copy.owningDocument = null;
+        copy.path = null;
+        copy.geometrySignature = null;
+        copy.picture = null;
+        copy.pictureOpacity = 1.0F;
+        copy.transform = new Matrix(transform);
+        if (clippingPath != null) {
+            copy.clippingPath = clippingPath.copy(copies);
+        }
+        copies.put(this, copy);
+        return copy;
+    }
+
+    /**
+     * Returns <code>true</code> if rendering this shape with an opacity
+     * requires an offscreen layer. A layer is needed whenever the shape draws
+     * primitives that overlap each other (e.g. a fill and a stroke, or a
+     * shadow under the fill), or when one of its paints cannot be modulated by
+     * a {@link Paint} alpha. Otherwise, the opacity is applied directly to the
+     * fill and stroke paints. Subclasses that render children should
+     * override.
+     * 
+     * @return <code>true</code> if an offscreen layer is required for the
+     *         opacity; <code>false</code> otherwise.
+     */
+    protected boolean requiresOpacityLayer() {
+        if (shadow != null || (fillColor != null && stroke != null)) {
+            return true;
+        }
+        if (fillColor != null) {
+            return !fillColor.supportsPaintAlpha();
+        }
+        return stroke != null && !stroke.supportsPaintAlpha();
+    }
+
     /**
      * Render any children associated with this shape. This method is used to
      * render any child content associated with this shape. In most cases, this
@@ -444,4 +583,19 @@ public abstract class PXShape implements PXRenderable, PXPaintable {
     protected void renderChildren(Canvas context) {
         // No Op
     }
+
+    /**
+     * Render any children associated with this shape, applying the given
+     * opacity to them. The opacity is lower than 1 only when
+     * {@link #requiresOpacityLayer()} returned <code>false</code> for a
+     * translucent shape. By default, this method calls
+     * {@link #renderChildren(Canvas)}.
+     * 
+     * @param context The context into which children of this shape should be
+     *            rendered.
+     * @param opacity The opacity to apply to the children.
+     */
+    protected void renderChildren(Canvas context, float opacity) {
+        renderChildren(context);
+    }
 }
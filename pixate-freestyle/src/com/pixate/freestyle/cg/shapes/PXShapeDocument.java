@@ -18,8 +18,11 @@
  */
 package com.pixate.freestyle.cg.shapes;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import android.graphics.Canvas;
 import android.graphics.Matrix;
@@ -58,6 +61,9 @@ public class PXShapeDocument implements PXRenderable {
     protected PXShapeView parentView;
     protected Matrix transform;
     protected PXOffsets padding;
+    // the top-level shape of the template this instance shares its shapes
+    // with, or null when the shapes are our own
+    private PXRenderable templateShape;
 
     /**
      * Constructs a new PXScene
@@ -131,6 +137,9 @@ public class PXShapeDocument implements PXRenderable {
      */
     public void setShape(PXRenderable shape) {
         if (!ObjectUtil.areEqual(shape, this.shape)) {
+            // the names of a shared template need to point at our own shapes
+            ensureOwnShapes();
+
             // disconnect parent from old shape
             if (this.shape != null) {
                 this.shape.setParent(null);
@@ -159,18 +168,33 @@ public class PXShapeDocument implements PXRenderable {
     }
 
     /**
-     * Return the shape in this scene with the specified name.
+     * Return the shape in this scene with the specified name. In case this
+     * document shares its shapes with a template (see {@link #newInstance()}),
+     * the shapes are copied first, so the returned shape can be modified.
      * 
      * @param name The name of the shape
      * @returns A {@link PXRenderable} or <code>null</code>.
      */
     public PXRenderable getShape(String name) {
         if (nameToShape != null && name != null) {
+            ensureOwnShapes();
             return nameToShape.get(name);
         }
         return null;
     }
 
+    /**
+     * Returns the names of the shapes registered with this scene.
+     * 
+     * @return A set of names (may be empty)
+     */
+    public Set<String> getShapeNames() {
+        if (nameToShape == null) {
+            return Collections.emptySet();
+        }
+        return nameToShape.keySet();
+    }
+
     /**
      * Register a shape with the specified name with this scene.
      * 
@@ -179,6 +203,7 @@ public class PXShapeDocument implements PXRenderable {
      */
     public void addShape(String name, PXRenderable shape) {
         if (name != null && shape != null) {
+            ensureOwnShapes();
             if (nameToShape == null) {
                 nameToShape = new HashMap<String, PXRenderable>(6);
             }
@@ -292,6 +317,86 @@ public class PXShapeDocument implements PXRenderable {
         render(context);
     }
 
+    /**
+     * Returns a new document that shares the shapes of this document. The new
+     * document holds its own bounds, transform, and a copy of the top-level
+     * group (viewport, size and opacity), so it can be sized and rendered
+     * independently. The shapes under the top-level group are shared until
+     * they are accessed through {@link #getShape(String)} or the group, at
+     * which point the new document copies them.
+     * 
+     * @return A new {@link PXShapeDocument}
+     * @see #prepareGeometry()
+     */
+    public PXShapeDocument newInstance() {
+        PXShapeDocument copy = new PXShapeDocument();
+        if (nameToShape != null) {
+            // the copy registers its own shapes, so it can't share the map
+            copy.nameToShape = new HashMap<String, PXRenderable>(nameToShape);
+        }
+        copy.padding = padding;
+        if (transform != null) {
+            copy.transform = new Matrix(transform);
+        }
+        if (shape instanceof PXShapeGroup) {
+            copy.setShape(((PXShapeGroup) shape).newInstance());
+            copy.templateShape = shape;
+        } else if (shape instanceof PXShape) {
+            Map<PXRenderable, PXRenderable> copies =
+                    new IdentityHashMap<PXRenderable, PXRenderable>();
+            copy.setShape(((PXShape) shape).copy(copies));
+            copy.mapShapeNames(copies);
+        } else {
+            // can't be copied, so it's shared as is
+            copy.shape = shape;
+        }
+        if (bounds != null) {
+            copy.bounds = new RectF(bounds);
+        }
+        return copy;
+    }
+
+    /**
+     * Copies the shapes this document shares with its template, and maps the
+     * shape names to the copies.
+     */
+    void ensureOwnShapes() {
+        if (templateShape == null) {
+            return;
+        }
+        Map<PXRenderable, PXRenderable> copies =
+                new IdentityHashMap<PXRenderable, PXRenderable>();
+        copies.put(templateShape, shape);
+        templateShape = null;
+        if (shape instanceof PXShapeGroup) {
+            ((PXShapeGroup) shape).copyShapes(copies);
+        }
+        mapShapeNames(copies);
+    }
+
+    private void mapShapeNames(Map<PXRenderable, PXRenderable> copies) {
+        if (nameToShape != null) {
+            Map<String, PXRenderable> names = new HashMap<String, PXRenderable>(
+                    nameToShape.size());
+            for (Map.Entry<String, PXRenderable> entry : nameToShape.entrySet()) {
+                PXRenderable copy = copies.get(entry.getValue());
+                names.put(entry.getKey(), copy != null ? copy : entry.getValue());
+            }
+            nameToShape = names;
+        }
+    }
+
+    /**
+     * Computes and caches the geometry of all the shapes in this document. A
+     * document that is used as a template for {@link #newInstance()} should
+     * call this once, so its shapes are not modified while rendering.
+     */
+    public void prepareGeometry() {
+        if (shape instanceof PXShape) {
+            ((PXShape) shape).prepareGeometry();
+        }
+    }
+
     public Drawable renderToImage(RectF bounds, boolean opaque) {
         if (shape != null) {
             return shape.renderToImage(bounds, opaque);
@@ -19,6 +19,8 @@
 package com.pixate.freestyle.cg.shapes;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import android.graphics.Canvas;
 import android.graphics.Matrix;
@@ -64,6 +66,8 @@ public class PXShapeGroup extends PXShape {
     private AlignViewPortType viewportAlignment;
     private CropType viewportCrop;
     private Matrix viewPortTransform;
+    // true when the children list is shared with a template group
+    private boolean sharedShapes;
 
     /**
      * Constructs a renderable shapes group.
@@ -152,6 +156,7 @@ public class PXShapeGroup extends PXShape {
     public void addShape(PXRenderable shape) {
         if (shape != null) {
             // add shape to child list
+            ensureOwnShapes();
             shapes.add(shape);
 
             // set child's parent
@@ -166,6 +171,7 @@ public class PXShapeGroup extends PXShape {
      */
     public void removeShape(PXRenderable shape) {
         if (shape != null) {
+            ensureOwnShapes();
             shapes.remove(shape);
             // TODO: verify this is in this group
             shape.setParent(null);
@@ -174,12 +180,15 @@ public class PXShapeGroup extends PXShape {
 
     /**
      * Returns the shape at the specified index. <code>null</code> is returned
-     * for index values that are out of range.
+     * for index values that are out of range. In case this group shares its
+     * shapes with a template (see {@link PXShapeDocument#newInstance()}), the
+     * shapes are copied first, so the returned shape can be modified.
      * 
      * @param index The index of the shape to return.
      * @returns A PXRenderable or <code>null</code>
      */
     public PXRenderable getShapeAtIndex(int index) {
+        ensureOwnShapes();
         return (shapes != null && index > -1 && index <= shapes.size() - 1) ? shapes.get(index)
                 : null;
     }
@@ -299,6 +308,17 @@ public class PXShapeGroup extends PXShape {
      * @param context A {@link Canvas} context.
      */
     public void renderChildren(Canvas context) {
+        renderChildren(context, 1.0F);
+    }
+
+    /**
+     * Render the group, pushing the given opacity down to its children.
+     * 
+     * @param context A {@link Canvas} context.
+     * @param opacity The opacity to apply to the children.
+     */
+    @Override
+    protected void renderChildren(Canvas context, float opacity) {
         Matrix transform = getViewPortTransform();
         if (transform != null) {
             context.concat(transform);
@@ -306,15 +326,145 @@ public class PXShapeGroup extends PXShape {
             // TODO - Do we want to log this?
             // Log.w(TAG, "PXShapeGroup#getViewPortTransform() returned null");
         }
-        // Render the group
+        // Render the group. The children never record a Picture (cache is
+        // false), so children shared with a template are only read here.
         for (PXRenderable renderable : shapes) {
-            renderable.render(context, false);
+            if (opacity < 1.0F) {
+                // requiresOpacityLayer() made sure this is a PXShape. Like the
+                // opaque case below, this reuses a Picture the child may
+                // already have (for the same opacity)
+                ((PXShape) renderable).render(context, false, opacity);
+            } else {
+                renderable.render(context, false);
+            }
+        }
+    }
+
+    /**
+     * A group needs an offscreen layer for its opacity only when it holds more
+     * than one child (true group opacity), or when its only child is not a
+     * {@link PXShape}. A single shape child renders the group's opacity on its
+     * own, and will allocate a layer only if it needs one.
+     * 
+     * @see com.pixate.freestyle.cg.shapes.PXShape#requiresOpacityLayer()
+     */
+    @Override
+    protected boolean requiresOpacityLayer() {
+        if (super.requiresOpacityLayer()) {
+            return true;
+        }
+        int count = getShapeCount();
+        if (count == 0) {
+            return false;
+        }
+        return count > 1 || (getPath() != null && (fillColor != null || stroke != null))
+                || !(shapes.get(0) instanceof PXShape);
+    }
+
+    /**
+     * Returns a new group that shares this group's children, and holds its
+     * own copy of the group's viewport, size, alignment, opacity and
+     * transform. The shared children are not re-parented, and are only
+     * rendered through the group. Accessing, adding or removing a shape of
+     * the returned group will first copy the children (see
+     * {@link #copyShapes(Map)}).
+     * 
+     * @return A new {@link PXShapeGroup}
+     * @see PXShapeDocument#newInstance()
+     */
+    PXShapeGroup newInstance() {
+        PXShapeGroup copy = new PXShapeGroup();
+        copy.shapes = shapes;
+        copy.sharedShapes = true;
+        copy.width = width;
+        copy.height = height;
+        copy.viewport = viewport != null ? new RectF(viewport) : null;
+        copy.viewportAlignment = viewportAlignment;
+        copy.viewportCrop = viewportCrop;
+        copy.opacity = opacity;
+        copy.visible = visible;
+        copy.transform = new Matrix(transform);
+        copy.fillColor = fillColor;
+        copy.stroke = stroke;
+        copy.shadow = shadow;
+        copy.clippingPath = clippingPath;
+        copy.padding = padding;
+        return copy;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#prepareGeometry()
+     */
+    @Override
+    void prepareGeometry() {
+        super.prepareGeometry();
+        if (shapes != null) {
+            for (PXRenderable renderable : shapes) {
+                if (renderable instanceof PXShape) {
+                    ((PXShape) renderable).prepareGeometry();
+                }
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#copy(java.util.Map)
+     */
+    @Override
+    PXShapeGroup copy(Map<PXRenderable, PXRenderable> copies) {
+        PXShapeGroup copy = (PXShapeGroup) super.copy(copies);
+        copy.viewport = viewport != null ? new RectF(viewport) : null;
+        copy.viewPortTransform = null;
+        copy.copyShapes(copies);
+        return copy;
+    }
+
+    /**
+     * Replaces the children of this group with deep copies, so they can be
+     * modified without affecting the group they were copied from.
+     * 
+     * @param copies Collects each copied shape, keyed by its original
+     */
+    void copyShapes(Map<PXRenderable, PXRenderable> copies) {
+        if (shapes == null) {
+            return;
+        }
+        ArrayList<PXRenderable> copied = new ArrayList<PXRenderable>(shapes.size());
+        for (PXRenderable renderable : shapes) {
+            if (renderable instanceof PXShape) {
+                PXShape copy = ((PXShape) renderable).copy(copies);
+                copy.setParent(this);
+                copied.add(copy);
+            } else {
+                // can't be copied, so it's shared as is
+                copied.add(renderable);
+            }
+        }
+        shapes = copied;
+        sharedShapes = false;
+    }
+
+    private void ensureOwnShapes() {
+        if (sharedShapes) {
+            if (parent instanceof PXShapeDocument) {
+                // the document copies our shapes, and maps its names to them
+                ((PXShapeDocument) parent).ensureOwnShapes();
+            } else {
+                copyShapes(new IdentityHashMap<PXRenderable, PXRenderable>());
+            }
         }
     }
 
     // TODO - We'll need to manually call this one to clear up the childern's
     // parent. I really don't want to put this in a finalize() method...
     public void dealloc() {
+        if (sharedShapes) {
+            // the children belong to the template group
+            shapes = null;
+            sharedShapes = false;
+        }
         if (shapes != null) {
             try {
                 for (PXRenderable shape : shapes) {
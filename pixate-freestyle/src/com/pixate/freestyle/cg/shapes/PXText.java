@@ -18,6 +18,8 @@
  */
 package com.pixate.freestyle.cg.shapes;
 
+import java.util.Map;
+
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
@@ -180,4 +182,16 @@ public class PXText extends PXShape {
         return path;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.shapes.PXShape#copy(java.util.Map)
+     */
+    @Override
+    PXText copy(Map<PXRenderable, PXRenderable> copies) {
+        PXText copy = (PXText) super.copy(copies);
+        if (origin != null) {
+            copy.origin = new PointF(origin.x, origin.y);
+        }
+        return copy;
+    }
 }
@@ -98,6 +98,10 @@ public class PXStroke implements PXStrokeRenderer {
         return color != null && color.isOpaque();
     }
 
+    public boolean supportsPaintAlpha() {
+        return color == null || color.supportsPaintAlpha();
+    }
+
     public void applyStrokeToPath(Path path, Paint paint, Canvas context) {
         if (color != null && width > 0) {
             // stroke and possibly dash incoming path
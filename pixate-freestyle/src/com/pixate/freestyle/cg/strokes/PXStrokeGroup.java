@@ -72,6 +72,16 @@ public class PXStrokeGroup implements PXStrokeRenderer {
         return true;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.strokes.PXStrokeRenderer#supportsPaintAlpha()
+     */
+    public boolean supportsPaintAlpha() {
+        // multiple strokes are layered over each other
+        return strokes == null || strokes.isEmpty()
+                || (strokes.size() == 1 && strokes.get(0).supportsPaintAlpha());
+    }
+
     /*
      * (non-Javadoc)
      * @see
@@ -42,4 +42,14 @@ public interface PXStrokeRenderer {
      * Returns if this strokes requires rendering with alpha
      */
     boolean isOpaque();
+
+    /**
+     * Returns <code>true</code> if this stroke honors the alpha of the
+     * {@link Paint} that is passed to
+     * {@link #applyStrokeToPath(Path, Paint, Canvas)}, and draws the contour in
+     * a single pass.
+     * 
+     * @see com.pixate.freestyle.cg.paints.PXPaint#supportsPaintAlpha()
+     */
+    boolean supportsPaintAlpha();
 }
@@ -51,6 +51,14 @@ public class PXStrokeStroke implements PXStrokeRenderer {
         return strokeToApply != null && strokeToApply.isOpaque();//
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.cg.strokes.PXStrokeRenderer#supportsPaintAlpha()
+     */
+    public boolean supportsPaintAlpha() {
+        return strokeToApply == null || strokeToApply.supportsPaintAlpha();
+    }
+
     public PXStroke getStrokeEffect() {
         return strokeEffect;
     }
@@ -31,7 +31,7 @@ import android.net.Uri;
 import android.util.AttributeSet;
 import android.view.View;
 
-import com.pixate.freestyle.cg.parsing.PXSVGLoader;
+import com.pixate.freestyle.cg.parsing.PXSVGCache;
 import com.pixate.freestyle.cg.shapes.PXShapeDocument;
 import com.pixate.freestyle.util.ObjectUtil;
 import com.pixate.freestyle.util.PXLog;
@@ -174,7 +174,7 @@ public class PXShapeView extends View {
 
     protected void loadDocument(String resourcePath) {
         try {
-            document = PXSVGLoader.loadFromStream(getContext().getAssets().open(resourcePath));
+            document = PXSVGCache.loadFromAsset(getContext().getAssets(), resourcePath);
         } catch (IOException e) {
             PXLog.e(TAG, e, "Error loading the document at " + resourcePath);
         }
@@ -182,7 +182,7 @@ public class PXShapeView extends View {
 
     protected void loadDocumentFromURL(String url) {
         try {
-            document = PXSVGLoader.loadFromURL(Uri.parse(url));
+            document = PXSVGCache.loadFromURL(Uri.parse(url));
         } catch (IOException e) {
             PXLog.e(TAG, e, "Error loading the document at " + url);
         }
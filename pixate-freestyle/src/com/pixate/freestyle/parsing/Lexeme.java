@@ -104,6 +104,6 @@ public class Lexeme<T> {
     @Override
     public String toString() {
         return MessageFormat.format("{0} {1}-{2}: {3}", getTypeName(), _offset, getEndingOffset(),
-                _value);
+                getValue());
     }
 }
@@ -16,7 +16,6 @@
 package com.pixate.freestyle.pxcomponentkit.view;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
 
 import android.content.res.AssetManager;
@@ -25,7 +24,7 @@ import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 
 import com.pixate.freestyle.PXConstants;
-import com.pixate.freestyle.cg.parsing.PXSVGLoader;
+import com.pixate.freestyle.cg.parsing.PXSVGCache;
 import com.pixate.freestyle.cg.shapes.PXShapeDocument;
 import com.pixate.freestyle.util.PXLog;
 
@@ -93,22 +92,13 @@ public class PXShapeDrawable extends BasePXShapeDrawable {
 			return scene;
 		}
 		if (scene == null && asset != null) {
-			InputStream inputStream = null;
 			try {
-				inputStream = manager.open(asset);
-				scene = PXSVGLoader.loadFromStream(inputStream);
+				scene = PXSVGCache.loadFromAsset(manager, asset);
 				if (scene != null) {
 					scene.setViewport(new RectF(getBounds()));
 				}
 			} catch (IOException e) {
 				PXLog.e(PXConstants.TAG, "Error loading an asset", e);
-			} finally {
-				try {
-					if (inputStream != null) {
-						inputStream.close();
-					}
-				} catch (IOException ioe) {
-				}
 			}
 		}
 		return scene;
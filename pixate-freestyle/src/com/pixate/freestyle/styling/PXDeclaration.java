@@ -33,7 +33,7 @@ import com.pixate.freestyle.PXEngineConfiguration.PXUpdateStylesType;
 import com.pixate.freestyle.cg.math.PXDimension;
 import com.pixate.freestyle.cg.math.PXOffsets;
 import com.pixate.freestyle.cg.paints.PXPaint;
-import com.pixate.freestyle.cg.parsing.PXTransformParser;
+import com.pixate.freestyle.cg.parsing.PXTransformCache;
 import com.pixate.freestyle.cg.shadow.PXShadowPaint;
 import com.pixate.freestyle.styling.infos.PXAnimationInfo;
 import com.pixate.freestyle.styling.infos.PXBorderInfo;
@@ -59,6 +59,7 @@ public class PXDeclaration {
     private static final PXValueParser parser = new PXValueParser();
 
     private String name = "<unknown>";
+    private int nameSymbol = PXSymbolTable.NONE;
     private String filename = null;
     private String source = null;
     private List<PXStylesheetLexeme> lexemes = null;
@@ -86,6 +87,7 @@ public class PXDeclaration {
 
     public PXDeclaration(String name) {
         this.name = name;
+        this.nameSymbol = PXSymbolTable.intern(name);
     }
 
     public PXDeclaration(String name, String value) {
@@ -105,12 +107,37 @@ public class PXDeclaration {
         setSource(source, filename, PXValueParser.lexemesForSource(source));
     }
 
+    /**
+     * Returns a new declaration with the name, source and priority of this
+     * one.
+     */
+    public PXDeclaration copy() {
+        PXDeclaration result = new PXDeclaration();
+        result.name = name;
+        result.nameSymbol = nameSymbol;
+        result.filename = filename;
+        result.source = source;
+        result.lexemes = lexemes;
+        result.important = important;
+        return result;
+    }
+
     public String getName() {
         return name;
     }
 
+    /**
+     * Returns the {@link PXSymbolTable} symbol of this declaration's name.
+     */
+    public int getNameSymbol() {
+        if (nameSymbol == PXSymbolTable.NONE) {
+            nameSymbol = PXSymbolTable.intern(name);
+        }
+        return nameSymbol;
+    }
+
     public Matrix getAffineTransformValue() {
-        return (new PXTransformParser()).parse(getStringValue());
+        return PXTransformCache.getTransform(getStringValue());
     }
 
     public List<PXAnimationInfo> getAnimationInfoList() {
@@ -160,6 +187,25 @@ public class PXDeclaration {
         return parser.parseURL(lexemes);
     }
 
+    /**
+     * Returns all the <code>url(...)</code> values that appear in this
+     * declaration (e.g. the images of a layered background).
+     * 
+     * @return A list of {@link Uri} (may be empty)
+     */
+    public List<Uri> getReferencedURLs() {
+        List<Uri> result = new ArrayList<Uri>(1);
+        if (lexemes != null) {
+            for (PXStylesheetLexeme lexeme : lexemes) {
+                if (lexeme.getType() == PXStylesheetTokenType.URL) {
+                    String path = (String) lexeme.getValue();
+                    result.add(Uri.parse(path.replace(" ", "%20")));
+                }
+            }
+        }
+        return result;
+    }
+
     public List<PXAnimationDirection> getAnimationDirectionList() {
         return parser.parseAnimationDirectionList(lexemes);
     }
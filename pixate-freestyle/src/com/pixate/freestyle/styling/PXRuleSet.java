@@ -18,7 +18,10 @@ package com.pixate.freestyle.styling;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 import com.pixate.freestyle.parsing.PXSourceWriter;
 import com.pixate.freestyle.styling.combinators.PXCombinator;
@@ -30,8 +33,14 @@ import com.pixate.freestyle.util.CollectionUtil;
 
 public class PXRuleSet extends PXDeclarationContainer {
 
+    // the low bits of the cascade order hold the source order
+    private static final int SOURCE_ORDER_BITS = Long.SIZE - 1 - PXSpecificity.PACKED_BITS;
+    private static final int SOURCE_ORDER_MAX = (1 << SOURCE_ORDER_BITS) - 1;
+
     private PXSpecificity specificity;
     private List<PXSelector> selectors;
+    private int sourceOrder;
+    private long cascadeOrder;
 
     public PXRuleSet() {
         specificity = new PXSpecificity();
@@ -44,7 +53,30 @@ public class PXRuleSet extends PXDeclarationContainer {
             }
             selectors.add(selector);
             selector.incrementSpecificity(specificity);
+            updateCascadeOrder();
+        }
+    }
+
+    /**
+     * Returns a new rule set with the selectors and copies of the
+     * declarations of this one. Its source order and origin are left for the
+     * stylesheet it's added to.
+     */
+    public PXRuleSet copy() {
+        PXRuleSet result = new PXRuleSet();
+        if (selectors != null) {
+            for (PXSelector selector : selectors) {
+                result.addSelector(selector);
+            }
+        }
+        if (declarations != null) {
+            result.declarations = new ArrayList<PXDeclaration>(declarations.size());
+            result.names = new HashSet<String>(names);
+            for (PXDeclaration declaration : declarations) {
+                result.declarations.add(declaration.copy());
+            }
         }
+        return result;
     }
 
     public List<PXSelector> getSelectors() {
@@ -89,6 +121,33 @@ public class PXRuleSet extends PXDeclarationContainer {
 
     public void setSpecificity(PXSpecificityType specificity, int value) {
         this.specificity.setSpecificity(specificity, value);
+        updateCascadeOrder();
+    }
+
+    /**
+     * Sets the position of this rule set in its stylesheet. The cascade order
+     * holds 23 bits of source order. Positions past that are clamped, so they
+     * never carry into the specificity; rule sets that far down a stylesheet
+     * are ordered by specificity only.
+     * 
+     * @param sourceOrder
+     */
+    public void setSourceOrder(int sourceOrder) {
+        this.sourceOrder = Math.max(0, Math.min(sourceOrder, SOURCE_ORDER_MAX));
+        updateCascadeOrder();
+    }
+
+    /**
+     * Returns the specificity and source order of this rule set, packed into
+     * a long. A rule set with a higher cascade order wins over rule sets with
+     * a lower one.
+     */
+    public long getCascadeOrder() {
+        return cascadeOrder;
+    }
+
+    private void updateCascadeOrder() {
+        cascadeOrder = (specificity.getPackedValue() << SOURCE_ORDER_BITS) | sourceOrder;
     }
 
     @Override
@@ -118,20 +177,91 @@ public class PXRuleSet extends PXDeclarationContainer {
         return writer.toString();
     }
 
+    /**
+     * Returns a new list with the rule sets of two lists that are in cascade
+     * order. A rule set that is in both lists is added once, wherever it is in
+     * each of them, so rule sets with the same cascade order (for example when
+     * their source order was never set) are not duplicated.
+     * 
+     * @param lhs
+     * @param rhs
+     * @return The rule sets, in cascade order
+     */
+    public static List<PXRuleSet> mergeCascadeOrdered(List<PXRuleSet> lhs, List<PXRuleSet> rhs) {
+        int lhsSize = (lhs != null) ? lhs.size() : 0;
+        int rhsSize = (rhs != null) ? rhs.size() : 0;
+        List<PXRuleSet> result = new ArrayList<PXRuleSet>(lhsSize + rhsSize);
+        Set<PXRuleSet> added = Collections
+                .newSetFromMap(new IdentityHashMap<PXRuleSet, Boolean>(lhsSize + rhsSize));
+        int l = 0;
+        int r = 0;
+        while (l < lhsSize && r < rhsSize) {
+            PXRuleSet left = lhs.get(l);
+            PXRuleSet right = rhs.get(r);
+            if (left.cascadeOrder <= right.cascadeOrder) {
+                addOnce(result, added, left);
+                l++;
+            } else {
+                addOnce(result, added, right);
+                r++;
+            }
+        }
+        for (; l < lhsSize; l++) {
+            addOnce(result, added, lhs.get(l));
+        }
+        for (; r < rhsSize; r++) {
+            addOnce(result, added, rhs.get(r));
+        }
+        return result;
+    }
+
+    private static void addOnce(List<PXRuleSet> result, Set<PXRuleSet> added,
+            PXRuleSet ruleSet) {
+        if (added.add(ruleSet)) {
+            result.add(ruleSet);
+        }
+    }
+
+    /**
+     * Inserts a rule set into a list that is in cascade order.
+     * 
+     * @param ruleSets
+     * @param ruleSet
+     */
+    public static void addCascadeOrdered(List<PXRuleSet> ruleSets, PXRuleSet ruleSet) {
+        int low = 0;
+        int high = ruleSets.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ruleSets.get(middle).cascadeOrder <= ruleSet.cascadeOrder) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        ruleSets.add(low, ruleSet);
+    }
+
+    /**
+     * Merges the declarations of the given rule sets. The rule sets of a
+     * stylesheet are usually collected in cascade order already (see
+     * {@link #mergeCascadeOrdered(List, List)}). Otherwise, they are sorted
+     * in place.
+     * 
+     * @param ruleSets
+     * @return A rule set with the winning declarations
+     */
     public static PXRuleSet mergeRuleSets(List<PXRuleSet> ruleSets) {
         PXRuleSet result = new PXRuleSet();
         if (!CollectionUtil.isEmpty(ruleSets)) {
-            // Sort rules by specificity
-            Collections.sort(ruleSets, new Comparator<PXRuleSet>() {
-                public int compare(PXRuleSet lhs, PXRuleSet rhs) {
-                    if (lhs.specificity == null) {
-                        return (rhs.specificity == null) ? 0 : -1;
-                    } else {
-                        return (rhs.specificity == null) ? 1 : lhs.specificity
-                                .compareTo(rhs.specificity);
+            if (!isCascadeOrdered(ruleSets)) {
+                Collections.sort(ruleSets, new Comparator<PXRuleSet>() {
+                    public int compare(PXRuleSet lhs, PXRuleSet rhs) {
+                        return (lhs.cascadeOrder < rhs.cascadeOrder) ? -1
+                                : (lhs.cascadeOrder == rhs.cascadeOrder ? 0 : 1);
                     }
-                }
-            });
+                });
+            }
 
             for (int i = ruleSets.size() - 1; i >= 0; i--) {
                 // add selectors
@@ -160,4 +290,14 @@ public class PXRuleSet extends PXDeclarationContainer {
         }
         return result;
     }
+
+    private static boolean isCascadeOrdered(List<PXRuleSet> ruleSets) {
+        int size = ruleSets.size();
+        for (int i = 1; i < size; i++) {
+            if (ruleSets.get(i - 1).cascadeOrder > ruleSets.get(i).cascadeOrder) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -16,12 +16,16 @@
 package com.pixate.freestyle.styling;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import android.content.Context;
+import android.net.Uri;
 
 import com.pixate.freestyle.PixateFreestyle;
 import com.pixate.freestyle.styling.animation.PXKeyframe;
@@ -31,6 +35,7 @@ import com.pixate.freestyle.styling.parsing.PXStylesheetParser;
 import com.pixate.freestyle.util.IOUtil;
 import com.pixate.freestyle.util.PXLog;
 import com.pixate.freestyle.util.StringUtil;
+import com.pixate.freestyle.util.UrlStreamOpener;
 
 // TODO: Create container to hold PXStylesheet so parser can return that instead of having to subclass this from Symbol
 public class PXStylesheet {
@@ -52,10 +57,14 @@ public class PXStylesheet {
     private static PXStylesheet currentApplicationStylesheet;
     private static PXStylesheet currentUserStylesheet;
     private static PXStylesheet currentViewStylesheet;
+    private static boolean resolveURLsOnLoad;
+    private static boolean optimizeOnLoad;
 
     private List<PXMediaGroup> mediaGroups;
     private PXMediaExpression activeMediaQuery;
     private PXMediaGroup activeMediaGroup;
+    // the source order of the next rule set
+    private int ruleSetCount;
     private Map<String, String> namespacePrefixMap;
     private Map<String, PXKeyframe> keyframesByName;
 
@@ -72,23 +81,69 @@ public class PXStylesheet {
         PXStylesheet result = null;
 
         if (!StringUtil.isEmpty(source)) {
+            initParser();
             result = PARSER.parse(source, origin, fileName);
-            result.setErrors(PARSER.getErrors());
-            assignCurrentStylesheet(result, origin);
+            onLoad(result, origin, PARSER.getErrors());
         } else {
+            // an empty source (e.g. an emptied stylesheet file) replaces the
+            // current stylesheet just like any other source
             result = new PXStylesheet(origin);
+            result.setFilePath(fileName);
+            onLoad(result, origin, null);
         }
 
         return result;
     }
 
+    /**
+     * Re-parses the stylesheet of the given origin from a new source, and
+     * makes it the current stylesheet for that origin.
+     * 
+     * @param source The new stylesheet source
+     * @param origin
+     * @param fileName The stylesheet file name. May be <code>null</code>.
+     * @return The difference between the previous and the new stylesheet
+     */
+    public static PXStylesheetDiff reloadStyleSheetFromSource(String source,
+            PXStyleSheetOrigin origin, String fileName) {
+        PXStylesheet previous = getCurrentStylesheet(origin);
+        PXStylesheet stylesheet = getStyleSheetFromSource(source, origin, fileName);
+        return PXStylesheetDiff.create(previous, stylesheet);
+    }
+
+    /**
+     * Parses a stylesheet as it's read, without holding its whole source in
+     * memory.
+     * 
+     * @param reader The stylesheet source. The caller closes it.
+     * @param origin
+     * @param fileName The stylesheet file name. May be <code>null</code>.
+     * @return The parsed stylesheet
+     */
+    public static PXStylesheet getStyleSheetFromReader(Reader reader, PXStyleSheetOrigin origin,
+            String fileName) {
+        initParser();
+        PXStylesheet result = PARSER.parse(reader, origin, fileName);
+        onLoad(result, origin, PARSER.getErrors());
+        return result;
+    }
+
     public static PXStylesheet getStyleSheetFromFilePath(Context context, String aFilePath,
             PXStyleSheetOrigin origin) {
+        Reader reader = null;
         try {
-            String source = IOUtil.read(context.getAssets().open(aFilePath));
-            return getStyleSheetFromSource(source, origin, aFilePath);
+            reader = IOUtil.openReader(context.getAssets().open(aFilePath));
+            return getStyleSheetFromReader(reader, origin, aFilePath);
         } catch (IOException e) {
             PXLog.e(TAG, "Error reading stylesheet from " + aFilePath);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
         }
         return null;
     }
@@ -122,19 +177,23 @@ public class PXStylesheet {
         return combined;
     }
 
+    /**
+     * Returns the rule sets that may match the given styleable, in cascade
+     * order (see {@link PXRuleSet#getCascadeOrder()}).
+     */
     public List<PXRuleSet> getRuleSets(Object styleable, Context context) {
-        List<PXRuleSet> combined = new ArrayList<PXRuleSet>();
+        List<PXRuleSet> combined = null;
         if (mediaGroups != null) {
             for (PXMediaGroup group : mediaGroups) {
                 if (group.matches(context)) {
                     List<PXRuleSet> ruleSets = group.getRuleSets(styleable);
                     if (ruleSets != null) {
-                        combined.addAll(ruleSets);
+                        combined = PXRuleSet.mergeCascadeOrdered(combined, ruleSets);
                     }
                 }
             }
         }
-        if (combined.isEmpty()) {
+        if (combined == null || combined.isEmpty()) {
             return null;
         }
         return combined;
@@ -144,6 +203,44 @@ public class PXStylesheet {
         return mediaGroups != null ? new ArrayList<PXMediaGroup>(mediaGroups) : null;
     }
 
+    /**
+     * Returns the <code>url(...)</code> values referenced by all the media
+     * groups of this stylesheet.
+     */
+    public Set<Uri> getReferencedURLs() {
+        Set<Uri> result = new LinkedHashSet<Uri>();
+        if (mediaGroups != null) {
+            for (PXMediaGroup group : mediaGroups) {
+                result.addAll(group.getReferencedURLs());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets whether the <code>bundle://</code> locations of the urls a
+     * stylesheet references are resolved as soon as the stylesheet is loaded.
+     * The resolution looks up every url in the app's resources on the loading
+     * thread, so it's off by default; otherwise, a location is resolved the
+     * first time it's opened.
+     * 
+     * @param resolve
+     * @see UrlStreamOpener#resolveBundleLocations(java.util.Collection)
+     */
+    public static void setResolveURLsOnLoad(boolean resolve) {
+        resolveURLsOnLoad = resolve;
+    }
+
+    /**
+     * Sets whether stylesheets are optimized once they are parsed (see
+     * {@link PXStylesheetOptimizer}). Off by default.
+     * 
+     * @param optimize
+     */
+    public static void setOptimizeOnLoad(boolean optimize) {
+        optimizeOnLoad = optimize;
+    }
+
     public static PXStylesheet getCurrentApplicationStylesheet() {
         return currentApplicationStylesheet;
     }
@@ -156,6 +253,25 @@ public class PXStylesheet {
         return currentViewStylesheet;
     }
 
+    /**
+     * Returns the current stylesheet for the given origin.
+     * 
+     * @param origin
+     * @return The current stylesheet, or <code>null</code>
+     */
+    public static PXStylesheet getCurrentStylesheet(PXStyleSheetOrigin origin) {
+        switch (origin) {
+            case APPLICATION:
+                return currentApplicationStylesheet;
+            case USER:
+                return currentUserStylesheet;
+            case VIEW:
+                return currentViewStylesheet;
+            default:
+                return null;
+        }
+    }
+
     // Setters
 
     public void setActiveMediaQuery(PXMediaExpression mediaExpression) {
@@ -173,10 +289,22 @@ public class PXStylesheet {
 
                 addMediaGroup(activeMediaGroup);
             }
+            // rule sets of imported stylesheets are added again here, so
+            // their source order follows this stylesheet's
+            ruleSet.setSourceOrder(ruleSetCount++);
             activeMediaGroup.addRuleSet(ruleSet);
         }
     }
 
+    /**
+     * Replaces the media groups of this stylesheet. Rule sets that are added
+     * later go to a new media group.
+     */
+    void setMediaGroups(List<PXMediaGroup> mediaGroups) {
+        this.mediaGroups = mediaGroups;
+        this.activeMediaGroup = null;
+    }
+
     public void addMediaGroup(PXMediaGroup mediaGroup) {
         if (mediaGroups == null) {
             mediaGroups = new ArrayList<PXMediaGroup>();
@@ -243,6 +371,11 @@ public class PXStylesheet {
         return keyframesByName == null ? null : keyframesByName.get(name);
     }
 
+    public List<PXKeyframe> getKeyframes() {
+        return keyframesByName != null ? new ArrayList<PXKeyframe>(keyframesByName.values())
+                : new ArrayList<PXKeyframe>(0);
+    }
+
     public PXStyleSheetOrigin getOrigin() {
         return origin;
     }
@@ -278,6 +411,28 @@ public class PXStylesheet {
     }
 
     // Static private methods
+    private static void initParser() {
+        if (PARSER.getContext() == null) {
+            // needed for reading @imports from the assets
+            PARSER.setContext(PixateFreestyle.getAppContext());
+        }
+    }
+
+    private static void onLoad(PXStylesheet stylesheet, PXStyleSheetOrigin origin,
+            List<String> errors) {
+        stylesheet.setErrors(errors);
+        if (optimizeOnLoad) {
+            PXStylesheetOptimizer optimizer = PXStylesheetOptimizer.optimize(stylesheet);
+            if (PXLog.isLogging()) {
+                PXLog.i(TAG, "Optimized %s: %s", stylesheet.getFilePath(), optimizer);
+            }
+        }
+        if (resolveURLsOnLoad) {
+            UrlStreamOpener.resolveBundleLocations(stylesheet.getReferencedURLs());
+        }
+        assignCurrentStylesheet(stylesheet, origin);
+    }
+
     private static void assignCurrentStylesheet(PXStylesheet stylesheet,
             PXStyleSheetOrigin forOrigin) {
         switch (forOrigin) {
@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.styling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.pixate.freestyle.styling.adapters.PXStyleAdapter;
+import com.pixate.freestyle.styling.media.PXMediaGroup;
+import com.pixate.freestyle.styling.selectors.PXSelector;
+import com.pixate.freestyle.styling.selectors.PXTypeSelector;
+import com.pixate.freestyle.util.CollectionUtil;
+import com.pixate.freestyle.util.StringUtil;
+
+/**
+ * The rule-level difference between two versions of a stylesheet. Rule sets
+ * are identified by their media query and selectors, and compared by their
+ * declarations and their source order (which breaks ties between rule sets of
+ * equal specificity). The element names, ids and classes targeted by the
+ * added, removed, changed and moved rule sets tell which styleables need to be
+ * restyled. Rule sets that can't be categorized (e.g. <code>*</code>) make the
+ * diff global.
+ */
+public class PXStylesheetDiff {
+
+    private Set<String> elementNames = new HashSet<String>();
+    private Set<String> styleIds = new HashSet<String>();
+    private Set<String> styleClasses = new HashSet<String>();
+    private int changedRuleSetsCount;
+    private boolean global;
+    private boolean resetRequired;
+
+    /**
+     * Computes the difference between two stylesheets.
+     * 
+     * @param oldStylesheet The previous stylesheet. May be <code>null</code>.
+     * @param newStylesheet The new stylesheet. May be <code>null</code>.
+     * @return A {@link PXStylesheetDiff}
+     */
+    public static PXStylesheetDiff create(PXStylesheet oldStylesheet, PXStylesheet newStylesheet) {
+        PXStylesheetDiff diff = new PXStylesheetDiff();
+        Map<String, PXRuleSet> oldRuleSets = getRuleSetsByIdentity(oldStylesheet);
+        Map<String, PXRuleSet> newRuleSets = getRuleSetsByIdentity(newStylesheet);
+
+        // the rule sets that are unchanged, in their old order
+        List<String> unchanged = new ArrayList<String>();
+        for (Map.Entry<String, PXRuleSet> entry : oldRuleSets.entrySet()) {
+            PXRuleSet oldRuleSet = entry.getValue();
+            PXRuleSet newRuleSet = newRuleSets.get(entry.getKey());
+            if (newRuleSet == null) {
+                // removed. The properties it set can't be undone in place.
+                diff.addRuleSet(oldRuleSet);
+                diff.resetRequired = true;
+            } else if (!getDeclarationsSource(oldRuleSet).equals(
+                    getDeclarationsSource(newRuleSet))) {
+                diff.addRuleSet(oldRuleSet);
+                diff.addTargets(newRuleSet);
+                if (!getDeclarationNames(newRuleSet).containsAll(
+                        getDeclarationNames(oldRuleSet))) {
+                    diff.resetRequired = true;
+                }
+            } else {
+                unchanged.add(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, PXRuleSet> entry : newRuleSets.entrySet()) {
+            if (!oldRuleSets.containsKey(entry.getKey())) {
+                diff.addRuleSet(entry.getValue());
+            }
+        }
+        for (String identity : getMovedIdentities(unchanged, newRuleSets)) {
+            diff.addRuleSet(newRuleSets.get(identity));
+        }
+        return diff;
+    }
+
+    /**
+     * Returns <code>true</code> when both stylesheets have the same rule sets.
+     */
+    public boolean isEmpty() {
+        return changedRuleSetsCount == 0;
+    }
+
+    /**
+     * Returns <code>true</code> when the changes may affect any styleable.
+     */
+    public boolean isGlobal() {
+        return global;
+    }
+
+    /**
+     * Returns <code>true</code> when declarations were removed. Restyling in
+     * place can't undo the properties they set, so the affected styleables
+     * should be re-created to get back to their defaults.
+     */
+    public boolean isResetRequired() {
+        return resetRequired;
+    }
+
+    /**
+     * Returns the number of added, removed, changed and moved rule sets.
+     */
+    public int getChangedRuleSetsCount() {
+        return changedRuleSetsCount;
+    }
+
+    public Set<String> getElementNames() {
+        return elementNames;
+    }
+
+    public Set<String> getStyleIds() {
+        return styleIds;
+    }
+
+    public Set<String> getStyleClasses() {
+        return styleClasses;
+    }
+
+    /**
+     * Returns <code>true</code> when the given styleable could match one of the
+     * added, removed, changed or moved rule sets.
+     * 
+     * @param styleable
+     * @return <code>true</code> when the styleable should be restyled.
+     */
+    public boolean affects(Object styleable) {
+        if (global) {
+            return true;
+        }
+        if (isEmpty()) {
+            return false;
+        }
+        PXStyleAdapter styleAdapter = PXStyleAdapter.getStyleAdapter(styleable);
+        if (elementNames.contains(styleAdapter.getElementName(styleable))) {
+            return true;
+        }
+        String styleId = styleAdapter.getStyleId(styleable);
+        if (!StringUtil.isEmpty(styleId) && styleIds.contains(styleId)) {
+            return true;
+        }
+        String styleClass = styleAdapter.getStyleClass(styleable);
+        if (!StringUtil.isEmpty(styleClass) && !styleClasses.isEmpty()) {
+            for (String aClass : PXStyleUtils.PATTERN_WHITESPACE_PLUS.split(styleClass)) {
+                if (styleClasses.contains(aClass)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "%d changed rule sets, global=%b, reset=%b, elements=%s, ids=%s, classes=%s",
+                changedRuleSetsCount, global, resetRequired, elementNames, styleIds,
+                styleClasses);
+    }
+
+    // Private
+
+    private void addRuleSet(PXRuleSet ruleSet) {
+        changedRuleSetsCount++;
+        addTargets(ruleSet);
+    }
+
+    private void addTargets(PXRuleSet ruleSet) {
+        // Same partitioning as PXMediaGroup#addRuleSet
+        PXTypeSelector typeSelector = ruleSet.getTargetTypeSelector();
+        String elementName = (typeSelector == null || typeSelector.hasUniversalType()) ? null
+                : typeSelector.getTypeName();
+        String styleId = (typeSelector == null) ? null : typeSelector.getStyleId();
+        List<String> classes = (typeSelector == null) ? null : typeSelector.getStyleClasses();
+        boolean added = false;
+
+        if (elementName != null && !PXTypeSelector.UNIVERSAL.equals(elementName)) {
+            elementNames.add(elementName);
+            added = true;
+        }
+        if (!StringUtil.isEmpty(styleId)) {
+            styleIds.add(styleId);
+            added = true;
+        }
+        if (!CollectionUtil.isEmpty(classes)) {
+            styleClasses.addAll(classes);
+            added = true;
+        }
+        if (!added) {
+            global = true;
+        }
+    }
+
+    /**
+     * Returns the identities of the unchanged rule sets that moved relative to
+     * each other. The rule sets that keep their relative order are the longest
+     * increasing run of new positions, taken in the old order. All the others
+     * moved.
+     * 
+     * @param unchanged The unchanged identities, in their old order
+     * @param newRuleSets The new rule sets, in source order
+     */
+    private static List<String> getMovedIdentities(List<String> unchanged,
+            Map<String, PXRuleSet> newRuleSets) {
+        Map<String, Integer> newPositions = new HashMap<String, Integer>(newRuleSets.size());
+        int position = 0;
+        for (String identity : newRuleSets.keySet()) {
+            newPositions.put(identity, position++);
+        }
+        int count = unchanged.size();
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = newPositions.get(unchanged.get(i));
+        }
+
+        // longest increasing subsequence, keeping the index of each run's tail
+        // and the predecessor of each element
+        int[] tails = new int[count];
+        int[] previous = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (positions[tails[middle]] < positions[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = (low > 0) ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] kept = new boolean[count];
+        for (int i = (length > 0) ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            kept[i] = true;
+        }
+
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            if (!kept[i]) {
+                result.add(unchanged.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the stylesheet's rule sets in source order, keyed by their media
+     * query and selectors. Rule sets that share a media query and selectors
+     * are told apart by their occurrence.
+     */
+    private static Map<String, PXRuleSet> getRuleSetsByIdentity(PXStylesheet stylesheet) {
+        Map<String, PXRuleSet> result = new LinkedHashMap<String, PXRuleSet>();
+        Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        List<PXMediaGroup> mediaGroups = stylesheet != null ? stylesheet.getMediaGroups() : null;
+        if (mediaGroups == null) {
+            return result;
+        }
+        for (PXMediaGroup group : mediaGroups) {
+            List<PXRuleSet> ruleSets = group.getRuleSets();
+            if (ruleSets == null) {
+                continue;
+            }
+            String query = group.getQuery() != null ? group.getQuery().toString()
+                    : StringUtil.EMPTY;
+            for (PXRuleSet ruleSet : ruleSets) {
+                StringBuilder key = new StringBuilder(query);
+                for (PXSelector selector : ruleSet.getSelectors()) {
+                    key.append('\n').append(selector);
+                }
+                String selectors = key.toString();
+                Integer occurrence = occurrences.get(selectors);
+                occurrence = (occurrence == null) ? 0 : occurrence + 1;
+                occurrences.put(selectors, occurrence);
+                result.put(key.append('\n').append(occurrence).toString(), ruleSet);
+            }
+        }
+        return result;
+    }
+
+    private static String getDeclarationsSource(PXRuleSet ruleSet) {
+        StringBuilder builder = new StringBuilder();
+        for (PXDeclaration declaration : ruleSet.getDeclarations()) {
+            builder.append(declaration).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static Set<String> getDeclarationNames(PXRuleSet ruleSet) {
+        Set<String> result = new HashSet<String>();
+        for (PXDeclaration declaration : ruleSet.getDeclarations()) {
+            result.add(declaration.getName());
+        }
+        return result;
+    }
+}
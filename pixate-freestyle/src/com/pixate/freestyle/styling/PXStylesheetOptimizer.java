@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.styling;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.pixate.freestyle.styling.media.PXMediaExpression;
+import com.pixate.freestyle.styling.media.PXMediaExpressionGroup;
+import com.pixate.freestyle.styling.media.PXMediaGroup;
+import com.pixate.freestyle.styling.media.PXNamedMediaExpression;
+import com.pixate.freestyle.styling.selectors.PXSelector;
+import com.pixate.freestyle.styling.selectors.PXTypeSelector;
+
+/**
+ * An optimization pass over a parsed stylesheet. The pass removes what can
+ * never affect styling, without changing the declarations any styleable
+ * resolves to:
+ * <ul>
+ * <li>Media groups with a query that can never match are removed, and
+ * queries that always match are dropped.</li>
+ * <li>Declarations that are always overridden by a later rule set with the
+ * same selectors are removed. Rule sets left without declarations, and rule
+ * sets without selectors, are removed.</li>
+ * <li>Consecutive rule sets with the same selectors are merged.</li>
+ * <li>Rule sets that target an element that is not in the known element
+ * names are removed (see {@link #setElementNames(Collection)}).</li>
+ * </ul>
+ * Note that the matching rule sets are ordered by specificity and then by
+ * source order (see {@link PXRuleSet#getCascadeOrder()}), so the pass only
+ * merges rule sets that are next to each other in the source. Merged rule sets
+ * keep the source order of the last one.
+ */
+public class PXStylesheetOptimizer {
+
+    private static Set<String> elementNames;
+
+    private int removedMediaGroupsCount;
+    private int collapsedMediaQueriesCount;
+    private int removedRuleSetsCount;
+    private int mergedRuleSetsCount;
+    private int removedDeclarationsCount;
+
+    /**
+     * Sets the names of all the elements the application styles. When set,
+     * rule sets that target any other element are removed by the optimizer.
+     * Since the element name of a view is its lower-cased class name, this
+     * should only be set by applications that know all their view classes,
+     * including custom ones.
+     * 
+     * @param names The element names, or <code>null</code> to keep rule sets
+     *            for all elements (default).
+     */
+    public static synchronized void setElementNames(Collection<String> names) {
+        elementNames = (names != null) ? new HashSet<String>(names) : null;
+    }
+
+    /**
+     * Optimizes the given stylesheet in place.
+     * 
+     * @param stylesheet
+     * @return The optimizer, holding the counts of what was removed.
+     */
+    public static PXStylesheetOptimizer optimize(PXStylesheet stylesheet) {
+        PXStylesheetOptimizer optimizer = new PXStylesheetOptimizer();
+        List<PXMediaGroup> mediaGroups = stylesheet != null ? stylesheet.getMediaGroups() : null;
+        if (mediaGroups != null) {
+            stylesheet.setMediaGroups(optimizer.optimize(mediaGroups));
+        }
+        return optimizer;
+    }
+
+    /**
+     * Returns the number of media groups that were removed because their
+     * query can never match, or because all their rule sets were removed.
+     */
+    public int getRemovedMediaGroupsCount() {
+        return removedMediaGroupsCount;
+    }
+
+    /**
+     * Returns the number of media queries that were dropped because they
+     * always match.
+     */
+    public int getCollapsedMediaQueriesCount() {
+        return collapsedMediaQueriesCount;
+    }
+
+    /**
+     * Returns the number of rule sets that were removed because they had no
+     * declarations or selectors left, or because they target an unknown
+     * element.
+     */
+    public int getRemovedRuleSetsCount() {
+        return removedRuleSetsCount;
+    }
+
+    /**
+     * Returns the number of rule sets that were merged into the rule set that
+     * follows them.
+     */
+    public int getMergedRuleSetsCount() {
+        return mergedRuleSetsCount;
+    }
+
+    /**
+     * Returns the number of declarations that were removed because they are
+     * always overridden.
+     */
+    public int getRemovedDeclarationsCount() {
+        return removedDeclarationsCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Removed %d media groups, %d media queries, %d rule sets and %d "
+                + "declarations. Merged %d rule sets.", removedMediaGroupsCount,
+                collapsedMediaQueriesCount, removedRuleSetsCount, removedDeclarationsCount,
+                mergedRuleSetsCount);
+    }
+
+    private List<PXMediaGroup> optimize(List<PXMediaGroup> mediaGroups) {
+        // collapse the media queries
+        List<PXMediaGroup> groups = new ArrayList<PXMediaGroup>(mediaGroups.size());
+        List<PXMediaExpression> queries = new ArrayList<PXMediaExpression>(mediaGroups.size());
+        List<List<PXRuleSet>> ruleSets = new ArrayList<List<PXRuleSet>>(mediaGroups.size());
+        for (PXMediaGroup group : mediaGroups) {
+            PXMediaExpression query = group.getQuery();
+            Boolean value = (query != null) ? getStaticValue(query) : null;
+            if (Boolean.FALSE.equals(value)) {
+                removedMediaGroupsCount++;
+                continue;
+            }
+            if (Boolean.TRUE.equals(value)) {
+                query = null;
+                collapsedMediaQueriesCount++;
+            }
+            List<PXRuleSet> groupRuleSets = group.getRuleSets();
+            groups.add(group);
+            queries.add(query);
+            ruleSets.add(groupRuleSets != null ? groupRuleSets : new ArrayList<PXRuleSet>(0));
+        }
+
+        removeOverriddenDeclarations(ruleSets, queries);
+
+        List<PXMediaGroup> result = new ArrayList<PXMediaGroup>(groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            List<PXRuleSet> groupRuleSets = removeRuleSets(ruleSets.get(i));
+            mergeRuleSets(groupRuleSets);
+            if (groupRuleSets.isEmpty()) {
+                removedMediaGroupsCount++;
+                continue;
+            }
+            PXMediaGroup group = new PXMediaGroup(queries.get(i), groups.get(i).getOrigin());
+            for (PXRuleSet ruleSet : groupRuleSets) {
+                group.addRuleSet(ruleSet);
+            }
+            result.add(group);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the declarations that a later rule set with the same selectors
+     * always overrides. A later rule set is either later in the same group, or
+     * in a later group that always matches. The rule sets are walked from the
+     * last to the first, collecting the declaration names of each selectors
+     * key, and whether any of them is important.
+     */
+    private void removeOverriddenDeclarations(List<List<PXRuleSet>> ruleSets,
+            List<PXMediaExpression> queries) {
+        Map<String, Map<String, Boolean>> unconditional =
+                new HashMap<String, Map<String, Boolean>>();
+        for (int i = ruleSets.size() - 1; i >= 0; i--) {
+            Map<String, Map<String, Boolean>> later = copy(unconditional);
+            List<PXRuleSet> groupRuleSets = ruleSets.get(i);
+            for (int j = groupRuleSets.size() - 1; j >= 0; j--) {
+                PXRuleSet ruleSet = groupRuleSets.get(j);
+                String key = getSelectorsKey(ruleSet);
+                Map<String, Boolean> names = later.get(key);
+                if (names == null) {
+                    names = new HashMap<String, Boolean>();
+                    later.put(key, names);
+                }
+                for (PXDeclaration declaration : ruleSet.getDeclarations()) {
+                    Boolean important = names.get(declaration.getName());
+                    if (important != null && (important || !declaration.isImportant())) {
+                        // an important declaration may only replace a later
+                        // declaration that is not important
+                        ruleSet.removeDeclaration(declaration);
+                        removedDeclarationsCount++;
+                    } else {
+                        names.put(declaration.getName(), declaration.isImportant());
+                    }
+                }
+            }
+            if (queries.get(i) == null) {
+                unconditional = later;
+            }
+        }
+    }
+
+    /**
+     * Returns the rule sets that may affect styling.
+     */
+    private List<PXRuleSet> removeRuleSets(List<PXRuleSet> ruleSets) {
+        Set<String> knownElementNames = elementNames;
+        List<PXRuleSet> result = new ArrayList<PXRuleSet>(ruleSets.size());
+        for (PXRuleSet ruleSet : ruleSets) {
+            // a rule set without selectors never matches
+            boolean remove = ruleSet.getDeclarations().isEmpty()
+                    || ruleSet.getSelectors().isEmpty();
+            if (!remove && knownElementNames != null) {
+                PXTypeSelector typeSelector = ruleSet.getTargetTypeSelector();
+                remove = typeSelector != null && !typeSelector.hasUniversalType()
+                        && !knownElementNames.contains(typeSelector.getTypeName());
+            }
+            if (remove) {
+                removedRuleSetsCount++;
+            } else {
+                result.add(ruleSet);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges consecutive rule sets with the same selectors into the last one.
+     * The merged declarations are ordered the same way
+     * {@link PXRuleSet#mergeRuleSets(List)} orders them.
+     */
+    private void mergeRuleSets(List<PXRuleSet> ruleSets) {
+        for (int i = ruleSets.size() - 2; i >= 0; i--) {
+            PXRuleSet ruleSet = ruleSets.get(i);
+            PXRuleSet next = ruleSets.get(i + 1);
+            if (!getSelectorsKey(ruleSet).equals(getSelectorsKey(next))) {
+                continue;
+            }
+            List<PXDeclaration> declarations = next.getDeclarations();
+            for (PXDeclaration declaration : ruleSet.getDeclarations()) {
+                PXDeclaration added = next.getDeclarationForName(declaration.getName());
+                if (added == null) {
+                    declarations.add(declaration);
+                } else if (declaration.isImportant() && !added.isImportant()) {
+                    declarations.remove(added);
+                    declarations.add(declaration);
+                }
+            }
+            for (PXDeclaration declaration : next.getDeclarations()) {
+                next.removeDeclaration(declaration);
+            }
+            for (PXDeclaration declaration : declarations) {
+                next.addDeclaration(declaration);
+            }
+            ruleSets.remove(i);
+            mergedRuleSetsCount++;
+        }
+    }
+
+    /**
+     * Returns {@link Boolean#TRUE} or {@link Boolean#FALSE} for a media query
+     * that always or never matches, or <code>null</code> when the result
+     * depends on the display.
+     */
+    private static Boolean getStaticValue(PXMediaExpression query) {
+        if (query instanceof PXNamedMediaExpression) {
+            return ((PXNamedMediaExpression) query).getStaticValue();
+        }
+        if (query instanceof PXMediaExpressionGroup) {
+            List<PXMediaExpression> expressions = ((PXMediaExpressionGroup) query)
+                    .getExpressions();
+            if (expressions == null) {
+                return null;
+            }
+            Boolean result = Boolean.TRUE;
+            for (PXMediaExpression expression : expressions) {
+                Boolean value = getStaticValue(expression);
+                if (Boolean.FALSE.equals(value)) {
+                    return Boolean.FALSE;
+                } else if (value == null) {
+                    result = null;
+                }
+            }
+            return result;
+        }
+        return null;
+    }
+
+    private static String getSelectorsKey(PXRuleSet ruleSet) {
+        StringBuilder key = new StringBuilder();
+        for (PXSelector selector : ruleSet.getSelectors()) {
+            key.append(selector).append('\n');
+        }
+        return key.toString();
+    }
+
+    private static Map<String, Map<String, Boolean>> copy(Map<String, Map<String, Boolean>> map) {
+        Map<String, Map<String, Boolean>> result = new HashMap<String, Map<String, Boolean>>();
+        for (Map.Entry<String, Map<String, Boolean>> entry : map.entrySet()) {
+            result.put(entry.getKey(), new HashMap<String, Boolean>(entry.getValue()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.styling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.pixate.freestyle.PixateFreestyle;
+import com.pixate.freestyle.util.IOUtil;
+import com.pixate.freestyle.util.PXLog;
+import com.pixate.freestyle.util.UrlStreamOpener;
+
+/**
+ * Watches a stylesheet location and hot-reloads the application stylesheet
+ * whenever its content changes. The location is polled on a background
+ * thread, so it can be a <code>documents://</code> or <code>file://</code>
+ * file as well as an <code>http://</code> url served by a local development
+ * server. Watching is only available in debuggable builds.
+ * 
+ * <pre>
+ * PXStylesheetWatcher.start(context, &quot;http://10.0.2.2:8000/default.css&quot;);
+ * </pre>
+ * 
+ * @see PixateFreestyle#reloadStylesheet(String)
+ */
+public class PXStylesheetWatcher {
+
+    private static final String TAG = PXStylesheetWatcher.class.getSimpleName();
+    private static final long DEFAULT_INTERVAL_MS = 1000;
+
+    private static ScheduledThreadPoolExecutor executor;
+    private static ScheduledFuture<?> task;
+    private static Handler mainHandler;
+
+    /**
+     * Starts watching the given location, polling it every second.
+     * 
+     * @param context
+     * @param uri The stylesheet location
+     * @return <code>true</code> if the watch started; <code>false</code> if
+     *         this is not a debuggable build.
+     * @see #start(Context, String, long)
+     */
+    public static boolean start(Context context, String uri) {
+        return start(context, uri, DEFAULT_INTERVAL_MS);
+    }
+
+    /**
+     * Starts watching the given location, replacing any previous watch. The
+     * location is loaded right away, then reloaded whenever its content
+     * changes.
+     * 
+     * @param context
+     * @param uri The stylesheet location
+     * @param intervalMs The polling interval, in milliseconds
+     * @return <code>true</code> if the watch started; <code>false</code> if
+     *         this is not a debuggable build.
+     */
+    public static synchronized boolean start(Context context, final String uri, long intervalMs) {
+        if ((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            PXLog.w(TAG, "Stylesheet watching is only available in debuggable builds");
+            return false;
+        }
+        stop();
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "PXStylesheetWatcher");
+                }
+            });
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        task = executor.scheduleWithFixedDelay(new Runnable() {
+            private String lastSource;
+
+            public void run() {
+                final String source = read(uri);
+                if (source == null || source.equals(lastSource)) {
+                    return;
+                }
+                lastSource = source;
+                mainHandler.post(new Runnable() {
+                    public void run() {
+                        PXStylesheetDiff diff = PixateFreestyle.reloadStylesheet(source);
+                        if (PXLog.isLogging()) {
+                            PXLog.i(TAG, "Reloaded %s: %s", uri, diff);
+                        }
+                    }
+                });
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Stops watching.
+     */
+    public static synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> when a location is being watched.
+     */
+    public static synchronized boolean isWatching() {
+        return task != null;
+    }
+
+    private static String read(String uri) {
+        InputStream stream = UrlStreamOpener.open(uri);
+        if (stream == null) {
+            return null;
+        }
+        try {
+            return IOUtil.read(stream);
+        } catch (IOException e) {
+            PXLog.w(TAG, e, "Error reading stylesheet from %s", uri);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.styling;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.pixate.freestyle.util.StringUtil;
+
+/**
+ * A process-wide table of interned identifiers. Element names, ids, classes
+ * and property names are interned into int symbols as stylesheets are parsed,
+ * so matching compares ints instead of strings. A symbol is never removed, and
+ * stays the same for the life of the process, so the table only grows. The
+ * identifiers of views are looked up with {@link #lookup(String)} and
+ * {@link #lookupAll(String)}, which never add to the table; an identifier that
+ * no stylesheet uses can't match anyway.
+ */
+public class PXSymbolTable {
+
+    /**
+     * The symbol of a <code>null</code> identifier.
+     */
+    public static final int NONE = -1;
+
+    private static final int[] NO_SYMBOLS = new int[0];
+    private static final ConcurrentHashMap<String, Integer> SYMBOLS =
+            new ConcurrentHashMap<String, Integer>(256);
+    private static volatile String[] names = new String[256];
+    private static int count;
+
+    /**
+     * Returns the symbol of an identifier, adding it to the table when it's
+     * new. Meant for the identifiers of stylesheets, which are bounded; see
+     * {@link #lookup(String)} for the identifiers of views.
+     * 
+     * @param name
+     * @return The symbol, or {@link #NONE} for a <code>null</code> name
+     */
+    public static int intern(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer symbol = SYMBOLS.get(name);
+        if (symbol == null) {
+            synchronized (SYMBOLS) {
+                symbol = SYMBOLS.get(name);
+                if (symbol == null) {
+                    String[] table = names;
+                    if (count == table.length) {
+                        table = Arrays.copyOf(table, count * 2);
+                    }
+                    table[count] = name;
+                    names = table;
+                    symbol = count++;
+                    SYMBOLS.put(name, symbol);
+                }
+            }
+        }
+        return symbol;
+    }
+
+    /**
+     * Returns the symbols of the whitespace separated identifiers in a string
+     * (e.g. a style class attribute).
+     * 
+     * @param names
+     * @return The symbols. An empty array for an empty string.
+     */
+    public static int[] internAll(String names) {
+        if (StringUtil.isEmpty(names)) {
+            return NO_SYMBOLS;
+        }
+        String[] parts = PXStyleUtils.PATTERN_WHITESPACE_PLUS.split(names.trim());
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = intern(parts[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the symbols of the whitespace separated identifiers in a string,
+     * without adding them to the table.
+     * 
+     * @param names
+     * @return The symbols, with {@link #NONE} for the identifiers that were
+     *         never interned. An empty array for an empty string.
+     */
+    public static int[] lookupAll(String names) {
+        if (StringUtil.isEmpty(names)) {
+            return NO_SYMBOLS;
+        }
+        String[] parts = PXStyleUtils.PATTERN_WHITESPACE_PLUS.split(names.trim());
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = lookup(parts[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the symbol of an identifier, without adding it to the table.
+     * 
+     * @param name
+     * @return The symbol, or {@link #NONE} when the identifier was never
+     *         interned.
+     */
+    public static int lookup(String name) {
+        Integer symbol = (name != null) ? SYMBOLS.get(name) : null;
+        return (symbol != null) ? symbol : NONE;
+    }
+
+    /**
+     * Returns the identifier of a symbol.
+     * 
+     * @param symbol
+     * @return The identifier, or <code>null</code> for an unknown symbol.
+     */
+    public static String getName(int symbol) {
+        String[] table = names;
+        return (symbol >= 0 && symbol < table.length) ? table[symbol] : null;
+    }
+
+    /**
+     * Returns <code>true</code> when the symbols contain the given symbol.
+     */
+    public static boolean contains(int[] symbols, int symbol) {
+        if (symbols != null && symbol != NONE) {
+            for (int s : symbols) {
+                if (s == symbol) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of interned identifiers.
+     */
+    public static int size() {
+        return SYMBOLS.size();
+    }
+}
@@ -17,12 +17,15 @@ package com.pixate.freestyle.styling.adapters;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import android.app.ActionBar;
+import android.app.Activity;
 import android.graphics.RectF;
 import android.view.View;
 import android.widget.Button;
@@ -41,10 +44,15 @@ import android.widget.ToggleButton;
 
 import com.pixate.freestyle.styling.PXRuleSet;
 import com.pixate.freestyle.styling.PXStyleUtils;
+import com.pixate.freestyle.styling.PXSymbolTable;
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXCacheUnit;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXManagedCache;
 import com.pixate.freestyle.styling.media.PXMediaGroup;
 import com.pixate.freestyle.styling.stylers.PXStyler;
 import com.pixate.freestyle.styling.stylers.PXStylerContext;
 import com.pixate.freestyle.styling.stylers.PXStylerContext.IconPosition;
+import com.pixate.freestyle.styling.stylers.PXStylerDispatchTable;
 import com.pixate.freestyle.styling.virtualAdapters.PXVirtualActionBarIconAdapter;
 import com.pixate.freestyle.styling.virtualAdapters.PXVirtualActionBarLogoAdapter;
 import com.pixate.freestyle.styling.virtualAdapters.PXVirtualActionBarOverflowAdapter;
@@ -86,6 +94,55 @@ public abstract class PXStyleAdapter {
 
     // A class-name to style-adapter mapping.
     private static Map<String, PXStyleAdapter> sRegistry;
+
+    // The maximum number of class-name lookups that are resolved through an
+    // ancestor class and cached.
+    private static final int MAX_RESOLVED_ADAPTERS = 256;
+
+    // The adapters that were resolved through an ancestor class, in access
+    // order. Unlike the registry, these can be evicted and resolved again.
+    @SuppressWarnings("serial")
+    private static final Map<String, PXStyleAdapter> sResolved =
+            new LinkedHashMap<String, PXStyleAdapter>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PXStyleAdapter> eldest) {
+                    return size() > MAX_RESOLVED_ADAPTERS;
+                }
+            };
+
+    static {
+        PXCacheManager.register("style-adapters", PXCacheUnit.ENTRIES, new PXManagedCache() {
+            public int size() {
+                synchronized (PXStyleAdapter.class) {
+                    return sResolved.size();
+                }
+            }
+
+            public int maxSize() {
+                return MAX_RESOLVED_ADAPTERS;
+            }
+
+            public void trimToSize(int maxSize) {
+                synchronized (PXStyleAdapter.class) {
+                    Iterator<String> iterator = sResolved.keySet().iterator();
+                    while (sResolved.size() > maxSize && iterator.hasNext()) {
+                        iterator.next();
+                        iterator.remove();
+                    }
+                }
+            }
+
+            public void evictAll() {
+                synchronized (PXStyleAdapter.class) {
+                    sResolved.clear();
+                }
+            }
+
+            public void releaseActivity(Activity activity) {
+                // No-op
+            }
+        });
+    }
     private static final PXStyleAdapter NULL_ADAPTER = new PXStyleAdapter() {
         @Override
         protected List<PXStyler> createStylers() {
@@ -97,6 +154,7 @@ public abstract class PXStyleAdapter {
     private static final String TAG = PXStyleAdapter.class.getSimpleName();
     private HashMap<String, PXStyler> stylersByProperty;
     private List<PXStyler> stylers;
+    private PXStylerDispatchTable dispatchTable;
 
     public PXStyleAdapter() {
     }
@@ -146,6 +204,37 @@ public abstract class PXStyleAdapter {
         return null;
     }
 
+    /**
+     * Returns the {@link PXSymbolTable} symbol of the element name.
+     * Subclasses may override when the symbol is known up front.
+     * 
+     * @param object
+     * @return The element name symbol
+     */
+    public int getElementSymbol(Object object) {
+        return PXSymbolTable.lookup(getElementName(object));
+    }
+
+    /**
+     * Returns the {@link PXSymbolTable} symbol of the style id.
+     * 
+     * @param object
+     * @return The style id symbol, or {@link PXSymbolTable#NONE}
+     */
+    public int getStyleIdSymbol(Object object) {
+        return PXSymbolTable.lookup(getStyleId(object));
+    }
+
+    /**
+     * Returns the {@link PXSymbolTable} symbols of the style classes.
+     * 
+     * @param object
+     * @return The style class symbols. Never <code>null</code>.
+     */
+    public int[] getStyleClassSymbols(Object object) {
+        return PXSymbolTable.lookupAll(getStyleClass(object));
+    }
+
     public String getStyleKey(Object object) {
         // Default implementation. Subclasses may override to extend.
         return PXStyleUtils.getSelector(object);
@@ -374,6 +463,8 @@ public abstract class PXStyleAdapter {
             }
 
             sRegistry.put(className, styleAdapter);
+            // the registration may shadow an adapter that was resolved before
+            sResolved.clear();
         }
     }
 
@@ -391,18 +482,24 @@ public abstract class PXStyleAdapter {
         Class<?> cls = objectToStyle instanceof Class<?> ? (Class<?>) objectToStyle : objectToStyle
                 .getClass();
 
-        PXStyleAdapter result = sRegistry.get(cls.getName());
-
-        if (result == null) {
-            Class<?> ancestorClass = cls.getSuperclass();
-            while (ancestorClass != null) {
-                result = sRegistry.get(ancestorClass.getName());
-                if (result != null) {
-                    // Now that we have it, register it.
-                    registerStyleAdapter(cls.getName(), result);
-                    break;
-                } else {
-                    ancestorClass = ancestorClass.getSuperclass();
+        String className = cls.getName();
+        PXStyleAdapter result;
+        synchronized (PXStyleAdapter.class) {
+            result = sRegistry.get(className);
+            if (result == null) {
+                result = sResolved.get(className);
+            }
+            if (result == null) {
+                Class<?> ancestorClass = cls.getSuperclass();
+                while (ancestorClass != null) {
+                    result = sRegistry.get(ancestorClass.getName());
+                    if (result != null) {
+                        // Now that we have it, remember it.
+                        sResolved.put(className, result);
+                        break;
+                    } else {
+                        ancestorClass = ancestorClass.getSuperclass();
+                    }
                 }
             }
         }
@@ -453,6 +550,20 @@ public abstract class PXStyleAdapter {
         return stylersByProperty;
     }
 
+    /**
+     * Returns a dispatch table of property name symbols to the stylers that
+     * match this adapter. The table will be built from the {@link PXStyler}
+     * list that is returned from the {@link #getStylers()} implementation.
+     * 
+     * @return A {@link PXStylerDispatchTable}
+     */
+    public synchronized PXStylerDispatchTable getStylerDispatchTable() {
+        if (dispatchTable == null) {
+            dispatchTable = new PXStylerDispatchTable(getStylers());
+        }
+        return dispatchTable;
+    }
+
     public static void initDefaultStyleAdapters() {
         // This all could be in some kind of configuration.
         // @formatter:off
@@ -131,6 +131,17 @@ public class PXToggleButtonStyleAdapter extends PXCompoundButtonStyleAdapter {
         return true;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.pixate.freestyle.styling.adapters.PXViewStyleAdapter#
+     * isAsyncBackgroundSupported()
+     */
+    @Override
+    protected boolean isAsyncBackgroundSupported() {
+        // The background is placed inside the toggle's LayerDrawable.
+        return false;
+    }
+
     /**
      * This method is called when the view's background was null, or did not
      * have any states assigned. The call will directly update the views in the
@@ -20,9 +20,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.view.View;
 import android.view.ViewGroup;
@@ -30,6 +32,7 @@ import android.view.ViewParent;
 
 import com.pixate.freestyle.annotations.PXDocElement;
 import com.pixate.freestyle.styling.PXRuleSet;
+import com.pixate.freestyle.styling.PXSymbolTable;
 import com.pixate.freestyle.styling.cache.PXStyleInfo;
 import com.pixate.freestyle.styling.stylers.PXAnimationStyler;
 import com.pixate.freestyle.styling.stylers.PXBorderStyler;
@@ -43,6 +46,7 @@ import com.pixate.freestyle.styling.stylers.PXStyler;
 import com.pixate.freestyle.styling.stylers.PXStylerContext;
 import com.pixate.freestyle.styling.stylers.PXTransformStyler;
 import com.pixate.freestyle.styling.stylers.PXStylerContext.FadingEdgeStyle;
+import com.pixate.freestyle.util.PXAsyncDrawableRenderer;
 import com.pixate.freestyle.util.PXDrawableUtil;
 import com.pixate.freestyle.util.ViewUtil;
 
@@ -51,6 +55,10 @@ public class PXViewStyleAdapter extends PXStyleAdapter {
 
     private static PXViewStyleAdapter sInstance;
 
+    // Lower-cased element names, by view class
+    private static final Map<Class<?>, String> ELEMENT_NAMES =
+            new ConcurrentHashMap<Class<?>, String>();
+
     protected PXViewStyleAdapter() {
     }
 
@@ -84,9 +92,16 @@ public class PXViewStyleAdapter extends PXStyleAdapter {
         String result = null;
 
         if (view != null) {
-            result = ViewUtil.getElementName(view);
-            if (result != null) {
-                result = result.toLowerCase(Locale.US);
+            boolean named = view.getTag(ViewUtil.TAG_ELEMENT_NAME) != null;
+            result = named ? null : ELEMENT_NAMES.get(view.getClass());
+            if (result == null) {
+                result = ViewUtil.getElementName(view);
+                if (result != null) {
+                    result = result.toLowerCase(Locale.US);
+                    if (!named) {
+                        ELEMENT_NAMES.put(view.getClass(), result);
+                    }
+                }
             }
         }
 
@@ -122,6 +137,28 @@ public class PXViewStyleAdapter extends PXStyleAdapter {
         return result;
     }
 
+    @Override
+    public int getStyleIdSymbol(Object object) {
+        View view = (View) object;
+        if (view == null) {
+            return PXSymbolTable.NONE;
+        }
+        if (!ViewUtil.isTagged(view)) {
+            // resolves the id and tags the view
+            getStyleId(view);
+        }
+        return ViewUtil.getStyleIdSymbol(view);
+    }
+
+    @Override
+    public int[] getStyleClassSymbols(Object object) {
+        View view = (View) object;
+        if (view == null) {
+            return PXSymbolTable.lookupAll(null);
+        }
+        return ViewUtil.getStyleClassSymbols(view);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public Object getParent(Object styleable) {
@@ -242,6 +279,14 @@ public class PXViewStyleAdapter extends PXStyleAdapter {
         Map<int[], Drawable> existingStates = PXDrawableUtil
                 .getExistingStates(view.getBackground());
 
+        if (isAsyncBackgroundSupported() && PXAsyncDrawableRenderer.shouldRenderAsync(contexts)) {
+            updateAsync(view, existingStates, ruleSets, contexts);
+            if (existingStates != null && !existingStates.isEmpty()) {
+                updateFadingEdgeStyle(context, view);
+            }
+            return true;
+        }
+
         if (existingStates == null || existingStates.isEmpty()) {
             updateWithNewStates(ruleSets, contexts);
             return true;
@@ -274,8 +319,61 @@ public class PXViewStyleAdapter extends PXStyleAdapter {
         }
     }
 
+    /**
+     * Returns <code>true</code> in case this adapter can render the view's
+     * background asynchronously (see {@link PXAsyncDrawableRenderer}).
+     * Adapters that place the background drawable in a non-standard way should
+     * return <code>false</code>.
+     * 
+     * @return <code>true</code> by default.
+     */
+    protected boolean isAsyncBackgroundSupported() {
+        return true;
+    }
+
     // Private
 
+    /**
+     * Renders the new background on a worker thread, while displaying a
+     * placeholder. The placeholder is the default state's background color,
+     * when available. Otherwise, the current background is kept until the
+     * rendering is done. Only the new state drawables are rendered on the
+     * worker; they are combined with the view's existing states on the UI
+     * thread.
+     */
+    private void updateAsync(View view, final Map<int[], Drawable> existingStates,
+            final List<PXRuleSet> ruleSets, final List<PXStylerContext> contexts) {
+        Drawable placeholder = null;
+        for (PXStylerContext context : contexts) {
+            // resolve the bounds on the UI thread
+            context.resolveImageBounds();
+            if (placeholder == null
+                    && PXStyleInfo.DEFAULT_STYLE.equals(context.getActiveStateName())
+                    && context.getColor() != Integer.MIN_VALUE) {
+                placeholder = new ColorDrawable(context.getColor());
+            }
+        }
+        PXAsyncDrawableRenderer.setBackgroundAsync(view, placeholder,
+                new PXAsyncDrawableRenderer.BackgroundRenderer<List<Drawable>>() {
+                    public List<Drawable> render() throws Exception {
+                        return PXDrawableUtil.renderStateDrawables(contexts);
+                    }
+
+                    public Drawable createBackground(View view, List<Drawable> rendered) {
+                        if (rendered == null) {
+                            // the rendering failed; keep the placeholder
+                            return null;
+                        }
+                        if (existingStates == null || existingStates.isEmpty()) {
+                            return PXDrawableUtil.createNewDrawable(PXViewStyleAdapter.this,
+                                    ruleSets, contexts, rendered);
+                        }
+                        return PXDrawableUtil.createDrawable(PXViewStyleAdapter.this,
+                                existingStates, ruleSets, contexts, rendered);
+                    }
+                });
+    }
+
     /**
      * Update the View's fading-edge properties. We only set fading properties
      * that were changed via the CSS, as each view subclass may have its own
@@ -0,0 +1,387 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.styling.cache;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.util.LruCache;
+
+import com.pixate.freestyle.cg.parsing.PXPathDataCache;
+import com.pixate.freestyle.cg.parsing.PXSVGCache;
+import com.pixate.freestyle.cg.parsing.PXTransformCache;
+import com.pixate.freestyle.cg.shadow.PXShadowCache;
+import com.pixate.freestyle.styling.adapters.PXStyleAdapter;
+import com.pixate.freestyle.styling.fonts.PXFontRegistry;
+import com.pixate.freestyle.styling.parsing.PXValueParser;
+import com.pixate.freestyle.styling.stylers.PXStylerContext;
+import com.pixate.freestyle.util.ObjectPool;
+import com.pixate.freestyle.util.PXBitmapCache;
+import com.pixate.freestyle.util.PXLog;
+
+/**
+ * A central manager for the engine's caches. Each cache registers itself with
+ * a name and the unit its size is measured in, and the manager trims all of
+ * them when the system reports a memory pressure, and releases their
+ * activity-scoped entries when an activity is destroyed.<br>
+ * The engine's caches register when their class is initialized. The manager
+ * initializes them (and registers the object pools) before it first trims or
+ * dumps the caches, so every one of them is accounted for. Call
+ * {@link #dump()} to get the current size of every registered cache.
+ */
+public class PXCacheManager {
+
+    private static final String TAG = PXCacheManager.class.getSimpleName();
+
+    /**
+     * The unit a cache measures its size in.
+     */
+    public enum PXCacheUnit {
+        BYTES("bytes"), ENTRIES("entries");
+
+        private final String label;
+
+        private PXCacheUnit(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * A cache that is managed by the {@link PXCacheManager}.
+     */
+    public interface PXManagedCache {
+        /**
+         * Returns the current size of the cache.
+         */
+        int size();
+
+        /**
+         * Returns the maximum size of the cache, or a negative value when the
+         * cache is not bounded.
+         */
+        int maxSize();
+
+        /**
+         * Evicts entries until the size of the cache is at or below the given
+         * size.
+         * 
+         * @param maxSize
+         */
+        void trimToSize(int maxSize);
+
+        /**
+         * Evicts all the entries that can be recreated.
+         */
+        void evictAll();
+
+        /**
+         * Releases the entries that belong to the given activity.
+         * 
+         * @param activity A destroyed activity
+         */
+        void releaseActivity(Activity activity);
+    }
+
+    /**
+     * A {@link PXManagedCache} of an {@link LruCache}. Subclasses may
+     * overwrite {@link #isActivityScoped(Object, Object, Activity)} to release
+     * the entries of a destroyed activity.
+     */
+    public static class PXLruManagedCache<K, V> implements PXManagedCache {
+        protected final LruCache<K, V> cache;
+
+        public PXLruManagedCache(LruCache<K, V> cache) {
+            this.cache = cache;
+        }
+
+        public int size() {
+            return cache.size();
+        }
+
+        public int maxSize() {
+            return cache.maxSize();
+        }
+
+        public void trimToSize(int maxSize) {
+            cache.trimToSize(maxSize);
+        }
+
+        public void evictAll() {
+            cache.evictAll();
+        }
+
+        public void releaseActivity(Activity activity) {
+            for (Map.Entry<K, V> entry : cache.snapshot().entrySet()) {
+                if (isActivityScoped(entry.getKey(), entry.getValue(), activity)) {
+                    cache.remove(entry.getKey());
+                }
+            }
+        }
+
+        /**
+         * Returns <code>true</code> if the given entry belongs to the given
+         * activity. Default is <code>false</code>.
+         */
+        protected boolean isActivityScoped(K key, V value, Activity activity) {
+            return false;
+        }
+    }
+
+    /**
+     * A {@link PXManagedCache} of an {@link ObjectPool}. Its budget is the
+     * pool limit.
+     */
+    public static class PXPoolManagedCache implements PXManagedCache {
+        private final ObjectPool<?, ?> pool;
+
+        public PXPoolManagedCache(ObjectPool<?, ?> pool) {
+            this.pool = pool;
+        }
+
+        public int size() {
+            return pool.size();
+        }
+
+        public int maxSize() {
+            return pool.getLimit();
+        }
+
+        public void trimToSize(int maxSize) {
+            pool.trimToSize(maxSize);
+        }
+
+        public void evictAll() {
+            pool.trimToSize(0);
+        }
+
+        public void releaseActivity(Activity activity) {
+            // No-op
+        }
+    }
+
+    private static class Registration {
+        private final String name;
+        private final PXCacheUnit unit;
+        private final PXManagedCache cache;
+
+        private Registration(String name, PXCacheUnit unit, PXManagedCache cache) {
+            this.name = name;
+            this.unit = unit;
+            this.cache = cache;
+        }
+    }
+
+    private static final List<Registration> CACHES = new CopyOnWriteArrayList<Registration>();
+
+    /**
+     * The classes that register their caches when they are initialized.
+     */
+    private static final Class<?>[] KNOWN_CACHES = { PXBitmapCache.class, PXShadowCache.class,
+            PXSVGCache.class, PXTransformCache.class, PXPathDataCache.class,
+            PXStylerContext.class, PXValueParser.class, PXFontRegistry.class,
+            PXStyleAdapter.class };
+
+    private static boolean registeredForMemoryPressure;
+    private static boolean registeredKnownCaches;
+
+    private PXCacheManager() {
+        // No-op. Avoid instantiation.
+    }
+
+    /**
+     * Registers a cache. A registration replaces a previous one with the same
+     * name.
+     * 
+     * @param name The cache name, as it will appear in the {@link #dump()}
+     * @param unit The unit the cache size is measured in
+     * @param cache The cache
+     */
+    public static void register(String name, PXCacheUnit unit, PXManagedCache cache) {
+        unregister(name);
+        CACHES.add(new Registration(name, unit, cache));
+    }
+
+    /**
+     * Registers an {@link LruCache}.
+     * 
+     * @param name The cache name, as it will appear in the {@link #dump()}
+     * @param unit The unit the cache size is measured in
+     * @param cache The cache
+     * @see #register(String, PXCacheUnit, PXManagedCache)
+     */
+    public static <K, V> void registerLruCache(String name, PXCacheUnit unit,
+            LruCache<K, V> cache) {
+        register(name, unit, new PXLruManagedCache<K, V>(cache));
+    }
+
+    /**
+     * Registers an {@link ObjectPool}.
+     * 
+     * @param name The pool name, as it will appear in the {@link #dump()}
+     * @param pool The pool
+     * @see #register(String, PXCacheUnit, PXManagedCache)
+     */
+    public static void registerPool(String name, ObjectPool<?, ?> pool) {
+        register(name, PXCacheUnit.ENTRIES, new PXPoolManagedCache(pool));
+    }
+
+    /**
+     * Removes the registration of the cache with the given name.
+     * 
+     * @param name
+     */
+    public static void unregister(String name) {
+        for (Registration registration : CACHES) {
+            if (registration.name.equals(name)) {
+                CACHES.remove(registration);
+            }
+        }
+    }
+
+    /**
+     * Registers the manager for the system's memory pressure callbacks. This
+     * is called by {@link com.pixate.freestyle.PixateFreestyle} when it's
+     * initialized.
+     * 
+     * @param context
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    public static synchronized void init(Context context) {
+        registerKnownCaches();
+        if (registeredForMemoryPressure || context == null
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            public void onLowMemory() {
+                evictAll();
+            }
+
+            public void onConfigurationChanged(Configuration newConfig) {
+                // No Op
+            }
+        });
+        registeredForMemoryPressure = true;
+    }
+
+    /**
+     * Trims the caches according to a memory trim level reported by the
+     * system. The caches are emptied when the application is about to be
+     * killed, or when the system is critically low on memory, and are trimmed
+     * to half their maximum size when the application is in the background or
+     * the system is low on memory.
+     * 
+     * @param level One of the {@link ComponentCallbacks2} trim levels.
+     */
+    public static void trimMemory(int level) {
+        registerKnownCaches();
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            for (Registration registration : CACHES) {
+                int maxSize = registration.cache.maxSize();
+                if (maxSize >= 0) {
+                    registration.cache.trimToSize(maxSize / 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts all the entries of the registered caches.
+     */
+    public static void evictAll() {
+        registerKnownCaches();
+        for (Registration registration : CACHES) {
+            registration.cache.evictAll();
+        }
+    }
+
+    /**
+     * Releases the cache entries that belong to the given activity. This is
+     * called when the activity is destroyed.
+     * 
+     * @param activity
+     */
+    public static void onActivityDestroyed(Activity activity) {
+        registerKnownCaches();
+        for (Registration registration : CACHES) {
+            try {
+                registration.cache.releaseActivity(activity);
+            } catch (Exception e) {
+                PXLog.e(TAG, e, "Error releasing the '%s' cache entries", registration.name);
+            }
+        }
+    }
+
+    /**
+     * Returns the current size of every registered cache, one cache per line.
+     * For example:
+     * 
+     * <pre>
+     * bitmaps: 1048576 / 8388608 bytes
+     * svg-documents: 12 / 64 entries
+     * </pre>
+     * 
+     * @return A dump of the cache sizes
+     */
+    public static String dump() {
+        registerKnownCaches();
+        StringBuilder builder = new StringBuilder();
+        for (Registration registration : CACHES) {
+            int maxSize = registration.cache.maxSize();
+            builder.append(String.format(Locale.US, "%s: %d / %s %s%n", registration.name,
+                    registration.cache.size(),
+                    maxSize >= 0 ? String.valueOf(maxSize) : "unbounded",
+                    registration.unit.label));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Registers the object pools, and initializes the classes of the known
+     * caches so they register themselves.
+     */
+    private static synchronized void registerKnownCaches() {
+        if (registeredKnownCaches) {
+            return;
+        }
+        registeredKnownCaches = true;
+        registerPool("paint-pool", ObjectPool.paintPool);
+        registerPool("path-pool", ObjectPool.pathPool);
+        for (Class<?> cls : KNOWN_CACHES) {
+            try {
+                Class.forName(cls.getName(), true, cls.getClassLoader());
+            } catch (Exception e) {
+                PXLog.e(TAG, e, "Error initializing the caches of %s", cls.getName());
+            }
+        }
+    }
+}
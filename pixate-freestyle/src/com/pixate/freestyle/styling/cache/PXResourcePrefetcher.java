@@ -0,0 +1,406 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.styling.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Process;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.ViewTreeObserver.OnGlobalLayoutListener;
+
+import com.pixate.freestyle.cg.paints.PXImagePaint;
+import com.pixate.freestyle.cg.parsing.PXSVGCache;
+import com.pixate.freestyle.styling.PXDeclaration;
+import com.pixate.freestyle.styling.PXRuleSet;
+import com.pixate.freestyle.styling.PXStylesheet;
+import com.pixate.freestyle.styling.fonts.PXFontRegistry;
+import com.pixate.freestyle.styling.media.PXMediaGroup;
+import com.pixate.freestyle.util.LoadingCallback;
+import com.pixate.freestyle.util.PXBitmapCache;
+import com.pixate.freestyle.util.PXBitmapDecoder;
+import com.pixate.freestyle.util.PXLog;
+import com.pixate.freestyle.util.PXURLBitmapLoader;
+
+/**
+ * Loads the images, SVGs and fonts a stylesheet references into their caches
+ * on a background pool, so the first render of a screen doesn't block on I/O.
+ * The urls of the media groups that match the current configuration are
+ * queued in the order they appear in the stylesheet. Calling
+ * {@link #prioritize(View)} moves the urls that are referenced by the rule
+ * sets of the visible views in a hierarchy to the head of the queue. Since the
+ * views have to be laid out for that, {@link #prioritizeOnLayout(View)} defers
+ * the call to the first layout of the hierarchy's content.
+ * <p>
+ * Bitmaps are prefetched at the size {@link PXImagePaint} decodes them at when
+ * rendering a background: local bitmaps at their full size (they may be
+ * nine-patches), and remote bitmaps at the bounds of the view that references
+ * them. Remote bitmaps are therefore only prefetched for laid out views.
+ * </p>
+ */
+public class PXResourcePrefetcher {
+
+    private static final String TAG = PXResourcePrefetcher.class.getSimpleName();
+
+    private static final int POOL_SIZE = 2;
+    private static final int KEEP_ALIVE_SECONDS = 5;
+
+    private static final int PRIORITY_NORMAL = 0;
+    private static final int PRIORITY_VISIBLE = 1;
+
+    private static final String[] FONT_EXTENSIONS = { ".ttf", ".otf" };
+
+    // The tasks that are queued or running, by their url.
+    private static final ConcurrentHashMap<String, PrefetchTask> PENDING =
+            new ConcurrentHashMap<String, PrefetchTask>();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    // The hierarchies that wait for their first layout to be prioritized
+    private static final Map<View, Boolean> WAITING_FOR_LAYOUT =
+            new WeakHashMap<View, Boolean>();
+
+    private static ThreadPoolExecutor executor;
+    private static volatile boolean enabled = true;
+
+    private PXResourcePrefetcher() {
+        // No-op. Avoid instantiation.
+    }
+
+    /**
+     * Sets whether stylesheet resources are prefetched. Default is
+     * <code>true</code>. Disabling the prefetching cancels the queued loads.
+     * 
+     * @param prefetch
+     */
+    public static void setEnabled(boolean prefetch) {
+        enabled = prefetch;
+        if (!prefetch) {
+            cancelAll();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the urls that are referenced by the media groups of the given
+     * stylesheet that match the given context.
+     * 
+     * @param stylesheet
+     * @param context
+     */
+    public static void prefetch(PXStylesheet stylesheet, Context context) {
+        if (!enabled || stylesheet == null) {
+            return;
+        }
+        List<PXMediaGroup> groups = stylesheet.getMediaGroups();
+        if (groups == null) {
+            return;
+        }
+        for (PXMediaGroup group : groups) {
+            if (context == null || group.matches(context)) {
+                for (Uri uri : group.getReferencedURLs()) {
+                    enqueue(uri, 0, 0, PRIORITY_NORMAL);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the urls that are referenced by the visible views in the given
+     * hierarchy to the head of the prefetching queue. Urls that were not
+     * queued yet are queued as well.
+     * 
+     * @param root
+     */
+    public static void prioritize(View root) {
+        if (!enabled || root == null) {
+            return;
+        }
+        List<PXStylesheet> stylesheets = new ArrayList<PXStylesheet>(3);
+        addIfNotNull(stylesheets, PXStylesheet.getCurrentApplicationStylesheet());
+        addIfNotNull(stylesheets, PXStylesheet.getCurrentUserStylesheet());
+        addIfNotNull(stylesheets, PXStylesheet.getCurrentViewStylesheet());
+        if (!stylesheets.isEmpty()) {
+            prioritize(root, stylesheets);
+        }
+    }
+
+    /**
+     * Calls {@link #prioritize(View)} once the content of the given hierarchy
+     * is laid out for the first time. Use this method when the hierarchy is
+     * not populated yet (e.g. an activity's decor view before
+     * <code>setContentView</code> is called).
+     * 
+     * @param root
+     */
+    public static void prioritizeOnLayout(final View root) {
+        if (!enabled || root == null) {
+            return;
+        }
+        synchronized (WAITING_FOR_LAYOUT) {
+            if (WAITING_FOR_LAYOUT.put(root, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+        root.getViewTreeObserver().addOnGlobalLayoutListener(new OnGlobalLayoutListener() {
+            public void onGlobalLayout() {
+                if (!hasContent(root)) {
+                    // wait for the content to be attached
+                    return;
+                }
+                ViewTreeObserver observer = root.getViewTreeObserver();
+                if (observer.isAlive()) {
+                    removeGlobalLayoutListener(observer, this);
+                }
+                synchronized (WAITING_FOR_LAYOUT) {
+                    WAITING_FOR_LAYOUT.remove(root);
+                }
+                prioritize(root);
+            }
+        });
+    }
+
+    /**
+     * Cancels all the queued loads. Loads that already started are completed.
+     */
+    public static void cancelAll() {
+        ThreadPoolExecutor pool = executor;
+        for (PrefetchTask task : PENDING.values()) {
+            if (pool != null && pool.remove(task)) {
+                PENDING.remove(task.key, task);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the queued and running loads.
+     */
+    public static int getPendingCount() {
+        return PENDING.size();
+    }
+
+    private static void prioritize(View view, List<PXStylesheet> stylesheets) {
+        if (view.getVisibility() != View.VISIBLE) {
+            return;
+        }
+        Context context = view.getContext();
+        int width = view.getWidth();
+        int height = view.getHeight();
+        for (PXStylesheet stylesheet : stylesheets) {
+            // note that we take the candidate rule sets without matching
+            // their selectors, so the urls of the view's other states (e.g.
+            // pressed) are loaded early as well.
+            List<PXRuleSet> ruleSets = stylesheet.getRuleSets(view, context);
+            if (ruleSets == null) {
+                continue;
+            }
+            for (PXRuleSet ruleSet : ruleSets) {
+                for (PXDeclaration declaration : ruleSet.getDeclarations()) {
+                    for (Uri uri : declaration.getReferencedURLs()) {
+                        enqueue(uri, width, height, PRIORITY_VISIBLE);
+                    }
+                }
+            }
+        }
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            int count = group.getChildCount();
+            for (int i = 0; i < count; i++) {
+                prioritize(group.getChildAt(i), stylesheets);
+            }
+        }
+    }
+
+    private static void enqueue(Uri uri, int width, int height, int priority) {
+        PXImagePaint paint = new PXImagePaint(uri);
+        if (paint.hasSVGImageURL() || !paint.isRemote() || isFont(uri)) {
+            // loaded at their full size
+            width = height = 0;
+        } else if (width <= 0 || height <= 0) {
+            // the bounds of a remote bitmap are only known once a view that
+            // references it is laid out
+            return;
+        }
+        String key = width > 0 ? uri.toString() + '@' + width + 'x' + height : uri.toString();
+        PrefetchTask task = new PrefetchTask(key, uri, width, height, priority);
+        PrefetchTask existing = PENDING.putIfAbsent(key, task);
+        ThreadPoolExecutor pool = getExecutor();
+        if (existing == null) {
+            pool.execute(task);
+        } else if (existing.priority < priority && pool.remove(existing)) {
+            // re-queue with the higher priority. A task that was already
+            // taken by a worker thread can't be removed, and is left alone.
+            PENDING.replace(key, existing, task);
+            pool.execute(task);
+        }
+    }
+
+    private static void fetch(Uri uri, int width, int height) throws Exception {
+        if (isFont(uri)) {
+            PXFontRegistry.getTypeface(uri);
+            return;
+        }
+        PXImagePaint paint = new PXImagePaint(uri);
+        if (paint.hasSVGImageURL()) {
+            PXSVGCache.loadFromURL(uri);
+        } else if (PXBitmapCache.get(uri, width, height, null) == null) {
+            Bitmap bitmap;
+            if (paint.isRemote()) {
+                final Bitmap[] result = new Bitmap[1];
+                PXURLBitmapLoader.loadBitmap(uri, width, height, new LoadingCallback<Bitmap>() {
+
+                    @Override
+                    public void onError(Throwable error) {
+                        PXLog.e(TAG, error, "Error while prefetching a bitmap");
+                    }
+
+                    @Override
+                    public void onLoaded(Bitmap bm) {
+                        result[0] = bm;
+                    }
+                }, true);
+                bitmap = result[0];
+            } else {
+                bitmap = PXBitmapDecoder.decode(uri, width, height);
+            }
+            PXBitmapCache.put(uri, width, height, null, bitmap);
+        }
+    }
+
+    private static boolean isFont(Uri uri) {
+        String path = uri.getPath();
+        if (path == null) {
+            return false;
+        }
+        path = path.toLowerCase(Locale.US);
+        for (String extension : FONT_EXTENSIONS) {
+            if (path.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasContent(View root) {
+        if (root.getWidth() == 0 && root.getHeight() == 0) {
+            return false;
+        }
+        View content = root.findViewById(android.R.id.content);
+        return !(content instanceof ViewGroup) || ((ViewGroup) content).getChildCount() > 0;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void removeGlobalLayoutListener(ViewTreeObserver observer,
+            OnGlobalLayoutListener listener) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            removeGlobalLayoutListenerJB(observer, listener);
+        } else {
+            observer.removeGlobalOnLayoutListener(listener);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void removeGlobalLayoutListenerJB(ViewTreeObserver observer,
+            OnGlobalLayoutListener listener) {
+        observer.removeOnGlobalLayoutListener(listener);
+    }
+
+    private static <T> void addIfNotNull(List<T> list, T item) {
+        if (item != null) {
+            list.add(item);
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(final Runnable r) {
+                            return new Thread(new Runnable() {
+                                public void run() {
+                                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                    r.run();
+                                }
+                            }, "PXPrefetch #" + count.incrementAndGet());
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * A single url load. Tasks with a higher priority run first, and tasks
+     * with the same priority run in the order they were queued.
+     */
+    private static class PrefetchTask implements Runnable, Comparable<PrefetchTask> {
+        private final String key;
+        private final Uri uri;
+        private final int width;
+        private final int height;
+        private final int priority;
+        private final long sequence;
+
+        private PrefetchTask(String key, Uri uri, int width, int height, int priority) {
+            this.key = key;
+            this.uri = uri;
+            this.width = width;
+            this.height = height;
+            this.priority = priority;
+            this.sequence = SEQUENCE.incrementAndGet();
+        }
+
+        public void run() {
+            try {
+                if (enabled) {
+                    fetch(uri, width, height);
+                }
+            } catch (Exception e) {
+                PXLog.e(TAG, e, "Error prefetching " + uri);
+            } finally {
+                PENDING.remove(key, this);
+            }
+        }
+
+        public int compareTo(PrefetchTask another) {
+            if (priority != another.priority) {
+                return priority > another.priority ? -1 : 1;
+            }
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+    }
+}
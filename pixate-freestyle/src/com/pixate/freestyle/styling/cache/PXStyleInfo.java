@@ -28,7 +28,9 @@ import com.pixate.freestyle.styling.PXStyleUtils;
 import com.pixate.freestyle.styling.adapters.PXStyleAdapter;
 import com.pixate.freestyle.styling.selectors.PXTypeSelector;
 import com.pixate.freestyle.styling.stylers.PXStyler;
+import com.pixate.freestyle.styling.stylers.PXStylerBase.PXDeclarationHandler;
 import com.pixate.freestyle.styling.stylers.PXStylerContext;
+import com.pixate.freestyle.styling.stylers.PXStylerDispatchTable;
 import com.pixate.freestyle.util.CollectionUtil;
 import com.pixate.freestyle.util.ObjectUtil;
 import com.pixate.freestyle.util.PXColorUtil;
@@ -47,6 +49,7 @@ public class PXStyleInfo {
 
     private Map<String, List<PXDeclaration>> declarationsByState;
     private Map<String, Set<PXStyler>> stylersByState;
+    private Map<String, PXStyleDispatch> dispatchByState;
     private String styleKey;
 
     /**
@@ -69,6 +72,9 @@ public class PXStyleInfo {
             }
             // TODO: check for pre-existing?
             declarationsByState.put(stateName, declarations);
+            if (dispatchByState != null) {
+                dispatchByState.remove(stateName);
+            }
         }
     }
 
@@ -103,8 +109,7 @@ public class PXStyleInfo {
             return;
         }
 
-        List<PXStyler> stylers = styleAdapter.getStylers();
-        Map<String, PXStyler> stylersByProperty = styleAdapter.getStylersByProperty();
+        PXStylerDispatchTable dispatchTable = styleAdapter.getStylerDispatchTable();
 
         Set<String> states = getStates();
         if (states == null) {
@@ -126,8 +131,6 @@ public class PXStyleInfo {
                       * stylesOfStyleable:styleable
                       * matchDeclarations:activeDeclarations state:stateName]
                       */) {
-                Set<PXStyler> activeStylers = getStylers(stateName);
-
                 // create context and store styleable and state name there
                 int styleHash = 17
                         * PXStyleAdapter.getStyleAdapter(styleable).getBounds(styleable).hashCode()
@@ -135,20 +138,7 @@ public class PXStyleInfo {
                 PXStylerContext context = new PXStylerContext(styleable, stateName, styleHash);
 
                 // process declarations in styler order
-                for (PXStyler currentStyler : stylers) {
-                    if (activeStylers != null && activeStylers.contains(currentStyler)) {
-                        // process the declarations, in order
-                        for (PXDeclaration declaration : activeDeclarations) {
-                            PXStyler styler = stylersByProperty.get(declaration.getName());
-
-                            if (styler == currentStyler) {
-                                styler.processDeclaration(declaration, context);
-                            }
-                        }
-                        // apply styler completion block
-                        currentStyler.applyStylesWithContext(context);
-                    }
-                }
+                getDispatch(stateName, dispatchTable).apply(context);
 
                 // see if there's a catch-all 'updateStyleWithRuleSet:context:'
                 // method to call
@@ -167,6 +157,23 @@ public class PXStyleInfo {
         styleAdapter.updateStyle(ruleSets, contexts);
     }
 
+    /**
+     * Returns the declarations of a state, bucketed by styler. The buckets are
+     * computed once per state, and then reused every time this style info is
+     * applied.
+     */
+    private PXStyleDispatch getDispatch(String stateName, PXStylerDispatchTable dispatchTable) {
+        if (dispatchByState == null) {
+            dispatchByState = new HashMap<String, PXStyleDispatch>();
+        }
+        PXStyleDispatch dispatch = dispatchByState.get(stateName);
+        if (dispatch == null || dispatch.dispatchTable != dispatchTable) {
+            dispatch = new PXStyleDispatch(getDeclarations(stateName), dispatchTable);
+            dispatchByState.put(stateName, dispatch);
+        }
+        return dispatch;
+    }
+
     @Override
     public String toString() {
         List<String> parts = new ArrayList<String>();
@@ -253,7 +260,7 @@ public class PXStyleInfo {
         PXRuleSet mergedRuleSet = PXRuleSet.mergeRuleSets(ruleSets);
         PXStyleAdapter styleAdapter = PXStyleAdapter.getStyleAdapter(styleable);
         List<PXStyler> stylers = styleAdapter.getStylers();
-        Map<String, PXStyler> stylersByProperty = styleAdapter.getStylersByProperty();
+        PXStylerDispatchTable dispatchTable = styleAdapter.getStylerDispatchTable();
 
         // build a set of stylers that are active based on the property names we
         // have in the merged rule set
@@ -263,7 +270,7 @@ public class PXStyleInfo {
         List<PXDeclaration> activeDeclarations = new ArrayList<PXDeclaration>();
 
         for (PXDeclaration declaration : mergedRuleSet.getDeclarations()) {
-            PXStyler styler = stylersByProperty.get(declaration.getName());
+            PXStyler styler = dispatchTable.getStyler(declaration.getNameSymbol());
             // In case the styler is null, we also check if the adapter supports
             // it. This is important for the Node tests.
             if (styler != null || !styleAdapter.isSupportingStylers()) {
@@ -278,5 +285,68 @@ public class PXStyleInfo {
 
         styleInfo.addDeclarations(activeDeclarations, stateName);
         styleInfo.addStylers(activeStylers, stateName);
+        styleInfo.getDispatch(stateName, dispatchTable);
+    }
+
+    /**
+     * A state's declarations, sorted by the order of the stylers that handle
+     * them. Declarations of the same styler keep their relative order.
+     */
+    private static class PXStyleDispatch {
+        private final PXStylerDispatchTable dispatchTable;
+        private final PXDeclaration[] declarations;
+        private final PXStyler[] stylers;
+        private final PXDeclarationHandler[] handlers;
+
+        private PXStyleDispatch(List<PXDeclaration> activeDeclarations,
+                PXStylerDispatchTable dispatchTable) {
+            this.dispatchTable = dispatchTable;
+
+            // count the declarations of each styler
+            int size = (activeDeclarations != null) ? activeDeclarations.size() : 0;
+            int[] symbols = new int[size];
+            int[] offsets = new int[dispatchTable.getStylersCount() + 1];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                symbols[i] = activeDeclarations.get(i).getNameSymbol();
+                int order = dispatchTable.getStylerOrder(symbols[i]);
+                if (order != PXStylerDispatchTable.NO_STYLER) {
+                    offsets[order + 1]++;
+                    count++;
+                }
+            }
+            for (int i = 1; i < offsets.length; i++) {
+                offsets[i] += offsets[i - 1];
+            }
+
+            // place each declaration in its styler's bucket
+            declarations = new PXDeclaration[count];
+            stylers = new PXStyler[count];
+            handlers = new PXDeclarationHandler[count];
+            for (int i = 0; i < size; i++) {
+                int order = dispatchTable.getStylerOrder(symbols[i]);
+                if (order != PXStylerDispatchTable.NO_STYLER) {
+                    int index = offsets[order]++;
+                    declarations[index] = activeDeclarations.get(i);
+                    stylers[index] = dispatchTable.getStylerAt(order);
+                    handlers[index] = dispatchTable.getHandler(symbols[i]);
+                }
+            }
+        }
+
+        private void apply(PXStylerContext context) {
+            for (int i = 0; i < declarations.length; i++) {
+                PXStyler styler = stylers[i];
+                if (handlers[i] != null) {
+                    handlers[i].process(declarations[i], context);
+                } else {
+                    styler.processDeclaration(declarations[i], context);
+                }
+                if (i + 1 == declarations.length || stylers[i + 1] != styler) {
+                    // apply styler completion block
+                    styler.applyStylesWithContext(context);
+                }
+            }
+        }
     }
 }
@@ -89,4 +89,13 @@ public abstract class PXCombinatorBase extends PXSelector implements PXCombinato
         writer.print(")");
         writer.decreaseIndent();
     }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("(%s %s %s)", lhs, getDisplayName(), rhs);
+    }
 }
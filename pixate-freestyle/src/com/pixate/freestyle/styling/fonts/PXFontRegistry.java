@@ -15,14 +15,38 @@
  ******************************************************************************/
 package com.pixate.freestyle.styling.fonts;
 
-import java.net.URL;
-import java.util.HashMap;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import android.content.res.AssetManager;
+import android.app.Activity;
+import android.content.Context;
 import android.graphics.Typeface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 
+import com.pixate.freestyle.PixateFreestyle;
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXCacheUnit;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXManagedCache;
+import com.pixate.freestyle.util.ObjectUtil;
 import com.pixate.freestyle.util.PXLog;
+import com.pixate.freestyle.util.StringUtil;
+import com.pixate.freestyle.util.UrlStreamOpener;
 
 /**
  * PXFontRegistry is a singleton responsible for mapping a font family, style,
@@ -30,69 +54,388 @@ import com.pixate.freestyle.util.PXLog;
  * {@link android.graphics.Typeface}. Fall-back mechanisms are used when a
  * specific configuration is not available. All lookups are cached, so future
  * lookups are quite fast.
+ * <p>
+ * The fonts that are declared with a <code>@font-face</code> rule are loaded
+ * on a background thread as soon as the rule is parsed. A lookup of a
+ * declared family never waits for its font to load: until the font is loaded,
+ * the lookup returns the system's fallback for the family, and once it's
+ * loaded the views are restyled. The registry may be accessed from any thread.
+ * </p>
  */
 public class PXFontRegistry {
 
     private static String TAG = PXFontRegistry.class.getSimpleName();
 
+    private static final int KEEP_ALIVE_SECONDS = 5;
+    private static final String FONT_CACHE_DIR = "pxfonts";
+
     /**
      * A map that hold {@link Typeface} instances that are mapped by a font
-     * "key. A key is defined as "font-family:weight:style" string.
+     * family and a {@link Typeface} style.
+     */
+    private static final Map<FontKey, Typeface> FONT_BY_KEY =
+            new ConcurrentHashMap<FontKey, Typeface>();
+
+    /**
+     * A map that hold {@link Typeface} instances that are mapped by a
+     * {@link Uri} string.
      */
-    public static final Map<String, Typeface> FONT_BY_KEY = new HashMap<String, Typeface>();
+    private static final Map<String, Typeface> FONT_BY_URI =
+            new ConcurrentHashMap<String, Typeface>();
 
     /**
-     * A map that hold {@link Typeface} instances that are mapped by a URL .
+     * The <code>@font-face</code> declared fonts, which may still be loading.
      */
-    public static final Map<URL, Typeface> FONT_BY_URL = new HashMap<URL, Typeface>();
+    private static final Map<FontKey, FontFaceTask> FONT_FACES =
+            new ConcurrentHashMap<FontKey, FontFaceTask>();
+
+    // Guards the registration of font faces against the caching of lookups
+    // that were resolved with a replaced font face.
+    private static final Object FONT_FACES_LOCK = new Object();
+
+    private static ThreadPoolExecutor loader;
+    private static Handler mainHandler;
+
+    /**
+     * The maximum number of resolved family lookups, and of loaded font
+     * files. A {@link Typeface} keeps its font data in native memory, which
+     * can't be measured, so the budgets are in entries.
+     */
+    private static final int MAX_TYPEFACES = 64;
+    private static final int MAX_FONT_FILES = 16;
+
+    private static final TypefaceCache<FontKey> TYPEFACES = new TypefaceCache<FontKey>(
+            FONT_BY_KEY, MAX_TYPEFACES);
+    // The font-face tasks keep their own typeface, so evicting a font file
+    // only forces direct lookups by URI to load it again.
+    private static final TypefaceCache<String> FONT_FILES = new TypefaceCache<String>(
+            FONT_BY_URI, MAX_FONT_FILES);
+
+    static {
+        PXCacheManager.register("typefaces", PXCacheUnit.ENTRIES, TYPEFACES);
+        PXCacheManager.register("font-files", PXCacheUnit.ENTRIES, FONT_FILES);
+    }
 
     private PXFontRegistry() {
         // No-op. Avoid instantiation.
     }
 
     public static Typeface getTypeface(String family, String weight, String style) {
-        String key = deriveKey(family, weight, style);
+        int typefaceStyle = getTypefaceStyle(weight, style);
+        FontKey key = new FontKey(family, typefaceStyle);
         Typeface match = FONT_BY_KEY.get(key);
-        Typeface result;
-
         if (match != null) {
-            result = match;
+            return match;
+        }
 
-        } else {
-            int typefaceStyle = Typeface.NORMAL; // default
-
-            if ("bold".equals(weight) && "italic".equals(style)) {
-                typefaceStyle = Typeface.BOLD_ITALIC;
-            } else if ("bold".equals(weight)) {
-                typefaceStyle = Typeface.BOLD;
-            } else if ("italic".equals(style)) {
-                typefaceStyle = Typeface.ITALIC;
+        FontFaceTask face = findFontFace(family, typefaceStyle);
+        Typeface result = null;
+        boolean loaded = true;
+        if (face != null) {
+            if (!face.isDone()) {
+                // Don't wait for the font; restyle once it's loaded. The flag
+                // is set before checking again, so a font that completes in
+                // between is either seen as done here, or restyles.
+                face.restyleWhenDone = true;
+                loaded = face.isDone();
             }
-
+            if (loaded) {
+                result = getFontFace(face, family, typefaceStyle);
+            }
+        }
+        if (result == null) {
             result = Typeface.create(family, typefaceStyle);
-            FONT_BY_KEY.put(key, result);
         }
-
+        if (result != null && loaded) {
+            synchronized (FONT_FACES_LOCK) {
+                // don't cache a lookup of a font face that was replaced
+                // while we were resolving it
+                if (findFontFace(family, typefaceStyle) == face) {
+                    TYPEFACES.put(key, result);
+                }
+            }
+        }
         return result;
-
     }
 
-    public static Typeface getTypeface(AssetManager manager, URL path) {
-        Typeface match = FONT_BY_URL.get(path);
+    /**
+     * Returns a {@link Typeface} for the font file at the given {@link Uri}. A
+     * {@link Uri} without a scheme is an asset path. Fonts that are not assets
+     * or plain files (for example, <code>bundle://</code> or remote fonts) are
+     * copied into the application's cache directory first, as a
+     * {@link Typeface} can only be created from a file or an asset.
+     * 
+     * @param uri
+     * @return A {@link Typeface}, or <code>null</code> if the font could not be
+     *         loaded.
+     */
+    public static Typeface getTypeface(Uri uri) {
+        String key = uri.toString();
+        Typeface match = FONT_BY_URI.get(key);
         if (match != null) {
             return match;
         }
-        // We don't have it. Try to load that font.
-        Typeface typeface = Typeface.createFromAsset(manager, path.toString());
+        Typeface typeface = null;
+        try {
+            typeface = loadTypeface(uri);
+        } catch (Exception e) {
+            PXLog.e(TAG, e, "Error loading a Typeface from " + uri);
+        }
         if (typeface != null) {
-            FONT_BY_URL.put(path, typeface);
+            FONT_FILES.put(key, typeface);
         } else {
-            PXLog.e(TAG, "Could not load a Typeface from " + path);
+            PXLog.e(TAG, "Could not load a Typeface from " + uri);
         }
         return typeface;
     }
 
-    private static String deriveKey(String family, String weight, String style) {
-        return String.format("%s:%s:%s", family, weight, style);
+    /**
+     * Registers the font of a <code>@font-face</code> rule, and starts loading
+     * it in the background. A registration replaces a previous one of the same
+     * family, weight and style.
+     * 
+     * @param family The font family
+     * @param weight The font weight (may be <code>null</code>)
+     * @param style The font style (may be <code>null</code>)
+     * @param src The font file {@link Uri}
+     */
+    public static void registerFontFace(String family, String weight, String style,
+            final Uri src) {
+        FontFaceTask task = new FontFaceTask(new Callable<Typeface>() {
+            public Typeface call() throws Exception {
+                return getTypeface(src);
+            }
+        });
+        synchronized (FONT_FACES_LOCK) {
+            FONT_FACES.put(new FontKey(family, getTypefaceStyle(weight, style)), task);
+
+            // drop the typefaces that were resolved for the family before
+            for (Iterator<FontKey> iterator = FONT_BY_KEY.keySet().iterator(); iterator
+                    .hasNext();) {
+                if (ObjectUtil.areEqual(family, iterator.next().family)) {
+                    iterator.remove();
+                }
+            }
+        }
+        getLoader().execute(task);
+    }
+
+    /**
+     * Returns the registered font face for the family and style, falling back
+     * to the family's normal font face.
+     */
+    private static FontFaceTask findFontFace(String family, int typefaceStyle) {
+        FontFaceTask face = FONT_FACES.get(new FontKey(family, typefaceStyle));
+        if (face == null && typefaceStyle != Typeface.NORMAL) {
+            face = FONT_FACES.get(new FontKey(family, Typeface.NORMAL));
+        }
+        return face;
+    }
+
+    /**
+     * Returns the {@link Typeface} of a font face that is done loading.
+     */
+    private static Typeface getFontFace(FontFaceTask face, String family, int typefaceStyle) {
+        boolean exact = face == FONT_FACES.get(new FontKey(family, typefaceStyle));
+        Typeface typeface;
+        try {
+            typeface = face.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            PXLog.e(TAG, e, "Error loading the font-face of " + family);
+            return null;
+        }
+        if (typeface != null && !exact) {
+            // synthesize the style from the family's normal font
+            typeface = Typeface.create(typeface, typefaceStyle);
+        }
+        return typeface;
+    }
+
+    private static int getTypefaceStyle(String weight, String style) {
+        if ("bold".equals(weight) && "italic".equals(style)) {
+            return Typeface.BOLD_ITALIC;
+        } else if ("bold".equals(weight)) {
+            return Typeface.BOLD;
+        } else if ("italic".equals(style)) {
+            return Typeface.ITALIC;
+        }
+        return Typeface.NORMAL; // default
+    }
+
+    private static Typeface loadTypeface(Uri uri) throws IOException {
+        String uriString = uri.toString();
+        Context context = PixateFreestyle.getAppContext();
+        if (uri.getScheme() == null) {
+            return context != null ? Typeface.createFromAsset(context.getAssets(), uriString)
+                    : null;
+        }
+        if (uriString.startsWith(UrlStreamOpener.FILE_SCHEME)) {
+            return Typeface.createFromFile(uri.getPath());
+        }
+        if (context == null) {
+            return null;
+        }
+        File dir = new File(context.getCacheDir(), FONT_CACHE_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return null;
+        }
+        File file = new File(dir, StringUtil.digest(uriString));
+        if (!file.isFile()) {
+            InputStream in = UrlStreamOpener.open(uri);
+            if (in == null) {
+                return null;
+            }
+            // write into a temporary file, so a concurrent load never sees a
+            // partial font
+            File tmp = new File(dir, file.getName() + '.' + Thread.currentThread().getId());
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                if (!file.isFile()) {
+                    return null;
+                }
+            }
+        }
+        return Typeface.createFromFile(file);
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+    private static synchronized ThreadPoolExecutor getLoader() {
+        if (loader == null) {
+            loader = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(final Runnable r) {
+                            return new Thread(new Runnable() {
+                                public void run() {
+                                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                    r.run();
+                                }
+                            }, "PXFontLoader");
+                        }
+                    });
+            loader.allowCoreThreadTimeOut(true);
+        }
+        return loader;
+    }
+
+    /**
+     * The loading of a <code>@font-face</code> font. In case a lookup fell back
+     * to the system font while the font was loading, the views are restyled
+     * once it's loaded.
+     */
+    private static class FontFaceTask extends FutureTask<Typeface> {
+        private volatile boolean restyleWhenDone;
+
+        private FontFaceTask(Callable<Typeface> callable) {
+            super(callable);
+        }
+
+        @Override
+        protected void done() {
+            if (restyleWhenDone && !isCancelled()) {
+                getMainHandler().post(new Runnable() {
+                    public void run() {
+                        PixateFreestyle.restyleAll();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * A font lookup key.
+     */
+    private static class FontKey {
+        private final String family;
+        private final int style;
+        private final int hash;
+
+        private FontKey(String family, int style) {
+            this.family = family;
+            this.style = style;
+            this.hash = 31 * (family != null ? family.hashCode() : 0) + style;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FontKey)) {
+                return false;
+            }
+            FontKey other = (FontKey) o;
+            return style == other.style && ObjectUtil.areEqual(family, other.family);
+        }
+    }
+
+    /**
+     * A {@link PXManagedCache} of one of the typeface maps. The maps are not
+     * ordered, so trimming evicts arbitrary entries.
+     */
+    private static class TypefaceCache<K> implements PXManagedCache {
+        private final Map<K, Typeface> typefaces;
+        private final int maxSize;
+
+        private TypefaceCache(Map<K, Typeface> typefaces, int maxSize) {
+            this.typefaces = typefaces;
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Puts a typeface in the map, and trims the map to its budget.
+         */
+        private void put(K key, Typeface typeface) {
+            typefaces.put(key, typeface);
+            trimToSize(maxSize);
+        }
+
+        public int size() {
+            return typefaces.size();
+        }
+
+        public int maxSize() {
+            return maxSize;
+        }
+
+        public void trimToSize(int maxSize) {
+            Iterator<K> iterator = typefaces.keySet().iterator();
+            while (typefaces.size() > maxSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        public void evictAll() {
+            typefaces.clear();
+        }
+
+        public void releaseActivity(Activity activity) {
+            // No-op
+        }
     }
 }
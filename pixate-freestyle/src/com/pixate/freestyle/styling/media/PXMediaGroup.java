@@ -16,16 +16,17 @@
 package com.pixate.freestyle.styling.media;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import android.content.Context;
+import android.net.Uri;
+import android.util.SparseArray;
 
+import com.pixate.freestyle.styling.PXDeclaration;
 import com.pixate.freestyle.styling.PXRuleSet;
-import com.pixate.freestyle.styling.PXStyleUtils;
+import com.pixate.freestyle.styling.PXSymbolTable;
 import com.pixate.freestyle.styling.PXStylesheet.PXStyleSheetOrigin;
 import com.pixate.freestyle.styling.adapters.PXStyleAdapter;
 import com.pixate.freestyle.styling.selectors.PXTypeSelector;
@@ -38,9 +39,11 @@ public class PXMediaGroup implements PXMediaExpression {
     private PXStyleSheetOrigin origin;
     private PXMediaExpression query;
     private List<PXRuleSet> ruleSets;
-    private Map<String, List<PXRuleSet>> ruleSetsByElementName;
-    private Map<String, List<PXRuleSet>> ruleSetsById;
-    private Map<String, List<PXRuleSet>> ruleSetsByClass;
+    // rule sets partitioned by the PXSymbolTable symbols of their target. Each
+    // partition is kept in cascade order (see PXRuleSet#getCascadeOrder())
+    private SparseArray<List<PXRuleSet>> ruleSetsByElementName;
+    private SparseArray<List<PXRuleSet>> ruleSetsById;
+    private SparseArray<List<PXRuleSet>> ruleSetsByClass;
     private List<PXRuleSet> uncategorizedRuleSets;
 
     /**
@@ -62,71 +65,61 @@ public class PXMediaGroup implements PXMediaExpression {
         return (ruleSets != null) ? new ArrayList<PXRuleSet>(ruleSets) : null;
     }
 
+    /**
+     * Returns the rule sets of this group that may match the given styleable,
+     * in cascade order (see {@link PXRuleSet#getCascadeOrder()}).
+     * 
+     * @param styleable
+     * @return A list of rule sets, or <code>null</code>
+     */
     public List<PXRuleSet> getRuleSets(Object styleable) {
-        List<PXRuleSet> result = new ArrayList<PXRuleSet>();
-        Set<PXRuleSet> items = new HashSet<PXRuleSet>();
+        List<PXRuleSet> result = null;
 
         // gather keys
         PXStyleAdapter styleAdapter = PXStyleAdapter.getStyleAdapter(styleable);
-        String elementName = styleAdapter.getElementName(styleable);
-        String styleId = styleAdapter.getStyleId(styleable);
-        String styleClass = styleAdapter.getStyleClass(styleable);
 
         // find relevant ruleSets by element name
-        if (ruleSetsByElementName != null && !StringUtil.isEmpty(elementName)) {
-            List<PXRuleSet> rs = ruleSetsByElementName.get(elementName);
-            if (rs != null) {
-                for (PXRuleSet ruleSet : rs) {
-                    if (!items.contains(ruleSet)) {
-                        result.add(ruleSet);
-                        items.add(ruleSet);
-                    }
-                }
-            }
+        if (ruleSetsByElementName != null) {
+            result = mergeRuleSets(result,
+                    ruleSetsByElementName.get(styleAdapter.getElementSymbol(styleable)));
         }
 
         // find relevant ruleSets by id
-        if (ruleSetsById != null && !StringUtil.isEmpty(styleId)) {
-            List<PXRuleSet> rs = ruleSetsById.get(styleId);
-            if (rs != null) {
-                for (PXRuleSet ruleSet : rs) {
-                    if (!items.contains(ruleSet)) {
-                        result.add(ruleSet);
-                        items.add(ruleSet);
-                    }
-                }
-            }
+        if (ruleSetsById != null) {
+            result = mergeRuleSets(result,
+                    ruleSetsById.get(styleAdapter.getStyleIdSymbol(styleable)));
         }
 
         // find relevant ruleSets by class
-        if (ruleSetsByClass != null && !StringUtil.isEmpty(styleClass)) {
-            String[] styleClasses = PXStyleUtils.PATTERN_WHITESPACE_PLUS.split(styleClass);
-
-            for (String aClass : styleClasses) {
-                List<PXRuleSet> rs = ruleSetsByClass.get(aClass);
-                if (rs != null) {
-                    for (PXRuleSet ruleSet : rs) {
-                        if (!items.contains(ruleSet)) {
-                            result.add(ruleSet);
-                            items.add(ruleSet);
-                        }
-                    }
-                }
+        if (ruleSetsByClass != null) {
+            for (int classSymbol : styleAdapter.getStyleClassSymbols(styleable)) {
+                result = mergeRuleSets(result, ruleSetsByClass.get(classSymbol));
             }
         }
 
         // fallback to all uncategorized ruleSets. Note that these are already
         // included in the element name, id, and class lists above, so we only
         // need to add these if we didn't find any of those
-        if (result.isEmpty()) {
+        if (result == null) {
             result = uncategorizedRuleSets;
         }
 
         return result;
     }
 
-    public void addRuleSet(PXRuleSet ruleSet, Map<String, List<PXRuleSet>> partition, String key) {
-        List<PXRuleSet> ruleSets = partition.get(key);
+    private static List<PXRuleSet> mergeRuleSets(List<PXRuleSet> result,
+            List<PXRuleSet> ruleSets) {
+        if (ruleSets == null || ruleSets.isEmpty()) {
+            return result;
+        }
+        // the partitions are all in cascade order, so a rule set that is in
+        // more than one of them is merged once, without sorting
+        return PXRuleSet.mergeCascadeOrdered(result, ruleSets);
+    }
+
+    private void addRuleSet(PXRuleSet ruleSet, SparseArray<List<PXRuleSet>> partition, String key) {
+        int symbol = PXSymbolTable.intern(key);
+        List<PXRuleSet> ruleSets = partition.get(symbol);
 
         // create ruleset array if we don't have one already
         if (ruleSets == null) {
@@ -139,11 +132,11 @@ public class PXMediaGroup implements PXMediaExpression {
             }
 
             // save the ruleSet array back to the partition dictionary
-            partition.put(key, ruleSets);
+            partition.put(symbol, ruleSets);
         }
 
         // add this ruleSet to the ruleSet array associated with the given key
-        ruleSets.add(ruleSet);
+        PXRuleSet.addCascadeOrdered(ruleSets, ruleSet);
     }
 
     /**
@@ -159,7 +152,8 @@ public class PXMediaGroup implements PXMediaExpression {
 
             this.ruleSets.add(ruleSet);
 
-            // set origin specificity
+            // set origin specificity. This updates the cascade order, so it
+            // needs to happen before the partitions below are updated
             ruleSet.setSpecificity(PXSpecificityType.ORIGIN, origin.ordinal());
 
             // setup lookup by element type
@@ -175,7 +169,7 @@ public class PXMediaGroup implements PXMediaExpression {
             // expressions for id and classes when not needed
             if (elementName != null && !"*".equals(elementName)) {
                 if (ruleSetsByElementName == null) {
-                    ruleSetsByElementName = new HashMap<String, List<PXRuleSet>>();
+                    ruleSetsByElementName = new SparseArray<List<PXRuleSet>>();
                 }
                 addRuleSet(ruleSet, ruleSetsByElementName, elementName);
                 added = true;
@@ -183,7 +177,7 @@ public class PXMediaGroup implements PXMediaExpression {
 
             if (!StringUtil.isEmpty(styleId)) {
                 if (ruleSetsById == null) {
-                    ruleSetsById = new HashMap<String, List<PXRuleSet>>();
+                    ruleSetsById = new SparseArray<List<PXRuleSet>>();
                 }
                 addRuleSet(ruleSet, ruleSetsById, styleId);
                 added = true;
@@ -191,7 +185,7 @@ public class PXMediaGroup implements PXMediaExpression {
 
             if (!CollectionUtil.isEmpty(styleClasses)) {
                 if (ruleSetsByClass == null) {
-                    ruleSetsByClass = new HashMap<String, List<PXRuleSet>>();
+                    ruleSetsByClass = new SparseArray<List<PXRuleSet>>();
                 }
 
                 for (String styleClass : styleClasses) {
@@ -209,26 +203,23 @@ public class PXMediaGroup implements PXMediaExpression {
                 if (uncategorizedRuleSets == null) {
                     uncategorizedRuleSets = new ArrayList<PXRuleSet>();
                 }
-                uncategorizedRuleSets.add(ruleSet);
+                PXRuleSet.addCascadeOrdered(uncategorizedRuleSets, ruleSet);
 
                 // add uncategorized ruleSets to all partitions
                 if (ruleSetsByElementName != null) {
-                    for (String key : ruleSetsByElementName.keySet()) {
-                        List<PXRuleSet> items = ruleSetsByElementName.get(key);
-                        items.add(ruleSet);
+                    for (int i = 0; i < ruleSetsByElementName.size(); i++) {
+                        PXRuleSet.addCascadeOrdered(ruleSetsByElementName.valueAt(i), ruleSet);
                     }
                 }
                 if (ruleSetsById != null) {
-                    for (String key : ruleSetsById.keySet()) {
-                        List<PXRuleSet> items = ruleSetsById.get(key);
-                        items.add(ruleSet);
+                    for (int i = 0; i < ruleSetsById.size(); i++) {
+                        PXRuleSet.addCascadeOrdered(ruleSetsById.valueAt(i), ruleSet);
                     }
                 }
 
                 if (ruleSetsByClass != null) {
-                    for (String key : ruleSetsByClass.keySet()) {
-                        List<PXRuleSet> items = ruleSetsByClass.get(key);
-                        items.add(ruleSet);
+                    for (int i = 0; i < ruleSetsByClass.size(); i++) {
+                        PXRuleSet.addCascadeOrdered(ruleSetsByClass.valueAt(i), ruleSet);
                     }
                 }
             }
@@ -261,6 +252,22 @@ public class PXMediaGroup implements PXMediaExpression {
         return (query != null) ? query.matches(context) : true;
     }
 
+    /**
+     * Returns the <code>url(...)</code> values referenced by the declarations
+     * of this group's rule sets, in the order they appear.
+     */
+    public Set<Uri> getReferencedURLs() {
+        Set<Uri> result = new LinkedHashSet<Uri>();
+        if (ruleSets != null) {
+            for (PXRuleSet ruleSet : ruleSets) {
+                for (PXDeclaration declaration : ruleSet.getDeclarations()) {
+                    result.addAll(declaration.getReferencedURLs());
+                }
+            }
+        }
+        return result;
+    }
+
     /*
      * (non-Javadoc)
      * @see java.lang.Object#toString()
@@ -176,6 +176,24 @@ public class PXNamedMediaExpression implements PXMediaExpression {
         return handler != null ? handler.getValue(context, this) : false;
     }
 
+    /**
+     * Returns {@link Boolean#TRUE} or {@link Boolean#FALSE} when this
+     * expression evaluates the same way for the life of the process (e.g. an
+     * unsupported name never matches), or <code>null</code> when it depends on
+     * the display.
+     */
+    public Boolean getStaticValue() {
+        PXNamedMediaExpressionHandler handler = handlers.get(name);
+        if (handler == null) {
+            return Boolean.FALSE;
+        }
+        if ("device".equals(name)) {
+            // depends on the build fingerprint only
+            return handler.getValue(null, this);
+        }
+        return null;
+    }
+
     /*
      * (non-Javadoc)
      * @see java.lang.Object#toString()
@@ -18,6 +18,9 @@
  */
 package com.pixate.freestyle.styling.parsing;
 
+import java.util.Arrays;
+
+import com.pixate.freestyle.cg.parsing.PXNumberTokenizer;
 import com.pixate.freestyle.parsing.Lexeme;
 import com.pixate.freestyle.util.ObjectUtil;
 
@@ -26,10 +29,130 @@ import com.pixate.freestyle.util.ObjectUtil;
  */
 public class PXStylesheetLexeme extends Lexeme<PXStylesheetTokenType> {
 
+    // The source characters of a lexeme that was scanned in place. Its String
+    // value is only created when a consumer asks for it, and the reference to
+    // the (whole) source is dropped at that point. Parsing a number copies the
+    // lexeme's own characters out of the source instead. Both are guarded by
+    // the lexeme's lock.
+    private char[] source;
+    private int sourceOffset;
+    private volatile String sourceValue;
+    // The parsed value of a number lexeme. It's written before the flag.
+    private float floatValue;
+    private volatile boolean hasFloatValue;
+    private volatile boolean frozen;
+
     public PXStylesheetLexeme(PXStylesheetTokenType type, int offset, int length, Object value) {
         super(type, offset, length, value);
     }
 
+    /**
+     * Constructs a new lexeme that refers to its characters in the scanned
+     * source. Note that the source array should not be modified while the
+     * lexeme is in use.
+     * 
+     * @param type
+     * @param offset The lexeme's offset in the stylesheet
+     * @param length
+     * @param source The scanned source
+     * @param sourceOffset The index of the lexeme's first character in the
+     *            source array
+     */
+    public PXStylesheetLexeme(PXStylesheetTokenType type, int offset, int length, char[] source,
+            int sourceOffset) {
+        super(type, offset, length, null);
+        this.source = source;
+        this.sourceOffset = sourceOffset;
+    }
+
+    @Override
+    public Object getValue() {
+        String value = sourceValue;
+        if (value != null) {
+            return value;
+        }
+        synchronized (this) {
+            if (sourceValue == null) {
+                if (source == null) {
+                    // a lexeme with an explicit value
+                    return super.getValue();
+                }
+                sourceValue = new String(source, sourceOffset, getLength());
+                source = null;
+            }
+            return sourceValue;
+        }
+    }
+
+    /**
+     * Returns the value of a number lexeme as a float. A lexeme that was
+     * scanned in place is parsed directly from the source characters, and
+     * keeps only a copy of its own characters afterwards.
+     * 
+     * @return The float value
+     * @throws NumberFormatException In case the lexeme is not a number
+     */
+    public float getFloatValue() {
+        if (hasFloatValue) {
+            return floatValue;
+        }
+        synchronized (this) {
+            if (source != null) {
+                int end = sourceOffset + getLength();
+                float result = PXNumberTokenizer.parseFloat(source, sourceOffset, end);
+                if (!Float.isNaN(result)) {
+                    source = Arrays.copyOfRange(source, sourceOffset, end);
+                    sourceOffset = 0;
+                    floatValue = result;
+                    hasFloatValue = true;
+                    return result;
+                }
+            }
+        }
+        Object value = getValue();
+        if (value instanceof Number) {
+            return ((Number) value).floatValue();
+        }
+        return Float.parseFloat(value.toString());
+    }
+
+    /**
+     * Makes the lexeme immutable. A lexeme that is shared (for example, by
+     * the declarations of a repeated value) is frozen, so changing its flags
+     * for one user can't affect the others. Note that the lazily created
+     * value is not a mutation, as it's always the same.
+     * 
+     * @see PXValueParser#lexemesForSource(String)
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Returns <code>true</code> if the lexeme is immutable.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public void setFlag(int flagType) {
+        checkNotFrozen();
+        super.setFlag(flagType);
+    }
+
+    @Override
+    public void clearFlag(int flagType) {
+        checkNotFrozen();
+        super.clearFlag(flagType);
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("The lexeme is shared and can't be modified");
+        }
+    }
+
     @Override
     public int hashCode() {
         int hash = 1;
@@ -5,10 +5,11 @@
 package com.pixate.freestyle.styling.parsing;
 
 import java.io.Reader;
-import java.io.StringReader;
+import java.nio.CharBuffer;
 import java.util.Stack;
 
 import com.pixate.freestyle.cg.math.PXDimension;
+import com.pixate.freestyle.cg.parsing.PXNumberTokenizer;
 import com.pixate.freestyle.parsing.Lexeme;
 
 
@@ -587,8 +588,14 @@ class PXStylesheetLexer {
   private boolean zzEOFDone;
 
   /* user code: */
-   /** Holds a source reference */
-  private String source;
+  /** The scanned characters, when a source is scanned in place */
+  private char[] chars;
+  private int charsOffset;
+  private int charsLength;
+  /** The scanner's own buffer, set aside while scanning in place */
+  private char[] readerBuffer;
+  /** Whether the skipped input ended with whitespace */
+  private boolean followsWhitespace;
     private Stack<PXStylesheetLexeme> lexemeStack;
     
   public PXStylesheetLexer() {
@@ -596,54 +603,74 @@ class PXStylesheetLexer {
   }
 
   private PXStylesheetLexeme createLexeme(PXStylesheetTokenType type) {
+    if (chars != null) {
+      // the lexeme's value is created from the source only when needed
+      return flagWhitespace(new PXStylesheetLexeme(type, yychar, yylength(), chars,
+          zzStartRead));
+    }
     return createLexeme(type, yytext());
   }
   
   private PXStylesheetLexeme createLexeme(PXStylesheetTokenType type, Object value) {
-    PXStylesheetLexeme result = new PXStylesheetLexeme(type, yychar, yylength(), value);
-
-    if (yychar > 0) {
-      char c = source.charAt(yychar - 1);
+    return flagWhitespace(new PXStylesheetLexeme(type, yychar, yylength(), value));
+  }
 
-      if (Character.isWhitespace(c)) {
-        result.setFlag(Lexeme.FLAG_TYPE_FOLLOWS_WHITESPACE);
-      }
+  private PXStylesheetLexeme flagWhitespace(PXStylesheetLexeme result) {
+    if (followsWhitespace) {
+      result.setFlag(Lexeme.FLAG_TYPE_FOLLOWS_WHITESPACE);
+      followsWhitespace = false;
     }
 
     return result;
   }
 
-  private PXDimension createDimension(String source, String units) {
-    String numberString = source.substring(0, source.length() - units.length());
+  /**
+   * Skips whitespace or a comment. The character preceding a lexeme may not be
+   * in the buffer anymore when reading from a {@link Reader}, so whether the
+   * lexeme follows whitespace is noted here.
+   */
+  private void skip() {
+    followsWhitespace = Character.isWhitespace(yycharat(yylength() - 1));
+  }
+
+  private PXDimension createDimension(String units) {
+    // parse the number in place
+    int end = zzMarkedPos - units.length();
+    float number = PXNumberTokenizer.parseFloat(zzBuffer, zzStartRead, end);
 
-    return new PXDimension(Float.parseFloat(numberString), units);
+    if (Float.isNaN(number)) {
+      number = Float.parseFloat(new String(zzBuffer, zzStartRead, end - zzStartRead));
+    }
+
+    return new PXDimension(number, units);
   }
 
   private PXStylesheetLexeme createURLLexeme() {
-    String source = yytext();
     int start = 4;
-    int end = source.length() - 1;
+    int end = yylength() - 1;
 
     // skip leading whitespace
-    while (start < end && Character.isWhitespace(source.charAt(start))) {
+    while (start < end && Character.isWhitespace(yycharat(start))) {
       start++;
     }
 
     // skip trailing whitespace
-    while (end >= start && Character.isWhitespace(source.charAt(end - 1))) {
+    while (end >= start && Character.isWhitespace(yycharat(end - 1))) {
       end--;
     }
 
     // grab possible leading quote
-    char firstChar = source.charAt(start);
+    char firstChar = yycharat(start);
 
     // trim off quotes if we have them and if they match
-    if ((firstChar == '\'' || firstChar == '"') && source.charAt(end - 1) == firstChar) {
+    if ((firstChar == '\'' || firstChar == '"') && yycharat(end - 1) == firstChar) {
       start++;
       end--;
     }
 
-    return createLexeme(PXStylesheetTokenType.URL, source.substring(start, end));
+    String url = new String(zzBuffer, zzStartRead + start, end - start);
+
+    return createLexeme(PXStylesheetTokenType.URL, url);
   }
 
   public PXStylesheetLexeme nextLexeme() {
@@ -664,15 +691,97 @@ class PXStylesheetLexer {
     return result;
   }
 
+  /**
+   * Sets a source that is scanned in place. The scanner reads from a char
+   * array, so the string is copied once; only the copy is kept, and the
+   * lexemes refer to it.
+   */
   public void setSource(String source) {
-    this.source = source;
-    yyreset(new StringReader(source));
+    setSource(source.toCharArray(), 0, source.length());
+  }
+
+  /**
+   * Sets a source that is scanned in place. The lexemes refer to the given
+   * array, so it should not be modified while they are in use.
+   */
+  public void setSource(char[] chars, int offset, int length) {
+    yyreset(null);
+    if (this.chars == null) {
+      readerBuffer = zzBuffer;
+    }
+    this.followsWhitespace = false;
+    this.chars = chars;
+    this.charsOffset = offset;
+    this.charsLength = length;
+
+    // scan the array as the scanner's buffer. Marking the input as fully
+    // read keeps the scanner from refilling (and compacting) the buffer.
+    zzBuffer = chars;
+    zzStartRead = zzCurrentPos = zzMarkedPos = offset;
+    zzEndRead = offset + length;
+    zzAtEOF = true;
+  }
+
+  /**
+   * Sets a source that is scanned in place, when the buffer is backed by an
+   * accessible array.
+   */
+  public void setSource(CharBuffer buffer) {
+    if (buffer.hasArray()) {
+      setSource(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+    else {
+      char[] copy = new char[buffer.remaining()];
+      buffer.duplicate().get(copy);
+      setSource(copy, 0, copy.length);
+    }
   }
   
+  /**
+   * Sets a source that is read as it's scanned. Only a window of the input is
+   * buffered, so the source is not available from {@link #getSource()}, and
+   * the lexemes hold copies of their text.
+   */
+  public void setSource(Reader reader) {
+    reset();
+    yyreset(reader);
+  }
+
+  /**
+   * Returns a new string with the source, or <code>null</code> for a
+   * {@link Reader} source.
+   */
   public String getSource() {
-    return source;
+    return (chars != null) ? new String(chars, charsOffset, charsLength) : null;
+  }
+
+  /**
+   * Returns a part of the source, between the given lexeme offsets, or
+   * <code>null</code> for a {@link Reader} source.
+   */
+  public String getSource(int start, int end) {
+    return (chars != null) ? new String(chars, charsOffset + start, end - start) : null;
   }
   
+  /**
+   * Releases the current source and any pushed lexemes, so this lexer can be
+   * reused for another source.
+   */
+  public void reset() {
+    yyreset(null);
+    if (chars != null) {
+      zzBuffer = readerBuffer;
+      readerBuffer = null;
+    }
+    followsWhitespace = false;
+    chars = null;
+    charsOffset = charsLength = 0;
+
+    if (lexemeStack != null) {
+      lexemeStack.clear();
+    }
+  }
+
   public void pushLexeme(PXStylesheetLexeme lexeme) {
     if (lexeme != null) {
       if (lexemeStack == null) {
@@ -992,11 +1101,11 @@ class PXStylesheetLexer {
           }
         case 93: break;
         case 34: 
-          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension(yytext(), "in"));
+          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension("in"));
           }
         case 94: break;
         case 46: 
-          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension(yytext(), "dpx"));
+          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension("dpx"));
           }
         case 95: break;
         case 69: 
@@ -1004,7 +1113,7 @@ class PXStylesheetLexer {
           }
         case 96: break;
         case 36: 
-          { return createLexeme(PXStylesheetTokenType.EXS, createDimension(yytext(), "ex"));
+          { return createLexeme(PXStylesheetTokenType.EXS, createDimension("ex"));
           }
         case 97: break;
         case 67: 
@@ -1044,7 +1153,7 @@ class PXStylesheetLexer {
           }
         case 106: break;
         case 41: 
-          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension(yytext(), "pc"));
+          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension("pc"));
           }
         case 107: break;
         case 15: 
@@ -1060,7 +1169,7 @@ class PXStylesheetLexer {
           }
         case 110: break;
         case 42: 
-          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension(yytext(), "px"));
+          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension("px"));
           }
         case 111: break;
         case 63: 
@@ -1072,11 +1181,11 @@ class PXStylesheetLexer {
           }
         case 113: break;
         case 37: 
-          { return createLexeme(PXStylesheetTokenType.FREQUENCY, createDimension(yytext(), "Hz"));
+          { return createLexeme(PXStylesheetTokenType.FREQUENCY, createDimension("Hz"));
           }
         case 114: break;
         case 43: 
-          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension(yytext(), "cm"));
+          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension("cm"));
           }
         case 115: break;
         case 60: 
@@ -1120,7 +1229,7 @@ class PXStylesheetLexer {
           }
         case 125: break;
         case 45: 
-          { return createLexeme(PXStylesheetTokenType.ANGLE, createDimension(yytext(), "deg"));
+          { return createLexeme(PXStylesheetTokenType.ANGLE, createDimension("deg"));
           }
         case 126: break;
         case 71: 
@@ -1168,7 +1277,7 @@ class PXStylesheetLexer {
           }
         case 137: break;
         case 48: 
-          { return createLexeme(PXStylesheetTokenType.FREQUENCY, createDimension(yytext(), "kHz"));
+          { return createLexeme(PXStylesheetTokenType.FREQUENCY, createDimension("kHz"));
           }
         case 138: break;
         case 56: 
@@ -1180,7 +1289,7 @@ class PXStylesheetLexer {
           }
         case 140: break;
         case 35: 
-          { return createLexeme(PXStylesheetTokenType.EMS, createDimension(yytext(), "em"));
+          { return createLexeme(PXStylesheetTokenType.EMS, createDimension("em"));
           }
         case 141: break;
         case 29: 
@@ -1196,7 +1305,7 @@ class PXStylesheetLexer {
           }
         case 144: break;
         case 23: 
-          { return createLexeme(PXStylesheetTokenType.TIME, createDimension(yytext(), "s"));
+          { return createLexeme(PXStylesheetTokenType.TIME, createDimension("s"));
           }
         case 145: break;
         case 22: 
@@ -1220,7 +1329,7 @@ class PXStylesheetLexer {
           }
         case 150: break;
         case 38: 
-          { return createLexeme(PXStylesheetTokenType.TIME, createDimension(yytext(), "ms"));
+          { return createLexeme(PXStylesheetTokenType.TIME, createDimension("ms"));
           }
         case 151: break;
         case 17: 
@@ -1252,7 +1361,7 @@ class PXStylesheetLexer {
           }
         case 158: break;
         case 39: 
-          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension(yytext(), "mm"));
+          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension("mm"));
           }
         case 159: break;
         case 68: 
@@ -1268,11 +1377,11 @@ class PXStylesheetLexer {
           }
         case 162: break;
         case 5: 
-          { /* ignore */
+          { skip();
           }
         case 163: break;
         case 47: 
-          { return createLexeme(PXStylesheetTokenType.ANGLE, createDimension(yytext(), "rad"));
+          { return createLexeme(PXStylesheetTokenType.ANGLE, createDimension("rad"));
           }
         case 164: break;
         case 10: 
@@ -1304,7 +1413,7 @@ class PXStylesheetLexer {
           }
         case 171: break;
         case 52: 
-          { return createLexeme(PXStylesheetTokenType.ANGLE, createDimension(yytext(), "grad"));
+          { return createLexeme(PXStylesheetTokenType.ANGLE, createDimension("grad"));
           }
         case 172: break;
         case 70: 
@@ -1328,7 +1437,7 @@ class PXStylesheetLexer {
           }
         case 177: break;
         case 40: 
-          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension(yytext(), "pt"));
+          { return createLexeme(PXStylesheetTokenType.LENGTH, createDimension("pt"));
           }
         case 178: break;
         case 30: 
@@ -1336,7 +1445,7 @@ class PXStylesheetLexer {
           }
         case 179: break;
         case 24: 
-          { return createLexeme(PXStylesheetTokenType.PERCENTAGE, createDimension(yytext(), "%"));
+          { return createLexeme(PXStylesheetTokenType.PERCENTAGE, createDimension("%"));
           }
         case 180: break;
         case 91: 
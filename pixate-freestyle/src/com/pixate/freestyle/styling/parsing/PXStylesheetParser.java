@@ -17,13 +17,29 @@ package com.pixate.freestyle.styling.parsing;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import android.content.Context;
+import android.net.Uri;
+import android.os.Process;
 
 import com.pixate.freestyle.cg.math.PXDimension;
 import com.pixate.freestyle.parsing.Lexeme;
@@ -39,8 +55,10 @@ import com.pixate.freestyle.styling.combinators.PXChildCombinator;
 import com.pixate.freestyle.styling.combinators.PXCombinatorBase;
 import com.pixate.freestyle.styling.combinators.PXDescendantCombinator;
 import com.pixate.freestyle.styling.combinators.PXSiblingCombinator;
+import com.pixate.freestyle.styling.fonts.PXFontRegistry;
 import com.pixate.freestyle.styling.media.PXMediaExpression;
 import com.pixate.freestyle.styling.media.PXMediaExpressionGroup;
+import com.pixate.freestyle.styling.media.PXMediaGroup;
 import com.pixate.freestyle.styling.media.PXNamedMediaExpression;
 import com.pixate.freestyle.styling.selectors.PXAttributeSelector;
 import com.pixate.freestyle.styling.selectors.PXAttributeSelectorOperator;
@@ -172,10 +190,24 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
     }
     //@formatter:on
 
+    // A cheap scan for the @import paths of a source, ahead of its parsing.
+    // Comments are matched (and skipped) so their @imports are not loaded.
+    private static final Pattern IMPORT_PATTERN = Pattern.compile("/\\*.*?(?:\\*/|\\z)"
+            + "|@import\\s+(?:url\\(\\s*['\"]?([^'\")\\s]+)['\"]?\\s*\\)|['\"]([^'\"]+)['\"])",
+            Pattern.DOTALL);
+    private static ThreadPoolExecutor importExecutor;
+
     private PXStylesheetLexer lexer;
     private PXStylesheet currentStyleSheet;
     private Stack<String> activeImports;
-    private Stack<PXStylesheetLexer> lexerStack;
+
+    // The imported files of the current parse. They are parsed in parallel,
+    // ahead of the stylesheet importing them, and stitched in place of their
+    // @import.
+    private PXImports imports;
+    // Non-null while parsing an imported file. Its @imports are recorded
+    // rather than followed.
+    private PXImportedStylesheet importing;
 
     // Application context
     private Context context;
@@ -249,11 +281,76 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
         // clear errors
         clearErrors();
 
+        // discover the @import tree and parse it in the background
+        if (importing == null && context != null) {
+            imports = new PXImports(context);
+            loadImports(imports, source);
+        }
+
         // create stylesheet
         currentStyleSheet = new PXStylesheet(origin);
 
-        // setup lexer and prime it
+        // setup lexer and parse
         lexer.setSource(source);
+        try {
+            parseStylesheet();
+        } finally {
+            lexer.reset();
+
+            // clear out any import refs
+            activeImports = null;
+            closeImports();
+        }
+
+        return currentStyleSheet;
+    }
+
+    /**
+     * Parse the style-sheet as it's read. Only a bounded window of the input
+     * is held in memory. Imports are parsed in parallel as they are found,
+     * and stitched once the reader is done.
+     * 
+     * @param reader
+     * @param origin
+     * @param fileName
+     * @return
+     */
+    public PXStylesheet parse(Reader reader, PXStyleSheetOrigin origin, String fileName) {
+        clearErrors();
+        addImportName(fileName);
+
+        // record the imports, and load them as they're found
+        PXImportedStylesheet parsed = new PXImportedStylesheet();
+        importing = parsed;
+        if (context != null) {
+            imports = new PXImports(context);
+        }
+        currentStyleSheet = new PXStylesheet(PXStyleSheetOrigin.INLINE);
+
+        lexer.setSource(reader);
+        try {
+            parseStylesheet();
+
+            // stitch the imports into the resulting stylesheet
+            importing = null;
+            parsed.stylesheet = currentStyleSheet;
+            currentStyleSheet = new PXStylesheet(origin);
+            stitch(parsed, false);
+            currentStyleSheet.setFilePath(fileName);
+        } finally {
+            lexer.reset();
+            importing = null;
+
+            // clear out any import refs
+            activeImports = null;
+            closeImports();
+        }
+
+        return currentStyleSheet;
+    }
+
+    private void parseStylesheet() {
+        // prime the lexer
         advance();
 
         try {
@@ -288,11 +385,6 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
         } catch (Exception e) {
             addError(e.getMessage());
         }
-
-        // clear out any import refs
-        activeImports = null;
-
-        return currentStyleSheet;
     }
 
     public PXStylesheet parseInlineCSS(String css) {
@@ -354,15 +446,33 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
         if (isType(PXStylesheetTokenType.LCURLY)) {
             List<PXDeclaration> declarations = parseDeclarationBlock();
 
-            // TODO: we probably shouldn't load font right here
+            String family = null;
+            String weight = null;
+            String style = null;
+            Uri src = null;
             for (PXDeclaration declaration : declarations) {
-                if ("src".equals(declaration.getName())) {
-                    // Load a font and hold it in the fonts registry
-                    // Shalom FIXME - We need access to the application's
-                    // AssetManager!
-                    // PXFontRegistry.getTypeface(declaration.getURLValue());
+                String name = declaration.getName();
+                if ("font-family".equals(name)) {
+                    family = declaration.getStringValue();
+                } else if ("font-weight".equals(name)) {
+                    weight = declaration.getStringValue().toLowerCase(Locale.US);
+                } else if ("font-style".equals(name)) {
+                    style = declaration.getStringValue().toLowerCase(Locale.US);
+                } else if ("src".equals(name)) {
+                    // use the first url of the list
+                    List<Uri> urls = declaration.getReferencedURLs();
+                    if (!urls.isEmpty()) {
+                        src = urls.get(0);
+                    }
                 }
             }
+            if (family != null && src != null) {
+                // Hold the font in the fonts registry. It's loaded in the
+                // background.
+                PXFontRegistry.registerFontFace(family, weight, style, src);
+            } else {
+                addError("A @font-face rule requires a font-family and a src url");
+            }
         }
     }
 
@@ -377,7 +487,7 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
                 String string = currentLexeme.getValue().toString();
 
                 if (string.length() > 2) {
-                    path = string.substring(1, string.length() - 2);
+                    path = string.substring(1, string.length() - 1);
                 }
 
                 break;
@@ -391,51 +501,19 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
         }
 
         if (path != null) {
-            // advance over @import argument
+            // advance over @import argument and the trailing semicolon
+            advance();
             advance();
 
-            // calculate resource name and file extension
-            // int dotIndex = path.lastIndexOf(".");
-            // String pathMinusExtension = dotIndex > -1 ? path.substring(0,
-            // dotIndex) : path;
-            // String extension = dotIndex > -1 ? path.substring(dotIndex +
-            // 1).toLowerCase()
-            // : StringUtil.EMPTY;
-            if (context == null) {
-                addError("Error parsing an import. The application context is null.");
-                advance();
-            } else if (!activeImports.contains(path)) {
-                // we need to go ahead and process the trailing semicolon so we
-                // have the current lexeme in case we push it below
-                advance();
-
-                addImportName(path);
-
-                // Note: We always take the import css from the assets.
-                String source = null;
-                try {
-                    source = IOUtil.read(context.getAssets().open(path));
-                } catch (IOException e) {
-                    PXLog.e(TAG, e, e.getMessage());
-                }
-
-                if (!StringUtil.isEmpty(source)) {
-                    lexer.pushLexeme((PXStylesheetLexeme) currentLexeme);
-                    pushSource(source);
-                    advance();
+            if (importing != null) {
+                // an imported or streamed file; its imports are stitched
+                // after it's parsed
+                importing.addImport(path, getRuleSetCount(currentStyleSheet));
+                if (imports != null) {
+                    loadImport(imports, path);
                 }
             } else {
-                String message = String.format(
-                        "import cycle detected trying to import '%s':\n%s ->\n%s", path,
-                        CollectionUtil.toString(activeImports, " ->\n"), path);
-
-                addError(message);
-
-                // NOTE: we do this here so we'll still have the current file on
-                // the active imports stack. This handles the
-                // case of a file ending with an @import statement, causing
-                // advance to pop it from the active imports stack
-                advance();
+                stitchImport(path);
             }
         }
     }
@@ -973,19 +1051,6 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
         // let semicolons be optional
         advanceIfIsType(PXStylesheetTokenType.SEMICOLON);
 
-        // grab original source, for error messages and hashing
-        String source;
-
-        if (lexemes.size() > 0) {
-            Lexeme<PXStylesheetTokenType> firstLexeme = lexemes.firstElement();
-            Lexeme<PXStylesheetTokenType> lastLexeme = lexemes.firstElement();
-            int start = firstLexeme.getOffset();
-            int end = lastLexeme.getEndingOffset();
-            source = lexer.getSource().substring(start, end);
-        } else {
-            source = StringUtil.EMPTY;
-        }
-
         // check for !important
         Lexeme<PXStylesheetTokenType> lastLexeme = lexemes.isEmpty() ? null : lexemes.lastElement();
 
@@ -995,8 +1060,9 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
             declaration.setImportant(true);
         }
 
-        // associate lexemes with declaration
-        declaration.setSource(source, getCurrentFilename(), new ArrayList<PXStylesheetLexeme>(
+        // associate lexemes with declaration. The source text is not kept; the
+        // lexemes, with their offsets, are what the declaration is hashed by.
+        declaration.setSource(null, getCurrentFilename(), new ArrayList<PXStylesheetLexeme>(
                 lexemes));
         return declaration;
     }
@@ -1250,8 +1316,7 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
                 remainder = remainderNumber.intValue();
                 advance();
             } else if (isType(PXStylesheetTokenType.NUMBER)) {
-                numberString = lexer.getSource().substring(currentLexeme.getOffset(),
-                        currentLexeme.getEndingOffset());
+                numberString = currentLexeme.getValue().toString();
 
                 if (numberString.startsWith("-") || numberString.startsWith("+")) {
                     Number remainderNumber = getFloatValue(currentLexeme.getValue());
@@ -1553,34 +1618,13 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
         return result;
     }
 
-    private void lexerDidPopSource() {
-        if (activeImports.size() > 0) {
-            activeImports.pop();
-        } else {
-            PXLog.e(TAG, "Tried to pop an empty activeImports array");
-        }
-    }
-
     /*
      * Overrides the super implementation. (non-Javadoc)
      * @see com.pixate.freestyle.parsing.PXParserBase#advance()
      */
     @Override
     public Lexeme<PXStylesheetTokenType> advance() {
-        Lexeme<PXStylesheetTokenType> candidate = lexer.nextLexeme();
-
-        while (candidate == null && lexerStack != null && !lexerStack.isEmpty()) {
-            // pop lexer
-            lexer = lexerStack.pop();
-
-            // notify the parser that we've done so
-            lexerDidPopSource();
-
-            // try getting the next lexeme from the newly activated lexer
-            candidate = lexer.nextLexeme();
-        }
-
-        return currentLexeme = candidate;
+        return currentLexeme = lexer.nextLexeme();
     }
 
     // Helpers
@@ -1607,17 +1651,258 @@ public class PXStylesheetParser extends PXParserBase<PXStylesheetTokenType> {
         currentLexeme = lexeme;
     }
 
-    private void pushSource(String source) {
-        if (lexerStack == null) {
-            lexerStack = new Stack<PXStylesheetLexer>();
+    // Imports
+
+    /**
+     * Scans a source for its @import paths, and submits their parsing.
+     */
+    private static void loadImports(PXImports imports, String source) {
+        Matcher matcher = IMPORT_PATTERN.matcher(source);
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                loadImport(imports, matcher.group(1));
+            } else if (matcher.group(2) != null) {
+                loadImport(imports, matcher.group(2));
+            }
+            // else, a comment
+        }
+    }
+
+    /**
+     * Submits the parsing of an imported file, unless it was already
+     * submitted, or the parse it belongs to is done.
+     */
+    private static void loadImport(final PXImports imports, final String path) {
+        if (!imports.closed && !imports.futures.containsKey(path)) {
+            FutureTask<PXImportedStylesheet> task = new FutureTask<PXImportedStylesheet>(
+                    new Callable<PXImportedStylesheet>() {
+                        public PXImportedStylesheet call() throws Exception {
+                            return parseImportedFile(imports, path);
+                        }
+                    });
+            if (imports.futures.putIfAbsent(path, task) == null) {
+                if (imports.closed) {
+                    // closed while submitting; close() may have missed it
+                    task.cancel(false);
+                } else {
+                    getImportExecutor().execute(task);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads and parses an imported file with a parser of its own. The file's
+     * own imports are submitted before it's parsed.
+     * 
+     * @return The imported stylesheet, or <code>null</code> if the file could
+     *         not be read.
+     */
+    private static PXImportedStylesheet parseImportedFile(PXImports imports, String path) {
+        // Note: We always take the import css from the assets.
+        String source = null;
+        try {
+            source = IOUtil.read(imports.context.getAssets().open(path));
+        } catch (IOException e) {
+            PXLog.e(TAG, e, e.getMessage());
+        }
+        if (StringUtil.isEmpty(source)) {
+            return null;
         }
+        loadImports(imports, source);
+
+        PXStylesheetParser parser = new PXStylesheetParser(imports.context);
+        parser.importing = new PXImportedStylesheet();
+        parser.addImportName(path);
+        // The INLINE origin keeps the imported stylesheet from becoming a
+        // current stylesheet. The importer sets the origin as it stitches.
+        parser.importing.stylesheet = parser.parse(source, PXStyleSheetOrigin.INLINE);
+        parser.importing.errors = parser.getErrors();
+        return parser.importing;
+    }
 
-        // push current lexer
-        lexerStack.push(lexer);
+    /**
+     * Closes the imports of the current parse.
+     */
+    private void closeImports() {
+        if (imports != null) {
+            imports.close();
+            imports = null;
+        }
+    }
 
-        // create new lexer and activate it
-        lexer = new PXStylesheetLexer();
-        lexer.setSource(source);
+    /**
+     * Adds the rule sets and keyframes of an imported file to the current
+     * stylesheet, in place of its @import. Without a context, the import is
+     * reported and skipped.
+     */
+    private void stitchImport(String path) {
+        if (StringUtil.isEmpty(path)) {
+            return;
+        }
+        if (context == null) {
+            addError("Error parsing an import. The application context is null.");
+            return;
+        }
+        if (activeImports != null && activeImports.contains(path)) {
+            addError(String.format("import cycle detected trying to import '%s':\n%s ->\n%s",
+                    path, CollectionUtil.toString(activeImports, " ->\n"), path));
+            return;
+        }
+
+        PXImportedStylesheet imported = null;
+        Future<PXImportedStylesheet> future = imports.futures.get(path);
+        try {
+            // an import the scan missed is parsed right away
+            imported = (future != null) ? future.get() : parseImportedFile(imports, path);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            addError(String.format("Error importing '%s': %s", path, e.getCause()));
+        }
+        if (imported != null) {
+            addImportName(path);
+            stitch(imported, true);
+            activeImports.pop();
+        }
+    }
+
+    /**
+     * Adds the rule sets and keyframes of a parsed file to the current
+     * stylesheet, stitching its recorded imports in place. An imported file is
+     * parsed once, but may be stitched at several @imports, so its rule sets
+     * are copied; each copy gets its own source order.
+     * 
+     * @param imported
+     * @param shared <code>true</code> if the rule sets may be stitched again
+     */
+    private void stitch(PXImportedStylesheet imported, boolean shared) {
+        if (imported.errors != null) {
+            for (String error : imported.errors) {
+                addError(error);
+            }
+        }
+
+        PXMediaExpression activeQuery = currentStyleSheet.getActiveMediaQuery();
+        int position = 0;
+        int importIndex = 0;
+        List<PXMediaGroup> groups = imported.stylesheet.getMediaGroups();
+        if (groups != null) {
+            for (PXMediaGroup group : groups) {
+                List<PXRuleSet> ruleSets = group.getRuleSets();
+                if (ruleSets == null) {
+                    continue;
+                }
+                currentStyleSheet.setActiveMediaQuery(group.getQuery());
+                for (PXRuleSet ruleSet : ruleSets) {
+                    int index = stitchImports(imported, importIndex, position);
+                    if (index != importIndex) {
+                        importIndex = index;
+                        currentStyleSheet.setActiveMediaQuery(group.getQuery());
+                    }
+                    currentStyleSheet.addRuleSet(shared ? ruleSet.copy() : ruleSet);
+                    position++;
+                }
+            }
+        }
+        stitchImports(imported, importIndex, Integer.MAX_VALUE);
+        for (PXKeyframe keyframe : imported.stylesheet.getKeyframes()) {
+            currentStyleSheet.addKeyframe(keyframe);
+        }
+        currentStyleSheet.setActiveMediaQuery(activeQuery);
+    }
+
+    /**
+     * Stitches the imports recorded at or before a rule set position.
+     * 
+     * @return The index of the next import to stitch
+     */
+    private int stitchImports(PXImportedStylesheet imported, int index, int position) {
+        while (index < imported.importPaths.size()
+                && imported.importPositions.get(index) <= position) {
+            stitchImport(imported.importPaths.get(index));
+            index++;
+        }
+        return index;
+    }
+
+    private static int getRuleSetCount(PXStylesheet stylesheet) {
+        int count = 0;
+        List<PXMediaGroup> groups = stylesheet.getMediaGroups();
+        if (groups != null) {
+            for (PXMediaGroup group : groups) {
+                List<PXRuleSet> ruleSets = group.getRuleSets();
+                if (ruleSets != null) {
+                    count += ruleSets.size();
+                }
+            }
+        }
+        return count;
+    }
+
+    private static synchronized ThreadPoolExecutor getImportExecutor() {
+        if (importExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            importExecutor = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(final Runnable r) {
+                            return new Thread(new Runnable() {
+                                public void run() {
+                                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                    r.run();
+                                }
+                            }, "PXImportParser #" + count.incrementAndGet());
+                        }
+                    });
+            importExecutor.allowCoreThreadTimeOut(true);
+        }
+        return importExecutor;
+    }
+
+    /**
+     * An imported file, parsed on its own. Its @imports are recorded with the
+     * number of rule sets that preceded them.
+     */
+    private static class PXImportedStylesheet {
+        private PXStylesheet stylesheet;
+        private List<String> errors;
+        private List<String> importPaths = new ArrayList<String>(1);
+        private List<Integer> importPositions = new ArrayList<Integer>(1);
+
+        private void addImport(String path, int position) {
+            importPaths.add(path);
+            importPositions.add(position);
+        }
+    }
+
+    /**
+     * The imported files of a parse, by path. Every task gets the instance of
+     * the parse it belongs to, so a parser that is reused for the next parse
+     * never mixes them up.
+     */
+    private static class PXImports {
+        private final Context context;
+        private final ConcurrentMap<String, Future<PXImportedStylesheet>> futures =
+                new ConcurrentHashMap<String, Future<PXImportedStylesheet>>();
+        private volatile boolean closed;
+
+        private PXImports(Context context) {
+            this.context = context;
+        }
+
+        /**
+         * Cancels the imports that were submitted but never stitched (for
+         * example, the files of an import cycle), and stops submitting new
+         * ones. Called when the parse is done.
+         */
+        private void close() {
+            closed = true;
+            for (Future<PXImportedStylesheet> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
     }
 
     private String getCurrentFilename() {
@@ -18,6 +18,7 @@ package com.pixate.freestyle.styling.parsing;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,6 +33,7 @@ import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.net.Uri;
 import android.util.DisplayMetrics;
+import android.util.LruCache;
 import android.widget.GridView;
 
 import com.pixate.freestyle.cg.math.PXDimension;
@@ -53,8 +55,11 @@ import com.pixate.freestyle.styling.infos.PXAnimationInfo.PXAnimationPlayState;
 import com.pixate.freestyle.styling.infos.PXAnimationInfo.PXAnimationTimingFunction;
 import com.pixate.freestyle.styling.infos.PXBorderInfo;
 import com.pixate.freestyle.styling.infos.PXBorderInfo.PXBorderStyle;
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXCacheUnit;
 import com.pixate.freestyle.styling.stylers.PXStylerContext.GridStyle.PXColumnStretchMode;
 import com.pixate.freestyle.util.CollectionUtil;
+import com.pixate.freestyle.util.ObjectPool;
 import com.pixate.freestyle.util.PXLog;
 import com.pixate.freestyle.util.SVGColors;
 import com.pixate.freestyle.util.Size;
@@ -80,6 +85,37 @@ public class PXValueParser {
 
     private static final String TAG = PXValueParser.class.getSimpleName();
 
+    // Lexed declaration values, by their source. Repeated values (e.g. '#fff'
+    // or '1px solid black') are lexed once, and their declarations share an
+    // unmodifiable list of frozen lexemes. Long values (e.g. data URIs) are
+    // not cached.
+    private static final int MAX_INTERNED_SOURCES = 256;
+    private static final int MAX_INTERNED_SOURCE_LENGTH = 512;
+    private static final LruCache<String, List<PXStylesheetLexeme>> LEXEMES_BY_SOURCE =
+            new LruCache<String, List<PXStylesheetLexeme>>(MAX_INTERNED_SOURCES);
+
+    // Lexers for the declaration values. A lexer is reset as it's returned
+    // to the pool.
+    private static final ObjectPool<PXStylesheetLexer, Void> LEXER_POOL =
+            new ObjectPool<PXStylesheetLexer, Void>(
+                    new ObjectPool.ObjectPoolFactory<PXStylesheetLexer, Void>() {
+                        public PXStylesheetLexer createInstance() {
+                            return new PXStylesheetLexer();
+                        }
+
+                        public void resetInstance(PXStylesheetLexer lexer) {
+                            lexer.reset();
+                        }
+
+                        public void initializeInstance(PXStylesheetLexer lexer, Void unused) {
+                            // No-op
+                        }
+                    }, 4);
+
+    static {
+        PXCacheManager.registerLruCache("value-lexemes", PXCacheUnit.ENTRIES, LEXEMES_BY_SOURCE);
+    }
+
     // Lazy inits
     private static Set<String> ANIMATION_KEYWORDS;
     private static Map<String, PXBorderStyle> BORDER_STYLE_MAP;
@@ -128,16 +164,35 @@ public class PXValueParser {
 
     }
 
+    /**
+     * Returns the lexemes of a declaration value. The lexemes of recently used
+     * values are cached, so the returned list and its lexemes are shared and
+     * can't be modified.
+     * 
+     * @param source
+     * @return An unmodifiable list of frozen lexemes
+     * @see PXStylesheetLexeme#freeze()
+     */
     public static List<PXStylesheetLexeme> lexemesForSource(String source) {
-        List<PXStylesheetLexeme> lexemes = new ArrayList<PXStylesheetLexeme>();
+        boolean intern = source.length() <= MAX_INTERNED_SOURCE_LENGTH;
+        List<PXStylesheetLexeme> lexemes = intern ? LEXEMES_BY_SOURCE.get(source) : null;
+        if (lexemes != null) {
+            return lexemes;
+        }
+        lexemes = new ArrayList<PXStylesheetLexeme>();
 
-        PXStylesheetLexer lexer = new PXStylesheetLexer();
-        lexer.setSource(source);
+        PXStylesheetLexer lexer = LEXER_POOL.checkOut();
+        try {
+            lexer.setSource(source);
 
-        PXStylesheetLexeme lexeme = lexer.nextLexeme();
-        while (!(lexeme == null || lexeme.getType() == PXStylesheetTokenType.EOF)) {
-            lexemes.add(lexeme);
-            lexeme = lexer.nextLexeme();
+            PXStylesheetLexeme lexeme = lexer.nextLexeme();
+            while (!(lexeme == null || lexeme.getType() == PXStylesheetTokenType.EOF)) {
+                lexeme.freeze();
+                lexemes.add(lexeme);
+                lexeme = lexer.nextLexeme();
+            }
+        } finally {
+            LEXER_POOL.checkIn(lexer);
         }
 
         if (PXLog.isLogging()) {
@@ -148,6 +203,10 @@ public class PXValueParser {
             }
         }
 
+        lexemes = Collections.unmodifiableList(lexemes);
+        if (intern) {
+            LEXEMES_BY_SOURCE.put(source, lexemes);
+        }
         return lexemes;
     }
 
@@ -509,12 +568,12 @@ public class PXValueParser {
 
         try {
             if (isType(PXStylesheetTokenType.NUMBER)) {
-                items.add(Float.parseFloat((String) currentLexeme.getValue()));
+                items.add(getNumberValue());
                 advance();
 
                 while (isType(PXStylesheetTokenType.COMMA)) {
                     if (isType(PXStylesheetTokenType.NUMBER)) {
-                        items.add(Float.parseFloat((String) currentLexeme.getValue()));
+                        items.add(getNumberValue());
                         advance();
                     } else {
                         exceptionWithMessage("Expected an number after a comma in the number list");
@@ -1330,6 +1389,11 @@ public class PXValueParser {
     }
 
     private float getFloatValue(DisplayMetrics displayMetrics) {
+        if (isType(PXStylesheetTokenType.NUMBER)) {
+            float result = getNumberValue();
+            advance();
+            return result;
+        }
         Object value = currentLexeme.getValue();
         float result = 0.0f;
 
@@ -1670,13 +1734,18 @@ public class PXValueParser {
         return result;
     }
 
+    // read the current NUMBER lexeme, without materializing its String value
+    private float getNumberValue() {
+        return ((PXStylesheetLexeme) currentLexeme).getFloatValue();
+    }
+
     // read a value from [0,255] or a percentage and return in range [0,1]
     private float readByteOrPercent(float divisor) {
 
         float result = 0.0f;
 
         if (isType(PXStylesheetTokenType.NUMBER)) {
-            result = Float.parseFloat((String) currentLexeme.getValue()) / divisor;
+            result = getNumberValue() / divisor;
 
             advance();
         } else if (isType(PXStylesheetTokenType.PERCENTAGE)) {
@@ -1698,7 +1767,7 @@ public class PXValueParser {
         float result = 0.0f;
 
         if (isType(PXStylesheetTokenType.NUMBER)) {
-            result = Float.parseFloat((String) currentLexeme.getValue()) / 360.0f;
+            result = getNumberValue() / 360.0f;
 
             advance();
         } else if (isType(PXStylesheetTokenType.ANGLE)) {
@@ -1718,7 +1787,7 @@ public class PXValueParser {
         float result = 0.0f;
 
         if (isType(PXStylesheetTokenType.NUMBER)) {
-            result = Float.parseFloat((String) currentLexeme.getValue());
+            result = getNumberValue();
             advance();
         } else if (isType(PXStylesheetTokenType.LENGTH)) {
             PXDimension length = (PXDimension) currentLexeme.getValue();
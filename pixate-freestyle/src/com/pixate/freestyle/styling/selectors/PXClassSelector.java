@@ -17,6 +17,7 @@ package com.pixate.freestyle.styling.selectors;
 
 import com.pixate.freestyle.parsing.PXSourceWriter;
 import com.pixate.freestyle.styling.PXStyleUtils;
+import com.pixate.freestyle.styling.PXSymbolTable;
 import com.pixate.freestyle.styling.adapters.PXStyleAdapter;
 import com.pixate.freestyle.styling.selectors.PXSpecificity.PXSpecificityType;
 import com.pixate.freestyle.util.PXLog;
@@ -25,12 +26,14 @@ import com.pixate.freestyle.util.StringUtil;
 public class PXClassSelector extends PXSelector {
 
     private String className;
+    private int classSymbol = PXSymbolTable.NONE;
     private boolean canMatch;
 
     public PXClassSelector(String name) {
         super(PXSpecificityType.CLASS_OR_ATTRIBUTE);
         if (name != null) {
             this.className = name.replaceAll("\\\\.", ".");
+            this.classSymbol = PXSymbolTable.intern(className);
             this.canMatch = !(PXStyleUtils.PATTERN_WHITESPACE.matcher(name).find());
         }
     }
@@ -41,6 +44,7 @@ public class PXClassSelector extends PXSelector {
 
     public void setClassName(String className) {
         this.className = className != null ? className.replaceAll("\\\\.", ".") : null;
+        this.classSymbol = PXSymbolTable.intern(this.className);
     }
 
     // Overrides
@@ -50,12 +54,9 @@ public class PXClassSelector extends PXSelector {
 
         boolean result = false;
         if (canMatch && element != null && !StringUtil.isEmpty(className)) {
-            String classValue = PXStyleAdapter.getStyleAdapter(element).getStyleClass(element);
-
-            if (!StringUtil.isEmpty(classValue)) {
-                String[] components = PXStyleUtils.PATTERN_WHITESPACE_PLUS.split(classValue);
-                result = StringUtil.contains(components, this.className);
-            }
+            int[] classSymbols = PXStyleAdapter.getStyleAdapter(element).getStyleClassSymbols(
+                    element);
+            result = PXSymbolTable.contains(classSymbols, classSymbol);
         }
 
         if (PXLog.isLogging()) {
@@ -17,6 +17,7 @@ package com.pixate.freestyle.styling.selectors;
 
 import com.pixate.freestyle.parsing.PXSourceWriter;
 import com.pixate.freestyle.styling.PXStyleUtils;
+import com.pixate.freestyle.styling.PXSymbolTable;
 import com.pixate.freestyle.styling.adapters.PXStyleAdapter;
 import com.pixate.freestyle.styling.selectors.PXSpecificity.PXSpecificityType;
 import com.pixate.freestyle.util.PXLog;
@@ -24,10 +25,12 @@ import com.pixate.freestyle.util.PXLog;
 public class PXIdSelector extends PXSelector {
 
     private String attributeValue;
+    private int idSymbol;
 
     public PXIdSelector(String value) {
         super(PXSpecificityType.ID);
         this.attributeValue = value;
+        this.idSymbol = PXSymbolTable.intern(value);
     }
 
     public String getIdValue() {
@@ -38,8 +41,8 @@ public class PXIdSelector extends PXSelector {
     public boolean matches(Object element) {
         boolean result = false;
         if (element != null && attributeValue != null) {
-            result = attributeValue.equals(PXStyleAdapter.getStyleAdapter(element).getStyleId(
-                    element));
+            result = idSymbol == PXStyleAdapter.getStyleAdapter(element).getStyleIdSymbol(
+                    element);
         }
 
         if (PXLog.isLogging()) {
@@ -27,6 +27,15 @@ public class PXSpecificity implements Comparable<PXSpecificity> {
 	}
 	// @formatter:on
 
+	// bits per specificity type in a packed value
+	private static final int PACKED_TYPE_BITS = 8;
+	private static final int PACKED_TYPE_MAX = (1 << PACKED_TYPE_BITS) - 1;
+
+	/**
+	 * The number of bits used by {@link #getPackedValue()}
+	 */
+	public static final int PACKED_BITS = PACKED_TYPE_BITS * PXSpecificityType.values().length;
+
 	private int[] values;
 	private int length;
 
@@ -43,6 +52,19 @@ public class PXSpecificity implements Comparable<PXSpecificity> {
 		values[specificity.ordinal()] = value;
 	}
 
+	/**
+	 * Returns this specificity packed into a long, one byte per specificity
+	 * type, with the most significant type first. Packed values compare the
+	 * same way specificities do, as long as no type counts more than 255.
+	 */
+	public long getPackedValue() {
+		long result = 0;
+		for (int i = 0; i < length; i++) {
+			result = (result << PACKED_TYPE_BITS) | Math.min(values[i], PACKED_TYPE_MAX);
+		}
+		return result;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -20,6 +20,7 @@ import java.util.List;
 
 import com.pixate.freestyle.parsing.PXSourceWriter;
 import com.pixate.freestyle.styling.PXStyleUtils;
+import com.pixate.freestyle.styling.PXSymbolTable;
 import com.pixate.freestyle.styling.adapters.PXStyleAdapter;
 import com.pixate.freestyle.styling.selectors.PXSpecificity.PXSpecificityType;
 import com.pixate.freestyle.util.CollectionUtil;
@@ -30,6 +31,7 @@ public class PXTypeSelector extends PXSelector {
 
     public static final String UNIVERSAL = "*";
     private String typeName;
+    private int typeSymbol;
     private String namespaceURI;
     private String pseudoElement;
     private List<PXSelector> attributeExpressions;
@@ -60,6 +62,7 @@ public class PXTypeSelector extends PXSelector {
     public PXTypeSelector(String namespaceURI, String typeName) {
         super(PXSpecificityType.ELEMENT);
         this.typeName = typeName;
+        this.typeSymbol = PXSymbolTable.intern(typeName);
         this.namespaceURI = namespaceURI;
     }
 
@@ -69,6 +72,7 @@ public class PXTypeSelector extends PXSelector {
 
     public void setTypeName(String typeName) {
         this.typeName = typeName;
+        this.typeSymbol = PXSymbolTable.intern(typeName);
     }
 
     public String getNamespaceURI() {
@@ -199,7 +203,8 @@ public class PXTypeSelector extends PXSelector {
         // filter by type name
         if (result) {
             if (!hasUniversalType()) {
-                result = typeName != null && typeName.equals(styleAdapter.getElementName(element));
+                result = typeName != null
+                        && typeSymbol == styleAdapter.getElementSymbol(element);
             }
         }
 
@@ -19,9 +19,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import android.app.Activity;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.graphics.Typeface;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.InsetDrawable;
 import android.util.DisplayMetrics;
@@ -34,7 +36,9 @@ import com.pixate.freestyle.cg.math.PXOffsets;
 import com.pixate.freestyle.cg.paints.PXPaint;
 import com.pixate.freestyle.cg.paints.PXPaintGroup;
 import com.pixate.freestyle.cg.paints.PXSolidPaint;
+import com.pixate.freestyle.cg.parsing.PXSVGCache;
 import com.pixate.freestyle.cg.shadow.PXShadow;
+import com.pixate.freestyle.cg.shadow.PXShadowCache;
 import com.pixate.freestyle.cg.shadow.PXShadowGroup;
 import com.pixate.freestyle.cg.shadow.PXShadowPaint;
 import com.pixate.freestyle.cg.shapes.PXBoundable;
@@ -44,9 +48,13 @@ import com.pixate.freestyle.cg.shapes.PXShape;
 import com.pixate.freestyle.cg.strokes.PXStroke;
 import com.pixate.freestyle.styling.PXDeclaration;
 import com.pixate.freestyle.styling.adapters.PXStyleAdapter;
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXCacheUnit;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXLruManagedCache;
 import com.pixate.freestyle.styling.fonts.PXFontRegistry;
 import com.pixate.freestyle.styling.infos.PXAnimationInfo;
 import com.pixate.freestyle.styling.virtualStyleables.PXVirtualStyleable;
+import com.pixate.freestyle.util.PXBitmapCache;
 import com.pixate.freestyle.util.PXDrawableUtil;
 import com.pixate.freestyle.util.Size;
 import com.pixate.freestyle.util.StringUtil;
@@ -219,9 +227,41 @@ public class PXStylerContext {
 
     private int styleHash;
 
-    // TODO - What's a reasonable size for this? We may also need to overwrite
-    // the sizeOf() to limit this cache to a memory size.
-    private static LruCache<Integer, Drawable> IMAGE_CACHE = new LruCache<Integer, Drawable>(10);
+    // The rendered background images, by style hash. The cache is limited to
+    // a memory size, and its drawables are released when the activity of the
+    // view they were last set on is destroyed (a drawable holds its view as a
+    // callback).
+    private static final int IMAGE_CACHE_MAX_BYTES = 4 * 1024 * 1024;
+    private static final LruCache<Integer, Drawable> IMAGE_CACHE = new LruCache<Integer, Drawable>(
+            IMAGE_CACHE_MAX_BYTES) {
+        @Override
+        protected int sizeOf(Integer key, Drawable value) {
+            if (value instanceof BitmapDrawable && ((BitmapDrawable) value).getBitmap() != null) {
+                return ((BitmapDrawable) value).getBitmap().getByteCount();
+            }
+            int width = value.getIntrinsicWidth();
+            int height = value.getIntrinsicHeight();
+            if (width <= 0 || height <= 0) {
+                width = value.getBounds().width();
+                height = value.getBounds().height();
+            }
+            // assume an ARGB_8888 rendering
+            return Math.max(1, width * height * 4);
+        }
+    };
+
+    static {
+        PXCacheManager.register("background-images", PXCacheUnit.BYTES,
+                new PXLruManagedCache<Integer, Drawable>(IMAGE_CACHE) {
+                    @Override
+                    protected boolean isActivityScoped(Integer key, Drawable value,
+                            Activity activity) {
+                        Drawable.Callback callback = value.getCallback();
+                        return callback instanceof View
+                                && ((View) callback).getContext() == activity;
+                    }
+                });
+    }
 
     // Holds all fading styles, in case any was set.
     private FadingEdgeStyle fadingStyle;
@@ -280,6 +320,9 @@ public class PXStylerContext {
      */
     public static void resetCache() {
         IMAGE_CACHE.evictAll();
+        PXShadowCache.evictAll();
+        PXBitmapCache.evictAll();
+        PXSVGCache.evictAll();
     }
 
     // Methods
@@ -366,18 +409,7 @@ public class PXStylerContext {
 
         // No luck with the cache... compute the drawable.
         // Update bounds
-        if (Size.isNonZero(imageSize)) {
-            bounds = new RectF(0.0f, 0.0f, imageSize.width, imageSize.height);
-
-        } else if (bounds == null || bounds.isEmpty()) {
-            PXStyleAdapter styleAdapter = PXStyleAdapter.getStyleAdapter(styleable);
-            bounds = styleAdapter.getBounds(styleable);
-
-            if (bounds == null || bounds.isEmpty()) {
-                // Set default size to 32, 32 if zero.
-                bounds = new RectF(0.0f, 0.0f, 32.0f, 32.0f);
-            }
-        }
+        resolveImageBounds();
 
         // apply bounds
         // NOTE: This updates the bounds of the underlying geometry used to draw
@@ -466,12 +498,57 @@ public class PXStylerContext {
             */
             // @formatter:on
         }
-        // Cache the result and return
-        IMAGE_CACHE.put(styleHash, result);
+        // Cache the result and return. A rendering that was interrupted (e.g.
+        // an asynchronous rendering for a detached view) may be missing some
+        // of its images, so we don't cache it.
+        if (!Thread.currentThread().isInterrupted()) {
+            IMAGE_CACHE.put(styleHash, result);
+        }
 
         return result;
     }
 
+    /**
+     * Resolves the bounds that will be used when the background image is
+     * rendered. Resolving the bounds may query the styleable, so this method
+     * should be called on the UI thread before {@link #getBackgroundImage()}
+     * is called from a worker thread.
+     */
+    public void resolveImageBounds() {
+        if (Size.isNonZero(imageSize)) {
+            bounds = new RectF(0.0f, 0.0f, imageSize.width, imageSize.height);
+
+        } else if (bounds == null || bounds.isEmpty()) {
+            PXStyleAdapter styleAdapter = PXStyleAdapter.getStyleAdapter(styleable);
+            bounds = styleAdapter.getBounds(styleable);
+
+            if (bounds == null || bounds.isEmpty()) {
+                // Set default size to 32, 32 if zero.
+                bounds = new RectF(0.0f, 0.0f, 32.0f, 32.0f);
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> in case the background image for this context
+     * was already rendered and cached.
+     */
+    public boolean hasCachedBackgroundImage() {
+        return IMAGE_CACHE.get(styleHash) != null;
+    }
+
+    /**
+     * Returns <code>true</code> in case rendering the background image of this
+     * context involves an asynchronous paint (for example, a remote image).
+     * 
+     * @see PXPaint#isAsynchronous()
+     */
+    public boolean isAsynchronous() {
+        PXPaint paint = getCombinedPaints();
+        return (paint != null && paint.isAsynchronous())
+                || (shape != null && shape.isAsynchronous());
+    }
+
     public int getStyleHash() {
         return styleHash;
     }
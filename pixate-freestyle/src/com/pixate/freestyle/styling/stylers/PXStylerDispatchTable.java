@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.styling.stylers;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.pixate.freestyle.styling.PXDeclaration;
+import com.pixate.freestyle.styling.PXSymbolTable;
+import com.pixate.freestyle.styling.stylers.PXStylerBase.PXDeclarationHandler;
+
+/**
+ * A property dispatch table for a list of stylers. The table is indexed by the
+ * {@link PXSymbolTable} symbol of a property name, and holds the order of the
+ * styler that handles that property, along with its declaration handler.
+ * Style adapters build one table for their stylers, so applying a declaration
+ * doesn't involve any map lookup.
+ */
+public class PXStylerDispatchTable {
+
+    /**
+     * The order of a property that no styler handles.
+     */
+    public static final int NO_STYLER = -1;
+
+    private final PXStyler[] stylers;
+    private final int[] orders;
+    private final PXDeclarationHandler[] handlers;
+
+    /**
+     * Constructs a new dispatch table. When more than one styler supports a
+     * property, the last one wins.
+     * 
+     * @param stylers The stylers, in the order they should be applied. May be
+     *            <code>null</code>.
+     */
+    public PXStylerDispatchTable(List<PXStyler> stylers) {
+        int stylersCount = (stylers != null) ? stylers.size() : 0;
+        this.stylers = new PXStyler[stylersCount];
+        int maxSymbol = NO_STYLER;
+        for (int i = 0; i < stylersCount; i++) {
+            this.stylers[i] = stylers.get(i);
+            for (String property : this.stylers[i].getSupportedProperties()) {
+                maxSymbol = Math.max(maxSymbol, PXSymbolTable.intern(property));
+            }
+        }
+        orders = new int[maxSymbol + 1];
+        handlers = new PXDeclarationHandler[maxSymbol + 1];
+        Arrays.fill(orders, NO_STYLER);
+
+        for (int i = 0; i < stylersCount; i++) {
+            PXStyler styler = this.stylers[i];
+            Map<String, PXDeclarationHandler> stylerHandlers = null;
+            if (styler instanceof PXStylerBase) {
+                stylerHandlers = ((PXStylerBase) styler).getDeclarationHandlers();
+            }
+            for (String property : styler.getSupportedProperties()) {
+                int symbol = PXSymbolTable.intern(property);
+                orders[symbol] = i;
+                // a null handler falls back to the styler's processDeclaration
+                handlers[symbol] = (stylerHandlers != null) ? stylerHandlers.get(property)
+                        : null;
+            }
+        }
+    }
+
+    /**
+     * Returns the order of the styler that handles a property, or
+     * {@link #NO_STYLER}.
+     * 
+     * @param propertySymbol The property name symbol
+     */
+    public int getStylerOrder(int propertySymbol) {
+        return (propertySymbol >= 0 && propertySymbol < orders.length) ? orders[propertySymbol]
+                : NO_STYLER;
+    }
+
+    /**
+     * Returns the styler that handles a property, or <code>null</code>.
+     * 
+     * @param propertySymbol The property name symbol
+     */
+    public PXStyler getStyler(int propertySymbol) {
+        int order = getStylerOrder(propertySymbol);
+        return (order != NO_STYLER) ? stylers[order] : null;
+    }
+
+    /**
+     * Returns the styler at the given order.
+     */
+    public PXStyler getStylerAt(int order) {
+        return stylers[order];
+    }
+
+    /**
+     * Returns the declaration handler of a property. May be <code>null</code>
+     * even when a styler handles the property.
+     * 
+     * @param propertySymbol The property name symbol
+     */
+    public PXDeclarationHandler getHandler(int propertySymbol) {
+        return (propertySymbol >= 0 && propertySymbol < handlers.length) ? handlers[propertySymbol]
+                : null;
+    }
+
+    /**
+     * Returns the number of stylers in this table.
+     */
+    public int getStylersCount() {
+        return stylers.length;
+    }
+}
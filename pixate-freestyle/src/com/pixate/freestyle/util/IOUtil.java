@@ -19,6 +19,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
 
 public class IOUtil {
 
@@ -37,6 +39,22 @@ public class IOUtil {
         return read(inputStream, UTF8);
     }
 
+    /**
+     * Returns a UTF-8 {@link Reader} for the stream, past any byte order mark.
+     * 
+     * @param inputStream
+     * @return A {@link Reader}
+     * @throws IOException
+     */
+    public static Reader openReader(InputStream inputStream) throws IOException {
+        PushbackReader reader = new PushbackReader(new InputStreamReader(inputStream, UTF8));
+        int c = reader.read();
+        if (c != -1 && c != BOM.charAt(0)) {
+            reader.unread(c);
+        }
+        return reader;
+    }
+
     public static String read(InputStream inputStream, String charsetName) throws IOException {
         char[] readBuffer = new char[1024];
         InputStreamReader reader = null;
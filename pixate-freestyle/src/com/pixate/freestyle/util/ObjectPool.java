@@ -164,4 +164,34 @@ public class ObjectPool<T, E> {
             }
         }
     }
+
+    /**
+     * Returns the number of pooled instances.
+     */
+    public int size() {
+        synchronized (available) {
+            return available.size();
+        }
+    }
+
+    /**
+     * Drops pooled instances until no more than the given number of instances
+     * is left.
+     * 
+     * @param size
+     */
+    public void trimToSize(int size) {
+        synchronized (available) {
+            while (available.size() > Math.max(0, size)) {
+                available.remove(available.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of pooled instances.
+     */
+    public int getLimit() {
+        return limit;
+    }
 }
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.util;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.view.View;
+
+import com.pixate.freestyle.styling.stylers.PXStylerContext;
+
+/**
+ * Renders background {@link Drawable}s on a bounded pool of worker threads.
+ * While a drawable is being rendered, the {@link View} displays a cheap
+ * placeholder. The rendered drawable is swapped in on the UI thread, unless the
+ * view was re-styled in the meantime.
+ */
+public class PXAsyncDrawableRenderer {
+
+    private static final String TAG = PXAsyncDrawableRenderer.class.getSimpleName();
+    private static final int POOL_SIZE = Math.max(1,
+            Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int QUEUE_CAPACITY = 128;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor executor;
+    private static Handler mainHandler;
+    private static volatile boolean enabled;
+    // renderings that were rejected by the saturated executor (UI thread only)
+    private static final LinkedList<PendingRender<?>> DEFERRED =
+            new LinkedList<PendingRender<?>>();
+
+    /**
+     * Enable or disable asynchronous rendering of backgrounds. When disabled
+     * (the default), only backgrounds that contain asynchronous paints (e.g.
+     * remote images) are rendered off the UI thread.
+     * 
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        PXAsyncDrawableRenderer.enabled = enabled;
+    }
+
+    /**
+     * Returns <code>true</code> in case all backgrounds are rendered
+     * asynchronously.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns <code>true</code> in case the backgrounds for the given contexts
+     * should be rendered asynchronously. This will be the case when we are
+     * running on the UI thread, and at least one of the contexts will need to
+     * render a background image that is not already cached. When this
+     * renderer is not enabled, the context should also hold an asynchronous
+     * paint.
+     * 
+     * @param contexts
+     * @return <code>true</code> if an asynchronous rendering should be used.
+     */
+    public static boolean shouldRenderAsync(List<PXStylerContext> contexts) {
+        if (contexts == null || Looper.myLooper() != Looper.getMainLooper()) {
+            return false;
+        }
+        for (PXStylerContext context : contexts) {
+            if ((context.usesImage() || context.usesColorOnly())
+                    && !context.hasCachedBackgroundImage()
+                    && (enabled || context.isAsynchronous())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Renders a background in two steps: the expensive rendering, which runs
+     * on a worker thread, and the creation of the background from the rendered
+     * parts, which runs on the UI thread.
+     * 
+     * @param <T> The type of the rendered parts
+     */
+    public interface BackgroundRenderer<T> {
+
+        /**
+         * Renders the parts of the background. Called on a worker thread, so
+         * implementations should not touch the view or its current background.
+         * 
+         * @return The rendered parts
+         * @throws Exception
+         */
+        T render() throws Exception;
+
+        /**
+         * Creates the background {@link Drawable} from the rendered parts.
+         * Called on the UI thread, right before the background is set on the
+         * view.
+         * 
+         * @param view The {@link View}
+         * @param rendered The parts returned from {@link #render()}
+         * @return The background {@link Drawable}. May be <code>null</code>.
+         */
+        Drawable createBackground(View view, T rendered);
+    }
+
+    /**
+     * Sets a placeholder background on the view, and renders the real
+     * background on a worker thread. The rendered background is set on the
+     * view from the UI thread. This method should be called from the UI
+     * thread.
+     * 
+     * @param view The {@link View}
+     * @param placeholder A placeholder {@link Drawable}. In case
+     *            <code>null</code>, the view's current background is kept until
+     *            the rendering is done.
+     * @param renderer A {@link BackgroundRenderer} that renders the background
+     *            {@link Drawable}.
+     */
+    public static <T> void setBackgroundAsync(View view, Drawable placeholder,
+            BackgroundRenderer<T> renderer) {
+        // Note that setting the placeholder cancels any previous rendering, so
+        // it has to be done before the new rendering is registered.
+        if (placeholder != null) {
+            PXDrawableUtil.setBackgroundDrawable(view, placeholder);
+        } else {
+            cancel(view);
+        }
+        PendingRender<T> pending = new PendingRender<T>(renderer);
+        view.setTag(ViewUtil.TAG_PENDING_RENDER, pending);
+        view.addOnAttachStateChangeListener(pending);
+        schedule(view, pending);
+    }
+
+    /**
+     * Cancels any pending asynchronous background that was scheduled for the
+     * given view. A background that is being rendered is interrupted, which
+     * also cancels the image downloads it's waiting for.
+     * 
+     * @param view
+     */
+    public static void cancel(View view) {
+        Object tag = view.getTag(ViewUtil.TAG_PENDING_RENDER);
+        if (tag != null) {
+            view.setTag(ViewUtil.TAG_PENDING_RENDER, null);
+            if (tag instanceof PendingRender) {
+                PendingRender<?> pending = (PendingRender<?>) tag;
+                view.removeOnAttachStateChangeListener(pending);
+                pending.stop();
+            }
+        }
+    }
+
+    private static <T> void schedule(final View view, final PendingRender<T> pending) {
+        final int generation = ++pending.generation;
+        try {
+            pending.future = getExecutor().submit(new Runnable() {
+                public void run() {
+                    final T rendered = render(pending.renderer);
+                    // cancelled while rendering; the result may be partial
+                    final boolean interrupted = Thread.currentThread().isInterrupted();
+                    getMainHandler().post(new Runnable() {
+                        public void run() {
+                            if (!interrupted && pending.generation == generation) {
+                                swap(view, pending, rendered);
+                            }
+                            // a worker is free now
+                            scheduleDeferred();
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The pool is saturated. Keep the placeholder, and schedule the
+            // rendering once a worker is done.
+            pending.future = null;
+            pending.view = view;
+            DEFERRED.add(pending);
+        }
+    }
+
+    /**
+     * Schedules the deferred renderings, as long as there is room in the
+     * executor's queue. Called on the UI thread.
+     */
+    private static void scheduleDeferred() {
+        while (!DEFERRED.isEmpty() && getExecutor().getQueue().remainingCapacity() > 0) {
+            PendingRender<?> pending = DEFERRED.removeFirst();
+            View view = pending.view;
+            pending.view = null;
+            if (view.getTag(ViewUtil.TAG_PENDING_RENDER) == pending) {
+                schedule(view, pending);
+            }
+        }
+    }
+
+    private static <T> T render(BackgroundRenderer<T> renderer) {
+        try {
+            return renderer.render();
+        } catch (Exception e) {
+            PXLog.e(TAG, e, "Error while rendering a background");
+            return null;
+        }
+    }
+
+    private static <T> void swap(View view, PendingRender<T> pending, T rendered) {
+        // Make sure the view was not re-styled while we were rendering.
+        if (view.getTag(ViewUtil.TAG_PENDING_RENDER) == pending) {
+            view.setTag(ViewUtil.TAG_PENDING_RENDER, null);
+            view.removeOnAttachStateChangeListener(pending);
+            Drawable drawable = null;
+            try {
+                drawable = pending.renderer.createBackground(view, rendered);
+            } catch (Exception e) {
+                PXLog.e(TAG, e, "Error while creating a background");
+            }
+            if (drawable != null) {
+                PXDrawableUtil.setBackgroundDrawable(view, drawable);
+            }
+        }
+    }
+
+    /**
+     * A background rendering that is pending for a view. The rendering is
+     * stopped when the view is detached from its window (so it doesn't hold
+     * the worker threads and the network for a view that is off screen), and
+     * is re-scheduled when the view is attached again.
+     */
+    private static class PendingRender<T> implements View.OnAttachStateChangeListener {
+        private final BackgroundRenderer<T> renderer;
+        // accessed on the UI thread
+        private Future<?> future;
+        private int generation;
+        // set while the rendering waits in the deferred queue
+        private View view;
+
+        private PendingRender(BackgroundRenderer<T> renderer) {
+            this.renderer = renderer;
+        }
+
+        private void stop() {
+            generation++;
+            if (future != null) {
+                future.cancel(true);
+                future = null;
+                // drop the cancelled task from the queue, so it doesn't hold
+                // the room of a deferred rendering
+                getExecutor().purge();
+                scheduleDeferred();
+            }
+            if (view != null) {
+                DEFERRED.remove(this);
+                view = null;
+            }
+        }
+
+        public void onViewDetachedFromWindow(View v) {
+            stop();
+        }
+
+        public void onViewAttachedToWindow(View v) {
+            if (future == null && view == null && v.getTag(ViewUtil.TAG_PENDING_RENDER) == this) {
+                schedule(v, this);
+            }
+        }
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(final Runnable r) {
+                            return new Thread(new Runnable() {
+                                public void run() {
+                                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                    r.run();
+                                }
+                            }, "PXRenderer #" + count.incrementAndGet());
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,430 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.LruCache;
+
+import com.pixate.freestyle.PixateFreestyle;
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXCacheUnit;
+
+/**
+ * A two-tier cache of decoded image bitmaps. The first tier is an in-memory
+ * LRU that is keyed by the image {@link Uri}, the size the image was decoded
+ * for, and the {@link Bitmap.Config}, and is bounded by the bitmaps byte count.
+ * The second tier is an optional on-disk cache of downsampled decodes. It is
+ * only used for remote and <code>documents://</code> sources, where a decode
+ * from the original source is expensive, and is disabled by default (see
+ * {@link #setDiskCacheEnabled(boolean)}).<br>
+ * Bitmaps returned from this cache are shared, and should not be recycled or
+ * modified.
+ */
+public class PXBitmapCache {
+
+    private static final String TAG = PXBitmapCache.class.getSimpleName();
+    private static final String DISK_CACHE_DIR = "pixate-images";
+    private static final long DEFAULT_DISK_MAX_BYTES = 10 * 1024 * 1024;
+    private static final String[] DISK_CACHED_SCHEMES = { "http", "https", "pixate", "documents" };
+
+    private static final LruCache<Key, Bitmap> BITMAPS = new LruCache<Key, Bitmap>(
+            getDefaultMaxBytes()) {
+        @Override
+        protected int sizeOf(Key key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+
+    static {
+        PXCacheManager.registerLruCache("bitmaps", PXCacheUnit.BYTES, BITMAPS);
+    }
+
+    private static final Object DISK_LOCK = new Object();
+    private static final AtomicInteger DISK_HITS = new AtomicInteger();
+    private static final AtomicInteger DISK_MISSES = new AtomicInteger();
+    private static volatile boolean diskCacheEnabled;
+    private static volatile long diskCacheMaxBytes = DEFAULT_DISK_MAX_BYTES;
+
+    /**
+     * A snapshot of the cache statistics.
+     */
+    public static class Stats {
+        public final int hits;
+        public final int misses;
+        public final int diskHits;
+        public final int diskMisses;
+        public final int evictions;
+        public final int size;
+        public final int maxSize;
+
+        private Stats(int hits, int misses, int diskHits, int diskMisses, int evictions,
+                int size, int maxSize) {
+            this.hits = hits;
+            this.misses = misses;
+            this.diskHits = diskHits;
+            this.diskMisses = diskMisses;
+            this.evictions = evictions;
+            this.size = size;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "PXBitmapCache[hits=%d, misses=%d, diskHits=%d, diskMisses=%d, "
+                            + "evictions=%d, size=%d, maxSize=%d]", hits, misses, diskHits,
+                    diskMisses, evictions, size, maxSize);
+        }
+    }
+
+    private static class Key {
+        private final String uri;
+        private final int width;
+        private final int height;
+        private final Bitmap.Config config;
+        private final int hash;
+
+        private Key(String uri, int width, int height, Bitmap.Config config) {
+            this.uri = uri;
+            this.width = width;
+            this.height = height;
+            this.config = config;
+            int h = uri.hashCode();
+            h = 31 * h + width;
+            h = 31 * h + height;
+            this.hash = 31 * h + config.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && width == other.width && height == other.height
+                    && config == other.config && uri.equals(other.uri);
+        }
+
+        @Override
+        public String toString() {
+            return uri + '|' + width + 'x' + height + '|' + config.name();
+        }
+    }
+
+    /**
+     * Returns a cached bitmap from the memory cache only. This call is cheap
+     * enough to be made on the UI thread.
+     * 
+     * @param uri The image {@link Uri}
+     * @param width The width the image was decoded for (0 for a full size
+     *            decode)
+     * @param height The height the image was decoded for (0 for a full size
+     *            decode)
+     * @param config The decode {@link Bitmap.Config}. <code>null</code> stands
+     *            for the default {@link Bitmap.Config#ARGB_8888}.
+     * @return A {@link Bitmap}, or <code>null</code> if not cached.
+     */
+    public static Bitmap getFromMemory(Uri uri, int width, int height, Bitmap.Config config) {
+        if (uri == null) {
+            return null;
+        }
+        return BITMAPS.get(new Key(uri.toString(), width, height, normalize(config)));
+    }
+
+    /**
+     * Returns a cached bitmap. The memory cache is checked first, and then the
+     * disk cache (when enabled). A bitmap that is found on the disk is promoted
+     * into the memory cache.
+     * 
+     * @param uri The image {@link Uri}
+     * @param width The width the image was decoded for (0 for a full size
+     *            decode)
+     * @param height The height the image was decoded for (0 for a full size
+     *            decode)
+     * @param config The decode {@link Bitmap.Config}. <code>null</code> stands
+     *            for the default {@link Bitmap.Config#ARGB_8888}.
+     * @return A {@link Bitmap}, or <code>null</code> if not cached.
+     */
+    public static Bitmap get(Uri uri, int width, int height, Bitmap.Config config) {
+        if (uri == null) {
+            return null;
+        }
+        Key key = new Key(uri.toString(), width, height, normalize(config));
+        Bitmap bitmap = BITMAPS.get(key);
+        if (bitmap == null && isDiskCacheable(uri, width, height)) {
+            bitmap = readFromDisk(uri, key);
+            if (bitmap != null) {
+                DISK_HITS.incrementAndGet();
+                putInMemory(key, bitmap);
+            } else {
+                DISK_MISSES.incrementAndGet();
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Puts a decoded bitmap in the cache. The bitmap is written to the disk
+     * cache as well, when it's enabled and the bitmap is a downsampled decode
+     * of a remote or a <code>documents://</code> source.
+     * 
+     * @param uri The image {@link Uri}
+     * @param width The width the image was decoded for (0 for a full size
+     *            decode)
+     * @param height The height the image was decoded for (0 for a full size
+     *            decode)
+     * @param config The decode {@link Bitmap.Config}. <code>null</code> stands
+     *            for the default {@link Bitmap.Config#ARGB_8888}.
+     * @param bitmap The decoded {@link Bitmap}
+     */
+    public static void put(Uri uri, int width, int height, Bitmap.Config config, Bitmap bitmap) {
+        if (uri == null || bitmap == null) {
+            return;
+        }
+        Key key = new Key(uri.toString(), width, height, normalize(config));
+        putInMemory(key, bitmap);
+        // nine-patch chunks are not preserved when compressing a bitmap
+        if (isDiskCacheable(uri, width, height) && bitmap.getNinePatchChunk() == null) {
+            writeToDisk(uri, key, bitmap);
+        }
+    }
+
+    /**
+     * Evicts all the bitmaps from the memory cache.
+     */
+    public static void evictAll() {
+        BITMAPS.evictAll();
+    }
+
+    /**
+     * Deletes all the bitmaps from the disk cache.
+     */
+    public static void clearDiskCache() {
+        synchronized (DISK_LOCK) {
+            File dir = getDiskCacheDir();
+            File[] files = dir != null ? dir.listFiles() : null;
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the size, in bytes, of the bitmaps in the memory cache.
+     */
+    public static int size() {
+        return BITMAPS.size();
+    }
+
+    /**
+     * Returns the maximum size, in bytes, of the bitmaps in the memory cache.
+     */
+    public static int maxSize() {
+        return BITMAPS.maxSize();
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     * 
+     * @return {@link Stats}
+     */
+    public static Stats getStats() {
+        return new Stats(BITMAPS.hitCount(), BITMAPS.missCount(), DISK_HITS.get(),
+                DISK_MISSES.get(), BITMAPS.evictionCount(), BITMAPS.size(), BITMAPS.maxSize());
+    }
+
+    /**
+     * Enables or disables the on-disk cache. The disk cache is disabled by
+     * default.
+     * 
+     * @param enabled
+     */
+    public static void setDiskCacheEnabled(boolean enabled) {
+        diskCacheEnabled = enabled;
+    }
+
+    /**
+     * Returns <code>true</code> if the on-disk cache is enabled.
+     */
+    public static boolean isDiskCacheEnabled() {
+        return diskCacheEnabled;
+    }
+
+    /**
+     * Sets the maximum size, in bytes, of the on-disk cache. The default is
+     * 10MB.
+     * 
+     * @param maxBytes
+     */
+    public static void setDiskCacheMaxBytes(long maxBytes) {
+        diskCacheMaxBytes = maxBytes;
+    }
+
+    // Private
+
+    private static int getDefaultMaxBytes() {
+        // an eighth of the heap
+        return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    private static Bitmap.Config normalize(Bitmap.Config config) {
+        return config != null ? config : Bitmap.Config.ARGB_8888;
+    }
+
+    private static void putInMemory(Key key, Bitmap bitmap) {
+        // Don't let a single large bitmap flush the entire cache.
+        if (bitmap.getRowBytes() * bitmap.getHeight() <= BITMAPS.maxSize() / 4) {
+            BITMAPS.put(key, bitmap);
+        }
+    }
+
+    private static boolean isDiskCacheable(Uri uri, int width, int height) {
+        if (!diskCacheEnabled || width <= 0 || height <= 0) {
+            return false;
+        }
+        String scheme = uri.getScheme();
+        if (scheme != null) {
+            scheme = scheme.toLowerCase(Locale.US);
+            for (String cachedScheme : DISK_CACHED_SCHEMES) {
+                if (cachedScheme.equals(scheme)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static File getDiskCacheDir() {
+        Context context = PixateFreestyle.getAppContext();
+        if (context == null) {
+            return null;
+        }
+        File dir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return null;
+        }
+        return dir;
+    }
+
+    private static File getDiskFile(Uri uri, Key key) {
+        File dir = getDiskCacheDir();
+        if (dir == null) {
+            return null;
+        }
+        String name = key.toString();
+        if ("documents".equalsIgnoreCase(uri.getScheme())) {
+            // invalidate the cached decode when the document changes
+            String document = uri.toString().substring(UrlStreamOpener.DOCUMENTS_SCHEME.length());
+            File source = PixateFreestyle.getAppContext().getFileStreamPath(document);
+            name += '|' + String.valueOf(source.lastModified());
+        }
+        return new File(dir, StringUtil.digest(name));
+    }
+
+    private static Bitmap readFromDisk(Uri uri, Key key) {
+        synchronized (DISK_LOCK) {
+            File file = getDiskFile(uri, key);
+            if (file == null || !file.isFile()) {
+                return null;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = key.config;
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+            if (bitmap != null) {
+                // keep the file at the young end of the LRU
+                file.setLastModified(System.currentTimeMillis());
+            }
+            return bitmap;
+        }
+    }
+
+    private static void writeToDisk(Uri uri, Key key, Bitmap bitmap) {
+        synchronized (DISK_LOCK) {
+            File file = getDiskFile(uri, key);
+            if (file == null || file.isFile()) {
+                return;
+            }
+            File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+            OutputStream out = null;
+            try {
+                out = new FileOutputStream(tmp);
+                if (bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                    out.close();
+                    out = null;
+                    tmp.renameTo(file);
+                }
+            } catch (IOException e) {
+                PXLog.w(TAG, e, "Unable to write a cached image for %s", key);
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                    }
+                }
+                tmp.delete();
+            }
+            trimDiskCache(file.getParentFile());
+        }
+    }
+
+    private static void trimDiskCache(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= diskCacheMaxBytes) {
+            return;
+        }
+        // delete the least recently used files first
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && total > diskCacheMaxBytes; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+}
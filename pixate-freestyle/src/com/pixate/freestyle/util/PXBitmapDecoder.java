@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import com.pixate.freestyle.PixateFreestyle;
+
+/**
+ * Decodes bitmaps at the size they are needed, opening their source only
+ * once. The image bounds are read first, and the same source is then rewound
+ * and decoded:
+ * <ul>
+ * <li><code>data:</code> uris are decoded into a byte array (see
+ * {@link UrlStreamOpener#decodeDataUri(String)})</li>
+ * <li>file streams are decoded from their file descriptor, which is rewound
+ * between the passes</li>
+ * <li>streams that support marking (assets and resources) are reset between
+ * the passes</li>
+ * <li>any other stream is read once into a byte array</li>
+ * </ul>
+ * When a target size is given, the bitmap is subsampled by the largest power
+ * of two that keeps it at least as large as the target, and then scaled down
+ * to the exact size that covers the target bounds.
+ */
+public class PXBitmapDecoder {
+
+    private static final String TAG = PXBitmapDecoder.class.getSimpleName();
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Decodes the image at the given {@link Uri}.
+     * 
+     * @param uri
+     * @param width The target width. Zero or less to decode at full size.
+     * @param height The target height. Zero or less to decode at full size.
+     * @return A {@link Bitmap}, or <code>null</code> if the image could not
+     *         be opened or decoded.
+     */
+    public static Bitmap decode(Uri uri, int width, int height) {
+        String uriString = uri.toString();
+        if (uriString.startsWith(UrlStreamOpener.DATA_SCHEME)) {
+            byte[] data = UrlStreamOpener.decodeDataUri(uriString);
+            return (data != null) ? decode(data, width, height) : null;
+        }
+        InputStream inputStream = UrlStreamOpener.open(uriString);
+        if (inputStream == null) {
+            return null;
+        }
+        try {
+            return decode(inputStream, width, height);
+        } catch (IOException e) {
+            PXLog.e(TAG, e, "Unable to decode " + uri);
+            return null;
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * Decodes an image from a byte array.
+     * 
+     * @param data
+     * @param width The target width. Zero or less to decode at full size.
+     * @param height The target height. Zero or less to decode at full size.
+     * @return A {@link Bitmap}, or <code>null</code> if the data could not be
+     *         decoded.
+     */
+    public static Bitmap decode(byte[] data, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return BitmapFactory.decodeByteArray(data, 0, data.length);
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (!prepareOptions(options, width, height)) {
+            return null;
+        }
+        return scaled(BitmapFactory.decodeByteArray(data, 0, data.length, options), options);
+    }
+
+    /**
+     * Decodes an image from a stream. The stream is not closed by this method.
+     * 
+     * @param inputStream
+     * @param width The target width. Zero or less to decode at full size.
+     * @param height The target height. Zero or less to decode at full size.
+     * @return A {@link Bitmap}, or <code>null</code> if the stream could not be
+     *         decoded.
+     * @throws IOException
+     */
+    public static Bitmap decode(InputStream inputStream, int width, int height)
+            throws IOException {
+        if (width <= 0 || height <= 0) {
+            return BitmapFactory.decodeStream(inputStream);
+        }
+        if (inputStream instanceof FileInputStream) {
+            return decodeFile((FileInputStream) inputStream, width, height);
+        }
+        if (!inputStream.markSupported()) {
+            return decode(readBytes(inputStream), width, height);
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        inputStream.mark(Integer.MAX_VALUE);
+        BitmapFactory.decodeStream(inputStream, null, options);
+        inputStream.reset();
+        if (!prepareOptions(options, width, height)) {
+            return null;
+        }
+        return scaled(BitmapFactory.decodeStream(inputStream, null, options), options);
+    }
+
+    private static Bitmap decodeFile(FileInputStream inputStream, int width, int height)
+            throws IOException {
+        FileChannel channel = inputStream.getChannel();
+        long start = channel.position();
+        FileDescriptor fd = inputStream.getFD();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFileDescriptor(fd, null, options);
+        channel.position(start);
+        if (!prepareOptions(options, width, height)) {
+            return null;
+        }
+        return scaled(BitmapFactory.decodeFileDescriptor(fd, null, options), options);
+    }
+
+    /**
+     * Sets the sample size and the density scaling on the options, after
+     * their bounds were decoded.
+     * 
+     * @return <code>false</code> if the bounds could not be decoded.
+     */
+    private static boolean prepareOptions(BitmapFactory.Options options, int width, int height) {
+        options.inJustDecodeBounds = false;
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return false;
+        }
+        int sampleSize = PXURLBitmapLoader.calculateSampleSize(options, width, height);
+        options.inSampleSize = sampleSize;
+
+        // Scale the subsampled image down to the smallest size that still
+        // covers the target bounds. BitmapFactory scales by
+        // inTargetDensity / inDensity.
+        int sampledWidth = (options.outWidth + sampleSize - 1) / sampleSize;
+        int sampledHeight = (options.outHeight + sampleSize - 1) / sampleSize;
+        float widthScale = (float) width / sampledWidth;
+        float heightScale = (float) height / sampledHeight;
+        if (widthScale < 1 && heightScale < 1) {
+            options.inScaled = true;
+            if (widthScale >= heightScale) {
+                options.inDensity = sampledWidth;
+                options.inTargetDensity = width;
+            } else {
+                options.inDensity = sampledHeight;
+                options.inTargetDensity = height;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restores the density of a bitmap that was scaled through the density
+     * options, so it is drawn the same way an unscaled decode would.
+     */
+    private static Bitmap scaled(Bitmap bitmap, BitmapFactory.Options options) {
+        if (bitmap != null && options.inTargetDensity != 0) {
+            bitmap.setDensity(PixateFreestyle.getAppContext().getResources()
+                    .getDisplayMetrics().densityDpi);
+        }
+        return bitmap;
+    }
+
+    private static byte[] readBytes(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -16,6 +16,7 @@
 package com.pixate.freestyle.util;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -193,6 +194,9 @@ public class PXDrawableUtil {
      */
     @SuppressWarnings("deprecation")
     public static void setBackgroundDrawable(View view, Drawable drawable) {
+        // A background that is set directly overrides any pending
+        // asynchronous rendering.
+        PXAsyncDrawableRenderer.cancel(view);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
             setBackgroundJB(view, drawable);
         } else {
@@ -323,6 +327,26 @@ public class PXDrawableUtil {
     public static Drawable createDrawable(PXStyleAdapter adapter,
             Map<int[], Drawable> existingStates, List<PXRuleSet> ruleSets,
             List<PXStylerContext> contexts) {
+        return createDrawable(adapter, existingStates, ruleSets, contexts, null);
+    }
+
+    /**
+     * Creates a new {@link StateListDrawable} from the given contexts and the
+     * existing {@link View}'s background, using drawables that were rendered
+     * ahead of time (see {@link #renderStateDrawables(List)}).
+     * 
+     * @param adapter
+     * @param existingStates
+     * @param ruleSets
+     * @param contexts
+     * @param rendered The drawables rendered with
+     *            {@link #renderStateDrawables(List)}, or <code>null</code>
+     * @return A new {@link StateListDrawable}
+     * @see #createDrawable(PXStyleAdapter, Map, List, List)
+     */
+    public static Drawable createDrawable(PXStyleAdapter adapter,
+            Map<int[], Drawable> existingStates, List<PXRuleSet> ruleSets,
+            List<PXStylerContext> contexts, List<Drawable> rendered) {
         PXStylerContext context = contexts.get(0);
 
         Set<int[]> statesKeys;
@@ -349,13 +373,13 @@ public class PXDrawableUtil {
         int rulesetSize = ruleSets.size();
         for (int i = 0; i < rulesetSize; i++) {
             context = contexts.get(i);
-            Drawable drawable = (context.usesImage() || context.usesColorOnly()) ? context
-                    .getBackgroundImage() : null;
+            String activeStateName = context.getActiveStateName();
+            if (activeStateName == null) {
+                activeStateName = PXStyleInfo.DEFAULT_STYLE;
+            }
+            Drawable drawable = getStateDrawable(context,
+                    !PXStyleInfo.DEFAULT_STYLE.equals(activeStateName), rendered, i);
             if (drawable != null && existingStates != null && !existingStates.isEmpty()) {
-                String activeStateName = context.getActiveStateName();
-                if (activeStateName == null) {
-                    activeStateName = PXStyleInfo.DEFAULT_STYLE;
-                }
                 // Artificially add states to the one we got. For example, add a
                 // 'pressed' state to a 'checked' state.
                 int[][] activeStates = adapter.createAdditionalDrawableStates(PXDrawableUtil
@@ -411,16 +435,63 @@ public class PXDrawableUtil {
      */
     public static Drawable createNewDrawable(PXStyleAdapter adapter, List<PXRuleSet> ruleSets,
             List<PXStylerContext> contexts) {
+        return createNewDrawable(adapter, ruleSets, contexts, null);
+    }
+
+    /**
+     * Creates a new {@link Drawable}, using drawables that were rendered ahead
+     * of time (see {@link #renderStateDrawables(List)}).
+     * 
+     * @param adapter
+     * @param ruleSets
+     * @param contexts
+     * @param rendered The drawables rendered with
+     *            {@link #renderStateDrawables(List)}, or <code>null</code>
+     * @return A new {@link Drawable}
+     * @see #createNewDrawable(PXStyleAdapter, List, List)
+     */
+    public static Drawable createNewDrawable(PXStyleAdapter adapter, List<PXRuleSet> ruleSets,
+            List<PXStylerContext> contexts, List<Drawable> rendered) {
         Drawable drawable;
         if (contexts.size() == 1
                 && PXStyleInfo.DEFAULT_STYLE.equals(contexts.get(0).getActiveStateName())) {
-            drawable = contexts.get(0).getBackgroundImage();
+            drawable = (rendered != null) ? rendered.get(0) : null;
+            if (drawable == null) {
+                drawable = contexts.get(0).getBackgroundImage();
+            }
         } else {
-            drawable = createNewStateListDrawable(adapter, ruleSets, contexts);
+            drawable = createNewStateListDrawable(adapter, ruleSets, contexts, rendered);
         }
         return drawable;
     }
 
+    /**
+     * Renders the drawables that are needed up front to create a background
+     * for the given contexts, one per context. These are the drawables of the
+     * default state; the drawables of other states are rendered lazily, when
+     * the state is entered, and get a <code>null</code> entry. This method
+     * doesn't touch any view or existing background, so it may be called off
+     * the UI thread. The result is passed to
+     * {@link #createDrawable(PXStyleAdapter, Map, List, List, List)} or
+     * {@link #createNewDrawable(PXStyleAdapter, List, List, List)} on the UI
+     * thread.
+     * 
+     * @param contexts
+     * @return The rendered drawables, in the order of the contexts
+     */
+    public static List<Drawable> renderStateDrawables(List<PXStylerContext> contexts) {
+        List<Drawable> result = new ArrayList<Drawable>(contexts.size());
+        for (PXStylerContext context : contexts) {
+            String activeStateName = context.getActiveStateName();
+            if (activeStateName == null || PXStyleInfo.DEFAULT_STYLE.equals(activeStateName)) {
+                result.add(getStateDrawable(context, false));
+            } else {
+                result.add(null);
+            }
+        }
+        return result;
+    }
+
     /**
      * Creates a new {@link StateListDrawable} by looking into the contexts and
      * generating one according to their states.
@@ -433,6 +504,11 @@ public class PXDrawableUtil {
      */
     public static StateListDrawable createNewStateListDrawable(PXStyleAdapter adapter,
             List<PXRuleSet> ruleSets, List<PXStylerContext> contexts) {
+        return createNewStateListDrawable(adapter, ruleSets, contexts, null);
+    }
+
+    private static StateListDrawable createNewStateListDrawable(PXStyleAdapter adapter,
+            List<PXRuleSet> ruleSets, List<PXStylerContext> contexts, List<Drawable> rendered) {
         if (contexts != null && !contexts.isEmpty()) {
             // No state-lists here, so simply loop and set the backgrounds
 
@@ -448,11 +524,11 @@ public class PXDrawableUtil {
                 if (activeStateName == null) {
                     activeStateName = PXStyleInfo.DEFAULT_STYLE;
                 }
-                Drawable drawable = (context.usesImage() || context.usesColorOnly()) ? context
-                        .getBackgroundImage() : null;
                 // Artificially add states to the one we got. For example, add a
                 // 'pressed' state to a 'checked' state.
                 int stateValue = PXDrawableUtil.getStateValue(activeStateName);
+                Drawable drawable = getStateDrawable(context,
+                        stateValue != android.R.attr.drawable, rendered, i);
                 if (stateValue == android.R.attr.drawable) {
                     deferredDefaultStates = adapter.createAdditionalDrawableStates(stateValue);
                     defaultDrawable = drawable;
@@ -474,6 +550,35 @@ public class PXDrawableUtil {
         return null;
     }
 
+    /**
+     * Returns the {@link Drawable} that will represent the context's state in
+     * a state-list. In case the drawable is lazy, and was not rendered yet, a
+     * {@link PXLazyStateDrawable} will be returned, so the rendering will only
+     * happen when (and if) the state-list selects it.
+     * 
+     * @param context
+     * @param lazy
+     * @return A {@link Drawable}. <code>null</code> in case the context does
+     *         not use an image or a color.
+     */
+    private static Drawable getStateDrawable(PXStylerContext context, boolean lazy) {
+        if (!context.usesImage() && !context.usesColorOnly()) {
+            return null;
+        }
+        if (lazy && !context.hasCachedBackgroundImage()) {
+            // resolve the bounds now, on the UI thread
+            context.resolveImageBounds();
+            return new PXLazyStateDrawable(context);
+        }
+        return context.getBackgroundImage();
+    }
+
+    private static Drawable getStateDrawable(PXStylerContext context, boolean lazy,
+            List<Drawable> rendered, int index) {
+        Drawable drawable = (rendered != null) ? rendered.get(index) : null;
+        return (drawable != null) ? drawable : getStateDrawable(context, lazy);
+    }
+
     private static class StateListDrawableWithBoundsChange extends StateListDrawable {
         @Override
         public void setBounds(int left, int top, int right, int bottom) {
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.freestyle.util;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.StateListDrawable;
+
+import com.pixate.freestyle.cg.math.PXOffsets;
+import com.pixate.freestyle.styling.stylers.PXStylerContext;
+
+/**
+ * A {@link Drawable} placeholder for a single state in a
+ * {@link StateListDrawable}. The placeholder holds the
+ * {@link PXStylerContext} of the state, and only renders the context's
+ * background image when the drawable is first needed (e.g. when the state-list
+ * selects it, which makes it visible and sets its state). The rendered drawable
+ * is kept and used from that point on. This way, states that are never entered
+ * are never rasterized.
+ */
+public class PXLazyStateDrawable extends Drawable implements Drawable.Callback {
+
+    private PXStylerContext context;
+    private Drawable drawable;
+    private int alpha = 255;
+    private ColorFilter colorFilter;
+
+    /**
+     * Constructs a new lazy drawable for the given context. The context's
+     * image bounds should be resolved on the UI thread (see
+     * {@link PXStylerContext#resolveImageBounds()}) before the context is
+     * handed to this drawable.
+     * 
+     * @param context
+     */
+    public PXLazyStateDrawable(PXStylerContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns <code>true</code> in case the background image was already
+     * rendered.
+     */
+    public boolean isLoaded() {
+        return drawable != null;
+    }
+
+    /**
+     * Returns the rendered {@link Drawable}. The drawable is rendered at the
+     * first call to this method. Note that this drawable renders itself when
+     * the state-list selects it, so there is normally no need to call this
+     * method directly.
+     * 
+     * @return The rendered {@link Drawable} (may be <code>null</code>)
+     */
+    public Drawable getDrawable() {
+        if (context != null) {
+            drawable = context.getBackgroundImage();
+            // release the context, we don't need it anymore.
+            context = null;
+            if (drawable != null) {
+                drawable.setBounds(getBounds());
+                drawable.setState(getState());
+                drawable.setLevel(getLevel());
+                drawable.setVisible(isVisible(), false);
+                drawable.setAlpha(alpha);
+                drawable.setColorFilter(colorFilter);
+                drawable.setCallback(this);
+            }
+        }
+        return drawable;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        // The drawable is rendered when selected (see setVisible and
+        // onStateChange), so we don't block the frame here.
+        if (drawable != null) {
+            drawable.draw(canvas);
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        this.alpha = alpha;
+        if (drawable != null) {
+            drawable.setAlpha(alpha);
+        }
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        this.colorFilter = cf;
+        if (drawable != null) {
+            drawable.setColorFilter(cf);
+        }
+    }
+
+    @Override
+    public int getOpacity() {
+        // Don't render just to compute the opacity. The state-list will ask
+        // all of its children for it.
+        if (drawable != null) {
+            return drawable.getOpacity();
+        }
+        return context != null && context.isOpaque() ? PixelFormat.OPAQUE
+                : PixelFormat.TRANSLUCENT;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        // Don't render just to compute the size. The state-list may ask all
+        // of its children for it.
+        return drawable != null ? drawable.getIntrinsicWidth() : -1;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return drawable != null ? drawable.getIntrinsicHeight() : -1;
+    }
+
+    @Override
+    public boolean getPadding(Rect padding) {
+        if (drawable != null) {
+            return drawable.getPadding(padding);
+        }
+        // The state-list may ask all of its children for their padding. The
+        // padding of a rendered image is the context's padding, so there is
+        // no need to render here.
+        PXOffsets offsets = context != null ? context.getPadding() : null;
+        if (offsets != null && offsets.hasOffset()) {
+            padding.set((int) offsets.getLeft(), (int) offsets.getTop(),
+                    (int) offsets.getRight(), (int) offsets.getBottom());
+            return true;
+        }
+        padding.set(0, 0, 0, 0);
+        return false;
+    }
+
+    @Override
+    public boolean setVisible(boolean visible, boolean restart) {
+        boolean changed = super.setVisible(visible, restart);
+        // The state-list makes the child it selects visible, so this is where
+        // the state is entered.
+        if (visible) {
+            getDrawable();
+        }
+        if (drawable != null) {
+            drawable.setVisible(visible, restart);
+        }
+        return changed;
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        if (drawable != null) {
+            drawable.setBounds(bounds);
+        }
+    }
+
+    @Override
+    protected boolean onStateChange(int[] state) {
+        if (isVisible()) {
+            getDrawable();
+        }
+        if (drawable != null) {
+            return drawable.setState(state);
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean onLevelChange(int level) {
+        if (drawable != null) {
+            return drawable.setLevel(level);
+        }
+        return false;
+    }
+
+    // Drawable.Callback
+
+    public void invalidateDrawable(Drawable who) {
+        invalidateSelf();
+    }
+
+    public void scheduleDrawable(Drawable who, Runnable what, long when) {
+        scheduleSelf(what, when);
+    }
+
+    public void unscheduleDrawable(Drawable who, Runnable what) {
+        unscheduleSelf(what);
+    }
+}
@@ -1,13 +1,30 @@
 package com.pixate.freestyle.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Rect;
 import android.net.Uri;
+import android.os.Process;
 
 /**
  * Handles {@link Bitmap} retrieval from a remote location. The default behavior
@@ -104,6 +121,25 @@ public class PXURLBitmapLoader {
         loader.doLoad(uri, width, height, callback, synchronous);
     }
 
+    /**
+     * Cancels a pending bitmap loading that was started with the given
+     * callback. The callback will not be informed about the result. In case
+     * the loading is synchronous, the waiting caller is released and the
+     * callback is informed with a {@link java.util.concurrent.CancellationException}.
+     * The download itself is cancelled once no other callback is waiting for
+     * it.
+     * Note that a cancellation is only supported by the default downloader.
+     * 
+     * @param uri
+     * @param callback
+     */
+    public static void cancel(Uri uri, LoadingCallback<Bitmap> callback) {
+        PXBitmapDownloader downloader = getInstance().downloader;
+        if (downloader instanceof PXDefaultImageDownloader) {
+            ((PXDefaultImageDownloader) downloader).cancel(uri, callback);
+        }
+    }
+
     /**
      * Sets a custom {@link PXBitmapDownloader} that will handle the
      * {@link Bitmap} downloading (retrieval, caching, etc.).
@@ -136,9 +172,19 @@ public class PXURLBitmapLoader {
 
     /**
      * Default {@link Bitmap} downloader. No caching, or any clever stuff is
-     * done here.
+     * done here. Downloads run on a bounded pool of worker threads, and
+     * identical requests that are in flight at the same time share a single
+     * download (one fetch, multiple callbacks). Each image is downloaded once
+     * into a buffer, and decoded from that buffer.
      */
     private static class PXDefaultImageDownloader implements PXBitmapDownloader {
+        private static final int POOL_SIZE = 4;
+        private static final int QUEUE_CAPACITY = 64;
+        private static final long KEEP_ALIVE_SECONDS = 30;
+
+        private final Map<DownloadKey, DownloadTask> inFlight =
+                new HashMap<DownloadKey, DownloadTask>();
+        private ThreadPoolExecutor executor;
 
         /*
          * (non-Javadoc)
@@ -150,15 +196,276 @@ public class PXURLBitmapLoader {
         @Override
         public void downloadBitmap(Uri uri, final int width, final int height,
                 final LoadingCallback<Bitmap> callback, boolean synchronous) {
-            Thread downloadThread = new Thread(new DownloadRunnable(uri, width, height, callback));
-            downloadThread.start();
+            DownloadTask task;
+            Request request = new Request(callback);
+            RejectedExecutionException rejected = null;
+            synchronized (inFlight) {
+                DownloadKey key = new DownloadKey(uri, width, height);
+                task = inFlight.get(key);
+                if (task == null) {
+                    task = new DownloadTask(key);
+                    try {
+                        task.future = getExecutor().submit(task);
+                        inFlight.put(key, task);
+                    } catch (RejectedExecutionException e) {
+                        rejected = e;
+                    }
+                }
+                if (rejected == null) {
+                    task.requests.add(request);
+                }
+            }
+            if (rejected != null) {
+                callback.onError(rejected);
+                return;
+            }
             if (synchronous) {
                 try {
-                    downloadThread.join(PXURLBitmapLoader.getInstance().getImageDownloadTimeout());
+                    if (!request.done.await(PXURLBitmapLoader.getInstance()
+                            .getImageDownloadTimeout(), TimeUnit.MILLISECONDS)) {
+                        if (remove(task, request, false)) {
+                            callback.onError(new TimeoutException("Timed out while downloading "
+                                    + uri));
+                            return;
+                        }
+                        // The download completed right now, and the callback
+                        // is being informed. Wait for it, so the callback is
+                        // never called after we return.
+                        request.done.await();
+                    }
+                    if (request.cancelled) {
+                        callback.onError(new CancellationException("Download cancelled: " + uri));
+                    }
+                } catch (InterruptedException e) {
+                    // The waiting thread was cancelled (e.g. the view that
+                    // waits for this bitmap was detached).
+                    Thread.currentThread().interrupt();
+                    if (remove(task, request, false)) {
+                        callback.onError(e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes a callback from the in-flight downloads of the given
+         * {@link Uri}. A download that is left without any callback is
+         * cancelled. A synchronous caller that waits for the removed callback
+         * is released, and informs its callback with a
+         * {@link CancellationException}.
+         * 
+         * @param uri
+         * @param callback
+         * @return <code>true</code> if the callback was removed;
+         *         <code>false</code> if it was not waiting for a download (e.g.
+         *         the download is complete).
+         */
+        private boolean cancel(Uri uri, LoadingCallback<Bitmap> callback) {
+            List<Request> removed = new ArrayList<Request>(1);
+            synchronized (inFlight) {
+                for (DownloadTask task : new ArrayList<DownloadTask>(inFlight.values())) {
+                    if (task.key.uri.equals(uri)) {
+                        for (Request request : new ArrayList<Request>(task.requests)) {
+                            if (request.callback == callback && claim(task, request, true)) {
+                                removed.add(request);
+                            }
+                        }
+                    }
+                }
+            }
+            for (Request request : removed) {
+                request.done.countDown();
+            }
+            return !removed.isEmpty();
+        }
+
+        /**
+         * Removes a single request from its download, unless the download
+         * already took it for notification.
+         * 
+         * @return <code>true</code> if the request was removed, in which case
+         *         the download will not inform its callback.
+         */
+        private boolean remove(DownloadTask task, Request request, boolean cancelled) {
+            synchronized (inFlight) {
+                if (!claim(task, request, cancelled)) {
+                    return false;
+                }
+            }
+            request.done.countDown();
+            return true;
+        }
+
+        // called while holding the inFlight lock
+        private boolean claim(DownloadTask task, Request request, boolean cancelled) {
+            if (request.claimed) {
+                return false;
+            }
+            request.claimed = true;
+            request.cancelled = cancelled;
+            task.requests.remove(request);
+            if (task.requests.isEmpty() && inFlight.get(task.key) == task) {
+                inFlight.remove(task.key);
+                task.future.cancel(true);
+            }
+            return true;
+        }
+
+        private synchronized ThreadPoolExecutor getExecutor() {
+            if (executor == null) {
+                executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS,
+                        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                        new ThreadFactory() {
+                            private final AtomicInteger count = new AtomicInteger();
+
+                            public Thread newThread(final Runnable r) {
+                                return new Thread(new Runnable() {
+                                    public void run() {
+                                        Process.setThreadPriority(
+                                                Process.THREAD_PRIORITY_BACKGROUND);
+                                        r.run();
+                                    }
+                                }, "PXDownloader #" + count.incrementAndGet());
+                            }
+                        });
+                executor.allowCoreThreadTimeOut(true);
+            }
+            return executor;
+        }
+
+        /**
+         * A callback that waits for a download. A request is informed by
+         * whoever claims it first: the download when it completes, or a
+         * cancellation or a timeout of the caller.
+         */
+        private class Request {
+            private final LoadingCallback<Bitmap> callback;
+            // released once the callback was informed, or the request removed
+            private final CountDownLatch done = new CountDownLatch(1);
+            // guarded by inFlight
+            private boolean claimed;
+            private boolean cancelled;
+
+            private Request(LoadingCallback<Bitmap> callback) {
+                this.callback = callback;
+            }
+        }
+
+        /**
+         * A single download, shared by all the callbacks that requested the
+         * same {@link Uri} at the same size.
+         */
+        private class DownloadTask implements Runnable {
+            private final DownloadKey key;
+            // guarded by inFlight
+            private final List<Request> requests = new ArrayList<Request>(2);
+            private Future<?> future;
+
+            private DownloadTask(DownloadKey key) {
+                this.key = key;
+            }
+
+            /*
+             * (non-Javadoc)
+             * @see java.lang.Runnable#run()
+             */
+            @Override
+            public void run() {
+                Bitmap bitmap = null;
+                Throwable error = null;
+                try {
+                    byte[] data = download(key.uri);
+                    bitmap = PXBitmapDecoder.decode(data, key.width, key.height);
+                    if (bitmap == null) {
+                        error = new IOException("Unable to decode the bitmap at " + key.uri);
+                    }
                 } catch (Exception e) {
-                    callback.onError(e);
+                    error = e;
+                }
+                List<Request> toNotify = new ArrayList<Request>(requests.size());
+                synchronized (inFlight) {
+                    if (inFlight.get(key) == this) {
+                        inFlight.remove(key);
+                    }
+                    for (Request request : requests) {
+                        if (!request.claimed) {
+                            request.claimed = true;
+                            toNotify.add(request);
+                        }
+                    }
+                    requests.clear();
                 }
+                // Notify the callbacks
+                for (Request request : toNotify) {
+                    try {
+                        if (bitmap != null) {
+                            request.callback.onLoaded(bitmap);
+                        } else {
+                            request.callback.onError(error);
+                        }
+                    } finally {
+                        // release a synchronous waiter only after its
+                        // callback was informed
+                        request.done.countDown();
+                    }
+                }
+            }
+
+            private byte[] download(Uri uri) throws IOException {
+                URLConnection connection = new URL(uri.toString()).openConnection();
+                int timeout = (int) PXURLBitmapLoader.getInstance().getImageDownloadTimeout();
+                connection.setConnectTimeout(timeout);
+                connection.setReadTimeout(timeout);
+                int length = connection.getContentLength();
+                InputStream is = connection.getInputStream();
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 ? length
+                            : 16 * 1024);
+                    byte[] buffer = new byte[8 * 1024];
+                    int read;
+                    while ((read = is.read(buffer)) != -1) {
+                        if (Thread.interrupted()) {
+                            throw new InterruptedIOException("Download cancelled: " + uri);
+                        }
+                        out.write(buffer, 0, read);
+                    }
+                    return out.toByteArray();
+                } finally {
+                    try {
+                        is.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Identifies a download by its {@link Uri} and requested size.
+     */
+    private static class DownloadKey {
+        private final Uri uri;
+        private final int width;
+        private final int height;
+
+        private DownloadKey(Uri uri, int width, int height) {
+            this.uri = uri;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * uri.hashCode() + width) * 31 + height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof DownloadKey)) {
+                return false;
             }
+            DownloadKey other = (DownloadKey) o;
+            return width == other.width && height == other.height && uri.equals(other.uri);
         }
     }
 
@@ -188,85 +495,4 @@ public class PXURLBitmapLoader {
 
         return inSampleSize;
     }
-
-    /**
-     * A {@link Runnable} that handles the bitmap downloading.
-     */
-    private static class DownloadRunnable implements Runnable {
-        private Bitmap bitmap;
-        private Exception error;
-        private Uri uri;
-        private int width;
-        private int height;
-        private LoadingCallback<Bitmap> callback;
-
-        /**
-         * Constructs a new download runnable.
-         * 
-         * @param uri
-         * @param width
-         * @param height
-         * @param callback
-         */
-        private DownloadRunnable(Uri uri, int width, int height, LoadingCallback<Bitmap> callback) {
-            this.uri = uri;
-            this.width = width;
-            this.height = height;
-            this.callback = callback;
-        }
-
-        /*
-         * (non-Javadoc)
-         * @see java.lang.Runnable#run()
-         */
-        @Override
-        public void run() {
-            InputStream is = null;
-            try {
-                URL url = new URL(uri.toString());
-                if (height > 0 && width > 0) {
-                    BitmapFactory.Options options = new BitmapFactory.Options();
-                    options.inJustDecodeBounds = true;
-                    is = url.openStream();
-                    BitmapFactory.decodeStream(is, new Rect(), options);
-
-                    try {
-                        is.close();
-                    } catch (IOException e) {
-                    }
-
-                    // calculates the sample size
-                    options.inSampleSize = calculateSampleSize(options, width, height);
-                    options.inJustDecodeBounds = false;
-
-                    // grab the bitmap in the requested size
-                    is = url.openStream();
-                    bitmap = BitmapFactory.decodeStream(is, new Rect(), options);
-                } else {
-                    // no size information, so we just grab the bitmap
-                    // as is.
-                    is = url.openStream();
-                    bitmap = BitmapFactory.decodeStream(is);
-                }
-
-            } catch (Exception e) {
-                error = e;
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (IOException e) {
-                    }
-                }
-            }
-            // Notify the callback
-            if (bitmap != null) {
-                callback.onLoaded(bitmap);
-            } else if (error != null) {
-                callback.onError(error);
-            } else {
-
-            }
-        }
-    }
 }
@@ -15,6 +15,7 @@
  ******************************************************************************/
 package com.pixate.freestyle.util;
 
+import java.security.MessageDigest;
 import java.util.Locale;
 
 public class StringUtil {
@@ -116,6 +117,28 @@ public class StringUtil {
         return text.substring(0, length - 3) + "...";
     }
 
+    /**
+     * Returns a hex MD5 digest of the given string. Used to name cache files
+     * after the urls they hold.
+     * 
+     * @param text
+     * @return A hex digest (falls back to the string's hash code when the
+     *         digest is not available)
+     */
+    public static String digest(String text) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            byte[] bytes = md5.digest(text.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                builder.append(String.format(Locale.US, "%02x", b & 0xff));
+            }
+            return builder.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(text.hashCode());
+        }
+    }
+
     public static int compare(String lhs, String rhs) {
         if (lhs == null) {
             return rhs == null ? 0 : 1;
@@ -24,6 +24,11 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import android.content.Context;
@@ -31,7 +36,6 @@ import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.net.Uri;
 import android.util.Base64;
-import android.util.Base64InputStream;
 
 import com.pixate.freestyle.PixateFreestyle;
 
@@ -44,17 +48,53 @@ public class UrlStreamOpener {
     public static final String TMP_SCHEME = "tmp://";
     public static final String DATA_SCHEME = "data:";
 
+    /**
+     * The extension of compiled SVG files. A compiled file that sits next to
+     * an SVG file is opened instead of the SVG itself.
+     */
+    public static final String COMPILED_SVG_EXTENSION = ".svgc";
+    private static final String SVG_EXTENSION = ".svg";
+
     private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
 
     private static final String[] RESOURCE_TYPES = { "drawable", "raw" };
 
     private static final String TAG = UrlStreamOpener.class.getSimpleName();
 
+    // Resolved bundle:// locations, keyed by the resource name
+    private static final ConcurrentHashMap<String, BundleLocation> BUNDLE_LOCATIONS =
+            new ConcurrentHashMap<String, BundleLocation>();
+
+    // Compiled SVG urls that we know don't exist
+    private static final Set<String> MISSING_COMPILED_SVGS = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The resolved location of a <code>bundle://</code> resource name. A zero
+     * resource id means the name is looked up in the assets.
+     */
+    private static class BundleLocation {
+        private final int resourceId;
+        // set once the asset could not be opened
+        private volatile boolean missing;
+
+        private BundleLocation(int resourceId) {
+            this.resourceId = resourceId;
+        }
+    }
+
     public static InputStream open(Uri uri) {
         return open(uri.toString());
     }
 
     public static InputStream open(String uri) {
+        if (isSVG(uri)) {
+            InputStream compiled = openCompiledSVG(uri);
+            if (compiled != null) {
+                return compiled;
+            }
+        }
         if (uri.startsWith(FILE_SCHEME)) {
             // Be sure it's absolute (file:/// instead of file://)
             if (uri.startsWith("file:///")) {
@@ -75,6 +115,86 @@ public class UrlStreamOpener {
         }
     }
 
+    private static boolean isSVG(String uri) {
+        int length = SVG_EXTENSION.length();
+        return uri.regionMatches(true, uri.length() - length, SVG_EXTENSION, 0, length);
+    }
+
+    /**
+     * Clears the compiled SVG urls that are remembered as missing. Call this
+     * method after compiled SVG files are written at runtime (e.g. with
+     * {@link com.pixate.freestyle.cg.parsing.PXSVGCompiler}), so they are
+     * picked up.
+     */
+    public static void clearMissingCompiledSVGs() {
+        MISSING_COMPILED_SVGS.clear();
+    }
+
+    /**
+     * Opens the compiled variant of an SVG, when one exists. A compiled
+     * variant that does not exist is remembered, so the next opening of the
+     * same SVG doesn't probe for it again.
+     * 
+     * @param uri The SVG uri
+     * @return An {@link InputStream} for the compiled SVG, or <code>null</code>
+     */
+    private static InputStream openCompiledSVG(String uri) {
+        String compiledUri = uri.substring(0, uri.length() - SVG_EXTENSION.length())
+                + COMPILED_SVG_EXTENSION;
+        if (MISSING_COMPILED_SVGS.contains(compiledUri)) {
+            return null;
+        }
+        InputStream stream = openCompiledUri(compiledUri);
+        if (stream == null) {
+            MISSING_COMPILED_SVGS.add(compiledUri);
+        }
+        return stream;
+    }
+
+    private static InputStream openCompiledUri(String compiledUri) {
+        if (compiledUri.startsWith(FILE_SCHEME)) {
+            if (!compiledUri.startsWith("file:///")) {
+                compiledUri = compiledUri.replace("file:", "file:/");
+            }
+            return openExistingFile(new File(URI.create(compiledUri)));
+        } else if (compiledUri.startsWith(DOCUMENTS_SCHEME)) {
+            return openDocumentScheme(compiledUri, true);
+        } else if (compiledUri.startsWith(BUNDLE_SCHEME)) {
+            return openCompiledAsset(compiledUri.substring(BUNDLE_SCHEME.length()));
+        } else if (compiledUri.startsWith(TMP_SCHEME)) {
+            return openExistingFile(new File(PixateFreestyle.getAppContext().getCacheDir(),
+                    compiledUri.substring(TMP_SCHEME.length())));
+        } else if (compiledUri.indexOf(':') < 0) {
+            // implicit
+            InputStream stream = openDocumentScheme(DOCUMENTS_SCHEME + compiledUri, true);
+            if (stream == null) {
+                stream = openCompiledAsset(compiledUri);
+            }
+            return stream;
+        }
+        // remote SVGs are never compiled
+        return null;
+    }
+
+    private static InputStream openExistingFile(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static InputStream openCompiledAsset(String assetName) {
+        try {
+            return PixateFreestyle.getAppContext().getAssets().open(assetName);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     private static InputStream openFileScheme(String urlString) {
         try {
             URI uri = URI.create(urlString);
@@ -110,23 +230,13 @@ public class UrlStreamOpener {
         // or an asset.
 
         InputStream stream = null;
-        Context context = PixateFreestyle.getAppContext();
-        Resources resources = context.getResources();
-
         String resourceName = urlString.substring(BUNDLE_SCHEME.length());
-        String base = resourceName;
-
-        int lastDot = resourceName.lastIndexOf(".");
-
-        if (lastDot >= 0) {
-            base = resourceName.substring(0, lastDot);
-        }
-
-        int resId = findResourceId(resources, context.getPackageName(), base);
+        BundleLocation location = resolveBundleLocation(resourceName);
+        Resources resources = PixateFreestyle.getAppContext().getResources();
 
-        if (resId != 0) {
+        if (location.resourceId != 0) {
             try {
-                stream = resources.openRawResource(resId);
+                stream = resources.openRawResource(location.resourceId);
             } catch (Resources.NotFoundException e) {
                 // Don't suppress this error since it's remarkable
                 // that a resource cannot be opened even when we know it
@@ -135,13 +245,15 @@ public class UrlStreamOpener {
                 stream = null;
             }
 
-        } else {
+        } else if (!location.missing) {
             // Was not a resource, maybe an asset.
             AssetManager assets = resources.getAssets();
 
             try {
                 stream = assets.open(resourceName);
             } catch (IOException e) {
+                // The assets don't change at runtime, so we remember the miss
+                location.missing = true;
                 if (!suppressErrorLog) {
                     PXLog.e(TAG, e, "Unable to open asset/resource " + resourceName);
                 }
@@ -152,6 +264,60 @@ public class UrlStreamOpener {
         return stream;
     }
 
+    /**
+     * Resolves the locations of the given urls that point into the app bundle
+     * (<code>bundle://</code> or scheme-less urls), so that opening them later
+     * takes a single lookup. Other urls are ignored.
+     * 
+     * @param uris
+     */
+    public static void resolveBundleLocations(Collection<Uri> uris) {
+        if (PixateFreestyle.getAppContext() == null) {
+            return;
+        }
+        for (Uri uri : uris) {
+            String uriString = uri.toString();
+            if (uriString.startsWith(BUNDLE_SCHEME)) {
+                resolveBundleLocation(uriString.substring(BUNDLE_SCHEME.length()));
+            } else if (uri.getScheme() == null) {
+                resolveBundleLocation(uriString);
+            }
+        }
+    }
+
+    /**
+     * Clears the resolved <code>bundle://</code> locations.
+     */
+    public static void clearBundleLocations() {
+        BUNDLE_LOCATIONS.clear();
+    }
+
+    /**
+     * Returns the location of a <code>bundle://</code> resource name, resolving
+     * and caching it on the first call.
+     * 
+     * @param resourceName The name, without the scheme
+     * @return A {@link BundleLocation}
+     */
+    private static BundleLocation resolveBundleLocation(String resourceName) {
+        BundleLocation location = BUNDLE_LOCATIONS.get(resourceName);
+        if (location == null) {
+            Context context = PixateFreestyle.getAppContext();
+            String base = resourceName;
+            int lastDot = resourceName.lastIndexOf(".");
+            if (lastDot >= 0) {
+                base = resourceName.substring(0, lastDot);
+            }
+            location = new BundleLocation(findResourceId(context.getResources(),
+                    context.getPackageName(), base));
+            BundleLocation existing = BUNDLE_LOCATIONS.putIfAbsent(resourceName, location);
+            if (existing != null) {
+                location = existing;
+            }
+        }
+        return location;
+    }
+
     private static InputStream openTempScheme(String urlString) {
         Context context = PixateFreestyle.getAppContext();
         String fileName = urlString.substring(TMP_SCHEME.length());
@@ -167,8 +333,8 @@ public class UrlStreamOpener {
     }
 
     private static InputStream openDataScheme(String urlString) {
-        String cleanString = WHITESPACE.matcher(urlString).replaceAll("");
-        return openDataUriStream(cleanString);
+        byte[] data = decodeDataUri(urlString);
+        return (data != null) ? new ByteArrayInputStream(data) : null;
     }
 
     private static InputStream openImplicit(String urlString) {
@@ -222,32 +388,44 @@ public class UrlStreamOpener {
     }
 
     /**
+     * Decodes the content of a <code>data:</code> uri into a byte array. Base64
+     * content is decoded straight from the uri characters (the decoder skips
+     * any whitespace), without going through intermediate strings or streams.
+     * 
+     * @param uri A <code>data:</code> uri
+     * @return The decoded bytes, or <code>null</code> when the uri is
+     *         malformed.
      * @see http
      *      ://svn.apache.org/viewvc/xmlgraphics/commons/trunk/src/java/org/
      *      apache /xmlgraphics/util/uri/DataURIResolver.java
      */
-    private static InputStream openDataUriStream(String uri) {
+    public static byte[] decodeDataUri(String uri) {
         int commaPos = uri.indexOf(',');
         if (commaPos < 0) {
             PXLog.w(TAG, "Data uri is malformed: " + uri);
             return null;
         }
 
-        String header = uri.substring(0, commaPos);
-        String data = uri.substring(commaPos + 1);
+        String header = WHITESPACE.matcher(uri.substring(0, commaPos)).replaceAll("");
         if (header.endsWith(";base64")) {
-            byte[] bytes = data.getBytes();
-            ByteArrayInputStream encodedStream = new ByteArrayInputStream(bytes);
-            return new Base64InputStream(encodedStream, Base64.DEFAULT);
+            // ISO-8859-1 maps every char to a single byte, so the data offset
+            // is the same in the byte array.
+            byte[] bytes = uri.getBytes(ISO_8859_1);
+            try {
+                return Base64.decode(bytes, commaPos + 1, bytes.length - commaPos - 1,
+                        Base64.DEFAULT);
+            } catch (IllegalArgumentException e) {
+                PXLog.e(TAG, e, "Unable to decode data uri contents: " + uri);
+            }
         } else {
+            String data = WHITESPACE.matcher(uri.substring(commaPos + 1)).replaceAll("");
             String encoding = "UTF-8";
             final int charsetpos = header.indexOf(";charset=");
             if (charsetpos > 0) {
                 encoding = header.substring(charsetpos + 9);
             }
             try {
-                return new ByteArrayInputStream(URLDecoder.decode(data, encoding)
-                        .getBytes(encoding));
+                return URLDecoder.decode(data, encoding).getBytes(encoding);
             } catch (Exception e) {
                 PXLog.e(TAG, e, "Unable to decode data uri contents: " + uri);
             }
@@ -26,6 +26,7 @@ import android.view.ViewGroup.LayoutParams;
 
 import com.pixate.freestyle.PXHierarchyListener;
 import com.pixate.freestyle.styling.PXStyleUtils;
+import com.pixate.freestyle.styling.PXSymbolTable;
 
 public class ViewUtil {
 
@@ -37,6 +38,9 @@ public class ViewUtil {
     public static final int TAG_ELEMENTS_COUNT = TAG_ID + 5;
     public static final int TAG_ELEMENT_FUTURE_PARENT = TAG_ID + 6;
     public static final int TAG_TAGGED = TAG_ID + 7;
+    public static final int TAG_PENDING_RENDER = TAG_ID + 8;
+    public static final int TAG_ID_SYMBOL = TAG_ID + 9;
+    public static final int TAG_CLASS_SYMBOLS = TAG_ID + 10;
 
     public static void initView(View view, AttributeSet attrs) {
 
@@ -140,6 +144,8 @@ public class ViewUtil {
     public static void setStyleId(View view, String cssId, boolean restyleNow) {
         markTagged(view);
         view.setTag(TAG_ID, cssId);
+        int symbol = PXSymbolTable.lookup(cssId);
+        view.setTag(TAG_ID_SYMBOL, (symbol != PXSymbolTable.NONE) ? symbol : null);
         if (restyleNow) {
             style(view);
         }
@@ -152,6 +158,8 @@ public class ViewUtil {
     public static void setStyleClass(View view, String cssClass, boolean restyleNow) {
         markTagged(view);
         view.setTag(TAG_CLASS, cssClass);
+        int[] symbols = PXSymbolTable.lookupAll(cssClass);
+        view.setTag(TAG_CLASS_SYMBOLS, isResolved(symbols) ? symbols : null);
         if (restyleNow) {
             style(view);
         }
@@ -189,6 +197,40 @@ public class ViewUtil {
         return result;
     }
 
+    /**
+     * Returns the symbol of the view's style id. The symbol is kept when the
+     * view is tagged, unless no stylesheet interned the id yet; then it's
+     * looked up again, so a stylesheet loaded later still matches.
+     * 
+     * @param view
+     * @return A {@link PXSymbolTable} symbol, or {@link PXSymbolTable#NONE}
+     */
+    public static int getStyleIdSymbol(View view) {
+        Integer result = (Integer) view.getTag(TAG_ID_SYMBOL);
+        return (result != null) ? result : PXSymbolTable.lookup(getStyleId(view));
+    }
+
+    /**
+     * Returns the symbols of the view's style classes. Like the style id
+     * symbol, they're kept once all of the classes are interned.
+     * 
+     * @param view
+     * @return The {@link PXSymbolTable} symbols
+     */
+    public static int[] getStyleClassSymbols(View view) {
+        int[] result = (int[]) view.getTag(TAG_CLASS_SYMBOLS);
+        return (result != null) ? result : PXSymbolTable.lookupAll(getStyleClass(view));
+    }
+
+    private static boolean isResolved(int[] symbols) {
+        for (int symbol : symbols) {
+            if (symbol == PXSymbolTable.NONE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static String getElementName(View view) {
         String result = null;
 
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.cg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import android.graphics.Bitmap;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+
+import com.pixate.freestyle.PixateFreestyle;
+import com.pixate.freestyle.cg.parsing.PXCompiledSVGLoader;
+import com.pixate.freestyle.cg.parsing.PXSVGCompiler;
+import com.pixate.freestyle.cg.parsing.PXSVGLoader;
+import com.pixate.freestyle.cg.shapes.PXRenderable;
+import com.pixate.freestyle.cg.shapes.PXShape;
+import com.pixate.freestyle.cg.shapes.PXShapeDocument;
+import com.pixate.freestyle.cg.shapes.PXShapeGroup;
+
+/**
+ * Compiles SVG files, loads them back and compares the result with the shapes
+ * (and the rendering) of the XML source.
+ */
+public class PXCompiledSVGTests extends ImageBasedTests {
+
+    private static final String SVG_BASE_PATH = "SVG/Vector/";
+
+    @Override
+    protected void setUp() throws Exception {
+        PixateFreestyle.init(getContext());
+        super.setUp();
+    }
+
+    protected void assertRoundTrip(String name) throws Exception {
+        String path = SVG_BASE_PATH + name + ".svg";
+        PXShapeDocument source = PXSVGLoader.loadFromStream(getContext().getAssets().open(path));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PXSVGCompiler.compile(getContext().getAssets().open(path), out);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertTrue("Expected a compiled header", PXCompiledSVGLoader.isCompiled(in));
+        PXShapeDocument compiled = PXCompiledSVGLoader.loadFromStream(in);
+
+        assertEquals("Unexpected shape names", source.getShapeNames(),
+                compiled.getShapeNames());
+        assertShapes(name, source.getShape(), compiled.getShape());
+        assertImages(name, render(source), render(compiled));
+    }
+
+    private static void assertShapes(String name, PXRenderable expected, PXRenderable actual) {
+        assertNotNull(name, actual);
+        assertEquals(name, expected.getClass(), actual.getClass());
+        if (expected instanceof PXShapeGroup) {
+            PXShapeGroup expectedGroup = (PXShapeGroup) expected;
+            PXShapeGroup actualGroup = (PXShapeGroup) actual;
+            assertRect(name, expectedGroup.getViewport(), actualGroup.getViewport());
+            assertEquals(name, expectedGroup.getShapeCount(), actualGroup.getShapeCount());
+            for (int i = 0; i < expectedGroup.getShapeCount(); i++) {
+                assertShapes(name + "/" + i, expectedGroup.getShapeAtIndex(i),
+                        actualGroup.getShapeAtIndex(i));
+            }
+        } else if (expected instanceof PXShape) {
+            Path expectedPath = ((PXShape) expected).getPath();
+            Path actualPath = ((PXShape) actual).getPath();
+            if (expectedPath == null) {
+                assertNull(name, actualPath);
+            } else {
+                RectF expectedBounds = new RectF();
+                RectF actualBounds = new RectF();
+                expectedPath.computeBounds(expectedBounds, false);
+                actualPath.computeBounds(actualBounds, false);
+                assertRect(name, expectedBounds, actualBounds);
+            }
+        }
+    }
+
+    private static void assertRect(String name, RectF expected, RectF actual) {
+        if (expected == null) {
+            assertNull(name, actual);
+            return;
+        }
+        assertNotNull(name, actual);
+        assertEquals(name, expected.left, actual.left);
+        assertEquals(name, expected.top, actual.top);
+        assertEquals(name, expected.right, actual.right);
+        assertEquals(name, expected.bottom, actual.bottom);
+    }
+
+    private static Bitmap render(PXShapeDocument document) {
+        PXShapeGroup root = (PXShapeGroup) document.getShape();
+        RectF bounds = root.getViewport();
+        if (bounds == null || bounds.isEmpty()) {
+            bounds = new RectF(0, 0, 100, 100);
+        }
+        document.setBounds(bounds);
+        return ((BitmapDrawable) root.renderToImage(bounds, false)).getBitmap();
+    }
+
+    // Shapes
+
+    public void testCircle() throws Exception {
+        assertRoundTrip("Shapes/circle");
+    }
+
+    public void testEllipse() throws Exception {
+        assertRoundTrip("Shapes/ellipse");
+    }
+
+    public void testLine() throws Exception {
+        assertRoundTrip("Shapes/line");
+    }
+
+    public void testRectangle() throws Exception {
+        assertRoundTrip("Shapes/rect");
+    }
+
+    // Paths
+
+    public void testArcCommand() throws Exception {
+        assertRoundTrip("Paths/arcCommand");
+    }
+
+    public void testCubicBezierCommand() throws Exception {
+        assertRoundTrip("Paths/cubicBezierCommand");
+    }
+
+    public void testRelativeSmoothQuadraticBezierCommand() throws Exception {
+        assertRoundTrip("Paths/relativeSmoothQuadraticBezierCommand");
+    }
+
+    // Paints and strokes
+
+    public void testLinearGradient() throws Exception {
+        assertRoundTrip("Gradients/linear-gradient");
+    }
+
+    public void testRadialGradient() throws Exception {
+        assertRoundTrip("Gradients/radial-gradient");
+    }
+
+    public void testStrokeTypes() throws Exception {
+        assertRoundTrip("Strokes/stroke-types");
+    }
+}
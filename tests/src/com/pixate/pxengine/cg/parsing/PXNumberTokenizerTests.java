@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.cg.parsing;
+
+import android.test.AndroidTestCase;
+
+import com.pixate.freestyle.cg.parsing.PXNumberTokenizer;
+
+public class PXNumberTokenizerTests extends AndroidTestCase {
+    private static final float DELTA = 1e-6f;
+
+    private PXNumberTokenizer tokenizer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        tokenizer = new PXNumberTokenizer();
+    }
+
+    public void testReadInteger() {
+        assertEquals(42f, tokenizer.readNumber("42"), DELTA);
+        assertEquals(0f, tokenizer.readNumber("0"), DELTA);
+        assertEquals(7f, tokenizer.readNumber("007"), DELTA);
+    }
+
+    public void testReadSignsAndFractions() {
+        assertEquals(-0.5f, tokenizer.readNumber("-0.5"), DELTA);
+        assertEquals(0.25f, tokenizer.readNumber("+.25"), DELTA);
+        assertEquals(0.5f, tokenizer.readNumber(".5"), DELTA);
+        assertEquals(3f, tokenizer.readNumber("3."), DELTA);
+    }
+
+    public void testReadExponent() {
+        assertEquals(1000f, tokenizer.readNumber("1e3"), DELTA);
+        assertEquals(100f, tokenizer.readNumber("1E+2"), DELTA);
+        assertEquals(0.025f, tokenizer.readNumber("2.5e-2"), DELTA);
+        assertEquals(-1.5e-5f, tokenizer.readNumber("-1.5e-5"), DELTA);
+    }
+
+    public void testReadLongMantissa() {
+        float expected = Float.parseFloat("1234567890123");
+        assertEquals(expected, tokenizer.readNumber("1234567890123"), expected * DELTA);
+        assertEquals(0.123456789f, tokenizer.readNumber("0.123456789123"), DELTA);
+    }
+
+    public void testReadPixels() {
+        assertEquals(12f, tokenizer.readNumber("12px"), DELTA);
+        assertEquals(-1.5f, tokenizer.readNumber("-1.5px"), DELTA);
+    }
+
+    public void testReadPercentage() {
+        assertEquals(0.5f, tokenizer.readNumber("50%"), DELTA);
+        assertEquals(1f, tokenizer.readNumber("100%"), DELTA);
+        assertEquals(0.125f, tokenizer.readNumber("12.5%"), DELTA);
+    }
+
+    public void testEmIsNotAnExponent() {
+        tokenizer.reset("1em");
+        assertEquals(1f, tokenizer.nextNumber(), DELTA);
+        // the 'e' is left for the unit
+        assertEquals(1, tokenizer.position());
+
+        // other units are rejected, the same way Float.parseFloat rejects them
+        try {
+            tokenizer.readNumber("1em");
+            fail("Expected a NumberFormatException");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    public void testFallsBackToParseFloat() {
+        assertEquals(Float.POSITIVE_INFINITY, tokenizer.readNumber("Infinity"));
+        try {
+            tokenizer.readNumber("abc");
+            fail("Expected a NumberFormatException");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    public void testNextNumberWithoutNumber() {
+        tokenizer.reset("x1");
+        assertFalse(tokenizer.hasNextNumber());
+        assertTrue(Float.isNaN(tokenizer.nextNumber()));
+        assertEquals(0, tokenizer.position());
+
+        tokenizer.reset("-.");
+        assertFalse(tokenizer.hasNextNumber());
+        assertTrue(Float.isNaN(tokenizer.nextNumber()));
+    }
+
+    public void testReadNumberArray() {
+        assertArray(new float[] { 1, 2, 3 }, tokenizer.readNumberArray("1,2 3"));
+        assertArray(new float[] { 1, 2 }, tokenizer.readNumberArray(" , 1 ,, 2 "));
+        assertArray(new float[] { 0.5f, -2, 4.5f },
+                tokenizer.readNumberArray("0.5\t-2\n4.5"));
+    }
+
+    public void testReadNumberArrayWithoutSeparators() {
+        // a sign or a second decimal point starts a new number
+        assertArray(new float[] { 10, -5 }, tokenizer.readNumberArray("10-5"));
+        assertArray(new float[] { 1.5f, 0.5f }, tokenizer.readNumberArray("1.5.5"));
+    }
+
+    public void testReadNumberArrayWithExponents() {
+        assertArray(new float[] { 100, 3, 0.01f }, tokenizer.readNumberArray("1e2,3 1e-2"));
+    }
+
+    public void testReadNumberArrayStopsAtNonNumber() {
+        assertArray(new float[] { 1, 2 }, tokenizer.readNumberArray("1 2 x 3"));
+        assertArray(new float[0], tokenizer.readNumberArray(""));
+        assertArray(new float[0], tokenizer.readNumberArray(null));
+    }
+
+    public void testTokenizerIsReusable() {
+        assertArray(new float[] { 1, 2 }, tokenizer.readNumberArray("1 2"));
+        assertEquals(3f, tokenizer.readNumber("3"), DELTA);
+        assertArray(new float[] { 4 }, tokenizer.readNumberArray("4"));
+    }
+
+    public void testParseFloatRange() {
+        char[] chars = "a12.5b-3".toCharArray();
+        assertEquals(12.5f, PXNumberTokenizer.parseFloat(chars, 1, 5), DELTA);
+        assertEquals(-3f, PXNumberTokenizer.parseFloat(chars, 6, 8), DELTA);
+        // only plain decimals
+        assertTrue(Float.isNaN(PXNumberTokenizer.parseFloat("1e2".toCharArray(), 0, 3)));
+        assertTrue(Float.isNaN(PXNumberTokenizer.parseFloat("1.2.3".toCharArray(), 0, 5)));
+        assertTrue(Float.isNaN(PXNumberTokenizer.parseFloat("-".toCharArray(), 0, 1)));
+        assertTrue(Float.isNaN(PXNumberTokenizer.parseFloat(chars, 0, 0)));
+    }
+
+    private static void assertArray(float[] expected, float[] actual) {
+        assertEquals("Unexpected array length", expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Unexpected value at " + i, expected[i], actual[i], DELTA);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.cg.parsing;
+
+import android.graphics.Path;
+import android.graphics.PathMeasure;
+import android.graphics.RectF;
+import android.test.AndroidTestCase;
+
+import com.pixate.freestyle.cg.parsing.PXPathDataCache;
+import com.pixate.freestyle.cg.shapes.PXPath;
+
+/**
+ * Checks that the paths created by {@link PXPathDataCache}, both when parsing
+ * the data and when replaying the cached segments, match the ones parsed by
+ * {@link PXPath#createPathFromPathData(String)}.
+ */
+public class PXPathDataCacheTests extends AndroidTestCase {
+    private static final int SAMPLES = 16;
+    private static final float TOLERANCE = 0.01f;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        PXPathDataCache.evictAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PXPathDataCache.evictAll();
+        super.tearDown();
+    }
+
+    public void testLines() {
+        assertCachedPath("M10,10 L100,100 L190,10");
+        assertCachedPath("M210,10 l90,90 90,-90");
+    }
+
+    public void testHorizontalAndVerticalLines() {
+        assertCachedPath("M10,10 H100 V110 h-90 v-10");
+    }
+
+    public void testMultipleSubpaths() {
+        assertCachedPath("M10,10 L100,50 m-90,-20 L100,70");
+        assertCachedPath("M50,50 l0,-45 20,0 0,20 -20,0z l45,0 0,20 -20,0 0,-20z");
+    }
+
+    public void testCubicBeziers() {
+        assertCachedPath("M10,10 C20,50 40,10 50,50 C60,10 80,50 90,10");
+        assertCachedPath("M10,60 c10,40 30,0 40,40 10,-40 30,0 40,-40");
+        assertCachedPath("M10,60 C20,100 40,60 50,100 S80,100 90,60 s20,-40 30,0");
+    }
+
+    public void testQuadraticBeziers() {
+        assertCachedPath("M10,10 Q110,110 210,10 Q310,110 410,10");
+        assertCachedPath("M10,110 q100,100 200,0 t200,0 T610,110");
+    }
+
+    public void testArcs() {
+        assertCachedPath("M60,10 A50,50 0 1 1 60,110 A50,50 0 1 0 60,210");
+        assertCachedPath("M120,10 a50,50 0 1 1 0,100 50,50 0 1 0 0,100");
+    }
+
+    public void testClosedPath() {
+        assertCachedPath("M10,10 c0,100 300,0 300,100Z");
+    }
+
+    /**
+     * Creates the path through the cache twice, once parsing the data and
+     * once replaying the cached segments, and compares both with a freshly
+     * parsed path.
+     */
+    private static void assertCachedPath(String data) {
+        Path expected = PXPath.createPathFromPathData(data).getPath();
+
+        PXPath parsed = PXPathDataCache.createPath(data);
+        PXPath replayed = PXPathDataCache.createPath(data);
+        assertNotSame(parsed, replayed);
+        assertPath(data + " (parsed)", expected, parsed.getPath());
+        assertPath(data + " (replayed)", expected, replayed.getPath());
+    }
+
+    /**
+     * Compares the bounds of two paths, and the length, the closed state and
+     * points along every contour.
+     */
+    private static void assertPath(String message, Path expected, Path actual) {
+        assertNotNull(message, actual);
+
+        RectF expectedBounds = new RectF();
+        RectF actualBounds = new RectF();
+        expected.computeBounds(expectedBounds, true);
+        actual.computeBounds(actualBounds, true);
+        assertEquals(message, expectedBounds.left, actualBounds.left, TOLERANCE);
+        assertEquals(message, expectedBounds.top, actualBounds.top, TOLERANCE);
+        assertEquals(message, expectedBounds.right, actualBounds.right, TOLERANCE);
+        assertEquals(message, expectedBounds.bottom, actualBounds.bottom, TOLERANCE);
+
+        PathMeasure expectedMeasure = new PathMeasure(expected, false);
+        PathMeasure actualMeasure = new PathMeasure(actual, false);
+        float[] expectedPoint = new float[2];
+        float[] actualPoint = new float[2];
+        int contour = 0;
+        do {
+            String contourMessage = message + ", contour " + contour;
+            float length = expectedMeasure.getLength();
+            assertEquals(contourMessage, length, actualMeasure.getLength(), TOLERANCE);
+            assertEquals(contourMessage, expectedMeasure.isClosed(), actualMeasure.isClosed());
+            for (int i = 0; i <= SAMPLES; i++) {
+                float distance = length * i / SAMPLES;
+                expectedMeasure.getPosTan(distance, expectedPoint, null);
+                actualMeasure.getPosTan(distance, actualPoint, null);
+                assertEquals(contourMessage, expectedPoint[0], actualPoint[0], TOLERANCE);
+                assertEquals(contourMessage, expectedPoint[1], actualPoint[1], TOLERANCE);
+            }
+            contour++;
+        } while (nextContour(message, expectedMeasure, actualMeasure));
+    }
+
+    private static boolean nextContour(String message, PathMeasure expected,
+            PathMeasure actual) {
+        boolean hasNext = expected.nextContour();
+        assertEquals(message + ", contour count", hasNext, actual.nextContour());
+        return hasNext;
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.cg.parsing;
+
+import android.graphics.Matrix;
+import android.test.AndroidTestCase;
+
+import com.pixate.freestyle.cg.parsing.PXTransformCache;
+import com.pixate.freestyle.cg.parsing.PXTransformParser;
+
+/**
+ * Checks that the matrices returned by {@link PXTransformCache}, both when
+ * parsing the transform and when copying the cached values, match the ones
+ * parsed by {@link PXTransformParser}.
+ */
+public class PXTransformCacheTests extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        PXTransformCache.evictAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PXTransformCache.evictAll();
+        super.tearDown();
+    }
+
+    public void testTranslate() {
+        assertCachedTransform("translate(10, 20)");
+        assertCachedTransform("translate(-5)");
+    }
+
+    public void testScale() {
+        assertCachedTransform("scale(2)");
+        assertCachedTransform("scale(0.5, 3)");
+    }
+
+    public void testRotate() {
+        assertCachedTransform("rotate(45)");
+        assertCachedTransform("rotate(30, 10, 20)");
+    }
+
+    public void testSkew() {
+        assertCachedTransform("skewX(15)");
+        assertCachedTransform("skewY(-20)");
+    }
+
+    public void testMatrix() {
+        assertCachedTransform("matrix(1, 0.5, -0.5, 1, 10, 20)");
+    }
+
+    public void testTransformList() {
+        assertCachedTransform("translate(10, 20) rotate(45) scale(2, 0.5)");
+    }
+
+    public void testReturnedMatrixIsACopy() {
+        String source = "translate(10, 20)";
+        PXTransformCache.getTransform(source).postScale(2, 2);
+        Matrix cached = PXTransformCache.getTransform(source);
+        cached.postRotate(90);
+
+        // modifying a returned matrix doesn't change the cached transform
+        assertValues(source, new PXTransformParser().parse(source),
+                PXTransformCache.getTransform(source));
+    }
+
+    /**
+     * Gets the transform through the cache twice, once parsing it and once
+     * copying the cached values, and compares both with a freshly parsed
+     * matrix.
+     */
+    private static void assertCachedTransform(String source) {
+        Matrix expected = new PXTransformParser().parse(source);
+
+        Matrix parsed = PXTransformCache.getTransform(source);
+        Matrix cached = PXTransformCache.getTransform(source);
+        assertNotSame(parsed, cached);
+        assertValues(source + " (parsed)", expected, parsed);
+        assertValues(source + " (cached)", expected, cached);
+    }
+
+    private static void assertValues(String message, Matrix expected, Matrix actual) {
+        float[] expectedValues = new float[9];
+        float[] actualValues = new float[9];
+        expected.getValues(expectedValues);
+        actual.getValues(actualValues);
+        for (int i = 0; i < expectedValues.length; i++) {
+            assertEquals(message + ", value " + i, expectedValues[i], actualValues[i]);
+        }
+    }
+}
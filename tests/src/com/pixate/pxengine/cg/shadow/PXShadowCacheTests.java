@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.cg.shadow;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.test.AndroidTestCase;
+
+import com.pixate.freestyle.cg.shadow.PXShadow;
+import com.pixate.freestyle.cg.shadow.PXShadowCache;
+import com.pixate.freestyle.cg.shadow.PXShadowCache.PXShadowMask;
+import com.pixate.freestyle.cg.shapes.PXBoxModel;
+import com.pixate.freestyle.cg.shapes.PXGeometrySignature;
+import com.pixate.freestyle.cg.shapes.PXRectangle;
+
+public class PXShadowCacheTests extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        PXShadowCache.evictAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PXShadow.setEnabled(false);
+        PXShadowCache.evictAll();
+        super.tearDown();
+    }
+
+    public void testMaskIsShared() {
+        PXRectangle first = new PXRectangle(new RectF(0, 0, 40, 20));
+        PXRectangle second = new PXRectangle(new RectF(100, 50, 140, 70));
+        assertEquals(first.getGeometrySignature(), second.getGeometrySignature());
+
+        PXShadowMask mask = getOutsetMask(first, Color.BLACK);
+        assertNotNull(mask);
+        assertSame(mask, getOutsetMask(second, Color.BLACK));
+        assertTrue(PXShadowCache.size() > 0);
+    }
+
+    public void testColorIsPartOfTheKey() {
+        PXRectangle rectangle = new PXRectangle(new RectF(0, 0, 40, 20));
+        PXShadowMask black = getOutsetMask(rectangle, Color.BLACK);
+        PXShadowMask red = getOutsetMask(rectangle, Color.RED);
+        assertNotSame(black, red);
+        assertSame(red, getOutsetMask(rectangle, Color.RED));
+
+        Path path = rectangle.getPath();
+        RectF bounds = new RectF();
+        path.computeBounds(bounds, true);
+        PXGeometrySignature signature = rectangle.getGeometrySignature();
+        assertNotSame(PXShadowCache.getInsetMask(path, bounds, signature, 4, 0, 2, 2,
+                Color.BLACK), PXShadowCache.getInsetMask(path, bounds, signature, 4, 0, 2, 2,
+                Color.RED));
+    }
+
+    public void testBoxModelSignature() {
+        PXBoxModel first = new PXBoxModel(new RectF(0, 0, 40, 20));
+        PXBoxModel second = new PXBoxModel(new RectF(100, 50, 140, 70));
+        PXBoxModel larger = new PXBoxModel(new RectF(0, 0, 40, 30));
+        assertNotNull(first.getGeometrySignature());
+        assertEquals(first.getGeometrySignature(), second.getGeometrySignature());
+        assertFalse(first.getGeometrySignature().equals(larger.getGeometrySignature()));
+        assertSame(getOutsetMask(first, Color.BLACK), getOutsetMask(second, Color.BLACK));
+
+        // a box with rounded corners has no path, and no signature
+        PXBoxModel rounded = new PXBoxModel(new RectF(0, 0, 40, 20));
+        rounded.setCornerRadius(4);
+        assertNull(rounded.getGeometrySignature());
+    }
+
+    public void testDisabledByDefault() {
+        assertFalse(PXShadow.isEnabled());
+        assertEquals(0, Color.alpha(drawShadow()));
+
+        PXShadow.setEnabled(true);
+        assertTrue(Color.alpha(drawShadow()) > 0);
+    }
+
+    /**
+     * Draws an outer shadow of a rectangle, and returns the color of a pixel
+     * that is only covered by the shadow.
+     */
+    private static int drawShadow() {
+        PXShadow shadow = new PXShadow();
+        shadow.setHorizontalOffset(20);
+        shadow.setColor(Color.BLACK);
+        PXRectangle rectangle = new PXRectangle(new RectF(0, 0, 20, 20));
+
+        Bitmap bitmap = Bitmap.createBitmap(50, 30, Bitmap.Config.ARGB_8888);
+        shadow.applyOutsetToPath(rectangle.getPath(), rectangle.getGeometrySignature(),
+                new Canvas(bitmap));
+        return bitmap.getPixel(30, 10);
+    }
+
+    private static PXShadowMask getOutsetMask(PXRectangle rectangle, int color) {
+        return getOutsetMask(rectangle.getPath(), rectangle.getGeometrySignature(), color);
+    }
+
+    private static PXShadowMask getOutsetMask(PXBoxModel box, int color) {
+        return getOutsetMask(box.getPath(), box.getGeometrySignature(), color);
+    }
+
+    private static PXShadowMask getOutsetMask(Path path, PXGeometrySignature signature,
+            int color) {
+        RectF bounds = new RectF();
+        path.computeBounds(bounds, true);
+        return PXShadowCache.getOutsetMask(path, bounds, signature, 4, 0, color);
+    }
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.styling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.Button;
+
+import com.pixate.freestyle.styling.PXDeclaration;
+import com.pixate.freestyle.styling.PXRuleSet;
+import com.pixate.freestyle.styling.PXStylesheet;
+import com.pixate.freestyle.styling.PXStylesheet.PXStyleSheetOrigin;
+import com.pixate.freestyle.styling.media.PXMediaGroup;
+import com.pixate.freestyle.styling.parsing.PXStylesheetParser;
+import com.pixate.freestyle.styling.selectors.PXClassSelector;
+import com.pixate.freestyle.styling.selectors.PXIdSelector;
+import com.pixate.freestyle.styling.selectors.PXSelector;
+import com.pixate.freestyle.styling.selectors.PXSpecificity.PXSpecificityType;
+import com.pixate.freestyle.styling.selectors.PXTypeSelector;
+import com.pixate.freestyle.util.ViewUtil;
+
+public class PXRuleSetTests extends AndroidTestCase {
+
+    // @formatter:off
+    private static final String SOURCE =
+            "#ok { color: red; }\n" +
+            ".a { color: green; }\n" +
+            "button { color: blue; }\n" +
+            ".a.b { color: white; }\n" +
+            ".b { opacity: 0.5; }\n" +
+            "#ok { opacity: 1; }\n";
+    // @formatter:on
+
+    public void testSpecificityBeatsSourceOrder() {
+        PXRuleSet classRuleSet = createRuleSet(PXStyleSheetOrigin.APPLICATION, 0, "green",
+                new PXClassSelector("a"));
+        PXRuleSet elementRuleSet = createRuleSet(PXStyleSheetOrigin.APPLICATION, 1, "blue",
+                new PXTypeSelector("button"));
+        assertTrue(classRuleSet.getCascadeOrder() > elementRuleSet.getCascadeOrder());
+        assertEquals("green", resolveColor(classRuleSet, elementRuleSet));
+    }
+
+    public void testOriginBeatsSpecificity() {
+        PXRuleSet idRuleSet = createRuleSet(PXStyleSheetOrigin.APPLICATION, 1, "red",
+                new PXIdSelector("ok"));
+        PXRuleSet elementRuleSet = createRuleSet(PXStyleSheetOrigin.VIEW, 0, "blue",
+                new PXTypeSelector("button"));
+        assertTrue(elementRuleSet.getCascadeOrder() > idRuleSet.getCascadeOrder());
+        assertEquals("blue", resolveColor(idRuleSet, elementRuleSet));
+    }
+
+    public void testLaterRuleWinsOnEqualSpecificity() {
+        PXRuleSet first = createRuleSet(PXStyleSheetOrigin.APPLICATION, 0, "green",
+                new PXClassSelector("a"));
+        PXRuleSet second = createRuleSet(PXStyleSheetOrigin.APPLICATION, 1, "white",
+                new PXClassSelector("b"));
+        assertTrue(second.getCascadeOrder() > first.getCascadeOrder());
+        assertEquals("white", resolveColor(second, first));
+    }
+
+    public void testAddCascadeOrdered() {
+        List<PXRuleSet> ruleSets = new ArrayList<PXRuleSet>();
+        PXRuleSet id = createRuleSet(PXStyleSheetOrigin.APPLICATION, 0, "red",
+                new PXIdSelector("ok"));
+        PXRuleSet first = createRuleSet(PXStyleSheetOrigin.APPLICATION, 1, "red",
+                new PXClassSelector("a"));
+        PXRuleSet second = createRuleSet(PXStyleSheetOrigin.APPLICATION, 2, "red",
+                new PXClassSelector("a"));
+        PXRuleSet element = createRuleSet(PXStyleSheetOrigin.APPLICATION, 3, "red",
+                new PXTypeSelector("button"));
+        for (PXRuleSet ruleSet : Arrays.asList(second, id, element, first)) {
+            PXRuleSet.addCascadeOrdered(ruleSets, ruleSet);
+        }
+        assertEquals(Arrays.asList(element, first, second, id), ruleSets);
+    }
+
+    public void testMergeCascadeOrdered() {
+        PXRuleSet id = createRuleSet(PXStyleSheetOrigin.APPLICATION, 0, "red",
+                new PXIdSelector("ok"));
+        PXRuleSet shared = createRuleSet(PXStyleSheetOrigin.APPLICATION, 1, "red",
+                new PXClassSelector("a"), new PXClassSelector("b"));
+        PXRuleSet element = createRuleSet(PXStyleSheetOrigin.APPLICATION, 2, "red",
+                new PXTypeSelector("button"));
+        PXRuleSet classB = createRuleSet(PXStyleSheetOrigin.APPLICATION, 3, "red",
+                new PXClassSelector("b"));
+
+        // a rule set in both lists is merged once
+        List<PXRuleSet> merged = PXRuleSet.mergeCascadeOrdered(Arrays.asList(element, shared),
+                Arrays.asList(classB, shared, id));
+        assertEquals(Arrays.asList(element, classB, shared, id), merged);
+        assertEquals(Arrays.asList(id), PXRuleSet.mergeCascadeOrdered(null, Arrays.asList(id)));
+    }
+
+    public void testMergeWithoutSourceOrder() {
+        // rule sets with the same specificity and no source order have the
+        // same cascade order, so their position in each list is arbitrary
+        PXRuleSet first = createRuleSet(PXStyleSheetOrigin.APPLICATION, "red",
+                new PXClassSelector("a"));
+        PXRuleSet second = createRuleSet(PXStyleSheetOrigin.APPLICATION, "green",
+                new PXClassSelector("b"));
+        PXRuleSet third = createRuleSet(PXStyleSheetOrigin.APPLICATION, "blue",
+                new PXClassSelector("c"));
+        assertEquals(first.getCascadeOrder(), second.getCascadeOrder());
+
+        List<PXRuleSet> merged = PXRuleSet.mergeCascadeOrdered(Arrays.asList(first, second),
+                Arrays.asList(first, third, second));
+        assertEquals(Arrays.asList(first, second, third), merged);
+        merged = PXRuleSet.mergeCascadeOrdered(Arrays.asList(second, first),
+                Arrays.asList(first, second));
+        assertEquals(Arrays.asList(second, first), merged);
+    }
+
+    public void testMediaGroupWithoutSourceOrder() {
+        // the 'a' partition gets [first, last], and the 'b' partition
+        // [first, classesBC, last], all with the same cascade order
+        PXMediaGroup group = new PXMediaGroup(null, PXStyleSheetOrigin.APPLICATION);
+        PXRuleSet first = createRuleSet(null, "red", classes("a", "b"));
+        PXRuleSet classesBC = createRuleSet(null, "green", classes("b", "c"));
+        PXRuleSet last = createRuleSet(null, "blue", classes("a", "b"));
+        group.addRuleSet(first);
+        group.addRuleSet(classesBC);
+        group.addRuleSet(last);
+
+        for (String styleClass : Arrays.asList("a b", "b a")) {
+            View view = new Button(getContext());
+            ViewUtil.setStyleClass(view, styleClass, false);
+
+            // every candidate is in the result once, whatever the class order
+            List<PXRuleSet> ruleSets = group.getRuleSets(view);
+            Set<PXRuleSet> unique = Collections
+                    .newSetFromMap(new IdentityHashMap<PXRuleSet, Boolean>());
+            unique.addAll(ruleSets);
+            assertEquals(styleClass, 3, unique.size());
+            assertEquals(styleClass, 3, ruleSets.size());
+        }
+    }
+
+    public void testMergeAcrossPartitions() {
+        PXStylesheet stylesheet = new PXStylesheetParser().parse(SOURCE,
+                PXStyleSheetOrigin.APPLICATION);
+        View view = new Button(getContext());
+        ViewUtil.setStyleClass(view, "a b", false);
+        ViewUtil.setStyleId(view, "ok", false);
+
+        // the id, class and element partitions are merged in cascade order,
+        // and .a.b, which is in two class partitions, is added once
+        List<PXRuleSet> ruleSets = stylesheet.getRuleSets(view, getContext());
+        List<String> declarations = new ArrayList<String>();
+        for (PXRuleSet ruleSet : ruleSets) {
+            declarations.add(ruleSet.getDeclarations().get(0).toString());
+        }
+        assertEquals(Arrays.asList("color: blue;", "color: green;", "opacity: 0.5;",
+                "color: white;", "color: red;", "opacity: 1;"), declarations);
+        for (int i = 1; i < ruleSets.size(); i++) {
+            assertTrue(ruleSets.get(i - 1).getCascadeOrder() < ruleSets.get(i)
+                    .getCascadeOrder());
+        }
+    }
+
+    public void testSourceOrderOverflow() {
+        PXRuleSet classRuleSet = createRuleSet(PXStyleSheetOrigin.APPLICATION, 0, "red",
+                new PXClassSelector("a"));
+        PXRuleSet last = createRuleSet(PXStyleSheetOrigin.APPLICATION, (1 << 23) - 1, "red",
+                new PXTypeSelector("button"));
+        PXRuleSet overflow = createRuleSet(PXStyleSheetOrigin.APPLICATION, 1 << 23, "red",
+                new PXTypeSelector("button"));
+        PXRuleSet maxOverflow = createRuleSet(PXStyleSheetOrigin.APPLICATION,
+                Integer.MAX_VALUE, "red", new PXTypeSelector("button"));
+        PXRuleSet negative = createRuleSet(PXStyleSheetOrigin.APPLICATION, -1, "red",
+                new PXTypeSelector("button"));
+
+        // source orders past 23 bits are clamped, and never carry into the
+        // specificity
+        assertEquals(last.getCascadeOrder(), overflow.getCascadeOrder());
+        assertEquals(last.getCascadeOrder(), maxOverflow.getCascadeOrder());
+        assertTrue(classRuleSet.getCascadeOrder() > overflow.getCascadeOrder());
+        assertEquals(createRuleSet(PXStyleSheetOrigin.APPLICATION, 0, "red",
+                new PXTypeSelector("button")).getCascadeOrder(), negative.getCascadeOrder());
+    }
+
+    private static PXRuleSet createRuleSet(PXStyleSheetOrigin origin, int sourceOrder,
+            String color, PXSelector... selectors) {
+        PXRuleSet result = new PXRuleSet();
+        for (PXSelector selector : selectors) {
+            result.addSelector(selector);
+        }
+        result.setSpecificity(PXSpecificityType.ORIGIN, origin.ordinal());
+        result.setSourceOrder(sourceOrder);
+        result.addDeclaration(new PXDeclaration("color", color));
+        return result;
+    }
+
+    /**
+     * Creates a rule set without a source order. The origin is not set when
+     * it's <code>null</code>.
+     */
+    private static PXRuleSet createRuleSet(PXStyleSheetOrigin origin, String color,
+            PXSelector... selectors) {
+        PXRuleSet result = new PXRuleSet();
+        for (PXSelector selector : selectors) {
+            result.addSelector(selector);
+        }
+        if (origin != null) {
+            result.setSpecificity(PXSpecificityType.ORIGIN, origin.ordinal());
+        }
+        result.addDeclaration(new PXDeclaration("color", color));
+        return result;
+    }
+
+    private static PXTypeSelector classes(String... names) {
+        PXTypeSelector result = new PXTypeSelector();
+        for (String name : names) {
+            result.addAttributeExpression(new PXClassSelector(name));
+        }
+        return result;
+    }
+
+    private static String resolveColor(PXRuleSet... ruleSets) {
+        return PXRuleSet.mergeRuleSets(new ArrayList<PXRuleSet>(Arrays.asList(ruleSets)))
+                .getDeclarationForName("color").getStringValue();
+    }
+}
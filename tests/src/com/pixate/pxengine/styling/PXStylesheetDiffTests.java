@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.styling;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import com.pixate.freestyle.styling.PXStylesheet;
+import com.pixate.freestyle.styling.PXStylesheet.PXStyleSheetOrigin;
+import com.pixate.freestyle.styling.PXStylesheetDiff;
+import com.pixate.freestyle.styling.parsing.PXStylesheetParser;
+import com.pixate.freestyle.util.ViewUtil;
+
+public class PXStylesheetDiffTests extends AndroidTestCase {
+
+    // @formatter:off
+    private static final String SOURCE =
+            "button { color: red; }\n" +
+            ".a { color: green; }\n" +
+            ".b { color: blue; }\n" +
+            "#ok { opacity: 0.5; }\n";
+    // @formatter:on
+
+    public void testIdentical() {
+        PXStylesheetDiff diff = diff(SOURCE, SOURCE);
+        assertTrue(diff.isEmpty());
+        assertFalse(diff.isResetRequired());
+        assertFalse(diff.affects(createView("a b", "ok")));
+    }
+
+    public void testAdded() {
+        PXStylesheetDiff diff = diff(SOURCE, ".c { color: white; }\n" + SOURCE);
+
+        // inserting a rule set moves none of the others
+        assertEquals(1, diff.getChangedRuleSetsCount());
+        assertEquals(set("c"), diff.getStyleClasses());
+        assertFalse(diff.isGlobal());
+        assertFalse(diff.isResetRequired());
+        assertTrue(diff.affects(createView("c", null)));
+        assertFalse(diff.affects(createView("a b", "ok")));
+    }
+
+    public void testRemoved() {
+        PXStylesheetDiff diff = diff(SOURCE, SOURCE.replace("#ok { opacity: 0.5; }\n", ""));
+
+        assertEquals(1, diff.getChangedRuleSetsCount());
+        assertEquals(set("ok"), diff.getStyleIds());
+        assertTrue(diff.isResetRequired());
+        assertTrue(diff.affects(createView(null, "ok")));
+        assertFalse(diff.affects(createView("a", null)));
+    }
+
+    public void testChanged() {
+        PXStylesheetDiff diff = diff(SOURCE, SOURCE.replace("color: green", "color: yellow"));
+
+        assertEquals(1, diff.getChangedRuleSetsCount());
+        assertEquals(set("a"), diff.getStyleClasses());
+        assertFalse(diff.isResetRequired());
+        assertTrue(diff.affects(createView("a", null)));
+        assertFalse(diff.affects(createView("b", null)));
+    }
+
+    public void testChangedWithRemovedDeclaration() {
+        PXStylesheetDiff diff = diff(SOURCE.replace("color: red;", "color: red; opacity: 1;"),
+                SOURCE);
+
+        assertEquals(1, diff.getChangedRuleSetsCount());
+        assertEquals(set("button"), diff.getElementNames());
+        assertTrue(diff.isResetRequired());
+        assertTrue(diff.affects(createView(null, null)));
+        assertFalse(diff.affects(new TextView(getContext())));
+    }
+
+    public void testReordered() {
+        String reordered = SOURCE.replace(".a { color: green; }\n", "").replace("#ok",
+                ".a { color: green; }\n#ok");
+        PXStylesheetDiff diff = diff(SOURCE, reordered);
+
+        // .a now comes after .b, so a styleable with both classes resolves to
+        // a different color
+        assertFalse(diff.isEmpty());
+        assertEquals(1, diff.getChangedRuleSetsCount());
+        assertEquals(set("a"), diff.getStyleClasses());
+        assertFalse(diff.isResetRequired());
+        assertTrue(diff.affects(createView("a b", null)));
+        assertFalse(diff.affects(createView("b", null)));
+    }
+
+    public void testUniversalIsGlobal() {
+        PXStylesheetDiff diff = diff(SOURCE, SOURCE + "* { opacity: 1; }\n");
+
+        assertTrue(diff.isGlobal());
+        assertTrue(diff.affects(new TextView(getContext())));
+    }
+
+    public void testReloadEmptySource() {
+        PXStylesheet previous = PXStylesheet.getStyleSheetFromSource(SOURCE,
+                PXStyleSheetOrigin.APPLICATION, "default.css");
+        PXStylesheetDiff diff = PXStylesheet.reloadStyleSheetFromSource("",
+                PXStyleSheetOrigin.APPLICATION, "default.css");
+
+        // the emptied stylesheet replaces the previous one
+        PXStylesheet current = PXStylesheet.getCurrentApplicationStylesheet();
+        assertNotSame(previous, current);
+        assertNull(current.getRuleSets(getContext()));
+        assertNull(current.getErrors());
+        assertEquals("default.css", current.getFilePath());
+        assertEquals(4, diff.getChangedRuleSetsCount());
+        assertTrue(diff.isResetRequired());
+        assertTrue(diff.affects(createView("a", null)));
+
+        diff = PXStylesheet.reloadStyleSheetFromSource(SOURCE, PXStyleSheetOrigin.APPLICATION,
+                "default.css");
+        assertNotNull(PXStylesheet.getCurrentApplicationStylesheet().getRuleSets(getContext()));
+        assertEquals(4, diff.getChangedRuleSetsCount());
+        assertFalse(diff.isResetRequired());
+    }
+
+    private static PXStylesheetDiff diff(String oldSource, String newSource) {
+        PXStylesheetParser parser = new PXStylesheetParser();
+        return PXStylesheetDiff.create(parser.parse(oldSource, PXStyleSheetOrigin.APPLICATION),
+                parser.parse(newSource, PXStyleSheetOrigin.APPLICATION));
+    }
+
+    private View createView(String styleClass, String styleId) {
+        View view = new Button(getContext());
+        ViewUtil.setStyleClass(view, styleClass, false);
+        ViewUtil.setStyleId(view, styleId, false);
+        return view;
+    }
+
+    private static HashSet<String> set(String... values) {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+}
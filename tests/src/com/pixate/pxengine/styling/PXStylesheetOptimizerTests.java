@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.styling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import com.pixate.freestyle.styling.PXDeclaration;
+import com.pixate.freestyle.styling.PXRuleSet;
+import com.pixate.freestyle.styling.PXStylesheet;
+import com.pixate.freestyle.styling.PXStylesheet.PXStyleSheetOrigin;
+import com.pixate.freestyle.styling.PXStylesheetOptimizer;
+import com.pixate.freestyle.styling.media.PXNamedMediaExpression;
+import com.pixate.freestyle.styling.parsing.PXStylesheetParser;
+import com.pixate.freestyle.util.ViewUtil;
+
+public class PXStylesheetOptimizerTests extends AndroidTestCase {
+
+    // @formatter:off
+    private static final String SOURCE =
+            "button { color: red; background-color: blue; }\n" +
+            ".primary { color: green; }\n" +
+            "button { color: yellow; }\n" +
+            "button { color: black !important; }\n" +
+            "#ok { color: white; }\n" +
+            "[enabled] { opacity: 0.5; }\n" +
+            ".primary { opacity: 1; color: gray; }\n" +
+            "button.primary { color: purple; }\n" +
+            "button.primary { color: orange; border-width: 1px; }\n" +
+            "@media (unknown-feature: 1) { button { color: pink; } }\n" +
+            "@media (device) { .primary { color: cyan; } }\n" +
+            "@media (orientation: landscape) { #ok { opacity: 0.25; } }\n" +
+            "empty {}\n";
+    // @formatter:on
+
+    public void testOptimize() {
+        // the (device) query is static, but only matches on devices
+        Boolean device = new PXNamedMediaExpression("device", null).getStaticValue();
+        assertNotNull(device);
+
+        PXStylesheet stylesheet = parse();
+        PXStylesheetOptimizer optimizer = PXStylesheetOptimizer.optimize(stylesheet);
+
+        // the unknown feature group and the group left empty are removed, and
+        // so is the (device) group on an emulator
+        assertEquals(device ? 2 : 3, optimizer.getRemovedMediaGroupsCount());
+        assertEquals(device ? 1 : 0, optimizer.getCollapsedMediaQueriesCount());
+        assertEquals(device ? 3 : 2, stylesheet.getMediaGroups().size());
+
+        // red and yellow lose to the important black, green and purple are
+        // overridden by later rule sets with the same selectors, and so is
+        // gray on a device
+        assertEquals(device ? 5 : 4, optimizer.getRemovedDeclarationsCount());
+
+        // the green, yellow and purple rule sets are left empty, and "empty"
+        // has no declarations. The two button rule sets left are merged.
+        assertEquals(4, optimizer.getRemovedRuleSetsCount());
+        assertEquals(1, optimizer.getMergedRuleSetsCount());
+    }
+
+    public void testResolution() {
+        View view = createView(new Button(getContext()), "primary", null);
+        for (PXStylesheet stylesheet : Arrays.asList(parse(), optimize(parse()))) {
+            Map<String, String> declarations = resolve(stylesheet, view, getContext());
+            // the important black beats the merged button.primary orange
+            assertEquals("color: black !important;", declarations.get("color"));
+            assertEquals(toString("background-color", "blue"), declarations.get(
+                    "background-color"));
+            assertEquals(toString("border-width", "1px"), declarations.get("border-width"));
+            assertEquals(toString("opacity", "1"), declarations.get("opacity"));
+        }
+    }
+
+    public void testResolutionIsUnchanged() {
+        PXStylesheet original = parse();
+        PXStylesheet optimized = optimize(parse());
+
+        for (View view : createViews()) {
+            assertEquals(resolve(original, view, getContext()),
+                    resolve(optimized, view, getContext()));
+        }
+    }
+
+    private static String toString(String name, String value) {
+        return new PXDeclaration(name, value).toString();
+    }
+
+    private static PXStylesheet parse() {
+        return new PXStylesheetParser().parse(SOURCE, PXStyleSheetOrigin.APPLICATION);
+    }
+
+    private static PXStylesheet optimize(PXStylesheet stylesheet) {
+        PXStylesheetOptimizer.optimize(stylesheet);
+        return stylesheet;
+    }
+
+    private List<View> createViews() {
+        List<View> views = new ArrayList<View>();
+        for (String styleClass : Arrays.asList(null, "primary", "primary other")) {
+            for (String styleId : Arrays.asList(null, "ok")) {
+                views.add(createView(new Button(getContext()), styleClass, styleId));
+                views.add(createView(new TextView(getContext()), styleClass, styleId));
+            }
+        }
+        return views;
+    }
+
+    private static View createView(View view, String styleClass, String styleId) {
+        ViewUtil.setStyleClass(view, styleClass, false);
+        ViewUtil.setStyleId(view, styleId, false);
+        return view;
+    }
+
+    /**
+     * Returns the declarations a view resolves to, by name.
+     */
+    private static Map<String, String> resolve(PXStylesheet stylesheet, View view,
+            Context context) {
+        List<PXRuleSet> ruleSets = new ArrayList<PXRuleSet>();
+        List<PXRuleSet> candidates = stylesheet.getRuleSets(view, context);
+        if (candidates != null) {
+            for (PXRuleSet ruleSet : candidates) {
+                if (ruleSet.matches(view)) {
+                    ruleSets.add(ruleSet);
+                }
+            }
+        }
+        Map<String, String> result = new TreeMap<String, String>();
+        for (PXDeclaration declaration : PXRuleSet.mergeRuleSets(ruleSets).getDeclarations()) {
+            result.put(declaration.getName(), declaration.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.styling;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+
+import com.pixate.freestyle.styling.PXStyleUtils;
+import com.pixate.freestyle.styling.PXStylesheet;
+import com.pixate.freestyle.styling.PXStylesheet.PXStyleSheetOrigin;
+import com.pixate.freestyle.styling.PXSymbolTable;
+import com.pixate.freestyle.styling.parsing.PXStylesheetParser;
+import com.pixate.freestyle.styling.selectors.PXClassSelector;
+import com.pixate.freestyle.util.ViewUtil;
+
+public class PXSymbolTableTests extends AndroidTestCase {
+    private static final String TAG = PXSymbolTableTests.class.getSimpleName();
+    private static final int ITERATIONS = 200000;
+    private static final String STYLE_CLASS = "toolbar primary button large highlighted";
+
+    public void testIntern() {
+        int symbol = PXSymbolTable.intern("button");
+        assertTrue(symbol >= 0);
+        assertEquals(symbol, PXSymbolTable.intern(new String("button")));
+        assertEquals(symbol, PXSymbolTable.lookup("button"));
+        assertEquals("button", PXSymbolTable.getName(symbol));
+        assertEquals(PXSymbolTable.NONE, PXSymbolTable.intern(null));
+        assertEquals(PXSymbolTable.NONE, PXSymbolTable.lookup("never-interned-symbol"));
+        assertNull(PXSymbolTable.getName(PXSymbolTable.NONE));
+    }
+
+    public void testInternAll() {
+        int[] symbols = PXSymbolTable.internAll("  a   b\tc ");
+        assertEquals(3, symbols.length);
+        assertEquals(PXSymbolTable.intern("a"), symbols[0]);
+        assertEquals(PXSymbolTable.intern("c"), symbols[2]);
+        assertTrue(PXSymbolTable.contains(symbols, PXSymbolTable.intern("b")));
+        assertFalse(PXSymbolTable.contains(symbols, PXSymbolTable.intern("d")));
+        assertFalse(PXSymbolTable.contains(symbols, PXSymbolTable.NONE));
+        assertFalse(PXSymbolTable.contains(null, PXSymbolTable.intern("a")));
+        assertEquals(0, PXSymbolTable.internAll(null).length);
+        assertEquals(0, PXSymbolTable.internAll("").length);
+    }
+
+    public void testLookupDoesNotIntern() {
+        int button = PXSymbolTable.intern("button");
+        int size = PXSymbolTable.size();
+        int[] symbols = PXSymbolTable.lookupAll("button lookup-only-1 lookup-only-2");
+        assertEquals(3, symbols.length);
+        assertEquals(button, symbols[0]);
+        assertEquals(PXSymbolTable.NONE, symbols[1]);
+        assertEquals(PXSymbolTable.NONE, symbols[2]);
+        assertFalse(PXSymbolTable.contains(symbols, PXSymbolTable.NONE));
+        assertEquals(PXSymbolTable.NONE, PXSymbolTable.lookup("lookup-only-1"));
+        assertEquals(size, PXSymbolTable.size());
+        assertEquals(0, PXSymbolTable.lookupAll(null).length);
+    }
+
+    public void testTaggingDoesNotIntern() {
+        int size = PXSymbolTable.size();
+        View view = new Button(getContext());
+        for (int i = 0; i < 100; i++) {
+            ViewUtil.setStyleId(view, "tagged-id-" + i, false);
+            ViewUtil.setStyleClass(view, "tagged-class-" + i, false);
+        }
+        assertEquals(size, PXSymbolTable.size());
+        assertEquals(PXSymbolTable.NONE, ViewUtil.getStyleIdSymbol(view));
+
+        // a stylesheet loaded after the view was tagged still matches it
+        PXStylesheet stylesheet = new PXStylesheetParser().parse(
+                "#tagged-id-99 { color: red; } .tagged-class-99 { color: blue; }",
+                PXStyleSheetOrigin.APPLICATION);
+        assertTrue(PXSymbolTable.lookup("tagged-class-99") != PXSymbolTable.NONE);
+        assertEquals(PXSymbolTable.lookup("tagged-id-99"), ViewUtil.getStyleIdSymbol(view));
+        assertTrue(new PXClassSelector("tagged-class-99").matches(view));
+        assertEquals(2, stylesheet.getRuleSetsMatchingStyleable(view).size());
+    }
+
+    // Performance Tests
+
+    /**
+     * Logs the time it takes to match a class against a style class, with
+     * strings (as done before the symbols were interned) and with symbols.
+     * The times are not asserted.
+     */
+    public void testClassMatchingPerformance() {
+        String className = new PXClassSelector("highlighted").getClassName();
+        int classSymbol = PXSymbolTable.intern(className);
+        int[] classSymbols = PXSymbolTable.internAll(STYLE_CLASS);
+        int stringMatches = 0;
+        int symbolMatches = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String c : PXStyleUtils.PATTERN_WHITESPACE_PLUS.split(STYLE_CLASS)) {
+                if (c.equals(className)) {
+                    stringMatches++;
+                    break;
+                }
+            }
+        }
+        long stringTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (PXSymbolTable.contains(classSymbols, classSymbol)) {
+                symbolMatches++;
+            }
+        }
+        long symbolTime = System.nanoTime() - start;
+
+        // both ways match the same
+        assertEquals(stringMatches, symbolMatches);
+        Log.i(TAG, String.format("Class matching x%d: strings %dms, symbols %dms", ITERATIONS,
+                stringTime / 1000000, symbolTime / 1000000));
+    }
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.styling.cache;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.graphics.Paint;
+import android.test.AndroidTestCase;
+
+import com.pixate.freestyle.styling.cache.PXCacheManager;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXCacheUnit;
+import com.pixate.freestyle.styling.cache.PXCacheManager.PXManagedCache;
+import com.pixate.freestyle.util.ObjectPool;
+
+public class PXCacheManagerTests extends AndroidTestCase {
+    private static final String NAME = "test-cache";
+
+    private RecordingCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = new RecordingCache(100, 80);
+        PXCacheManager.register(NAME, PXCacheUnit.BYTES, cache);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PXCacheManager.unregister(NAME);
+        super.tearDown();
+    }
+
+    public void testDump() {
+        assertTrue(PXCacheManager.dump().contains(NAME + ": 80 / 100 bytes"));
+
+        cache.maxSize = -1;
+        assertTrue(PXCacheManager.dump().contains(NAME + ": 80 / unbounded bytes"));
+    }
+
+    public void testDumpIncludesUnloadedCaches() {
+        // the engine's caches are listed even when nothing used them yet
+        String dump = PXCacheManager.dump();
+        String[] names = { "bitmaps", "shadow-masks", "svg-documents", "transforms",
+                "path-data", "background-images", "value-lexemes", "typefaces", "font-files",
+                "style-adapters", "paint-pool", "path-pool" };
+        for (String name : names) {
+            assertTrue("Missing " + name + " in:\n" + dump, dump.contains(name + ": "));
+        }
+    }
+
+    public void testEngineCachesHaveBudgets() {
+        for (String line : PXCacheManager.dump().split("\n")) {
+            if (!line.startsWith(NAME)) {
+                assertFalse("Unbounded cache: " + line, line.contains("unbounded"));
+            }
+        }
+    }
+
+    public void testRegistrationReplacesSameName() {
+        RecordingCache other = new RecordingCache(10, 5);
+        PXCacheManager.register(NAME, PXCacheUnit.ENTRIES, other);
+
+        String dump = PXCacheManager.dump();
+        assertTrue(dump.contains(NAME + ": 5 / 10 entries"));
+        assertFalse(dump.contains(NAME + ": 80"));
+    }
+
+    public void testUnregister() {
+        PXCacheManager.unregister(NAME);
+
+        assertFalse(PXCacheManager.dump().contains(NAME + ": "));
+    }
+
+    public void testTrimInBackground() {
+        PXCacheManager.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertEquals(50, cache.size);
+        assertFalse(cache.evicted);
+    }
+
+    public void testTrimWhenRunningLow() {
+        PXCacheManager.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        assertEquals(50, cache.size);
+    }
+
+    public void testTrimDoesNotTouchUnboundedCaches() {
+        cache.maxSize = -1;
+        PXCacheManager.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertEquals(80, cache.size);
+    }
+
+    public void testEvictWhenCritical() {
+        PXCacheManager.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertTrue(cache.evicted);
+
+        cache = new RecordingCache(100, 80);
+        PXCacheManager.register(NAME, PXCacheUnit.BYTES, cache);
+        PXCacheManager.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertTrue(cache.evicted);
+    }
+
+    public void testNoTrimWhileUiHidden() {
+        PXCacheManager.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertEquals(80, cache.size);
+        assertFalse(cache.evicted);
+    }
+
+    public void testActivityDestroyed() {
+        Activity activity = new Activity();
+        PXCacheManager.register("failing-cache", PXCacheUnit.ENTRIES, new RecordingCache(1, 1) {
+            @Override
+            public void releaseActivity(Activity activity) {
+                throw new IllegalStateException();
+            }
+        });
+        try {
+            // a failing cache doesn't prevent the others from being released
+            PXCacheManager.onActivityDestroyed(activity);
+        } finally {
+            PXCacheManager.unregister("failing-cache");
+        }
+
+        assertSame(activity, cache.released);
+    }
+
+    public void testPoolBudget() {
+        ObjectPool<Paint, Paint> pool = ObjectPool.paintPool;
+        for (int i = 0; i < pool.getLimit(); i++) {
+            pool.checkIn(new Paint());
+        }
+        assertEquals(pool.getLimit(), pool.size());
+
+        PXCacheManager.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(pool.getLimit() / 2, pool.size());
+
+        PXCacheManager.evictAll();
+        assertEquals(0, pool.size());
+    }
+
+    private static class RecordingCache implements PXManagedCache {
+        private int maxSize;
+        private int size;
+        private boolean evicted;
+        private Activity released;
+
+        private RecordingCache(int maxSize, int size) {
+            this.maxSize = maxSize;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int maxSize() {
+            return maxSize;
+        }
+
+        public void trimToSize(int maxSize) {
+            size = Math.min(size, maxSize);
+        }
+
+        public void evictAll() {
+            size = 0;
+            evicted = true;
+        }
+
+        public void releaseActivity(Activity activity) {
+            released = activity;
+        }
+    }
+}
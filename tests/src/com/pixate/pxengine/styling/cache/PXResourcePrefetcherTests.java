@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.styling.cache;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import com.pixate.freestyle.PixateFreestyle;
+import com.pixate.freestyle.styling.PXStylesheet;
+import com.pixate.freestyle.styling.PXStylesheet.PXStyleSheetOrigin;
+import com.pixate.freestyle.styling.cache.PXResourcePrefetcher;
+import com.pixate.freestyle.util.PXBitmapCache;
+
+public class PXResourcePrefetcherTests extends AndroidTestCase {
+    private static final String IMAGE_URL = "bundle://urlOpener/asset_test.png";
+    private static final String REMOTE_URL = "http://127.0.0.1:9/remote.png";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        PixateFreestyle.init(getContext().getApplicationContext());
+        PXResourcePrefetcher.setEnabled(true);
+        PXBitmapCache.evictAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PXResourcePrefetcher.setEnabled(true);
+        PXBitmapCache.evictAll();
+        super.tearDown();
+    }
+
+    public void testPrefetchLocalBitmapAtFullSize() throws Exception {
+        PXResourcePrefetcher.prefetch(stylesheet(IMAGE_URL), getContext());
+        awaitPrefetch();
+
+        // local bitmaps are rendered at their full size
+        assertNotNull(PXBitmapCache.getFromMemory(Uri.parse(IMAGE_URL), 0, 0, null));
+    }
+
+    public void testDisabled() throws Exception {
+        PXResourcePrefetcher.setEnabled(false);
+        PXResourcePrefetcher.prefetch(stylesheet(IMAGE_URL), getContext());
+
+        assertEquals(0, PXResourcePrefetcher.getPendingCount());
+        assertNull(PXBitmapCache.getFromMemory(Uri.parse(IMAGE_URL), 0, 0, null));
+    }
+
+    public void testRemoteBitmapsWaitForViewBounds() throws Exception {
+        // without a laid out view, the size the bitmap will be rendered at is
+        // unknown, so it's not prefetched
+        PXResourcePrefetcher.prefetch(stylesheet(REMOTE_URL), getContext());
+
+        assertEquals(0, PXResourcePrefetcher.getPendingCount());
+    }
+
+    public void testPrioritizeOnLayoutWaitsForContent() throws Exception {
+        stylesheet(IMAGE_URL);
+        FrameLayout root = new FrameLayout(getContext());
+        FrameLayout content = new FrameLayout(getContext());
+        content.setId(android.R.id.content);
+        root.addView(content);
+        root.layout(0, 0, 100, 100);
+
+        PXResourcePrefetcher.prioritizeOnLayout(root);
+        root.getViewTreeObserver().dispatchOnGlobalLayout();
+        // no content yet
+        awaitPrefetch();
+        assertNull(PXBitmapCache.getFromMemory(Uri.parse(IMAGE_URL), 0, 0, null));
+
+        content.addView(new View(getContext()));
+        root.getViewTreeObserver().dispatchOnGlobalLayout();
+        awaitPrefetch();
+        assertNotNull(PXBitmapCache.getFromMemory(Uri.parse(IMAGE_URL), 0, 0, null));
+    }
+
+    private static PXStylesheet stylesheet(String url) {
+        PXStylesheet stylesheet = PXStylesheet.getStyleSheetFromSource("* { background-image: url("
+                + url + "); }", PXStyleSheetOrigin.APPLICATION);
+        assertNotNull(stylesheet);
+        return stylesheet;
+    }
+
+    private static void awaitPrefetch() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (PXResourcePrefetcher.getPendingCount() > 0) {
+            assertTrue("Timed out while prefetching", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.pxengine.styling.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.test.AndroidTestCase;
+
+import com.pixate.freestyle.styling.PXDeclaration;
+import com.pixate.freestyle.styling.adapters.PXStyleAdapter;
+import com.pixate.freestyle.styling.cache.PXStyleInfo;
+import com.pixate.freestyle.styling.stylers.PXStyler;
+import com.pixate.freestyle.styling.stylers.PXStylerBase;
+import com.pixate.freestyle.styling.stylers.PXStylerContext;
+
+/**
+ * Checks that applying a {@link PXStyleInfo} through the styler dispatch
+ * table invokes the stylers exactly like the linear scan it replaced: stylers
+ * in adapter order, each with its declarations in declaration order, followed
+ * by its completion step, and the last styler of a property wins.
+ */
+public class PXStyleInfoDispatchTests extends AndroidTestCase {
+    private static final String STYLE_KEY = "dispatch-test";
+
+    private final List<String> log = new ArrayList<String>();
+    private TestAdapter adapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // initialize the default adapters before registering the test one
+        PXStyleAdapter.getStyleAdapter(null);
+        adapter = new TestAdapter(log);
+        PXStyleAdapter.registerStyleAdapter(TestStyleable.class.getName(), adapter);
+    }
+
+    public void testMatchesLinearScan() {
+        assertDispatch(declarations("c", "shared", "a", "unknown", "b", "a"));
+    }
+
+    public void testLastStylerWins() {
+        List<String> dispatched = assertDispatch(declarations("shared"));
+
+        // both 'first' and 'second' support 'shared'; only 'second' gets it
+        assertEquals(Arrays.asList("second:shared=1", "second:apply"), dispatched);
+    }
+
+    public void testDeclarationOrderWithinStyler() {
+        List<String> dispatched = assertDispatch(declarations("b", "shared", "b"));
+
+        assertEquals(Arrays.asList("second:b=0", "second:shared=1", "second:b=2", "second:apply"),
+                dispatched);
+    }
+
+    public void testUnhandledDeclarations() {
+        assertEquals(0, assertDispatch(declarations("unknown")).size());
+    }
+
+    public void testRedispatchAfterNewDeclarations() {
+        PXStyleInfo styleInfo = new PXStyleInfo(STYLE_KEY);
+        styleInfo.addDeclarations(declarations("a"), PXStyleInfo.DEFAULT_STYLE);
+        styleInfo.applyTo(new TestStyleable());
+
+        // replacing the declarations of a state drops its cached dispatch
+        List<PXDeclaration> declarations = declarations("c", "a");
+        styleInfo.addDeclarations(declarations, PXStyleInfo.DEFAULT_STYLE);
+        log.clear();
+        styleInfo.applyTo(new TestStyleable());
+        List<String> dispatched = new ArrayList<String>(log);
+
+        assertEquals(linearScan(declarations), dispatched);
+    }
+
+    /**
+     * Applies the declarations through a {@link PXStyleInfo} twice (to also
+     * go through its cached dispatch), and compares every invocation with the
+     * linear scan.
+     *
+     * @return The invocations
+     */
+    private List<String> assertDispatch(List<PXDeclaration> declarations) {
+        List<String> expected = linearScan(declarations);
+
+        PXStyleInfo styleInfo = new PXStyleInfo(STYLE_KEY);
+        styleInfo.addDeclarations(declarations, PXStyleInfo.DEFAULT_STYLE);
+        for (int i = 0; i < 2; i++) {
+            log.clear();
+            styleInfo.applyTo(new TestStyleable());
+            assertEquals(expected, log);
+        }
+        return new ArrayList<String>(log);
+    }
+
+    /**
+     * The styler invocation of PXStyleInfo before the dispatch table: for
+     * every styler, in order, the declarations it handles according to
+     * {@link PXStyleAdapter#getStylersByProperty()}, then its completion.
+     */
+    private List<String> linearScan(List<PXDeclaration> declarations) {
+        PXStylerContext context = new PXStylerContext(new TestStyleable(),
+                PXStyleInfo.DEFAULT_STYLE, 0);
+        Map<String, PXStyler> stylersByProperty = adapter.getStylersByProperty();
+        Set<PXStyler> activeStylers = new HashSet<PXStyler>();
+        for (PXDeclaration declaration : declarations) {
+            PXStyler styler = stylersByProperty.get(declaration.getName());
+            if (styler != null) {
+                activeStylers.add(styler);
+            }
+        }
+
+        log.clear();
+        for (PXStyler currentStyler : adapter.getStylers()) {
+            if (activeStylers.contains(currentStyler)) {
+                for (PXDeclaration declaration : declarations) {
+                    if (stylersByProperty.get(declaration.getName()) == currentStyler) {
+                        currentStyler.processDeclaration(declaration, context);
+                    }
+                }
+                currentStyler.applyStylesWithContext(context);
+            }
+        }
+        List<String> result = new ArrayList<String>(log);
+        log.clear();
+        return result;
+    }
+
+    /**
+     * Creates declarations with the given names. The value of each is its
+     * index, so repeated names can be told apart.
+     */
+    private static List<PXDeclaration> declarations(String... names) {
+        List<PXDeclaration> result = new ArrayList<PXDeclaration>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            result.add(new PXDeclaration(names[i], String.valueOf(i)));
+        }
+        return result;
+    }
+
+    private static class TestStyleable {
+    }
+
+    private static class TestAdapter extends PXStyleAdapter {
+        private final List<String> log;
+
+        private TestAdapter(List<String> log) {
+            this.log = log;
+        }
+
+        @Override
+        public String getStyleKey(Object object) {
+            return STYLE_KEY;
+        }
+
+        @Override
+        protected List<PXStyler> createStylers() {
+            List<PXStyler> stylers = new ArrayList<PXStyler>();
+            // a styler with declaration handlers, and one without, both
+            // supporting 'shared'
+            stylers.add(new HandlerStyler("first", log, "a", "shared"));
+            stylers.add(new PlainStyler("second", log, "b", "shared"));
+            stylers.add(new HandlerStyler("third", log, "c"));
+            return stylers;
+        }
+    }
+
+    private static class HandlerStyler extends PXStylerBase {
+        private final String name;
+        private final List<String> log;
+        private final Map<String, PXDeclarationHandler> handlers =
+                new HashMap<String, PXDeclarationHandler>();
+
+        private HandlerStyler(String name, List<String> log, String... properties) {
+            super(null);
+            this.name = name;
+            this.log = log;
+            for (final String property : properties) {
+                handlers.put(property, new PXDeclarationHandler() {
+                    public void process(PXDeclaration declaration, PXStylerContext context) {
+                        record(declaration);
+                    }
+                });
+            }
+        }
+
+        private void record(PXDeclaration declaration) {
+            log.add(name + ":" + declaration.getName() + "=" + declaration.getStringValue());
+        }
+
+        @Override
+        public Map<String, PXDeclarationHandler> getDeclarationHandlers() {
+            return handlers;
+        }
+
+        @Override
+        public void applyStylesWithContext(PXStylerContext stylerContext) {
+            log.add(name + ":apply");
+        }
+    }
+
+    private static class PlainStyler implements PXStyler {
+        private final String name;
+        private final List<String> log;
+        private final Collection<String> properties;
+
+        private PlainStyler(String name, List<String> log, String... properties) {
+            this.name = name;
+            this.log = log;
+            this.properties = Arrays.asList(properties);
+        }
+
+        public Collection<String> getSupportedProperties() {
+            return properties;
+        }
+
+        public void processDeclaration(PXDeclaration declaration, PXStylerContext stylerContext) {
+            log.add(name + ":" + declaration.getName() + "=" + declaration.getStringValue());
+        }
+
+        public void applyStylesWithContext(PXStylerContext stylerContext) {
+            log.add(name + ":apply");
+        }
+    }
+}
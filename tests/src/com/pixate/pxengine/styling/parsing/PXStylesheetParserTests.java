@@ -15,10 +15,13 @@
  ******************************************************************************/
 package com.pixate.pxengine.styling.parsing;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
 
 import android.test.AndroidTestCase;
 import android.util.Log;
+import android.widget.Button;
 
 import com.pixate.pxengine.cg.paints.PXLinearGradient;
 import com.pixate.pxengine.cg.paints.PXPaint;
@@ -28,6 +31,7 @@ import com.pixate.pxengine.styling.PXStylesheet;
 import com.pixate.pxengine.styling.PXStylesheet.PXStyleSheetOrigin;
 import com.pixate.pxengine.styling.animation.PXKeyframe;
 import com.pixate.pxengine.styling.animation.PXKeyframeBlock;
+import com.pixate.pxengine.styling.fonts.PXFontRegistry;
 import com.pixate.pxengine.styling.media.PXMediaExpression;
 import com.pixate.pxengine.styling.media.PXMediaExpressionGroup;
 import com.pixate.pxengine.styling.media.PXMediaGroup;
@@ -41,6 +45,20 @@ import com.pixate.util.ObjectUtil;
  */
 public class PXStylesheetParserTests extends AndroidTestCase {
 
+    // @formatter:off
+    private static final String DIAMOND_IMPORTS =
+            "@import \"stylesheetParsing/diamondLeft.css\";\n" +
+            "@import \"stylesheetParsing/diamondRight.css\";\n";
+
+    private static final String READER_SOURCE =
+            "button { color: red; background-color: blue; }\n" +
+            ".primary { color: green !important; font-family: \"Avenir Next\"; }\n" +
+            "#ok:pressed { opacity: 0.5; border-width: 1px; }\n" +
+            "@media (orientation: landscape) { button { color: pink; } }\n" +
+            "@keyframes fade { from { opacity: 0; } to { opacity: 1; } }\n" +
+            "text-view .primary { background-image: url(\"bundle://icon.svg\"); }\n";
+    // @formatter:on
+
     private PXStylesheetParser parser;
 
     // TODO: Write assertStyleSheet method to remove code duplication in these
@@ -594,6 +612,171 @@ public class PXStylesheetParserTests extends AndroidTestCase {
                         CollectionUtil.toString(errors, "\n")), CollectionUtil.isEmpty(errors));
     }
 
+    public void testDiamondImport() {
+        PXStylesheet stylesheet = parser.parse(DIAMOND_IMPORTS, PXStyleSheetOrigin.APPLICATION);
+
+        List<String> errors = parser.getErrors();
+        assertTrue(
+                String.format("Found %d unexpected parse error(s): %s",
+                        CollectionUtil.isEmpty(errors) ? 0 : errors.size(),
+                        CollectionUtil.toString(errors, "\n")), CollectionUtil.isEmpty(errors));
+
+        // base, left, and base again through the right import
+        List<PXRuleSet> ruleSets = stylesheet.getRuleSetsMatchingStyleable(new Button(
+                getContext()));
+        assertEquals("Expected three rule sets", 3, ruleSets.size());
+        assertNotSame("Expected a copy of the base rule set", ruleSets.get(0), ruleSets.get(2));
+        for (int i = 1; i < ruleSets.size(); i++) {
+            assertTrue("Expected the rule sets in cascade order", ruleSets.get(i - 1)
+                    .getCascadeOrder() < ruleSets.get(i).getCascadeOrder());
+        }
+        String color = PXRuleSet.mergeRuleSets(ruleSets).getDeclarationForName("color")
+                .getStringValue();
+        assertEquals("Expected the color of the last import", "red", color);
+    }
+
+    public void testImportCycle() {
+        // the source of cycleA.css; the import of cycleB.css loads cycleA.css
+        // again in the background, though it's never stitched
+        String source = "@import \"stylesheetParsing/cycleB.css\";";
+
+        parser.parse(source, PXStyleSheetOrigin.APPLICATION, "stylesheetParsing/cycleA.css");
+
+        List<String> errors = parser.getErrors();
+        assertEquals("Expected a cycle error", 1, errors == null ? 0 : errors.size());
+        assertTrue(errors.get(0).contains("import cycle"));
+
+        // the unused import of the cycle doesn't leak into the next parse
+        PXStylesheet stylesheet = parser.parse("button { color: blue; }",
+                PXStyleSheetOrigin.APPLICATION);
+        assertTrue(CollectionUtil.toString(parser.getErrors(), "\n"),
+                CollectionUtil.isEmpty(parser.getErrors()));
+        assertEquals("Expected one rule set", 1, stylesheet.getRuleSets(getContext()).size());
+    }
+
+    public void testImportInComment() {
+        String source = "/* @import \"stylesheetParsing/missing.css\"; */\n"
+                + "button { color: red; }";
+
+        PXStylesheet stylesheet = parser.parse(source, PXStyleSheetOrigin.APPLICATION);
+
+        List<String> errors = parser.getErrors();
+        assertTrue(
+                String.format("Found %d unexpected parse error(s): %s",
+                        CollectionUtil.isEmpty(errors) ? 0 : errors.size(),
+                        CollectionUtil.toString(errors, "\n")), CollectionUtil.isEmpty(errors));
+        assertEquals("Expected one rule set", 1, stylesheet.getRuleSets(getContext()).size());
+    }
+
+    // Reader Tests
+
+    public void testReaderMatchesString() {
+        assertReaderMatchesString(READER_SOURCE, 0);
+    }
+
+    public void testReaderMatchesStringWithImports() {
+        assertReaderMatchesString(DIAMOND_IMPORTS + READER_SOURCE, 0);
+    }
+
+    public void testReaderMatchesStringWithoutContext() {
+        // the imports are skipped, but the rule sets of the sheet are kept
+        parser = new PXStylesheetParser();
+        PXStylesheet stylesheet = assertReaderMatchesString(DIAMOND_IMPORTS + READER_SOURCE, 2);
+        assertEquals("Unexpected rule set count", 5, describe(stylesheet).size());
+    }
+
+    /**
+     * Parses a source from a string and from a reader, and checks that both
+     * result in the same rule sets, with the same declaration values.
+     * 
+     * @return The stylesheet parsed from the reader
+     */
+    private PXStylesheet assertReaderMatchesString(String source, int errorCount) {
+        PXStylesheet expected = parser.parse(source, PXStyleSheetOrigin.APPLICATION);
+        List<String> errors = parser.getErrors();
+        assertEquals("Unexpected error count", errorCount, CollectionUtil.isEmpty(errors) ? 0
+                : errors.size());
+
+        PXStylesheet actual = parser.parse(new StringReader(source),
+                PXStyleSheetOrigin.APPLICATION, "test.css");
+        errors = parser.getErrors();
+        assertEquals("Unexpected error count", errorCount, CollectionUtil.isEmpty(errors) ? 0
+                : errors.size());
+
+        assertEquals(describe(expected), describe(actual));
+        assertEquals(expected.getKeyframeForName("fade").getBlocks().size(), actual
+                .getKeyframeForName("fade").getBlocks().size());
+        return actual;
+    }
+
+    private static List<String> describe(PXStylesheet stylesheet) {
+        List<String> result = new ArrayList<String>();
+        for (PXMediaGroup group : stylesheet.getMediaGroups()) {
+            for (PXRuleSet ruleSet : group.getRuleSets()) {
+                result.add(group.getQuery() + " " + ruleSet.getCascadeOrder() + " " + ruleSet);
+            }
+        }
+        return result;
+    }
+
+    // Font-Face Tests
+
+    public void testFontFace() {
+        String source = "@font-face { font-family: PXTestFace; src: url(fonts/none.ttf), "
+                + "url(fonts/other.ttf); } button { abc: def }";
+
+        PXStylesheet stylesheet = parser.parse(source, PXStyleSheetOrigin.APPLICATION);
+
+        List<String> errors = parser.getErrors();
+        assertTrue(
+                String.format("Found %d unexpected parse error(s): %s",
+                        CollectionUtil.isEmpty(errors) ? 0 : errors.size(),
+                        CollectionUtil.toString(errors, "\n")), CollectionUtil.isEmpty(errors));
+
+        // the font-face is not a rule set, and doesn't stop the parsing
+        List<PXRuleSet> ruleSets = stylesheet.getRuleSets(getContext());
+        assertTrue("Expected one rule set", ruleSets.size() == 1);
+
+        // the lookup doesn't wait for the font to load
+        assertNotNull("Expected a fallback typeface",
+                PXFontRegistry.getTypeface("PXTestFace", null, null));
+    }
+
+    public void testFontFaceWithWeightAndStyle() {
+        String source = "@font-face { font-family: PXTestFace; font-weight: BOLD; "
+                + "font-style: Italic; src: url(fonts/none-bold-italic.ttf); }";
+
+        parser.parse(source, PXStyleSheetOrigin.APPLICATION);
+
+        List<String> errors = parser.getErrors();
+        assertTrue(
+                String.format("Found %d unexpected parse error(s): %s",
+                        CollectionUtil.isEmpty(errors) ? 0 : errors.size(),
+                        CollectionUtil.toString(errors, "\n")), CollectionUtil.isEmpty(errors));
+        assertNotNull("Expected a fallback typeface",
+                PXFontRegistry.getTypeface("PXTestFace", "bold", "italic"));
+    }
+
+    public void testFontFaceWithoutSrc() {
+        String source = "@font-face { font-family: PXTestFace; }";
+
+        parser.parse(source, PXStyleSheetOrigin.APPLICATION);
+
+        List<String> errors = parser.getErrors();
+        assertTrue("Expected a parse error", errors != null && errors.size() == 1);
+    }
+
+    public void testFontFaceWithoutFamily() {
+        String source = "@font-face { src: url(fonts/none.ttf); } button { abc: def }";
+
+        PXStylesheet stylesheet = parser.parse(source, PXStyleSheetOrigin.APPLICATION);
+
+        List<String> errors = parser.getErrors();
+        assertTrue("Expected a parse error", errors != null && errors.size() == 1);
+        List<PXRuleSet> ruleSets = stylesheet.getRuleSets(getContext());
+        assertTrue("Expected one rule set", ruleSets.size() == 1);
+    }
+
     // Keyframes Tests
 
     public void testEmptyKeyframes() {
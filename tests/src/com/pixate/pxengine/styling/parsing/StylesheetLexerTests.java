@@ -18,10 +18,16 @@
  */
 package com.pixate.pxengine.styling.parsing;
 
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import android.test.AndroidTestCase;
 
 import com.pixate.pxengine.cg.math.PXDimension;
 import com.pixate.pxengine.cg.math.PXDimensionType;
+import com.pixate.pxengine.parsing.Lexeme;
 
 /**
  * @author kevin
@@ -552,4 +558,147 @@ public class StylesheetLexerTests extends AndroidTestCase {
     public void testEscapedClassBug() {
         assertType(".one\\.word", PXStylesheetTokenType.CLASS);
     }
+
+    public void testCharArraySourceWithOffset() {
+        char[] chars = "ignored #id .cls ignored".toCharArray();
+        this._lexer.setSource(chars, 8, 8);
+
+        PXStylesheetLexeme id = this._lexer.nextLexeme();
+        assertEquals(PXStylesheetTokenType.ID, id.getType());
+        assertEquals(0, id.getOffset());
+        assertEquals("#id", id.getValue());
+
+        PXStylesheetLexeme styleClass = this._lexer.nextLexeme();
+        assertEquals(PXStylesheetTokenType.CLASS, styleClass.getType());
+        assertEquals(4, styleClass.getOffset());
+        assertEquals(".cls", styleClass.getValue());
+        assertTrue(styleClass.followsWhitespace());
+
+        assertEquals(PXStylesheetTokenType.EOF, this._lexer.nextLexeme().getType());
+    }
+
+    public void testCharArraySourceNumber() {
+        char[] chars = "x 12.5 x".toCharArray();
+        this._lexer.setSource(chars, 2, 4);
+
+        PXStylesheetLexeme number = this._lexer.nextLexeme();
+        assertEquals(PXStylesheetTokenType.NUMBER, number.getType());
+        assertEquals(12.5f, number.getFloatValue());
+        assertEquals("12.5", number.getValue());
+        assertEquals(12.5f, number.getFloatValue());
+    }
+
+    public void testLexemesReleaseTheSource() {
+        char[] chars = "12.5 #id".toCharArray();
+        this._lexer.setSource(chars, 0, chars.length);
+        PXStylesheetLexeme number = this._lexer.nextLexeme();
+        PXStylesheetLexeme id = this._lexer.nextLexeme();
+
+        assertEquals(12.5f, number.getFloatValue());
+        assertEquals("#id", id.getValue());
+
+        // once their values are used, the lexemes no longer read the source
+        Arrays.fill(chars, 'x');
+        assertEquals("12.5", number.getValue());
+        assertEquals(12.5f, number.getFloatValue());
+        assertEquals("#id", id.getValue());
+    }
+
+    public void testSharedValueLexemesAreFrozen() {
+        List<PXStylesheetLexeme> lexemes = PXValueParser.lexemesForSource("1px solid #fff");
+        assertSame(lexemes, PXValueParser.lexemesForSource("1px solid #fff"));
+
+        PXStylesheetLexeme solid = lexemes.get(1);
+        assertTrue(solid.isFrozen());
+        assertTrue(solid.followsWhitespace());
+        try {
+            solid.clearFlag(Lexeme.FLAG_TYPE_FOLLOWS_WHITESPACE);
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertTrue(solid.followsWhitespace());
+        try {
+            lexemes.add(solid);
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        // the lexer's own lexemes can still be modified
+        PXStylesheetLexeme lexeme = getLexeme("#fff");
+        assertFalse(lexeme.isFrozen());
+        lexeme.setFlag(Lexeme.FLAG_TYPE_FOLLOWS_WHITESPACE);
+        assertTrue(lexeme.followsWhitespace());
+    }
+
+    public void testReaderSourceMatchesStringSource() {
+        StringBuilder builder = new StringBuilder();
+        // larger than the scanner's buffer, so the reader is read in windows
+        for (int i = 0; i < 1000; i++) {
+            builder.append("#id").append(i).append(" .a > b, c:hover { color: #f00; ");
+            builder.append("width: 12.5px; background: url('a b.svg') }\n");
+        }
+        String source = builder.toString();
+
+        this._lexer.setSource(source);
+        List<PXStylesheetLexeme> expected = lex();
+        this._lexer.setSource(new StringReader(source));
+        List<PXStylesheetLexeme> actual = lex();
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            PXStylesheetLexeme lhs = expected.get(i);
+            PXStylesheetLexeme rhs = actual.get(i);
+            assertEquals(lhs.getType(), rhs.getType());
+            assertEquals(lhs.getOffset(), rhs.getOffset());
+            assertEquals(lhs.getLength(), rhs.getLength());
+            assertEquals(lhs.getValue(), rhs.getValue());
+            assertEquals(lhs.followsWhitespace(), rhs.followsWhitespace());
+        }
+    }
+
+    public void testReset() {
+        char[] chars = "#id".toCharArray();
+        this._lexer.setSource(chars, 0, chars.length);
+        PXStylesheetLexeme id = this._lexer.nextLexeme();
+        this._lexer.pushLexeme(id);
+
+        this._lexer.reset();
+        assertNull(this._lexer.getSource());
+
+        // pushed lexemes are gone, and the array is not used as the reader's
+        // buffer
+        this._lexer.setSource(new StringReader(".cls"));
+        PXStylesheetLexeme styleClass = this._lexer.nextLexeme();
+        assertEquals(PXStylesheetTokenType.CLASS, styleClass.getType());
+        assertEquals(".cls", styleClass.getValue());
+        assertEquals("#id", new String(chars));
+        assertEquals("#id", id.getValue());
+    }
+
+    public void testGetSourceRange() {
+        this._lexer.setSource("a { b: c; }");
+        assertEquals("a { b: c; }", this._lexer.getSource());
+        assertEquals("b", this._lexer.getSource(4, 5));
+
+        char[] chars = "ignored #id .cls ignored".toCharArray();
+        this._lexer.setSource(chars, 8, 8);
+        assertEquals("#id .cls", this._lexer.getSource());
+        assertEquals(".cls", this._lexer.getSource(4, 8));
+
+        this._lexer.setSource(new StringReader("#id"));
+        assertNull(this._lexer.getSource());
+        assertNull(this._lexer.getSource(0, 1));
+    }
+
+    private List<PXStylesheetLexeme> lex() {
+        List<PXStylesheetLexeme> result = new ArrayList<PXStylesheetLexeme>();
+        PXStylesheetLexeme lexeme = this._lexer.nextLexeme();
+        while (lexeme != null && lexeme.getType() != PXStylesheetTokenType.EOF) {
+            result.add(lexeme);
+            lexeme = this._lexer.nextLexeme();
+        }
+        return result;
+    }
 }
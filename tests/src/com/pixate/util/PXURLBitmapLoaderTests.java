@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright 2012-present Pixate, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.pixate.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.pixate.freestyle.util.LoadingCallback;
+import com.pixate.freestyle.util.PXURLBitmapLoader;
+
+public class PXURLBitmapLoaderTests extends AndroidTestCase {
+
+    private LocalImageServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Bitmap bitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLUE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        server = new LocalImageServer(out.toByteArray());
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+        super.tearDown();
+    }
+
+    public void testCoalescedDownloads() throws Exception {
+        // hold the response, so both requests are in flight together
+        server.delay = 500;
+        Uri uri = server.uri("/coalesce.png");
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        PXURLBitmapLoader.loadBitmap(uri, 32, 32, first);
+        PXURLBitmapLoader.loadBitmap(uri, 32, 32, second);
+
+        assertTrue(first.done.await(5, TimeUnit.SECONDS));
+        assertTrue(second.done.await(5, TimeUnit.SECONDS));
+        assertNotNull(first.bitmap);
+        assertSame(first.bitmap, second.bitmap);
+        assertEquals(32, first.bitmap.getWidth());
+        assertEquals(1, server.requests.get());
+    }
+
+    public void testSynchronousDownload() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        PXURLBitmapLoader.loadBitmap(server.uri("/sync.png"), 0, 0, callback, true);
+
+        // the callback is informed before the call returns
+        assertEquals(0, callback.done.getCount());
+        assertEquals(64, callback.bitmap.getWidth());
+        assertEquals(1, server.requests.get());
+    }
+
+    public void testCancel() throws Exception {
+        server.delay = 1000;
+        Uri uri = server.uri("/cancel.png");
+        RecordingCallback callback = new RecordingCallback();
+        PXURLBitmapLoader.loadBitmap(uri, 0, 0, callback);
+        PXURLBitmapLoader.cancel(uri, callback);
+
+        assertFalse(callback.done.await(2, TimeUnit.SECONDS));
+    }
+
+    public void testSynchronousCancelFromAnotherThread() throws Exception {
+        server.delay = 2000;
+        final Uri uri = server.uri("/sync-cancel.png");
+        final RecordingCallback callback = new RecordingCallback();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                }
+                PXURLBitmapLoader.cancel(uri, callback);
+            }
+        }.start();
+        long start = System.currentTimeMillis();
+        PXURLBitmapLoader.loadBitmap(uri, 0, 0, callback, true);
+
+        // released by the cancellation, not by the download or the timeout
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        assertTrue(callback.error instanceof CancellationException);
+        assertNull(callback.bitmap);
+    }
+
+    public void testSynchronousTimeout() throws Exception {
+        PXURLBitmapLoader loader = PXURLBitmapLoader.getInstance();
+        long timeout = loader.getImageDownloadTimeout();
+        loader.setImageDownloadTimeout(200);
+        try {
+            server.delay = 1000;
+            RecordingCallback callback = new RecordingCallback();
+            PXURLBitmapLoader.loadBitmap(server.uri("/timeout.png"), 0, 0, callback, true);
+
+            assertTrue(callback.error instanceof TimeoutException);
+            // the callback is not informed again once the download completes
+            Thread.sleep(2000);
+            assertNull(callback.bitmap);
+            assertEquals(1, callback.calls.get());
+        } finally {
+            loader.setImageDownloadTimeout(timeout);
+        }
+    }
+
+    private static class RecordingCallback implements LoadingCallback<Bitmap> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile Bitmap bitmap;
+        private volatile Throwable error;
+
+        @Override
+        public void onLoaded(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            calls.incrementAndGet();
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            calls.incrementAndGet();
+            done.countDown();
+        }
+    }
+
+    /**
+     * A minimal HTTP stand-in that serves the same image for any path.
+     */
+    private static class LocalImageServer extends Thread {
+        private final ServerSocket socket;
+        private final byte[] image;
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile long delay;
+
+        private LocalImageServer(byte[] image) throws IOException {
+            this.socket = new ServerSocket(0);
+            this.image = image;
+            setDaemon(true);
+        }
+
+        private Uri uri(String path) {
+            return Uri.parse("http://127.0.0.1:" + socket.getLocalPort() + path);
+        }
+
+        private void close() throws IOException {
+            socket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!socket.isClosed()) {
+                try {
+                    Socket client = socket.accept();
+                    requests.incrementAndGet();
+                    serve(client);
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }
+
+        private void serve(Socket client) throws IOException {
+            try {
+                // read the request headers
+                InputStream in = client.getInputStream();
+                int matched = 0;
+                int b;
+                while (matched < 4 && (b = in.read()) != -1) {
+                    matched = (b == '\r' || b == '\n') ? matched + 1 : 0;
+                }
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                OutputStream out = client.getOutputStream();
+                out.write(("HTTP/1.0 200 OK\r\nContent-Type: image/png\r\nContent-Length: "
+                        + image.length + "\r\n\r\n").getBytes("US-ASCII"));
+                out.write(image);
+                out.flush();
+            } catch (InterruptedException e) {
+                // done
+            } finally {
+                client.close();
+            }
+        }
+    }
+}